@@ -0,0 +1,118 @@
+package DrawIt;
+import javafx.scene.paint.Color;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adding generated shapes to a drawing: as one batch edit with a single repaint, and shape by shape the way a
+ * mouse release adds them (an add and a commit each). Only the time on the FX thread is measured, the progressive
+ * repaint that a big batch starts runs on the following pulses. Sizes stay at 100000: headless, the canvas is never
+ * rendered and its command buffer only grows, which dominates a million single commits
+ *
+ * @author Maksym Hanushchak
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class BatchEditBenchmark {
+    /**
+     * Number of generated shapes
+     */
+    @Param({"10000", "100000"})
+    public int size;
+
+    /**
+     * Generated shapes
+     */
+    private ShapeBatch batch;
+    /**
+     * Shape objects of the same shapes
+     */
+    private Shape[] shapes;
+    /**
+     * Drawing of the current invocation
+     */
+    private Drawing drawing;
+    /**
+     * Repaint engine of the current invocation
+     */
+    private RepaintEngine engine;
+
+    /**
+     * Generates small shapes all over a world three times the size of the canvas
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        Color[] colors = {Color.BLACK, Color.RED, Color.BLUE};
+        batch = new ShapeBatch(size);
+        shapes = new Shape[size];
+        for (int i = 0; i < size; i++) {
+            double x = random.nextDouble() * BenchmarkDocuments.WIDTH * 3 - BenchmarkDocuments.WIDTH;
+            double y = random.nextDouble() * BenchmarkDocuments.HEIGHT * 3 - BenchmarkDocuments.HEIGHT;
+            double ex = x + random.nextDouble() * 20, ey = y + random.nextDouble() * 20;
+            Color color = colors[i / 1000 % colors.length];
+            switch (i % 3) {
+                case 0:
+                    shapes[i] = new Line(x, y, ex, ey, color, 2);
+                    break;
+                case 1:
+                    shapes[i] = new Circle(x, y, ex, ey, color, 2);
+                    break;
+                default:
+                    shapes[i] = new Rectangle(x, y, ex, ey, color, 2);
+            }
+            batch.add(shapes[i]);
+        }
+    }
+
+    /**
+     * Creates an empty drawing and its engine, with progressive repaints as in the application
+     */
+    @Setup(Level.Invocation)
+    public void newDrawing() {
+        drawing = new Drawing();
+        engine = new RepaintEngine(BenchmarkDocuments.newCanvas().getGraphicsContext2D(), drawing, BenchmarkDocuments.WIDTH,
+                BenchmarkDocuments.HEIGHT, Color.WHITE, new CheckpointCache(Integer.MAX_VALUE, 0));
+        engine.useManualPulses();
+    }
+
+    /**
+     * Adds all the shapes as one batch edit
+     *
+     * @return Edit
+     */
+    @Benchmark
+    public Edit batch() {
+        return BatchEdit.add(drawing, engine, batch);
+    }
+
+    /**
+     * Adds the shapes one by one, each with its own commit
+     *
+     * @return Drawing
+     */
+    @Benchmark
+    public Drawing oneByOne() {
+        for (Shape s : shapes) {
+            engine.commit(drawing.add(s));
+        }
+        return drawing;
+    }
+}
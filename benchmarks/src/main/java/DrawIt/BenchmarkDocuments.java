@@ -0,0 +1,161 @@
+package DrawIt;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.paint.Color;
+
+import java.util.Random;
+
+/**
+ * Random drawings used by the benchmarks. The same seed always gives the same drawing, so the numbers of
+ * different runs can be compared
+ *
+ * @author Maksym Hanushchak
+ */
+public final class BenchmarkDocuments {
+    /**
+     * Canvas size of the drawings (the size of the main canvas of the application)
+     */
+    public static final int WIDTH = 1080, HEIGHT = 800;
+    /**
+     * Colors used by the random shapes
+     */
+    private static final Color[] COLORS = {Color.BLACK, Color.RED, Color.GREEN, Color.BLUE, Color.ORANGE, Color.PURPLE};
+
+    /**
+     * Utility class, no instances
+     */
+    private BenchmarkDocuments() {
+    }
+
+    /**
+     * Creates a random shape of the given kind somewhere on the canvas
+     *
+     * @param random Random generator
+     * @param kind   Kind of the shape (ShapeStore.LINE, CIRCLE, RECTANGLE)
+     * @return New shape
+     */
+    public static Shape randomShape(Random random, byte kind) {
+        double x = random.nextInt(WIDTH), y = random.nextInt(HEIGHT);
+        double ex = x + random.nextInt(80) - 40, ey = y + random.nextInt(80) - 40;
+        Color color = COLORS[random.nextInt(COLORS.length)];
+        double width = 1 + random.nextInt(5);
+        switch (kind) {
+            case ShapeStore.CIRCLE:
+                return new Circle(x, y, ex, ey, color, width);
+            case ShapeStore.RECTANGLE:
+                return new Rectangle(x, y, ex, ey, color, width);
+            default:
+                return new Line(x, y, ex, ey, color, width);
+        }
+    }
+
+    /**
+     * Creates a random drawing with an even mix of lines, circles and rectangles
+     *
+     * @param size Number of shapes
+     * @param seed Seed of the random generator
+     * @return Drawing
+     */
+    public static Drawing randomDrawing(int size, long seed) {
+        Random random = new Random(seed);
+        Drawing drawing = new Drawing();
+        for (int i = 0; i < size; i++) {
+            drawing.add(randomShape(random, (byte) (i % ShapeStore.KINDS)));
+        }
+        return drawing;
+    }
+
+    /**
+     * Creates a random drawing with the redundant geometry of repeated drags: about a fifth of the shapes are copies
+     * of earlier ones, a tenth are empty circles, and a third are runs of lines that make one line
+     *
+     * @param size Number of shapes
+     * @param seed Seed of the random generator
+     * @return Drawing
+     */
+    public static Drawing redundantDrawing(int size, long seed) {
+        Random random = new Random(seed);
+        Drawing drawing = new Drawing();
+        while (drawing.size() < size) {
+            int what = random.nextInt(10);
+            double x = random.nextInt(WIDTH), y = random.nextInt(HEIGHT);
+            if (what < 4 || drawing.isEmpty()) {
+                drawing.add(randomShape(random, (byte) random.nextInt(ShapeStore.KINDS)));
+            } else if (what < 6) {
+                drawing.add(drawing.getStore().copy(random.nextInt(drawing.getStore().size())));
+            } else if (what == 6) {
+                drawing.add(new Circle(x, y, x, y, Color.BLACK, 3));
+            } else {
+                double dx = random.nextInt(21) - 10, dy = random.nextInt(21) - 10 | 1; // Never zero, so never empty
+                Color color = COLORS[random.nextInt(COLORS.length)];
+                for (int i = 0, n = 2 + random.nextInt(5); i < n && drawing.size() < size; i++) {
+                    drawing.add(new Line(x + dx * i, y + dy * i, x + dx * (i + 1), y + dy * (i + 1), color, 2));
+                }
+            }
+        }
+        return drawing;
+    }
+
+    /**
+     * Creates a drawing whose shapes take turns between a few styles, every style in its own band of the canvas
+     * (shapes of different styles do not overlap, but consecutive shapes never share a style)
+     *
+     * @param size  Number of shapes
+     * @param bands Number of styles and bands
+     * @param seed  Seed of the random generator
+     * @return Drawing
+     */
+    public static Drawing bandedDrawing(int size, int bands, long seed) {
+        Random random = new Random(seed);
+        Drawing drawing = new Drawing();
+        double band = (double) WIDTH / bands;
+        for (int i = 0; i < size; i++) {
+            int b = i % bands;
+            double x = b * band + 20 + random.nextDouble() * (band - 40), y = random.nextInt(HEIGHT);
+            double ex = x + random.nextInt(30) - 15, ey = y + random.nextInt(30) - 15;
+            Color color = COLORS[b % COLORS.length];
+            switch (i % ShapeStore.KINDS) {
+                case ShapeStore.CIRCLE:
+                    drawing.add(new Circle(x, y, ex, ey, color, 2));
+                    break;
+                case ShapeStore.RECTANGLE:
+                    drawing.add(new Rectangle(x, y, ex, ey, color, 2));
+                    break;
+                default:
+                    drawing.add(new Line(x, y, ex, ey, color, 2));
+                    break;
+            }
+        }
+        return drawing;
+    }
+
+    /**
+     * Creates a random drawing spread over a square part of the world (centered at the origin), much bigger than
+     * the canvas
+     *
+     * @param size      Number of shapes
+     * @param worldSize Side of the square (world units)
+     * @param seed      Seed of the random generator
+     * @return Drawing
+     */
+    public static Drawing worldDrawing(int size, double worldSize, long seed) {
+        Random random = new Random(seed);
+        Drawing drawing = new Drawing();
+        for (int i = 0; i < size; i++) {
+            Shape s = randomShape(random, (byte) (i % ShapeStore.KINDS));
+            double dx = random.nextDouble() * worldSize - worldSize / 2, dy = random.nextDouble() * worldSize - worldSize / 2;
+            s.set(s.getSx() + dx, s.getSy() + dy, s.getEx() + dx, s.getEy() + dy, s.getLineColor(), s.getLineWidth());
+            drawing.add(s);
+        }
+        return drawing;
+    }
+
+    /**
+     * Creates a canvas of the application's size. Drawing on a canvas that is not shown only records the commands
+     * in the canvas' buffer, which is exactly the work done on the FX thread
+     *
+     * @return Canvas
+     */
+    public static Canvas newCanvas() {
+        return new Canvas(WIDTH, HEIGHT);
+    }
+}
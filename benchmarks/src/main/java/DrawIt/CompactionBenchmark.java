@@ -0,0 +1,117 @@
+package DrawIt;
+import javafx.scene.paint.Color;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compaction of a drawing full of redundant geometry: the scan on one thread and on all cores, the whole undoable
+ * compaction, and the full repaint of the drawing before and after it
+ *
+ * @author Maksym Hanushchak
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class CompactionBenchmark {
+    /**
+     * Number of shapes in the drawing
+     */
+    @Param({"100000", "1000000"})
+    public int size;
+
+    /**
+     * Drawing as it was drawn
+     */
+    private Drawing drawing;
+    /**
+     * Same drawing after a compaction
+     */
+    private Drawing compacted;
+    /**
+     * Repaint engine of the drawing
+     */
+    private RepaintEngine engine;
+    /**
+     * Software renderer of the canvas' size
+     */
+    private RasterRenderer raster;
+
+    /**
+     * Creates the drawing and a compacted copy of it
+     */
+    @Setup
+    public void setUp() {
+        drawing = BenchmarkDocuments.redundantDrawing(size, 42);
+        engine = new RepaintEngine(BenchmarkDocuments.newCanvas().getGraphicsContext2D(), drawing, BenchmarkDocuments.WIDTH,
+                BenchmarkDocuments.HEIGHT, Color.WHITE, new CheckpointCache(Integer.MAX_VALUE, 0));
+        engine.useManualPulses();
+        compacted = BenchmarkDocuments.redundantDrawing(size, 42);
+        CompactEdit.compact(compacted, new RepaintEngine(BenchmarkDocuments.newCanvas().getGraphicsContext2D(), compacted,
+                BenchmarkDocuments.WIDTH, BenchmarkDocuments.HEIGHT, Color.WHITE, new CheckpointCache(Integer.MAX_VALUE, 0)), 1);
+        raster = new RasterRenderer(BenchmarkDocuments.WIDTH, BenchmarkDocuments.HEIGHT);
+    }
+
+    /**
+     * Finds the redundant shapes on the calling thread
+     *
+     * @return Compactor
+     */
+    @Benchmark
+    public Compactor scanSequential() {
+        return new Compactor(drawing.snapshot()).run(1);
+    }
+
+    /**
+     * Finds the redundant shapes on all cores
+     *
+     * @return Compactor
+     */
+    @Benchmark
+    public Compactor scanParallel() {
+        return new Compactor(drawing.snapshot()).run(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Compacts the drawing as one edit and undoes it
+     *
+     * @return Edit
+     */
+    @Benchmark
+    public Edit compactAndUndo() {
+        Edit edit = CompactEdit.compact(drawing, engine, Runtime.getRuntime().availableProcessors());
+        edit.undo(drawing, engine);
+        return edit;
+    }
+
+    /**
+     * Full repaint of the drawing as it was drawn, on the software renderer
+     */
+    @Benchmark
+    public void repaintBefore() {
+        raster.fill(Color.WHITE);
+        drawing.getStore().drawAll(raster, ShapeStore.newViews());
+    }
+
+    /**
+     * Full repaint of the compacted drawing
+     */
+    @Benchmark
+    public void repaintAfter() {
+        raster.fill(Color.WHITE);
+        compacted.getStore().drawAll(raster, ShapeStore.newViews());
+    }
+}
@@ -0,0 +1,116 @@
+package DrawIt;
+import javafx.scene.paint.Color;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the shape work done for every mouse event while a shape is dragged, and of committing the shape when
+ * the mouse is released. Run with -prof gc to see the allocation rate
+ *
+ * @author Maksym Hanushchak
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DragPathBenchmark {
+    /**
+     * Kind of the dragged shape
+     */
+    @Param({"LINE", "CIRCLE", "RECTANGLE"})
+    public String kind;
+
+    /**
+     * Kind as a ShapeStore constant
+     */
+    private byte k;
+    /**
+     * Mouse position of the current event
+     */
+    private double x, y;
+    /**
+     * Drawing that receives the committed shapes
+     */
+    private Drawing drawing;
+    /**
+     * Reusable preview shapes indexed by kind (as in DragPreview)
+     */
+    private final Shape[] previews = ShapeStore.newViews();
+
+    /**
+     * Prepares the state
+     */
+    @Setup
+    public void setUp() {
+        k = kind.equals("CIRCLE") ? ShapeStore.CIRCLE : kind.equals("RECTANGLE") ? ShapeStore.RECTANGLE : ShapeStore.LINE;
+        drawing = new Drawing();
+    }
+
+    /**
+     * Moves the mouse a little
+     */
+    private void move() {
+        x = (x + 1.5) % BenchmarkDocuments.WIDTH;
+        y = (y + 0.5) % BenchmarkDocuments.HEIGHT;
+    }
+
+    /**
+     * Creates the preview shape of one drag event (what dragHandler did before DragPreview)
+     *
+     * @return Preview shape
+     */
+    @Benchmark
+    public Shape newShapePerEvent() {
+        move();
+        switch (k) {
+            case ShapeStore.CIRCLE:
+                return new Circle(10, 10, x, y, Color.BLACK, 2);
+            case ShapeStore.RECTANGLE:
+                return new Rectangle(10, 10, x, y, Color.BLACK, 2);
+            default:
+                return new Line(10, 10, x, y, Color.BLACK, 2);
+        }
+    }
+
+    /**
+     * Updates the reusable preview shape of one drag event (as DragPreview.show does)
+     *
+     * @return Preview shape
+     */
+    @Benchmark
+    public Shape reuseShapePerEvent() {
+        move();
+        Shape s = previews[k];
+        s.set(10, 10, x, y, Color.BLACK, 2);
+        return s;
+    }
+
+    /**
+     * Commits a shape to the drawing (as releaseHandler does). The drawing is cleared now and then, so it does not
+     * grow without bounds
+     *
+     * @return Slot of the committed shape
+     */
+    @Benchmark
+    public int commit() {
+        move();
+        if (drawing.getStore().size() == 1 << 20) {
+            drawing.clear();
+        }
+        Shape s = newShapePerEvent();
+        return drawing.add(s);
+    }
+}
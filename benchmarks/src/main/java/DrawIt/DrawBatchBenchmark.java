@@ -0,0 +1,132 @@
+package DrawIt;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full repaint on the canvas shape by shape versus through DrawBatcher. Besides the time, the stateChanges counter
+ * shows how many stroke color/width changes reach the canvas per repaint
+ *
+ * @author Maksym Hanushchak
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class DrawBatchBenchmark {
+    /**
+     * Number of shapes in the drawing
+     */
+    @Param({"10000", "100000", "1000000"})
+    public int size;
+    /**
+     * Layout of the drawing: random - random styles everywhere, bands - styles take turns but do not overlap
+     */
+    @Param({"random", "bands"})
+    public String layout;
+
+    /**
+     * Drawing under test
+     */
+    private Drawing drawing;
+    /**
+     * Graphics context of an off-screen canvas
+     */
+    private GraphicsContext gc;
+    /**
+     * Batched drawing on the canvas
+     */
+    private DrawBatcher batcher;
+
+    /**
+     * State changes per repaint (reported next to the time)
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+        /**
+         * Stroke color/width changes
+         */
+        public long stateChanges;
+
+        /**
+         * Resets the counter before every repaint, so the reported value is the count of a single repaint
+         */
+        @Setup(Level.Invocation)
+        public void reset() {
+            stateChanges = 0;
+        }
+    }
+
+    /**
+     * Creates the drawing and the canvas
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        drawing = layout.equals("bands") ? BenchmarkDocuments.bandedDrawing(size, 3, 42) : BenchmarkDocuments.randomDrawing(size, 42);
+        gc = BenchmarkDocuments.newCanvas().getGraphicsContext2D();
+        batcher = new DrawBatcher(gc);
+    }
+
+    /**
+     * Clears the canvas, which also drops the commands recorded by the previous repaint
+     */
+    private void clear() {
+        gc.setFill(Color.WHITE);
+        gc.fillRect(0, 0, BenchmarkDocuments.WIDTH, BenchmarkDocuments.HEIGHT);
+    }
+
+    /**
+     * Every shape sets its own stroke state (Shape.draw). The canvas ignores a state that did not change, so only
+     * the real changes are counted
+     *
+     * @param counters State change counter
+     */
+    @Benchmark
+    public void perShape(Counters counters) {
+        clear();
+        drawing.getStore().drawAll(new FxRenderer(gc), ShapeStore.newViews());
+        ShapeStore store = drawing.getStore();
+        int color = -1;
+        float width = Float.NaN;
+        for (int slot = store.nextLive(0); slot >= 0; slot = store.nextLive(slot + 1)) {
+            if (store.getColor(slot) != color) {
+                color = store.getColor(slot);
+                counters.stateChanges++;
+            }
+            if (store.getWidth(slot) != width) {
+                width = store.getWidth(slot);
+                counters.stateChanges++;
+            }
+        }
+    }
+
+    /**
+     * Shapes of the same style are stroked together (RepaintEngine)
+     *
+     * @param counters State change counter
+     */
+    @Benchmark
+    public void batched(Counters counters) {
+        clear();
+        batcher.resetStateChanges();
+        batcher.drawAll(drawing.getStore());
+        counters.stateChanges += batcher.getStateChanges();
+    }
+}
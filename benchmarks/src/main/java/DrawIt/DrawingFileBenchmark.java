@@ -0,0 +1,104 @@
+package DrawIt;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opening drawing files: the buffered stream loader, the memory-mapped loader, and what the GUI does before the
+ * first frame (open the mapping and load the first step of records)
+ *
+ * @author Maksym Hanushchak
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class DrawingFileBenchmark {
+    /**
+     * Number of shapes in the file
+     */
+    @Param({"1000000", "10000000"})
+    public int size;
+
+    /**
+     * Drawing file
+     */
+    private Path file;
+
+    /**
+     * Writes the drawing file
+     *
+     * @throws IOException If the file cannot be written
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = Files.createTempFile("drawit-benchmark", "." + DrawingFile.EXTENSION);
+        DrawingFile.write(BenchmarkDocuments.randomDrawing(size, 42).getStore(), BenchmarkDocuments.WIDTH, BenchmarkDocuments.HEIGHT, file);
+    }
+
+    /**
+     * Deletes the drawing file
+     *
+     * @throws IOException If the file cannot be deleted
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * Reads the whole file through a buffered stream
+     *
+     * @return Drawing
+     * @throws IOException If the file cannot be read
+     */
+    @Benchmark
+    public DrawingFile.Document streamRead() throws IOException {
+        return DrawingFile.read(file);
+    }
+
+    /**
+     * Reads the whole file through memory mappings
+     *
+     * @return Drawing
+     * @throws IOException If the file cannot be read
+     */
+    @Benchmark
+    public DrawingFile.Document mappedRead() throws IOException {
+        return DrawingFile.map(file);
+    }
+
+    /**
+     * Opens the file and loads the records of the first frame into a drawing (as DrawingLoader does)
+     *
+     * @return Drawing
+     * @throws IOException If the file cannot be read
+     */
+    @Benchmark
+    public Drawing firstFrame() throws IOException {
+        Drawing drawing = new Drawing();
+        try (DrawingFile.MappedFile mapped = DrawingFile.open(file)) {
+            mapped.readPalette(drawing.getStore().getPalette());
+            int from = mapped.read(0, Math.min(4096, mapped.getCount()), drawing.getStore());
+            drawing.indexFrom(from);
+        }
+        return drawing;
+    }
+}
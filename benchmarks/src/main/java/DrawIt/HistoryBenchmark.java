@@ -0,0 +1,136 @@
+package DrawIt;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of moving an edit between the undo and the redo history: inside the in-memory window of EditStack, across
+ * the whole history (paging edits from and to disk), and on the unbounded lists that EditStack replaced. The edits
+ * are small eraser strokes, the drawing is not touched
+ *
+ * @author Maksym Hanushchak
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class HistoryBenchmark {
+    /**
+     * Number of edits in the history
+     */
+    @Param({"1000000"})
+    public int size;
+    /**
+     * Number of edits kept in memory
+     */
+    @Param({"1000"})
+    public int window;
+
+    /**
+     * Undo history on disk and in memory
+     */
+    private EditStack edits;
+    /**
+     * Redo history on disk and in memory
+     */
+    private EditStack undoneEdits;
+    /**
+     * Undo history in memory only
+     */
+    private ArrayList<Edit> editList;
+    /**
+     * Redo history in memory only
+     */
+    private ArrayList<Edit> undoneList;
+    /**
+     * True while the whole-history benchmark undoes, false while it redoes
+     */
+    private boolean undoing = true;
+
+    /**
+     * Fills the histories
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        edits = new EditStack(window);
+        undoneEdits = new EditStack(window);
+        editList = new ArrayList<>();
+        undoneList = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            IntList erased = new IntList(4);
+            for (int j = 0; j < 4; j++) {
+                erased.add(i * 4 + j);
+            }
+            edits.push(new EraseEdit(erased));
+            editList.add(new EraseEdit(erased));
+        }
+    }
+
+    /**
+     * Deletes the history files
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        edits.close();
+        undoneEdits.close();
+    }
+
+    /**
+     * Undoes an edit and redoes it, the edit stays inside the window
+     *
+     * @return Redone edit
+     */
+    @Benchmark
+    public Edit undoRedoInWindow() {
+        undoneEdits.push(edits.pop());
+        Edit edit = undoneEdits.pop();
+        edits.push(edit);
+        return edit;
+    }
+
+    /**
+     * The same on the unbounded lists
+     *
+     * @return Redone edit
+     */
+    @Benchmark
+    public Edit undoRedoList() {
+        undoneList.add(editList.remove(editList.size() - 1));
+        Edit edit = undoneList.remove(undoneList.size() - 1);
+        editList.add(edit);
+        return edit;
+    }
+
+    /**
+     * Undoes the whole history one edit at a time, then redoes all of it (average cost of one step, including
+     * the paging)
+     *
+     * @return Moved edit
+     */
+    @Benchmark
+    public Edit walkWholeHistory() {
+        if (undoing && edits.isEmpty()) {
+            undoing = false;
+        } else if (!undoing && undoneEdits.isEmpty()) {
+            undoing = true;
+        }
+        Edit edit = undoing ? edits.pop() : undoneEdits.pop();
+        (undoing ? undoneEdits : edits).push(edit);
+        return edit;
+    }
+}
@@ -0,0 +1,107 @@
+package DrawIt;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Crash recovery from the autosave journal: replaying a journal of a million edits (adds, eraser removes and
+ * undo restores) with no snapshot, and loading a snapshot of the same drawing with a short journal on top
+ *
+ * @author Maksym Hanushchak
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class JournalBenchmark {
+    /**
+     * Number of logged edits
+     */
+    @Param({"1000000"})
+    public int edits;
+    /**
+     * True if the journal was compacted into a snapshot before the last edits
+     */
+    @Param({"false", "true"})
+    public boolean compacted;
+
+    /**
+     * Directory of the journal files
+     */
+    private Path dir;
+
+    /**
+     * Logs the edits and closes the journal as if the application had crashed after the last sync
+     *
+     * @throws Exception If the journal cannot be written
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("drawit-journal");
+        Drawing drawing = new Drawing();
+        Journal journal = new Journal(dir, 0, BenchmarkDocuments.WIDTH, BenchmarkDocuments.HEIGHT, Long.MAX_VALUE);
+        drawing.setJournal(journal);
+        Random random = new Random(42);
+        for (int i = 0; i < edits; i++) {
+            int kind = random.nextInt(10);
+            if (kind < 8 || drawing.getStore().size() == 0) {
+                drawing.add(BenchmarkDocuments.randomShape(random, (byte) (i % ShapeStore.KINDS)));
+            } else if (kind == 8) {
+                drawing.remove(random.nextInt(drawing.getStore().size()));
+            } else {
+                drawing.restore(random.nextInt(drawing.getStore().size()));
+            }
+            if (compacted && i == edits - 1000) {
+                journal.compact(drawing.getStore());
+            }
+        }
+        journal.close();
+    }
+
+    /**
+     * Deletes the journal files
+     *
+     * @throws IOException If the files cannot be deleted
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    /**
+     * Restores the drawing from the journal files
+     *
+     * @return Restored drawing
+     * @throws IOException If the files cannot be read
+     */
+    @Benchmark
+    public Drawing recover() throws IOException {
+        Drawing drawing = new Drawing();
+        Journal.recover(dir, drawing);
+        return drawing;
+    }
+}
@@ -0,0 +1,60 @@
+package DrawIt;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the instrumentation of the hot paths: recording a value in a latency histogram, and the event of a
+ * repaint while no Flight Recorder recording is running
+ *
+ * @author Maksym Hanushchak
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+    /**
+     * Histogram under test
+     */
+    private final Metrics.Histogram histogram = new Metrics.Histogram();
+    /**
+     * Value that is recorded, it changes so every bucket is hit in turns
+     */
+    private long value = 1;
+
+    /**
+     * Records a value
+     */
+    @Benchmark
+    public void record() {
+        value = value * 6364136223846793005L + 1442695040888963407L;
+        histogram.record(value >>> 30);
+    }
+
+    /**
+     * Begins and commits the event of a repaint, the way the repaint engine does
+     *
+     * @return Event
+     */
+    @Benchmark
+    public RepaintEvent repaintEvent() {
+        RepaintEvent event = new RepaintEvent();
+        event.begin();
+        if (event.shouldCommit()) {
+            event.shapes = 1;
+            event.commit();
+        }
+        return event;
+    }
+}
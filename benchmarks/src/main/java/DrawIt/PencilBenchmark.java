@@ -0,0 +1,150 @@
+package DrawIt;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one mouse event of a pencil stroke: simplifying the point and drawing only the newest segment, versus
+ * keeping every point and redrawing the whole stroke on every event. The counters show how many points and bytes
+ * the stroke keeps after simplification and how many it would keep without it
+ *
+ * @author Maksym Hanushchak
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class PencilBenchmark {
+    /**
+     * Number of mouse events of the stroke (the benchmarks are normalized to 1000 events per invocation)
+     */
+    private static final int EVENTS = 1000;
+
+    /**
+     * Mouse positions of the stroke (x, y, x, y, ...)
+     */
+    private final float[] path = new float[EVENTS * 2];
+    /**
+     * Graphics context of an off-screen canvas
+     */
+    private GraphicsContext gc;
+
+    /**
+     * Size of the kept stroke (reported next to the time). JMH adds the values of the measurement iterations up, so
+     * the size of one stroke is the reported value divided by the number of iterations
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+        /**
+         * Points kept by the stroke
+         */
+        public long keptPoints;
+        /**
+         * Bytes of the kept points
+         */
+        public long keptBytes;
+        /**
+         * Bytes of the points without simplification
+         */
+        public long rawBytes;
+
+        /**
+         * Resets the counters before every stroke, so the reported values are the ones of a single stroke
+         */
+        @Setup(Level.Invocation)
+        public void reset() {
+            keptPoints = 0;
+            keptBytes = 0;
+            rawBytes = 0;
+        }
+    }
+
+    /**
+     * Creates the canvas and a hand-drawn looking path: a wobbly spiral sampled like a mouse at a steady speed,
+     * with sub-pixel jitter
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        gc = BenchmarkDocuments.newCanvas().getGraphicsContext2D();
+        Random random = new Random(42);
+        for (int i = 0; i < EVENTS; i++) {
+            double t = i * 0.015, radius = 40 + i * 0.3;
+            path[i * 2] = (float) (BenchmarkDocuments.WIDTH / 2.0 + radius * Math.cos(t) + random.nextGaussian() * 0.3);
+            path[i * 2 + 1] = (float) (BenchmarkDocuments.HEIGHT / 2.0 + radius * Math.sin(t) * 0.8 + random.nextGaussian() * 0.3);
+        }
+    }
+
+    /**
+     * Every event adds the point to a simplified stroke and draws the newest segment (as the pencil tool does)
+     *
+     * @param counters Size of the kept stroke
+     * @return Finished stroke
+     */
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public Pencil simplifiedNewestSegment(Counters counters) {
+        Pencil pencil = new Pencil(Color.BLACK, 2);
+        gc.setStroke(Color.BLACK);
+        gc.setLineWidth(2);
+        double x = path[0], y = path[1];
+        for (int i = 0; i < EVENTS; i++) {
+            pencil.addPoint(path[i * 2], path[i * 2 + 1]);
+            int last = pencil.size() - 1;
+            gc.strokeLine(x, y, pencil.getX(last), pencil.getY(last));
+            x = pencil.getX(last);
+            y = pencil.getY(last);
+        }
+        pencil.finish();
+        counters.keptPoints = pencil.size();
+        counters.keptBytes = pencil.size() * 8L;
+        counters.rawBytes = EVENTS * 8L;
+        return pencil;
+    }
+
+    /**
+     * Every event appends the raw point and redraws the whole stroke
+     *
+     * @param counters Size of the kept stroke
+     * @return Points of the stroke
+     */
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public float[] rawFullRedraw(Counters counters) {
+        float[] points = new float[64];
+        gc.setStroke(Color.BLACK);
+        gc.setLineWidth(2);
+        for (int i = 0; i < EVENTS; i++) {
+            if (i * 2 + 2 > points.length) {
+                points = Arrays.copyOf(points, points.length * 2);
+            }
+            points[i * 2] = path[i * 2];
+            points[i * 2 + 1] = path[i * 2 + 1];
+            gc.clearRect(0, 0, BenchmarkDocuments.WIDTH, BenchmarkDocuments.HEIGHT);
+            FxRenderer.strokePolyline(gc, points, 0, i + 1);
+        }
+        counters.keptPoints = EVENTS;
+        counters.keptBytes = EVENTS * 8L;
+        counters.rawBytes = EVENTS * 8L;
+        return points;
+    }
+}
@@ -0,0 +1,84 @@
+package DrawIt;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time the FX thread is blocked by a full repaint (the one undo, redo and recolor run): the repaint in one go
+ * versus one slice of the progressive repaint. The slices are what a pulse spends, their distribution shows the
+ * worst-case input latency
+ *
+ * @author Maksym Hanushchak
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class ProgressiveRepaintBenchmark {
+    /**
+     * Time budget of a slice (nanoseconds), the same as the application's
+     */
+    private static final long FRAME_BUDGET = 8_000_000L;
+
+    /**
+     * Number of shapes in the drawing
+     */
+    @Param({"10000", "100000", "1000000"})
+    public int size;
+
+    /**
+     * Graphics context of an off-screen canvas
+     */
+    private GraphicsContext gc;
+    /**
+     * Repaint engine on the canvas (checkpoints are disabled, they need a running toolkit)
+     */
+    private RepaintEngine engine;
+
+    /**
+     * Creates the drawing and the engine
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        Drawing drawing = BenchmarkDocuments.randomDrawing(size, 42);
+        gc = BenchmarkDocuments.newCanvas().getGraphicsContext2D();
+        engine = new RepaintEngine(gc, drawing, BenchmarkDocuments.WIDTH, BenchmarkDocuments.HEIGHT, Color.WHITE,
+                new CheckpointCache(Integer.MAX_VALUE, 0));
+    }
+
+    /**
+     * Repaints the whole canvas in one go
+     */
+    @Benchmark
+    public void blockingRepaint() {
+        gc.clearRect(0, 0, BenchmarkDocuments.WIDTH, BenchmarkDocuments.HEIGHT); // Keeps the command buffer small
+        engine.repaintView();
+    }
+
+    /**
+     * Draws one slice of the progressive repaint, a new repaint starts when one ends (the timer is driven by hand,
+     * it needs a running toolkit)
+     */
+    @Benchmark
+    public void slice() {
+        gc.clearRect(0, 0, BenchmarkDocuments.WIDTH, BenchmarkDocuments.HEIGHT);
+        if (engine.step(System.nanoTime() + FRAME_BUDGET)) {
+            engine.invalidateView(false);
+        }
+    }
+}
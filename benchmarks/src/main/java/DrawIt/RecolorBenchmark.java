@@ -0,0 +1,80 @@
+package DrawIt;
+import javafx.scene.paint.Color;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the model work of "Reset Color" (without the repaint that follows it)
+ *
+ * @author Maksym Hanushchak
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class RecolorBenchmark {
+    /**
+     * Number of shapes in the drawing
+     */
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int size;
+
+    /**
+     * Drawing under test
+     */
+    private Drawing drawing;
+    /**
+     * Colors that the drawing is recolored to in turns
+     */
+    private final Color[] colors = {Color.RED, Color.BLUE};
+    /**
+     * Index of the next color
+     */
+    private int next;
+
+    /**
+     * Creates the drawing
+     */
+    @Setup
+    public void setUp() {
+        drawing = BenchmarkDocuments.randomDrawing(size, 42);
+    }
+
+    /**
+     * Recolors every live shape one by one (what resetColorButtonHandler did before RecolorEdit)
+     */
+    @Benchmark
+    public void recolorPerShape() {
+        ShapeStore store = drawing.getStore();
+        int color = store.getPalette().intern(colors[next++ & 1]);
+        for (int slot = store.nextLive(0); slot >= 0; slot = store.nextLive(slot + 1)) {
+            store.setColor(slot, color);
+        }
+    }
+
+    /**
+     * Recolors the drawing by replacing the palette entries, like RecolorEdit does
+     *
+     * @return Saved entries that undo the recolor
+     */
+    @Benchmark
+    public Color[] recolorPalette() {
+        Palette palette = drawing.getStore().getPalette();
+        Color[] before = palette.getColors();
+        palette.fill(before.length, colors[next++ & 1]);
+        return before;
+    }
+}
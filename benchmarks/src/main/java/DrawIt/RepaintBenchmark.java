@@ -0,0 +1,133 @@
+package DrawIt;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of repainting a drawing: the full repaint loop that undo and redo used to run, the same loop on the
+ * software renderers, and the dirty-region undo/redo that replaced it
+ *
+ * @author Maksym Hanushchak
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class RepaintBenchmark {
+    /**
+     * Number of shapes in the drawing
+     */
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int size;
+
+    /**
+     * Drawing under test
+     */
+    private Drawing drawing;
+    /**
+     * Graphics context of an off-screen canvas
+     */
+    private GraphicsContext gc;
+    /**
+     * Renderer of the canvas
+     */
+    private FxRenderer fx;
+    /**
+     * Software renderer of the canvas' size
+     */
+    private RasterRenderer raster;
+    /**
+     * Parallel software renderer
+     */
+    private TiledRasterizer tiled;
+    /**
+     * Output buffer of the parallel renderer
+     */
+    private int[] pixels;
+    /**
+     * Repaint engine on the canvas (checkpoints are disabled, they need a running toolkit)
+     */
+    private RepaintEngine engine;
+    /**
+     * Edit that adds the top shape of the drawing
+     */
+    private AddEdit lastEdit;
+
+    /**
+     * Creates the drawing and the renderers
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        drawing = BenchmarkDocuments.randomDrawing(size, 42);
+        gc = BenchmarkDocuments.newCanvas().getGraphicsContext2D();
+        fx = new FxRenderer(gc);
+        raster = new RasterRenderer(BenchmarkDocuments.WIDTH, BenchmarkDocuments.HEIGHT);
+        tiled = new TiledRasterizer(128, Runtime.getRuntime().availableProcessors());
+        pixels = new int[BenchmarkDocuments.WIDTH * BenchmarkDocuments.HEIGHT];
+        engine = new RepaintEngine(gc, drawing, BenchmarkDocuments.WIDTH, BenchmarkDocuments.HEIGHT, Color.WHITE,
+                new CheckpointCache(Integer.MAX_VALUE, 0));
+        lastEdit = new AddEdit(drawing.getStore().size() - 1);
+    }
+
+    /**
+     * Stops the threads of the parallel renderer
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        tiled.shutdown();
+    }
+
+    /**
+     * Clear-and-redraw-everything loop on the canvas (what undo and redo did for every click)
+     */
+    @Benchmark
+    public void fullRepaintFx() {
+        gc.setFill(Color.WHITE);
+        gc.fillRect(0, 0, BenchmarkDocuments.WIDTH, BenchmarkDocuments.HEIGHT);
+        drawing.getStore().drawAll(fx, ShapeStore.newViews());
+    }
+
+    /**
+     * Same loop on the software renderer
+     */
+    @Benchmark
+    public void fullRepaintRaster() {
+        raster.fill(Color.WHITE);
+        drawing.getStore().drawAll(raster, ShapeStore.newViews());
+    }
+
+    /**
+     * Same loop on the parallel tiled renderer
+     */
+    @Benchmark
+    public int[] fullRepaintTiled() {
+        tiled.render(drawing.getStore(), 0, 0, BenchmarkDocuments.WIDTH, BenchmarkDocuments.HEIGHT, Color.WHITE, pixels);
+        return pixels;
+    }
+
+    /**
+     * Undo and redo of the top shape with dirty-region repaint
+     */
+    @Benchmark
+    public void undoRedo() {
+        gc.clearRect(0, 0, BenchmarkDocuments.WIDTH, BenchmarkDocuments.HEIGHT); // Keeps the command buffer small
+        lastEdit.undo(drawing, engine);
+        lastEdit.redo(drawing, engine);
+    }
+}
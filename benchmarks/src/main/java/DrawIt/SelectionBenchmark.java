@@ -0,0 +1,116 @@
+package DrawIt;
+import javafx.scene.paint.Color;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transforms of a selection that holds the whole drawing: the loop over the coordinate arrays (with and without
+ * the vector instructions of the JIT compiler), the marquee that selects the shapes, and a whole move that is
+ * undone right after, with the spatial index and the repaint of the main canvas
+ *
+ * @author Maksym Hanushchak
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class SelectionBenchmark {
+    /**
+     * Number of shapes in the drawing
+     */
+    @Param({"100000", "1000000"})
+    public int size;
+
+    /**
+     * Drawing under test
+     */
+    private Drawing drawing;
+    /**
+     * Repaint engine of the drawing
+     */
+    private RepaintEngine engine;
+    /**
+     * All the shapes of the drawing
+     */
+    private Selection selection;
+    /**
+     * Transformed coordinates
+     */
+    private float[] xs, ys;
+    /**
+     * Move of the next transform
+     */
+    private int step;
+
+    /**
+     * Creates the drawing and selects all of it
+     */
+    @Setup
+    public void setUp() {
+        drawing = BenchmarkDocuments.worldDrawing(size, 20000, 42);
+        engine = new RepaintEngine(BenchmarkDocuments.newCanvas().getGraphicsContext2D(), drawing, BenchmarkDocuments.WIDTH,
+                BenchmarkDocuments.HEIGHT, Color.WHITE, new CheckpointCache(Integer.MAX_VALUE, 0));
+        engine.useManualPulses();
+        selection = Selection.select(drawing, -20000, -20000, 20000, 20000);
+        xs = new float[selection.size() * 2];
+        ys = new float[selection.size() * 2];
+    }
+
+    /**
+     * Moves and scales the coordinates of every selected shape (what a frame of a drag would cost if the preview
+     * transformed all of them)
+     *
+     * @return Transformed x coordinates
+     */
+    @Benchmark
+    public float[] transform() {
+        selection.transform(1.5, 100, 100, ++step & 63, 7, xs, ys);
+        return xs;
+    }
+
+    /**
+     * The same loop without vector instructions (the scalar code that the interpreter and other JVMs run)
+     *
+     * @return Transformed x coordinates
+     */
+    @Benchmark
+    @Fork(value = 1, jvmArgs = {"-Xmx4g", "-XX:-UseSuperWord"})
+    public float[] transformScalar() {
+        return transform();
+    }
+
+    /**
+     * Selects the whole drawing with the marquee
+     *
+     * @return Selection
+     */
+    @Benchmark
+    public Selection select() {
+        return Selection.select(drawing, -20000, -20000, 20000, 20000);
+    }
+
+    /**
+     * Moves the selection as one edit (the release of a drag) and undoes it
+     *
+     * @return Edit
+     */
+    @Benchmark
+    public Edit moveAndUndo() {
+        Edit edit = TransformEdit.transform(drawing, engine, selection, 1, 0, 0, 40, 30);
+        edit.undo(drawing, engine);
+        return edit;
+    }
+}
@@ -0,0 +1,93 @@
+package DrawIt;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of Shape.draw for every kind of shape on both renderers
+ *
+ * @author Maksym Hanushchak
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShapeDrawBenchmark {
+    /**
+     * Kind of the drawn shape
+     */
+    @Param({"LINE", "CIRCLE", "RECTANGLE"})
+    public String kind;
+    /**
+     * Renderer: fx - canvas graphics context, raster - software renderer
+     */
+    @Param({"fx", "raster"})
+    public String backend;
+
+    /**
+     * Shapes that are drawn one after another
+     */
+    private Shape[] shapes;
+    /**
+     * Renderer under test
+     */
+    private Renderer renderer;
+    /**
+     * Graphics context of the canvas (fx backend only)
+     */
+    private GraphicsContext gc;
+    /**
+     * Index of the next shape
+     */
+    private int next;
+
+    /**
+     * Creates the shapes and the renderer
+     */
+    @Setup
+    public void setUp() {
+        byte k = kind.equals("CIRCLE") ? ShapeStore.CIRCLE : kind.equals("RECTANGLE") ? ShapeStore.RECTANGLE : ShapeStore.LINE;
+        Random random = new Random(42);
+        shapes = new Shape[1024];
+        for (int i = 0; i < shapes.length; i++) {
+            shapes[i] = BenchmarkDocuments.randomShape(random, k);
+        }
+        if (backend.equals("fx")) {
+            gc = BenchmarkDocuments.newCanvas().getGraphicsContext2D();
+            renderer = new FxRenderer(gc);
+        } else {
+            RasterRenderer raster = new RasterRenderer(BenchmarkDocuments.WIDTH, BenchmarkDocuments.HEIGHT);
+            raster.fill(Color.WHITE);
+            renderer = raster;
+        }
+    }
+
+    /**
+     * Draws the next shape
+     */
+    @Benchmark
+    public void draw() {
+        if (next == shapes.length) {
+            next = 0;
+            if (gc != null) { // Clearing the whole canvas drops the recorded commands, so the buffer does not grow
+                gc.clearRect(0, 0, BenchmarkDocuments.WIDTH, BenchmarkDocuments.HEIGHT);
+            }
+        }
+        shapes[next++].draw(renderer);
+    }
+}
@@ -0,0 +1,74 @@
+package DrawIt;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of giving other threads a consistent version of the shapes: a snapshot of the store, and an erase and its
+ * undo, which publish a snapshot each and copy the chunks they change
+ *
+ * @author Maksym Hanushchak
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class SnapshotBenchmark {
+    /**
+     * Number of shapes in the drawing
+     */
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    /**
+     * Drawing under test
+     */
+    private Drawing drawing;
+    /**
+     * Slot of the next shape to erase, it walks through the drawing
+     */
+    private int slot;
+
+    /**
+     * Creates the drawing
+     */
+    @Setup
+    public void setUp() {
+        drawing = BenchmarkDocuments.randomDrawing(size, 42);
+    }
+
+    /**
+     * Takes a snapshot of the store
+     *
+     * @return Snapshot
+     */
+    @Benchmark
+    public ShapeStore snapshot() {
+        return drawing.getStore().snapshot();
+    }
+
+    /**
+     * Erases a shape and brings it back, each change publishes a snapshot
+     *
+     * @return Published snapshot
+     */
+    @Benchmark
+    public ShapeStore eraseAndUndo() {
+        slot = (slot + 7919) % size; // Different chunks in turns
+        drawing.remove(slot);
+        drawing.restore(slot);
+        return drawing.snapshot();
+    }
+}
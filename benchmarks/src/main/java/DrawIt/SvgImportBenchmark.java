@@ -0,0 +1,119 @@
+package DrawIt;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Importing SVG files: the streaming parser alone (the work of the background thread), and the parser together
+ * with adding every batch to a drawing (the work of both threads, one after the other)
+ *
+ * @author Maksym Hanushchak
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class SvgImportBenchmark {
+    /**
+     * Number of shapes in the file
+     */
+    @Param({"100000", "1000000"})
+    public int size;
+
+    /**
+     * SVG file
+     */
+    private Path file;
+
+    /**
+     * Writes the shapes of a random drawing into an SVG file, pencil strokes are left out
+     *
+     * @throws IOException If the file cannot be written
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = Files.createTempFile("drawit-benchmark", ".svg");
+        ShapeStore store = BenchmarkDocuments.randomDrawing(size, 42).getStore();
+        try (Writer out = Files.newBufferedWriter(file)) {
+            out.write("<svg xmlns=\"http://www.w3.org/2000/svg\">\n");
+            for (int i = 0; i < store.size(); i++) {
+                float sx = store.getCoord(i, 0), sy = store.getCoord(i, 1), ex = store.getCoord(i, 2), ey = store.getCoord(i, 3);
+                String style = String.format(Locale.ROOT, "fill=\"none\" stroke=\"#%06x\" stroke-width=\"%.1f\"",
+                        RasterRenderer.toArgb(store.getPalette().get(store.getColor(i))) & 0xffffff, store.getWidth(i));
+                switch (store.getKind(i)) {
+                    case ShapeStore.LINE:
+                        out.write(String.format(Locale.ROOT, "<line x1=\"%.1f\" y1=\"%.1f\" x2=\"%.1f\" y2=\"%.1f\" %s/>%n", sx, sy, ex, ey, style));
+                        break;
+                    case ShapeStore.CIRCLE:
+                        out.write(String.format(Locale.ROOT, "<ellipse cx=\"%.1f\" cy=\"%.1f\" rx=\"%.1f\" ry=\"%.1f\" %s/>%n",
+                                (sx + ex) / 2, (sy + ey) / 2, Math.abs(ex - sx) / 2, Math.abs(ey - sy) / 2, style));
+                        break;
+                    case ShapeStore.RECTANGLE:
+                        out.write(String.format(Locale.ROOT, "<rect x=\"%.1f\" y=\"%.1f\" width=\"%.1f\" height=\"%.1f\" %s/>%n",
+                                Math.min(sx, ex), Math.min(sy, ey), Math.abs(ex - sx), Math.abs(ey - sy), style));
+                        break;
+                }
+            }
+            out.write("</svg>\n");
+        }
+    }
+
+    /**
+     * Deletes the SVG file
+     *
+     * @throws IOException If the file cannot be deleted
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * Parses the whole file into batches that are dropped
+     *
+     * @return Number of shapes
+     * @throws IOException If the file cannot be read
+     */
+    @Benchmark
+    public long parse() throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return SvgImporter.read(in, batch -> {
+            });
+        }
+    }
+
+    /**
+     * Parses the whole file and adds every batch to a drawing
+     *
+     * @return Drawing
+     * @throws IOException If the file cannot be read
+     */
+    @Benchmark
+    public Drawing parseAndInsert() throws IOException {
+        Drawing drawing = new Drawing();
+        try (InputStream in = Files.newInputStream(file)) {
+            SvgImporter.read(in, drawing::appendBatch);
+        }
+        return drawing;
+    }
+}
@@ -0,0 +1,147 @@
+package DrawIt;
+import javafx.scene.input.MouseButton;
+import javafx.scene.paint.Color;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole input traces replayed headlessly on top of documents of different sizes, as a repeatable load test of the
+ * canvas tools and the repaint engine. Without a trace file, a synthetic session is used: strokes of every tool,
+ * erasing, panning and zooming. A recorded trace is replayed with -p trace=file. Every replay is one shot, a whole
+ * session is long enough to be timed on its own
+ *
+ * @author Maksym Hanushchak
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class TraceReplayBenchmark {
+    /**
+     * Number of gestures of the synthetic session
+     */
+    private static final int GESTURES = 200;
+    /**
+     * Drag events of a gesture
+     */
+    private static final int DRAGS = 20;
+
+    /**
+     * Number of shapes in the drawing before the replay
+     */
+    @Param({"0", "100000"})
+    public int size;
+    /**
+     * Recorded trace file, empty for the synthetic session
+     */
+    @Param({""})
+    public String trace;
+
+    /**
+     * Trace that is replayed
+     */
+    private InputTrace inputs;
+    /**
+     * Replay of the current invocation
+     */
+    private TraceReplay replay;
+
+    /**
+     * Reads the trace, or records the synthetic session into a temporary file and reads it back
+     *
+     * @throws IOException If the trace cannot be written or read
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        if (!trace.isEmpty()) {
+            inputs = InputTrace.read(Paths.get(trace));
+            return;
+        }
+        Path file = Files.createTempFile("drawit", "." + InputTrace.EXTENSION);
+        try (InputTrace.Recorder recorder = new InputTrace.Recorder(file, BenchmarkDocuments.WIDTH, BenchmarkDocuments.HEIGHT)) {
+            record(recorder, new Random(42));
+        }
+        inputs = InputTrace.read(file);
+        Files.delete(file);
+    }
+
+    /**
+     * Records the synthetic session: every tenth gesture pans or zooms the view, the others use the tools in turns
+     *
+     * @param recorder Recorder
+     * @param random   Random generator
+     */
+    private static void record(InputTrace.Recorder recorder, Random random) {
+        Color[] colors = {Color.BLACK, Color.RED, Color.BLUE};
+        for (int g = 0; g < GESTURES; g++) {
+            double x = random.nextInt(BenchmarkDocuments.WIDTH), y = random.nextInt(BenchmarkDocuments.HEIGHT);
+            if (g % 10 == 9) {
+                if (g % 20 == 9) {
+                    recorder.scroll(random.nextBoolean() ? 40 : -40, x, y);
+                    continue;
+                }
+                recorder.press(MouseButton.SECONDARY, x, y);
+                for (int d = 0; d < DRAGS; d++) {
+                    recorder.drag(x + d * 4, y + d * 2);
+                }
+                recorder.release(MouseButton.SECONDARY, x + DRAGS * 4, y + DRAGS * 2);
+                continue;
+            }
+            recorder.tool(CanvasTools.LINE + g % 5);
+            recorder.color(colors[g % colors.length]);
+            recorder.lineWidth(1 + g % 4);
+            recorder.press(MouseButton.PRIMARY, x, y);
+            for (int d = 1; d <= DRAGS; d++) {
+                recorder.drag(x + d * 3 + random.nextInt(3), y + d * 2 + random.nextInt(3));
+            }
+            recorder.release(MouseButton.PRIMARY, x + DRAGS * 3, y + DRAGS * 2);
+        }
+    }
+
+    /**
+     * Creates the drawing and the replay of the next invocation, the trace changes the drawing
+     */
+    @Setup(Level.Invocation)
+    public void newReplay() {
+        Drawing drawing = size > 0 ? BenchmarkDocuments.randomDrawing(size, 42) : new Drawing();
+        replay = new TraceReplay(drawing, inputs.getWidth(), inputs.getHeight());
+    }
+
+    /**
+     * Stops the threads of the replay
+     */
+    @TearDown(Level.Invocation)
+    public void tearDown() {
+        replay.shutdown();
+    }
+
+    /**
+     * Replays the whole trace
+     *
+     * @return Time each input took
+     */
+    @Benchmark
+    public long[] replay() {
+        return replay.replay(inputs, null);
+    }
+}
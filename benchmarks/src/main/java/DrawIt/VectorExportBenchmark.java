@@ -0,0 +1,97 @@
+package DrawIt;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vector export of whole drawings to SVG and PDF, with one formatting thread and with one per core. The written
+ * shapes per second are printed after every trial
+ *
+ * @author Maksym Hanushchak
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class VectorExportBenchmark {
+    /**
+     * Number of shapes in the drawing
+     */
+    @Param({"100000", "1000000"})
+    public int size;
+    /**
+     * Export format
+     */
+    @Param({"svg", "pdf"})
+    public String format;
+    /**
+     * Number of formatting threads, 0 for one per core
+     */
+    @Param({"1", "0"})
+    public int threads;
+
+    /**
+     * Snapshot of the drawing
+     */
+    private ShapeStore snapshot;
+    /**
+     * Exported file
+     */
+    private Path file;
+    /**
+     * Result of the last export
+     */
+    private VectorExporter.Result result;
+
+    /**
+     * Creates the drawing
+     *
+     * @throws IOException If the file cannot be created
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        snapshot = BenchmarkDocuments.randomDrawing(size, 42).snapshot();
+        file = Files.createTempFile("drawit-benchmark", "." + format);
+    }
+
+    /**
+     * Prints the throughput of the last export and deletes the file
+     *
+     * @throws IOException If the file cannot be deleted
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.out.printf("%n%,.0f shapes/s, %,d bytes%n", result.getShapesPerSecond(), result.getBytes());
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * Exports the whole drawing
+     *
+     * @return Result of the export
+     * @throws IOException If the file cannot be written
+     */
+    @Benchmark
+    public VectorExporter.Result export() throws IOException {
+        int n = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        result = VectorExporter.export(snapshot, format.equals("pdf") ? VectorExporter.PDF : VectorExporter.SVG, file, n, null);
+        return result;
+    }
+}
@@ -0,0 +1,139 @@
+package DrawIt;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one frame of panning a multi-million-shape drawing at different zooms: the culled, tiled repaint of the
+ * viewport versus drawing every shape with the view's transform. The cold frame is the first frame at a zoom
+ * level, when none of its tiles are cached yet
+ *
+ * @author Maksym Hanushchak
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx6g"})
+public class ViewportBenchmark {
+    /**
+     * Number of shapes in the drawing
+     */
+    private static final int SIZE = 2000000;
+    /**
+     * Side of the square of the world the shapes are spread over
+     */
+    private static final double WORLD = 65536;
+
+    /**
+     * Zoom of the view (1 shows about 400 shapes, 1/64 shows the whole drawing)
+     */
+    @Param({"1", "0.25", "0.03125", "0.015625"})
+    public double scale;
+
+    /**
+     * Drawing under test
+     */
+    private Drawing drawing;
+    /**
+     * Graphics context of an off-screen canvas
+     */
+    private GraphicsContext gc;
+    /**
+     * Parallel software renderer
+     */
+    private TiledRasterizer rasterizer;
+    /**
+     * Tiles of the zoomed out views
+     */
+    private TileCache tiles;
+    /**
+     * Repaint engine on the canvas (checkpoints are disabled, they need a running toolkit)
+     */
+    private RepaintEngine engine;
+    /**
+     * Batcher for the repaint without culling
+     */
+    private DrawBatcher batcher;
+    /**
+     * Direction of the next pan, the view goes back and forth
+     */
+    private double step = 8;
+
+    /**
+     * Creates the drawing and the engine, and shows the middle of the drawing at the zoom
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        drawing = BenchmarkDocuments.worldDrawing(SIZE, WORLD, 42);
+        gc = BenchmarkDocuments.newCanvas().getGraphicsContext2D();
+        rasterizer = new TiledRasterizer(128, Runtime.getRuntime().availableProcessors());
+        tiles = new TileCache(2048, 128L * 1024 * 1024, Color.WHITE);
+        tiles.useRasterizer(rasterizer);
+        engine = new RepaintEngine(gc, drawing, BenchmarkDocuments.WIDTH, BenchmarkDocuments.HEIGHT, Color.WHITE,
+                new CheckpointCache(Integer.MAX_VALUE, 0));
+        engine.useRasterizer(rasterizer, 20000);
+        engine.useTiles(tiles);
+        batcher = new DrawBatcher(gc);
+        Viewport viewport = engine.getViewport();
+        viewport.pan(BenchmarkDocuments.WIDTH / 2.0, BenchmarkDocuments.HEIGHT / 2.0);
+        viewport.zoom(scale, BenchmarkDocuments.WIDTH / 2.0, BenchmarkDocuments.HEIGHT / 2.0);
+        engine.repaintView(); // Caches the tiles of the view
+    }
+
+    /**
+     * Stops the threads of the parallel renderer
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        rasterizer.shutdown();
+    }
+
+    /**
+     * Pans the view by a few pixels and repaints it (culling, level of detail and cached tiles)
+     */
+    @Benchmark
+    public void panFrame() {
+        gc.clearRect(0, 0, BenchmarkDocuments.WIDTH, BenchmarkDocuments.HEIGHT); // Keeps the command buffer small
+        engine.getViewport().pan(step, step);
+        step = -step;
+        engine.repaintView();
+    }
+
+    /**
+     * First frame at the zoom, all the tiles of the view are made
+     */
+    @Benchmark
+    public void coldFrame() {
+        gc.clearRect(0, 0, BenchmarkDocuments.WIDTH, BenchmarkDocuments.HEIGHT);
+        tiles.clear();
+        engine.repaintView();
+    }
+
+    /**
+     * Draws every shape of the drawing with the view's transform (a repaint without culling or level of detail)
+     */
+    @Benchmark
+    public void drawEverything() {
+        gc.clearRect(0, 0, BenchmarkDocuments.WIDTH, BenchmarkDocuments.HEIGHT);
+        gc.save();
+        engine.getViewport().apply(gc);
+        batcher.drawAll(drawing.getStore());
+        gc.restore();
+    }
+}
@@ -0,0 +1,81 @@
+package DrawIt;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * History entry for a shape that was drawn by the user. Subclass of Edit class
+ *
+ * @author Maksym Hanushchak
+ */
+public class AddEdit extends Edit {
+    /**
+     * Slot of the added shape
+     */
+    private final int slot;
+
+    /**
+     * AddEdit constructor
+     *
+     * @param slot Slot of the added shape
+     */
+    AddEdit(int slot) {
+        this.slot = slot;
+    }
+
+    /**
+     * Removes the shape and repaints the area it covered
+     *
+     * @param drawing Drawing that the edit was applied to
+     * @param engine  Repaint engine of the main canvas
+     */
+    @Override
+    public void undo(Drawing drawing, RepaintEngine engine) {
+        drawing.remove(slot);
+        engine.repaint(slot);
+    }
+
+    /**
+     * Puts the shape back and draws it (it is the top one when this edit is redone)
+     *
+     * @param drawing Drawing that the edit was applied to
+     * @param engine  Repaint engine of the main canvas
+     */
+    @Override
+    public void redo(Drawing drawing, RepaintEngine engine) {
+        drawing.restore(slot);
+        engine.commit(slot);
+    }
+
+    /**
+     * Getter method for the first slot that the edit added
+     *
+     * @return Slot of the shape
+     */
+    @Override
+    public int getAddedFrom() {
+        return slot;
+    }
+
+    /**
+     * Getter method for the slot after the one that the edit added
+     *
+     * @return Slot after the shape
+     */
+    @Override
+    public int getAddedTo() {
+        return slot + 1;
+    }
+
+    /**
+     * Writes the slot of the shape
+     *
+     * @param out Output
+     * @throws IOException If the edit cannot be written
+     */
+    @Override
+    public void write(DataOutputStream out) throws IOException {
+        out.writeByte(ADD);
+        out.writeInt(slot);
+    }
+}
@@ -0,0 +1,104 @@
+package DrawIt;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * History entry for shapes that were added together: a generated batch or an import. The shapes have consecutive
+ * slots, so the edit only keeps the range and undoes or redoes all of them in one step. Subclass of Edit class
+ *
+ * @author Maksym Hanushchak
+ */
+public class BatchEdit extends Edit {
+    /**
+     * Slot of the first added shape
+     */
+    private final int from;
+    /**
+     * Slot after the last added shape
+     */
+    private final int to;
+
+    /**
+     * BatchEdit constructor
+     *
+     * @param from Slot of the first added shape
+     * @param to   Slot after the last added shape
+     */
+    BatchEdit(int from, int to) {
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Adds a batch of shapes on top of the drawing and shows them with a single repaint. Call it on the FX thread
+     *
+     * @param drawing Drawing
+     * @param engine  Repaint engine of the main canvas
+     * @param batch   Shapes (it can be filled on any thread)
+     * @return Edit that can undo the whole batch
+     */
+    public static BatchEdit add(Drawing drawing, RepaintEngine engine, ShapeBatch batch) {
+        int from = drawing.addBatch(batch);
+        int to = drawing.getStore().size();
+        engine.commitBatch(from, to);
+        return new BatchEdit(from, to);
+    }
+
+    /**
+     * Removes the shapes and repaints the area they covered
+     *
+     * @param drawing Drawing that the edit was applied to
+     * @param engine  Repaint engine of the main canvas
+     */
+    @Override
+    public void undo(Drawing drawing, RepaintEngine engine) {
+        drawing.removeRange(from, to);
+        engine.repaint(from, to);
+    }
+
+    /**
+     * Puts the shapes back and draws them (they are the top ones when this edit is redone)
+     *
+     * @param drawing Drawing that the edit was applied to
+     * @param engine  Repaint engine of the main canvas
+     */
+    @Override
+    public void redo(Drawing drawing, RepaintEngine engine) {
+        drawing.restoreRange(from, to);
+        engine.commitBatch(from, to);
+    }
+
+    /**
+     * Getter method for the first slot that the edit added
+     *
+     * @return Slot of the first shape
+     */
+    @Override
+    public int getAddedFrom() {
+        return from;
+    }
+
+    /**
+     * Getter method for the slot after the last one that the edit added
+     *
+     * @return Slot after the last shape
+     */
+    @Override
+    public int getAddedTo() {
+        return to;
+    }
+
+    /**
+     * Writes the range of the shapes
+     *
+     * @param out Output
+     * @throws IOException If the edit cannot be written
+     */
+    @Override
+    public void write(DataOutputStream out) throws IOException {
+        out.writeByte(BATCH);
+        out.writeInt(from);
+        out.writeInt(to);
+    }
+}
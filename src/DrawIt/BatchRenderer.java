@@ -0,0 +1,281 @@
+package DrawIt;
+import javafx.scene.paint.Color;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Headless batch mode. Renders drawing files to PNG images without starting JavaFX. Every document is rendered by
+ * its own (virtual, when the JVM has them) thread, the number of documents that are loaded at the same time is
+ * limited, so memory stays bounded however many documents are queued
+ *
+ * @author Maksym Hanushchak
+ */
+public class BatchRenderer {
+    /**
+     * Marks the end of a queue of documents (see renderQueue)
+     */
+    public static final Path END_OF_QUEUE = Paths.get("");
+    /**
+     * Background color of the images
+     */
+    private static final Color BACKGROUND = Color.WHITE;
+    /**
+     * Directory that receives the images
+     */
+    private final Path outputDir;
+    /**
+     * Scale of the images relative to the drawing's canvas
+     */
+    private final double scale;
+    /**
+     * Limits the number of documents that are rendered at the same time
+     */
+    private final Semaphore permits;
+    /**
+     * Threads that render the documents
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Timings of one rendered document
+     */
+    public static class Result {
+        /**
+         * Document file
+         */
+        public final Path file;
+        /**
+         * Number of shapes
+         */
+        public final int shapes;
+        /**
+         * Time spent loading, rendering and encoding the document (milliseconds)
+         */
+        public final double loadMillis, renderMillis, encodeMillis;
+        /**
+         * Error that stopped the document, null if it was rendered
+         */
+        public final Exception error;
+
+        /**
+         * Result constructor
+         *
+         * @param file         Document file
+         * @param shapes       Number of shapes
+         * @param loadMillis   Time spent loading
+         * @param renderMillis Time spent rendering
+         * @param encodeMillis Time spent encoding and writing the image
+         * @param error        Error that stopped the document or null
+         */
+        Result(Path file, int shapes, double loadMillis, double renderMillis, double encodeMillis, Exception error) {
+            this.file = file;
+            this.shapes = shapes;
+            this.loadMillis = loadMillis;
+            this.renderMillis = renderMillis;
+            this.encodeMillis = encodeMillis;
+            this.error = error;
+        }
+
+        @Override
+        public String toString() {
+            if (error != null) {
+                return file.getFileName() + ": failed (" + error.getMessage() + ")";
+            }
+            return String.format("%s: %d shapes, load %.1f ms, render %.1f ms, encode %.1f ms",
+                    file.getFileName(), shapes, loadMillis, renderMillis, encodeMillis);
+        }
+    }
+
+    /**
+     * BatchRenderer constructor
+     *
+     * @param outputDir   Directory that receives the images
+     * @param scale       Scale of the images relative to the drawing's canvas
+     * @param concurrency Maximum number of documents rendered at the same time
+     */
+    public BatchRenderer(Path outputDir, double scale, int concurrency) {
+        this.outputDir = outputDir;
+        this.scale = scale;
+        this.permits = new Semaphore(concurrency);
+        this.executor = newExecutor(concurrency);
+    }
+
+    /**
+     * Creates an executor that starts a virtual thread per document. JVMs without virtual threads get a fixed
+     * pool of platform threads instead
+     *
+     * @param concurrency Maximum number of documents rendered at the same time
+     * @return Executor
+     */
+    private static ExecutorService newExecutor(int concurrency) {
+        try {
+            Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtual.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(concurrency);
+        }
+    }
+
+    /**
+     * Queues a document for rendering
+     *
+     * @param file Drawing file
+     * @return Result of the document when it is done
+     */
+    public Future<Result> submit(Path file) {
+        return executor.submit(() -> {
+            permits.acquire();
+            try {
+                return render(file);
+            } finally {
+                permits.release();
+            }
+        });
+    }
+
+    /**
+     * Renders a document to a PNG image in the output directory
+     *
+     * @param file Drawing file
+     * @return Timings of the document
+     */
+    private Result render(Path file) {
+        long start = System.nanoTime();
+        try {
+            DrawingFile.Document document = DrawingFile.map(file);
+            long loaded = System.nanoTime();
+
+            int w = Math.max(1, (int) Math.ceil(document.width * scale)), h = Math.max(1, (int) Math.ceil(document.height * scale));
+            BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+            int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData(); // Rendered in place
+            RasterRenderer raster = new RasterRenderer(w, h, 0, 0, pixels);
+            raster.fill(BACKGROUND);
+            document.store.drawAll(scale == 1 ? raster : new ScaledRenderer(raster, scale), ShapeStore.newViews());
+            long rendered = System.nanoTime();
+
+            String name = file.getFileName().toString();
+            int dot = name.lastIndexOf('.');
+            ImageIO.write(image, "png", outputDir.resolve((dot > 0 ? name.substring(0, dot) : name) + ".png").toFile());
+            long encoded = System.nanoTime();
+
+            return new Result(file, document.store.liveCount(), (loaded - start) / 1e6, (rendered - loaded) / 1e6, (encoded - rendered) / 1e6, null);
+        } catch (IOException | RuntimeException e) {
+            return new Result(file, 0, 0, 0, 0, e);
+        }
+    }
+
+    /**
+     * Renders documents and waits for all of them
+     *
+     * @param files Drawing files
+     * @return Results in the order of the files
+     * @throws InterruptedException If the waiting thread is interrupted
+     */
+    public List<Result> renderAll(Iterable<Path> files) throws InterruptedException {
+        List<Future<Result>> futures = new ArrayList<>();
+        for (Path file : files) {
+            futures.add(submit(file));
+        }
+        List<Result> results = new ArrayList<>(futures.size());
+        for (Future<Result> f : futures) {
+            try {
+                results.add(f.get());
+            } catch (ExecutionException e) { // render() catches its own errors, so this is unexpected
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Renders documents taken from a queue until END_OF_QUEUE is taken
+     *
+     * @param queue Queue of drawing files
+     * @return Results in the order the files were taken
+     * @throws InterruptedException If the waiting thread is interrupted
+     */
+    public List<Result> renderQueue(BlockingQueue<Path> queue) throws InterruptedException {
+        List<Path> files = new ArrayList<>();
+        List<Future<Result>> futures = new ArrayList<>();
+        for (Path file = queue.take(); !file.equals(END_OF_QUEUE); file = queue.take()) {
+            files.add(file);
+            futures.add(submit(file));
+        }
+        List<Result> results = new ArrayList<>(files.size());
+        for (Future<Result> f : futures) {
+            try {
+                results.add(f.get());
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Stops the rendering threads after the queued documents are done
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Batch mode entry point: renders every drawing file of a directory and prints the timings
+     *
+     * @param args Input directory, output directory, optional scale (1) and optional concurrency (number of cores)
+     * @throws IOException          If a directory cannot be read
+     * @throws InterruptedException If the main thread is interrupted
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.err.println("Usage: --batch <input dir> <output dir> [scale] [concurrency]");
+            System.exit(2);
+        }
+        Path input = Paths.get(args[0]), output = Paths.get(args[1]);
+        double scale = args.length > 2 ? Double.parseDouble(args[2]) : 1;
+        int concurrency = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        Files.createDirectories(output);
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> dir = Files.newDirectoryStream(input, "*." + DrawingFile.EXTENSION)) {
+            for (Path file : dir) {
+                files.add(file);
+            }
+        }
+
+        long start = System.nanoTime();
+        BatchRenderer renderer = new BatchRenderer(output, scale, concurrency);
+        List<Result> results = renderer.renderAll(files);
+        renderer.shutdown();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        int failed = 0;
+        for (Result r : results) {
+            System.out.println(r);
+            if (r.error != null) {
+                failed++;
+            }
+        }
+        System.out.printf("%d documents (%d failed) in %.2f s, %.0f documents/min%n",
+                results.size(), failed, seconds, results.size() / seconds * 60);
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+}
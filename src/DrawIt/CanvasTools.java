@@ -0,0 +1,425 @@
+package DrawIt;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.input.MouseButton;
+import javafx.scene.paint.Color;
+
+import java.util.function.Consumer;
+
+/**
+ * Logic of the mouse on the canvas: the drawing tools, the eraser, the select tool, panning and zooming. It gets plain positions
+ * instead of JavaFX events and knows nothing about the controls, so the same logic runs in the window and in the
+ * headless replay of input traces (see TraceReplay). Every input can be recorded into an input trace
+ *
+ * @author Maksym Hanushchak
+ */
+public class CanvasTools {
+    /**
+     * Tools (the first three are ShapeStore.LINE, CIRCLE and RECTANGLE plus one)
+     */
+    public static final int LINE = 1, CIRCLE = 2, RECTANGLE = 3, ERASER = 4, PENCIL = 5, SELECT = 6;
+    /**
+     * What a drag of the select tool does
+     */
+    private static final int MARQUEE = 0, MOVE = 1, SCALE = 2;
+    /**
+     * Zoom factor of one notch of the mouse wheel
+     */
+    private static final double ZOOM_STEP = 1.25;
+    /**
+     * Drawing that the tools change
+     */
+    private final Drawing drawing;
+    /**
+     * Repaint engine of the main canvas
+     */
+    private final RepaintEngine engine;
+    /**
+     * Graphics context of the transparent canvas
+     */
+    private final GraphicsContext gcTransparent;
+    /**
+     * Preview of the shape that is being drawn (on the transparent canvas)
+     */
+    private final DragPreview dragPreview;
+    /**
+     * Receives the finished edits
+     */
+    private final Consumer<Edit> onEdit;
+    /**
+     * Selected tool
+     */
+    private int tool = LINE;
+    /**
+     * Color of new shapes
+     */
+    private Color color = Color.BLACK;
+    /**
+     * Line width of new shapes and size of the eraser
+     */
+    private double lineWidth = 2;
+    /**
+     * True while the view is panned with the secondary or the middle mouse button
+     */
+    private boolean panning;
+    /**
+     * True while a tool is used with the primary mouse button
+     */
+    private boolean toolActive;
+    /**
+     * Press and current position of the tool (world coordinates)
+     */
+    private double sx, sy, ex, ey;
+    /**
+     * Last mouse position while the view is panned (canvas coordinates)
+     */
+    private double panX, panY;
+    /**
+     * Edit of the eraser stroke that is in progress
+     */
+    private EraseEdit eraseEdit;
+    /**
+     * Pencil stroke that is in progress
+     */
+    private Pencil pencil;
+    /**
+     * Selected shapes, or null
+     */
+    private Selection selection;
+    /**
+     * What the drag of the select tool that is in progress does (MARQUEE, MOVE or SCALE)
+     */
+    private int selectMode;
+    /**
+     * Recorder of the inputs, or null
+     */
+    private InputTrace.Recorder recorder;
+
+    /**
+     * CanvasTools constructor
+     *
+     * @param drawing       Drawing that the tools change
+     * @param engine        Repaint engine of the main canvas
+     * @param gcTransparent Graphics context of the transparent canvas
+     * @param dragPreview   Preview on the transparent canvas
+     * @param onEdit        Receives the finished edits (to put them into the history)
+     */
+    CanvasTools(Drawing drawing, RepaintEngine engine, GraphicsContext gcTransparent, DragPreview dragPreview, Consumer<Edit> onEdit) {
+        this.drawing = drawing;
+        this.engine = engine;
+        this.gcTransparent = gcTransparent;
+        this.dragPreview = dragPreview;
+        this.onEdit = onEdit;
+    }
+
+    /**
+     * Records every following input into a trace
+     *
+     * @param recorder Recorder of the trace, or null to stop recording
+     */
+    public void record(InputTrace.Recorder recorder) {
+        this.recorder = recorder;
+        if (recorder != null) { // The trace starts with the current settings
+            recorder.tool(tool);
+            recorder.color(color);
+            recorder.lineWidth(lineWidth);
+        }
+    }
+
+    /**
+     * Selects a tool
+     *
+     * @param tool LINE, CIRCLE, RECTANGLE, ERASER, PENCIL or SELECT
+     */
+    public void setTool(int tool) {
+        if (recorder != null && tool != this.tool) {
+            recorder.tool(tool);
+        }
+        this.tool = tool;
+        if (tool != SELECT) { // The selection belongs to the select tool
+            clearSelection();
+        }
+    }
+
+    /**
+     * Drops the selection, for example when an undo changed the selected shapes
+     */
+    public void clearSelection() {
+        if (selection != null) {
+            selection = null;
+            dragPreview.clear();
+        }
+    }
+
+    /**
+     * Gives the selected shapes the color and the line width of new shapes, as one edit
+     *
+     * @return True if there was a selection
+     */
+    public boolean restroke() {
+        if (selection == null || toolActive) {
+            return false;
+        }
+        onEdit.accept(TransformEdit.restroke(drawing, engine, selection, color, lineWidth));
+        reselect();
+        return true;
+    }
+
+    /**
+     * Reads the selected shapes again after a transform and shows the selection where they are now
+     */
+    private void reselect() {
+        selection = Selection.of(drawing.getStore(), selection.getSlots());
+        dragPreview.showSelection(selection, drawing.getStore(), 1, 0, 0, 0, 0);
+    }
+
+    /**
+     * Setter method for the color of new shapes
+     *
+     * @param color Color
+     */
+    public void setColor(Color color) {
+        if (recorder != null && !color.equals(this.color)) {
+            recorder.color(color);
+        }
+        this.color = color;
+    }
+
+    /**
+     * Setter method for the line width of new shapes and the size of the eraser
+     *
+     * @param lineWidth Line width
+     */
+    public void setLineWidth(double lineWidth) {
+        if (recorder != null && lineWidth != this.lineWidth) {
+            recorder.lineWidth(lineWidth);
+        }
+        this.lineWidth = lineWidth;
+    }
+
+    /**
+     * Checks whether pressing a mouse button would start using the selected tool
+     *
+     * @param button Mouse button
+     * @return True if the button is the primary one and the view is not being panned
+     */
+    public boolean startsTool(MouseButton button) {
+        return button == MouseButton.PRIMARY && !panning;
+    }
+
+    /**
+     * Called when a mouse button is pressed on the canvas
+     *
+     * @param button Mouse button
+     * @param x      X coordinate of the cursor (canvas)
+     * @param y      Y coordinate of the cursor
+     */
+    public void press(MouseButton button, double x, double y) {
+        if (recorder != null) {
+            recorder.press(button, x, y);
+        }
+        if (button != MouseButton.PRIMARY) { // Secondary and middle buttons pan the view
+            if (!toolActive) {
+                panning = true;
+                panX = x;
+                panY = y;
+            }
+            return;
+        }
+        if (panning) { // Tools are not used while the view is panned
+            return;
+        }
+        toolActive = true;
+
+        Viewport viewport = engine.getViewport(); // Shapes are drawn in world coordinates
+        sx = viewport.toWorldX(x);
+        sy = viewport.toWorldY(y);
+
+        if (tool == ERASER) { // Eraser starts erasing right where it was pressed
+            eraseEdit = new EraseEdit();
+            eraseEdit.erase(drawing, engine, sx, sy, sx, sy, lineWidth / 2);
+        } else if (tool == PENCIL) { // Pencil stroke starts where it was pressed
+            pencil = new Pencil(color, lineWidth, viewport.getScale());
+            pencil.addPoint(sx, sy);
+            dragPreview.showPencil(pencil);
+        } else if (tool == SELECT) { // The handle scales the selection, the inside of it moves it, anything else selects
+            if (selection != null && selection.isOnHandle(sx, sy, DragPreview.HANDLE_SIZE / viewport.getScale())) {
+                selectMode = SCALE;
+            } else if (selection != null && selection.contains(sx, sy)) {
+                selectMode = MOVE;
+            } else {
+                selectMode = MARQUEE;
+                clearSelection();
+            }
+        }
+    }
+
+    /**
+     * Called when the mouse is dragged on the canvas with a pressed button
+     *
+     * @param x X coordinate of the cursor (canvas)
+     * @param y Y coordinate of the cursor
+     */
+    public void drag(double x, double y) {
+        if (recorder != null) {
+            recorder.drag(x, y);
+        }
+        if (panning) { // Moves the view with the mouse
+            engine.getViewport().pan(x - panX, y - panY);
+            panX = x;
+            panY = y;
+            viewChanged();
+            return;
+        }
+        if (!toolActive) {
+            return;
+        }
+
+        ex = engine.getViewport().toWorldX(x);
+        ey = engine.getViewport().toWorldY(y);
+
+        if (tool == ERASER) { // Erases along the way from the previous position and shows the eraser's outline
+            eraseEdit.erase(drawing, engine, sx, sy, ex, ey, lineWidth / 2);
+            sx = ex;
+            sy = ey;
+            dragPreview.showEraser(ex, ey, lineWidth);
+            return;
+        }
+        if (tool == PENCIL) { // Adds the point to the stroke, only the newest segment is drawn on the next frame
+            pencil.addPoint(ex, ey);
+            dragPreview.growPencil();
+            return;
+        }
+        if (tool == SELECT) { // The drawing is only changed on release, until then the preview follows the mouse
+            if (selectMode == MOVE) {
+                dragPreview.showSelection(selection, drawing.getStore(), 1, 0, 0, ex - sx, ey - sy);
+            } else if (selectMode == SCALE) {
+                dragPreview.showSelection(selection, drawing.getStore(), selection.scaleTo(ex, ey), selection.getMinX(), selection.getMinY(), 0, 0);
+            } else {
+                dragPreview.show(ShapeStore.RECTANGLE, sx, sy, ex, ey, Color.DODGERBLUE, 1 / engine.getViewport().getScale());
+            }
+            return;
+        }
+
+        // Updates the preview on transparent canvas, it is drawn once per frame however many events come in
+        dragPreview.show((byte) (tool - 1), sx, sy, ex, ey, color, lineWidth);
+    }
+
+    /**
+     * Called when a mouse button is released, finishes the shape or the stroke and puts it into the drawing
+     *
+     * @param button Mouse button
+     * @param x      X coordinate of the cursor (canvas)
+     * @param y      Y coordinate of the cursor
+     */
+    public void release(MouseButton button, double x, double y) {
+        if (recorder != null) {
+            recorder.release(button, x, y);
+        }
+        if (button != MouseButton.PRIMARY) {
+            panning = false;
+            return;
+        }
+        if (!toolActive) {
+            return;
+        }
+        toolActive = false;
+        dragPreview.clear();
+        ex = engine.getViewport().toWorldX(x);
+        ey = engine.getViewport().toWorldY(y);
+
+        if (tool == ERASER) { // Finishes the eraser stroke, keeps it in the history if anything was erased
+            if (eraseEdit.finish()) {
+                onEdit.accept(eraseEdit);
+            }
+            eraseEdit = null;
+            return;
+        }
+        if (tool == SELECT) {
+            releaseSelect();
+            return;
+        }
+        if (tool == PENCIL) { // Finishes the stroke and draws it on the main canvas
+            pencil.addPoint(ex, ey);
+            pencil.finish();
+            int slot = drawing.add(pencil);
+            engine.commit(slot);
+            onEdit.accept(new AddEdit(slot));
+            pencil = null;
+            return;
+        }
+
+        // The world has no edges, so the shape may go outside of the visible area
+        Shape s = null;
+        switch (tool) {
+            case LINE:
+                s = new Line(sx, sy, ex, ey, color, lineWidth);
+                break;
+            case CIRCLE:
+                s = new Circle(sx, sy, ex, ey, color, lineWidth);
+                break;
+            case RECTANGLE:
+                s = new Rectangle(sx, sy, ex, ey, color, lineWidth);
+                break;
+        }
+        if (s != null) {
+            int slot = drawing.add(s);
+            engine.commit(slot); // Draws only the new shape on the screen
+            onEdit.accept(new AddEdit(slot));
+        }
+    }
+
+    /**
+     * Finishes a drag of the select tool: selects the shapes under the marquee, or moves or scales the selection as
+     * one edit
+     */
+    private void releaseSelect() {
+        if (selectMode == MARQUEE) {
+            selection = Selection.select(drawing, Math.min(sx, ex), Math.min(sy, ey), Math.max(sx, ex), Math.max(sy, ey));
+            if (selection != null) {
+                dragPreview.showSelection(selection, drawing.getStore(), 1, 0, 0, 0, 0);
+            }
+            return;
+        }
+        double scale = selectMode == SCALE ? selection.scaleTo(ex, ey) : 1;
+        double dx = selectMode == MOVE ? ex - sx : 0, dy = selectMode == MOVE ? ey - sy : 0;
+        if (scale == 1 && dx == 0 && dy == 0) { // A click, nothing changes
+            dragPreview.showSelection(selection, drawing.getStore(), 1, 0, 0, 0, 0);
+            return;
+        }
+        onEdit.accept(TransformEdit.transform(drawing, engine, selection, scale, selection.getMinX(), selection.getMinY(), dx, dy));
+        reselect();
+    }
+
+    /**
+     * Called when the mouse wheel is turned, zooms the view around the cursor
+     *
+     * @param deltaY Amount of vertical scrolling (pixels)
+     * @param x      X coordinate of the cursor (canvas)
+     * @param y      Y coordinate of the cursor
+     */
+    public void scroll(double deltaY, double x, double y) {
+        if (recorder != null) {
+            recorder.scroll(deltaY, x, y);
+        }
+        if (toolActive || deltaY == 0) {
+            return;
+        }
+        double notches = deltaY / 40; // One notch of the wheel scrolls by 40 pixels
+        engine.getViewport().zoom(Math.pow(ZOOM_STEP, notches), x, y);
+        viewChanged();
+    }
+
+    /**
+     * Draws both canvases for the new view after panning or zooming
+     */
+    private void viewChanged() {
+        if (selection != null) { // The outline is erased with the old transform and drawn again with the new one
+            dragPreview.clear();
+        }
+        engine.getViewport().apply(gcTransparent); // Previews are drawn in world coordinates too
+        engine.repaintView();
+        if (selection != null) {
+            dragPreview.showSelection(selection, drawing.getStore(), 1, 0, 0, 0, 0);
+        }
+    }
+}
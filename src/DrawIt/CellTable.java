@@ -0,0 +1,167 @@
+package DrawIt;
+import java.util.Arrays;
+
+/**
+ * Hash table from the keys of grid cells (column and row packed into a long) to the lists of their shapes. Keys
+ * are kept as primitives and mixed before they are hashed: the cells of a drawing are neighbours, and their plain
+ * long hash codes (column xor row) collide in a few buckets. Open addressing with linear probing, removed entries
+ * are closed up by shifting the following ones back
+ *
+ * @author Maksym Hanushchak
+ */
+public class CellTable {
+    /**
+     * Keys of the entries
+     */
+    private long[] keys;
+    /**
+     * Lists of the entries, null for a free place
+     */
+    private IntList[] lists;
+    /**
+     * Number of entries
+     */
+    private int size;
+
+    /**
+     * CellTable constructor
+     */
+    public CellTable() {
+        keys = new long[64];
+        lists = new IntList[64];
+    }
+
+    /**
+     * Finds the place of a key: the place that holds it or the free place where it would go
+     *
+     * @param key Key
+     * @return Index of the place
+     */
+    private int find(long key) {
+        int mask = keys.length - 1;
+        long h = key * 0x9E3779B97F4A7C15L; // Fibonacci hashing spreads neighbouring cells over the table
+        int i = (int) (h ^ (h >>> 32)) & mask;
+        while (lists[i] != null && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * Getter method for the list of a cell
+     *
+     * @param key Key of the cell
+     * @return List of the cell or null if the cell is empty
+     */
+    public IntList get(long key) {
+        return lists[find(key)];
+    }
+
+    /**
+     * Finds the list of a cell, creates it if the cell has none
+     *
+     * @param key Key of the cell
+     * @return List of the cell
+     */
+    public IntList getOrCreate(long key) {
+        int i = find(key);
+        if (lists[i] == null) {
+            if ((size + 1) * 2 > keys.length) { // Keeps the table at most half full
+                grow();
+                i = find(key);
+            }
+            keys[i] = key;
+            lists[i] = new IntList(4);
+            size++;
+        }
+        return lists[i];
+    }
+
+    /**
+     * Removes the list of a cell
+     *
+     * @param key Key of the cell
+     */
+    public void remove(long key) {
+        int mask = keys.length - 1;
+        int i = find(key);
+        if (lists[i] == null) {
+            return;
+        }
+        lists[i] = null;
+        size--;
+        for (int j = (i + 1) & mask; lists[j] != null; j = (j + 1) & mask) { // Moves back entries that probed past i
+            long h = keys[j] * 0x9E3779B97F4A7C15L;
+            int home = (int) (h ^ (h >>> 32)) & mask;
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                keys[i] = keys[j];
+                lists[i] = lists[j];
+                lists[j] = null;
+                i = j;
+            }
+        }
+    }
+
+    /**
+     * Doubles the table
+     */
+    private void grow() {
+        long[] oldKeys = keys;
+        IntList[] oldLists = lists;
+        keys = new long[oldKeys.length * 2];
+        lists = new IntList[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldLists[i] != null) {
+                int j = find(oldKeys[i]);
+                keys[j] = oldKeys[i];
+                lists[j] = oldLists[i];
+            }
+        }
+    }
+
+    /**
+     * Getter method for the number of places, entries are visited by place (see keyAt and listAt)
+     *
+     * @return Number of places
+     */
+    public int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * Getter method for the key at a place
+     *
+     * @param index Index of the place
+     * @return Key, only meaningful if listAt is not null
+     */
+    public long keyAt(int index) {
+        return keys[index];
+    }
+
+    /**
+     * Getter method for the list at a place
+     *
+     * @param index Index of the place
+     * @return List or null if the place is free
+     */
+    public IntList listAt(int index) {
+        return lists[index];
+    }
+
+    /**
+     * Getter method for the number of cells
+     *
+     * @return Number of cells
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all the cells
+     */
+    public void clear() {
+        Arrays.fill(lists, null);
+        size = 0;
+    }
+}
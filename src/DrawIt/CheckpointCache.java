@@ -0,0 +1,161 @@
+package DrawIt;
+import javafx.scene.image.Image;
+import javafx.scene.image.WritableImage;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Raster snapshots (checkpoints) of the main canvas. A checkpoint taken at slot k holds the pixels of all the live
+ * shapes with slots below k, so a repaint can start from the checkpoint and draw only the shapes added after it.
+ * Checkpoints are taken every few committed shapes and the least recently used ones are dropped when the memory
+ * budget is exceeded
+ *
+ * @author Maksym Hanushchak
+ */
+public class CheckpointCache {
+    /**
+     * Number of committed shapes between two checkpoints
+     */
+    private final int interval;
+    /**
+     * Memory budget for all the checkpoints (bytes)
+     */
+    private final long budget;
+    /**
+     * Checkpoints by the slot they were taken at
+     */
+    private final TreeMap<Integer, Checkpoint> checkpoints = new TreeMap<>();
+    /**
+     * Memory used by the checkpoints (bytes)
+     */
+    private long used;
+    /**
+     * Counter used to find the least recently used checkpoint
+     */
+    private long clock;
+
+    /**
+     * Snapshot of the canvas together with the time it was used last
+     */
+    private static class Checkpoint {
+        /**
+         * Pixels of the canvas
+         */
+        final WritableImage image;
+        /**
+         * Value of the clock when the checkpoint was used last
+         */
+        long lastUsed;
+
+        /**
+         * Checkpoint constructor
+         *
+         * @param image    Pixels of the canvas
+         * @param lastUsed Current value of the clock
+         */
+        Checkpoint(WritableImage image, long lastUsed) {
+            this.image = image;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    /**
+     * CheckpointCache constructor
+     *
+     * @param interval Number of committed shapes between two checkpoints
+     * @param budget   Memory budget for all the checkpoints in bytes
+     */
+    CheckpointCache(int interval, long budget) {
+        this.interval = interval;
+        this.budget = budget;
+    }
+
+    /**
+     * Checks whether a checkpoint should be taken after the shape in the slot was committed
+     *
+     * @param slot Slot of the committed shape
+     * @return True if enough shapes were committed since the latest checkpoint
+     */
+    public boolean isDue(int slot) {
+        int latest = checkpoints.isEmpty() ? 0 : checkpoints.lastKey();
+        return slot + 1 - latest >= interval;
+    }
+
+    /**
+     * Adds a checkpoint and drops the least recently used ones if the budget is exceeded
+     *
+     * @param slot  Checkpoint holds the shapes with slots below this one
+     * @param image Pixels of the canvas
+     */
+    public void put(int slot, WritableImage image) {
+        Checkpoint old = checkpoints.put(slot, new Checkpoint(image, ++clock));
+        if (old != null) {
+            used -= bytes(old.image);
+        }
+        used += bytes(image);
+        while (used > budget && !checkpoints.isEmpty()) {
+            Map.Entry<Integer, Checkpoint> oldest = null;
+            for (Map.Entry<Integer, Checkpoint> e : checkpoints.entrySet()) {
+                if (oldest == null || e.getValue().lastUsed < oldest.getValue().lastUsed) {
+                    oldest = e;
+                }
+            }
+            checkpoints.remove(oldest.getKey());
+            used -= bytes(oldest.getValue().image);
+        }
+    }
+
+    /**
+     * Getter method for the slot of the latest checkpoint
+     *
+     * @return Slot of the latest checkpoint or 0 if there are no checkpoints
+     */
+    public int latestSlot() {
+        return checkpoints.isEmpty() ? 0 : checkpoints.lastKey();
+    }
+
+    /**
+     * Getter method for the image of the latest checkpoint. Marks the checkpoint as recently used
+     *
+     * @return Pixels of the latest checkpoint or null if there are no checkpoints
+     */
+    public Image latestImage() {
+        if (checkpoints.isEmpty()) {
+            return null;
+        }
+        Checkpoint latest = checkpoints.lastEntry().getValue();
+        latest.lastUsed = ++clock;
+        return latest.image;
+    }
+
+    /**
+     * Drops the checkpoints that contain a changed shape
+     *
+     * @param slot Slot of the shape that was removed, restored or changed
+     */
+    public void invalidate(int slot) {
+        for (Checkpoint c : checkpoints.tailMap(slot, false).values()) {
+            used -= bytes(c.image);
+        }
+        checkpoints.tailMap(slot, false).clear();
+    }
+
+    /**
+     * Drops all the checkpoints
+     */
+    public void clear() {
+        checkpoints.clear();
+        used = 0;
+    }
+
+    /**
+     * Measures the memory taken by an image
+     *
+     * @param image Image
+     * @return Number of bytes (4 bytes per pixel)
+     */
+    private static long bytes(Image image) {
+        return (long) image.getWidth() * (long) image.getHeight() * 4;
+    }
+}
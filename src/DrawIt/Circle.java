@@ -1,5 +1,4 @@
 package DrawIt;
-import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.paint.Color;
 
 /**
@@ -22,13 +21,60 @@ public class Circle extends Shape {
         super(sx, sy, ex, ey, lineColor, lineWidth); // Passes parameters to the superclass
     }
 
+    /**
+     * Getter method for the kind of the shape
+     *
+     * @return ShapeStore.CIRCLE
+     */
+    @Override
+    public byte getKind() {
+        return ShapeStore.CIRCLE;
+    }
+
+    /**
+     * Measures the distance from a point to the outline of the ellipse. The nearest point of the outline is found
+     * iteratively in the first quadrant (the ellipse is symmetric), a few iterations are enough for sub-pixel accuracy
+     *
+     * @param x Point's x coordinate
+     * @param y Point's y coordinate
+     * @return Distance in pixels
+     */
+    @Override
+    public double distanceTo(double x, double y) {
+        double cx = (getSx() + getEx()) / 2, cy = (getSy() + getEy()) / 2; // Center
+        double a = Math.abs(getEx() - getSx()) / 2, b = Math.abs(getEy() - getSy()) / 2; // Semi-axes
+
+        if (a == 0 || b == 0) { // Flat ellipse is drawn as a segment
+            return segmentDistance(x, y, cx - a, cy - b, cx + a, cy + b);
+        }
+
+        double px = Math.abs(x - cx), py = Math.abs(y - cy);
+        double tx = Math.sqrt(0.5), ty = Math.sqrt(0.5); // Direction of the current guess
+        for (int i = 0; i < 3; i++) {
+            double ox = a * tx, oy = b * ty; // Current point on the outline
+            double evx = (a * a - b * b) * tx * tx * tx / a; // Center of curvature at that point
+            double evy = (b * b - a * a) * ty * ty * ty / b;
+            double r = Math.hypot(ox - evx, oy - evy);
+            double q = Math.hypot(px - evx, py - evy);
+            if (q == 0) { // Point sits exactly on the center of curvature
+                break;
+            }
+            tx = Math.max(0, Math.min(1, ((px - evx) * r / q + evx) / a));
+            ty = Math.max(0, Math.min(1, ((py - evy) * r / q + evy) / b));
+            double t = Math.hypot(tx, ty);
+            tx /= t;
+            ty /= t;
+        }
+        return Math.hypot(px - a * tx, py - b * ty);
+    }
+
     /**
      * Draws the circle on the canvas. Inverts the coordinates when the condition is followed - to be able to draw in any direction
      *
-     * @param gc Graphics Context
+     * @param r Renderer (JavaFX canvas or image)
      */
     @Override
-    public void draw(GraphicsContext gc) {
+    public void draw(Renderer r) {
 
         double x, y, w, h; // Local variables for X, Y, Width, Height of the Circle
 
@@ -47,8 +93,8 @@ public class Circle extends Shape {
             h = getEy() - getSy();
         }
 
-        gc.setStroke(getLineColor());
-        gc.setLineWidth(getLineWidth());
-        gc.strokeOval(x, y, w, h);
+        r.setStroke(getLineColor());
+        r.setLineWidth(getLineWidth());
+        r.strokeOval(x, y, w, h);
     }
 }
@@ -0,0 +1,80 @@
+package DrawIt;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * History entry for "Reset Canvas". The shapes are removed like erased ones, so the whole drawing can be brought
+ * back. Subclass of Edit class
+ *
+ * @author Maksym Hanushchak
+ */
+public class ClearEdit extends Edit {
+    /**
+     * Slots of the removed shapes
+     */
+    private final IntList cleared;
+
+    /**
+     * ClearEdit constructor
+     *
+     * @param cleared Slots of the removed shapes
+     */
+    ClearEdit(IntList cleared) {
+        this.cleared = cleared;
+    }
+
+    /**
+     * Removes all the shapes of the drawing and clears the canvas
+     *
+     * @param drawing Drawing
+     * @param engine  Repaint engine of the main canvas
+     * @return Edit that can undo the reset
+     */
+    public static ClearEdit clear(Drawing drawing, RepaintEngine engine) {
+        ShapeStore store = drawing.getStore();
+        IntList cleared = new IntList(drawing.size());
+        for (int slot = store.nextLive(0); slot >= 0; slot = store.nextLive(slot + 1)) {
+            cleared.add(slot);
+        }
+        ClearEdit edit = new ClearEdit(cleared);
+        edit.redo(drawing, engine);
+        return edit;
+    }
+
+    /**
+     * Puts all the shapes back and repaints the canvas
+     *
+     * @param drawing Drawing that the edit was applied to
+     * @param engine  Repaint engine of the main canvas
+     */
+    @Override
+    public void undo(Drawing drawing, RepaintEngine engine) {
+        drawing.restoreAll(cleared);
+        engine.repaintAll();
+    }
+
+    /**
+     * Removes the shapes again
+     *
+     * @param drawing Drawing that the edit was applied to
+     * @param engine  Repaint engine of the main canvas
+     */
+    @Override
+    public void redo(Drawing drawing, RepaintEngine engine) {
+        drawing.removeAll(cleared);
+        engine.repaintAll();
+    }
+
+    /**
+     * Writes the slots of the removed shapes
+     *
+     * @param out Output
+     * @throws IOException If the edit cannot be written
+     */
+    @Override
+    public void write(DataOutputStream out) throws IOException {
+        out.writeByte(CLEAR);
+        writeSlots(out, cleared);
+    }
+}
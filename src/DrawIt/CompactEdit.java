@@ -0,0 +1,266 @@
+package DrawIt;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * History entry for a compaction of the drawing (see Compactor): duplicates and empty circles are removed, runs of
+ * lines are joined into their first line, whose old and new coordinates the edit keeps. The whole compaction is
+ * undone and redone in one step. Subclass of Edit class
+ *
+ * @author Maksym Hanushchak
+ */
+public class CompactEdit extends Edit {
+    /**
+     * Slots of the removed shapes
+     */
+    private final IntList dropped;
+    /**
+     * Slots of the lines that other lines were joined into
+     */
+    private final IntList joined;
+    /**
+     * Coordinates of the joined lines before (sx and ex of every line) and after the compaction
+     */
+    private final float[] xsBefore, ysBefore, xsAfter, ysAfter;
+    /**
+     * Stroke widths of the joined lines
+     */
+    private final float[] widths;
+    /**
+     * Palette indices of the joined lines
+     */
+    private final int[] colors;
+    /**
+     * Slots of the removed shapes and of the joined lines, the shapes to repaint
+     */
+    private final IntList affected;
+    /**
+     * Number of removed duplicates, empty circles and lines joined into others
+     */
+    private int duplicates, empty, joins;
+    /**
+     * Number of shapes before and after the compaction
+     */
+    private int shapesBefore, shapesAfter;
+    /**
+     * Time the compaction took (nanoseconds)
+     */
+    private long nanos;
+
+    /**
+     * CompactEdit constructor
+     *
+     * @param dropped  Slots of the removed shapes
+     * @param joined   Slots of the lines that other lines were joined into
+     * @param xsBefore X coordinates of the joined lines before the compaction
+     * @param ysBefore Y coordinates of the joined lines before the compaction
+     * @param xsAfter  X coordinates of the joined lines after the compaction
+     * @param ysAfter  Y coordinates of the joined lines after the compaction
+     * @param widths   Stroke widths of the joined lines
+     * @param colors   Palette indices of the joined lines
+     */
+    private CompactEdit(IntList dropped, IntList joined, float[] xsBefore, float[] ysBefore, float[] xsAfter, float[] ysAfter,
+                        float[] widths, int[] colors) {
+        this.dropped = dropped;
+        this.joined = joined;
+        this.xsBefore = xsBefore;
+        this.ysBefore = ysBefore;
+        this.xsAfter = xsAfter;
+        this.ysAfter = ysAfter;
+        this.widths = widths;
+        this.colors = colors;
+        affected = new IntList(dropped.size() + joined.size());
+        for (int i = 0; i < dropped.size(); i++) {
+            affected.add(dropped.get(i));
+        }
+        for (int i = 0; i < joined.size(); i++) {
+            affected.add(joined.get(i));
+        }
+    }
+
+    /**
+     * Compacts the drawing and repaints the areas of the changed shapes
+     *
+     * @param drawing Drawing
+     * @param engine  Repaint engine of the main canvas
+     * @param threads Number of threads that scan big drawings
+     * @return Edit that can undo the compaction, with the numbers of removed shapes
+     */
+    public static CompactEdit compact(Drawing drawing, RepaintEngine engine, int threads) {
+        long start = System.nanoTime();
+        int shapesBefore = drawing.size();
+        Compactor compactor = new Compactor(drawing.snapshot()).run(threads);
+        ShapeStore store = drawing.getStore();
+        IntList joined = compactor.getJoined();
+        float[] coords = compactor.getJoinedCoords();
+        int n = joined.size();
+        float[] xsBefore = new float[n * 2], ysBefore = new float[n * 2], xsAfter = new float[n * 2], ysAfter = new float[n * 2];
+        float[] widths = new float[n];
+        int[] colors = new int[n];
+        for (int i = 0; i < n; i++) {
+            int slot = joined.get(i);
+            xsBefore[i * 2] = store.getCoord(slot, 0);
+            ysBefore[i * 2] = store.getCoord(slot, 1);
+            xsBefore[i * 2 + 1] = store.getCoord(slot, 2);
+            ysBefore[i * 2 + 1] = store.getCoord(slot, 3);
+            xsAfter[i * 2] = coords[i * 4];
+            ysAfter[i * 2] = coords[i * 4 + 1];
+            xsAfter[i * 2 + 1] = coords[i * 4 + 2];
+            ysAfter[i * 2 + 1] = coords[i * 4 + 3];
+            widths[i] = store.getWidth(slot);
+            colors[i] = store.getColor(slot);
+        }
+        CompactEdit edit = new CompactEdit(compactor.getDropped(), joined, xsBefore, ysBefore, xsAfter, ysAfter, widths, colors);
+        edit.redo(drawing, engine);
+        edit.duplicates = compactor.getDuplicates();
+        edit.empty = compactor.getEmpty();
+        edit.joins = compactor.getJoins();
+        edit.shapesBefore = shapesBefore;
+        edit.shapesAfter = drawing.size();
+        edit.nanos = System.nanoTime() - start;
+        return edit;
+    }
+
+    /**
+     * Checks whether the compaction changed anything
+     *
+     * @return True if the edit is worth keeping in the history
+     */
+    public boolean isEmpty() {
+        return dropped.isEmpty();
+    }
+
+    /**
+     * Puts the removed shapes back, gives the joined lines their old ends and repaints their areas
+     *
+     * @param drawing Drawing that the edit was applied to
+     * @param engine  Repaint engine of the main canvas
+     */
+    @Override
+    public void undo(Drawing drawing, RepaintEngine engine) {
+        drawing.rewrite(dropped, true, joined, xsBefore, ysBefore, widths, colors);
+        engine.repaint(affected);
+    }
+
+    /**
+     * Removes the same shapes again, joins the lines again and repaints their areas
+     *
+     * @param drawing Drawing that the edit was applied to
+     * @param engine  Repaint engine of the main canvas
+     */
+    @Override
+    public void redo(Drawing drawing, RepaintEngine engine) {
+        drawing.rewrite(dropped, false, joined, xsAfter, ysAfter, widths, colors);
+        engine.repaint(affected);
+    }
+
+    /**
+     * Writes the removed shapes and the joined lines
+     *
+     * @param out Output
+     * @throws IOException If the edit cannot be written
+     */
+    @Override
+    public void write(DataOutputStream out) throws IOException {
+        out.writeByte(COMPACT);
+        writeSlots(out, dropped);
+        writeSlots(out, joined);
+        for (int i = 0; i < joined.size(); i++) {
+            out.writeFloat(xsBefore[i * 2]);
+            out.writeFloat(ysBefore[i * 2]);
+            out.writeFloat(xsBefore[i * 2 + 1]);
+            out.writeFloat(ysBefore[i * 2 + 1]);
+            out.writeFloat(xsAfter[i * 2]);
+            out.writeFloat(ysAfter[i * 2]);
+            out.writeFloat(xsAfter[i * 2 + 1]);
+            out.writeFloat(ysAfter[i * 2 + 1]);
+            out.writeFloat(widths[i]);
+            out.writeInt(colors[i]);
+        }
+    }
+
+    /**
+     * Reads the data written by write (the type is already read)
+     *
+     * @param in Input
+     * @return Edit
+     * @throws IOException If the edit cannot be read
+     */
+    static CompactEdit readData(DataInputStream in) throws IOException {
+        IntList dropped = readSlots(in);
+        IntList joined = readSlots(in);
+        int n = joined.size();
+        float[] xsBefore = new float[n * 2], ysBefore = new float[n * 2], xsAfter = new float[n * 2], ysAfter = new float[n * 2];
+        float[] widths = new float[n];
+        int[] colors = new int[n];
+        for (int i = 0; i < n; i++) {
+            xsBefore[i * 2] = in.readFloat();
+            ysBefore[i * 2] = in.readFloat();
+            xsBefore[i * 2 + 1] = in.readFloat();
+            ysBefore[i * 2 + 1] = in.readFloat();
+            xsAfter[i * 2] = in.readFloat();
+            ysAfter[i * 2] = in.readFloat();
+            xsAfter[i * 2 + 1] = in.readFloat();
+            ysAfter[i * 2 + 1] = in.readFloat();
+            widths[i] = in.readFloat();
+            colors[i] = in.readInt();
+        }
+        return new CompactEdit(dropped, joined, xsBefore, ysBefore, xsAfter, ysAfter, widths, colors);
+    }
+
+    /**
+     * Getter method for the number of removed duplicates
+     *
+     * @return Number of shapes
+     */
+    public int getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * Getter method for the number of removed empty circles
+     *
+     * @return Number of shapes
+     */
+    public int getEmpty() {
+        return empty;
+    }
+
+    /**
+     * Getter method for the number of lines that were joined into other lines
+     *
+     * @return Number of lines
+     */
+    public int getJoins() {
+        return joins;
+    }
+
+    /**
+     * Getter method for the number of removed shapes
+     *
+     * @return Number of shapes
+     */
+    public int getRemoved() {
+        return dropped.size();
+    }
+
+    /**
+     * Getter method for the speedup of a full repaint, which draws every shape once
+     *
+     * @return Number of shapes before the compaction divided by the number after it
+     */
+    public double getSpeedup() {
+        return shapesAfter == 0 ? 1 : (double) shapesBefore / shapesAfter;
+    }
+
+    /**
+     * Getter method for the time the compaction took
+     *
+     * @return Time (seconds)
+     */
+    public double getSeconds() {
+        return nanos / 1e9;
+    }
+}
@@ -0,0 +1,496 @@
+package DrawIt;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Finds the redundant geometry of a drawing (see CompactEdit), on a snapshot of the store
+ * <ul>
+ * <li>exact duplicates: a shape that is drawn again later with the same kind, coordinates, points, width and
+ * color is covered by the later copy, so it is dropped. Shapes are hashed and only shapes with equal hashes are
+ * compared</li>
+ * <li>empty circles: both corners at the same point. A rectangle like that is kept, its square caps draw a square
+ * as wide as its stroke</li>
+ * <li>lines that follow each other in paint order, have the same color and width and lie on one straight line
+ * with no gap between them: they are joined into the first one of them</li>
+ * </ul>
+ * Only opaque shapes are deduplicated or joined, a translucent stroke drawn twice is darker than drawn once. Big
+ * drawings are scanned on several threads: the hashes and the joined lines by ranges of slots (a run of lines is
+ * not joined across two ranges), the duplicates by groups of hashes
+ *
+ * @author Maksym Hanushchak
+ */
+public class Compactor {
+    /**
+     * Drawings with at least this many slots are scanned on several threads
+     */
+    static final int PARALLEL_SLOTS = 65536;
+    /**
+     * Number of store slots in a range
+     */
+    static final int CHUNK = 16384;
+    /**
+     * Largest distance of a line's end from the line it is joined to (pixels)
+     */
+    static final double TOLERANCE = 0.01;
+    /**
+     * What happens to a slot: kept, dropped as a duplicate, dropped as empty, joined into an earlier line
+     */
+    private static final byte KEPT = 0, DUPLICATE = 1, EMPTY = 2, JOINED = 3;
+    /**
+     * Snapshot of the store that is scanned
+     */
+    private final ShapeStore store;
+    /**
+     * Opaque colors of the palette, by index
+     */
+    private final boolean[] opaque;
+    /**
+     * What happens to every slot
+     */
+    private final byte[] fates;
+    /**
+     * Hashes of the shapes that can be deduplicated
+     */
+    private final long[] hashes;
+    /**
+     * Slots of the lines that the following lines are joined into
+     */
+    private final IntList joined = new IntList();
+    /**
+     * New coordinates of the joined lines (sx, sy, ex, ey of every line)
+     */
+    private float[] joinedCoords = new float[0];
+    /**
+     * Number of dropped duplicates, empty circles and lines joined into others
+     */
+    private int duplicates, empty, joins;
+
+    /**
+     * Compactor constructor
+     *
+     * @param store Snapshot of the store (see Drawing.snapshot)
+     */
+    public Compactor(ShapeStore store) {
+        this.store = store;
+        Palette palette = store.getPalette();
+        opaque = new boolean[palette.size()];
+        for (int i = 0; i < opaque.length; i++) {
+            opaque[i] = palette.get(i).getOpacity() == 1;
+        }
+        fates = new byte[store.size()];
+        hashes = new long[store.size()];
+    }
+
+    /**
+     * Scans the shapes
+     *
+     * @param threads Number of threads for big drawings
+     * @return This compactor
+     */
+    public Compactor run(int threads) {
+        int size = store.size();
+        int parallel = size >= PARALLEL_SLOTS ? Math.max(1, threads) : 1;
+        int chunks = (size + CHUNK - 1) / CHUNK;
+        ForkJoinPool pool = parallel > 1 ? new ForkJoinPool(parallel) : null;
+        try {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int c = 0; c < chunks; c++) {
+                int from = c * CHUNK, to = Math.min(size, from + CHUNK);
+                tasks.add(() -> {
+                    hash(from, to);
+                    return null;
+                });
+            }
+            run(pool, tasks);
+
+            int groups = parallel > 1 ? parallel * 4 : 1; // More groups than threads evens out their sizes
+            tasks.clear();
+            for (int g = 0; g < groups; g++) {
+                int group = g;
+                tasks.add(() -> {
+                    dedupe(group, groups);
+                    return null;
+                });
+            }
+            run(pool, tasks);
+
+            List<Callable<Runs>> joins = new ArrayList<>();
+            for (int c = 0; c < chunks; c++) {
+                int from = c * CHUNK, to = Math.min(size, from + CHUNK);
+                joins.add(() -> join(from, to));
+            }
+            List<Runs> runs = run(pool, joins);
+            int count = 0;
+            for (Runs r : runs) {
+                count += r.slots.size();
+            }
+            joinedCoords = new float[count * 4];
+            for (Runs r : runs) { // Ranges are in paint order, so are the joined lines
+                System.arraycopy(r.coords, 0, joinedCoords, joined.size() * 4, r.slots.size() * 4);
+                for (int i = 0; i < r.slots.size(); i++) {
+                    joined.add(r.slots.get(i));
+                }
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+        for (byte fate : fates) {
+            if (fate == DUPLICATE) {
+                duplicates++;
+            } else if (fate == EMPTY) {
+                empty++;
+            } else if (fate == JOINED) {
+                joins++;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Runs tasks on a pool, or on the calling thread if there is no pool, and waits for all of them
+     *
+     * @param pool  Pool or null
+     * @param tasks Tasks
+     * @param <T>   Type of the results
+     * @return Results in the order of the tasks
+     */
+    private static <T> List<T> run(ForkJoinPool pool, List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            if (pool == null) {
+                for (Callable<T> task : tasks) {
+                    results.add(task.call());
+                }
+                return results;
+            }
+            for (Future<T> f : pool.invokeAll(tasks)) {
+                results.add(f.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Compaction interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Compaction failed", e.getCause());
+        } catch (Exception e) {
+            throw new IllegalStateException("Compaction failed", e);
+        }
+        return results;
+    }
+
+    /**
+     * Marks the empty circles of a range of slots and hashes the shapes that can be deduplicated
+     *
+     * @param from Slot of the first shape
+     * @param to   Slot after the last shape
+     */
+    private void hash(int from, int to) {
+        for (int slot = from; slot < to; slot++) {
+            if (!store.isLive(slot)) {
+                continue;
+            }
+            byte kind = store.getKind(slot);
+            if (kind == ShapeStore.CIRCLE && store.getCoord(slot, 0) == store.getCoord(slot, 2)
+                    && store.getCoord(slot, 1) == store.getCoord(slot, 3)) {
+                fates[slot] = EMPTY;
+                continue;
+            }
+            long h = kind;
+            for (int i = 0; i < 4; i++) {
+                h = h * 0x9E3779B97F4A7C15L + Float.floatToIntBits(store.getCoord(slot, i));
+            }
+            h = h * 0x9E3779B97F4A7C15L + Float.floatToIntBits(store.getWidth(slot));
+            h = h * 0x9E3779B97F4A7C15L + store.getColor(slot);
+            if (kind == ShapeStore.PENCIL) {
+                for (int i = 0, n = store.getPathSize(slot) * 2; i < n; i++) {
+                    h = h * 0x9E3779B97F4A7C15L + Float.floatToIntBits(store.getPathCoord(slot, i));
+                }
+            }
+            hashes[slot] = h ^ (h >>> 29);
+        }
+    }
+
+    /**
+     * Checks whether a shape takes part in deduplication
+     *
+     * @param slot Slot of the shape
+     * @return True if it is live, opaque and not empty
+     */
+    private boolean isCandidate(int slot) {
+        return fates[slot] == KEPT && store.isLive(slot) && opaque[store.getColor(slot)];
+    }
+
+    /**
+     * Marks the duplicates among the shapes of one group of hashes. Shapes are visited from the top, so the last
+     * copy of a shape is kept and every earlier one is dropped
+     *
+     * @param group  Index of the group
+     * @param groups Number of groups
+     */
+    private void dedupe(int group, int groups) {
+        long[] keys = new long[1024];
+        int[] values = new int[1024];
+        Arrays.fill(values, -1);
+        int entries = 0;
+        for (int slot = store.size() - 1; slot >= 0; slot--) {
+            long h = hashes[slot];
+            if ((h >>> 33) % groups != group || !isCandidate(slot)) {
+                continue;
+            }
+            int mask = keys.length - 1;
+            int i = (int) (h ^ (h >>> 32)) & mask;
+            while (values[i] >= 0 && keys[i] != h) {
+                i = (i + 1) & mask;
+            }
+            if (values[i] >= 0) {
+                if (isSame(slot, values[i])) {
+                    fates[slot] = DUPLICATE;
+                } // Equal hashes of different shapes keep both shapes
+                continue;
+            }
+            keys[i] = h;
+            values[i] = slot;
+            if (++entries * 2 > keys.length) { // Keeps the table at most half full
+                long[] oldKeys = keys;
+                int[] oldValues = values;
+                keys = new long[oldKeys.length * 2];
+                values = new int[oldKeys.length * 2];
+                Arrays.fill(values, -1);
+                for (int j = 0; j < oldKeys.length; j++) {
+                    if (oldValues[j] >= 0) {
+                        int k = (int) (oldKeys[j] ^ (oldKeys[j] >>> 32)) & (keys.length - 1);
+                        while (values[k] >= 0) {
+                            k = (k + 1) & (keys.length - 1);
+                        }
+                        keys[k] = oldKeys[j];
+                        values[k] = oldValues[j];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Compares two shapes
+     *
+     * @param a Slot of the first shape
+     * @param b Slot of the second shape
+     * @return True if they are drawn exactly the same
+     */
+    private boolean isSame(int a, int b) {
+        if (store.getKind(a) != store.getKind(b) || store.getWidth(a) != store.getWidth(b) || store.getColor(a) != store.getColor(b)) {
+            return false;
+        }
+        for (int i = 0; i < 4; i++) {
+            if (store.getCoord(a, i) != store.getCoord(b, i)) {
+                return false;
+            }
+        }
+        if (store.getKind(a) == ShapeStore.PENCIL) {
+            int n = store.getPathSize(a) * 2;
+            if (store.getPathSize(b) * 2 != n) {
+                return false;
+            }
+            for (int i = 0; i < n; i++) {
+                if (store.getPathCoord(a, i) != store.getPathCoord(b, i)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Lines of a range of slots that the following lines are joined into
+     */
+    private static class Runs {
+        /**
+         * Slots of the lines
+         */
+        final IntList slots = new IntList();
+        /**
+         * New coordinates of the lines (sx, sy, ex, ey of every line)
+         */
+        float[] coords = new float[64];
+
+        /**
+         * Adds a line
+         *
+         * @param slot Slot of the line
+         * @param run  Coordinates of the joined run
+         */
+        void add(int slot, float[] run) {
+            if ((slots.size() + 1) * 4 > coords.length) {
+                coords = Arrays.copyOf(coords, coords.length * 2);
+            }
+            System.arraycopy(run, 0, coords, slots.size() * 4, 4);
+            slots.add(slot);
+        }
+    }
+
+    /**
+     * Joins the runs of lines of a range of slots. Dropped shapes are skipped, any other shape ends a run
+     *
+     * @param from Slot of the first shape
+     * @param to   Slot after the last shape
+     * @return Lines that the others were joined into
+     */
+    private Runs join(int from, int to) {
+        Runs runs = new Runs();
+        float[] run = new float[4]; // Ends of the current run
+        int first = -1, length = 0; // First line of the current run and number of its lines
+        for (int slot = from; slot < to; slot++) {
+            if (!store.isLive(slot) || fates[slot] != KEPT) {
+                continue;
+            }
+            if (first >= 0 && extend(run, first, slot)) {
+                fates[slot] = JOINED;
+                length++;
+                continue;
+            }
+            if (length > 1) {
+                runs.add(first, run);
+            }
+            first = -1;
+            length = 0;
+            if (store.getKind(slot) == ShapeStore.LINE && opaque[store.getColor(slot)] && (store.getCoord(slot, 0) != store.getCoord(slot, 2)
+                    || store.getCoord(slot, 1) != store.getCoord(slot, 3))) {
+                first = slot;
+                length = 1;
+                for (int i = 0; i < 4; i++) {
+                    run[i] = store.getCoord(slot, i);
+                }
+            }
+        }
+        if (length > 1) {
+            runs.add(first, run);
+        }
+        return runs;
+    }
+
+    /**
+     * Extends a run of lines with the next line if it has the same style, lies on the run's line and touches or
+     * overlaps the run
+     *
+     * @param run   Ends of the run, changed if the line is joined
+     * @param first Slot of the first line of the run
+     * @param slot  Slot of the next line
+     * @return True if the line is joined
+     */
+    private boolean extend(float[] run, int first, int slot) {
+        if (store.getKind(slot) != ShapeStore.LINE || store.getColor(slot) != store.getColor(first)
+                || store.getWidth(slot) != store.getWidth(first)) {
+            return false;
+        }
+        double dx = run[2] - run[0], dy = run[3] - run[1];
+        double length = Math.hypot(dx, dy);
+        double[] t = new double[4]; // Positions of the four ends along the run (pixels from its start)
+        t[1] = length;
+        for (int end = 0; end < 2; end++) {
+            double px = store.getCoord(slot, end * 2) - run[0], py = store.getCoord(slot, end * 2 + 1) - run[1];
+            if (Math.abs(dx * py - dy * px) / length > TOLERANCE) { // Off the line
+                return false;
+            }
+            t[2 + end] = (dx * px + dy * py) / length;
+        }
+        if (Math.max(t[2], t[3]) < -TOLERANCE || Math.min(t[2], t[3]) > length + TOLERANCE) { // Gap between them
+            return false;
+        }
+        int min = 0, max = 1;
+        for (int i = 2; i < 4; i++) {
+            if (t[i] < t[min]) {
+                min = i;
+            }
+            if (t[i] > t[max]) {
+                max = i;
+            }
+        }
+        float x1 = end(run, slot, min, 0), y1 = end(run, slot, min, 1);
+        float x2 = end(run, slot, max, 0), y2 = end(run, slot, max, 1);
+        run[0] = x1;
+        run[1] = y1;
+        run[2] = x2;
+        run[3] = y2;
+        return true;
+    }
+
+    /**
+     * Getter method for a coordinate of one of the four ends of a run and a line
+     *
+     * @param run  Ends of the run
+     * @param slot Slot of the line
+     * @param end  0 and 1 - start and end of the run, 2 and 3 - start and end of the line
+     * @param axis 0 - x, 1 - y
+     * @return Coordinate
+     */
+    private float end(float[] run, int slot, int end, int axis) {
+        return end < 2 ? run[end * 2 + axis] : store.getCoord(slot, (end - 2) * 2 + axis);
+    }
+
+    /**
+     * Getter method for the slots of the dropped shapes (duplicates, empty circles and joined lines)
+     *
+     * @return Slots in paint order
+     */
+    public IntList getDropped() {
+        IntList dropped = new IntList(duplicates + empty + joins);
+        for (int slot = 0; slot < fates.length; slot++) {
+            if (fates[slot] != KEPT) {
+                dropped.add(slot);
+            }
+        }
+        return dropped;
+    }
+
+    /**
+     * Getter method for the slots of the lines that other lines were joined into
+     *
+     * @return Slots in paint order
+     */
+    public IntList getJoined() {
+        return joined;
+    }
+
+    /**
+     * Getter method for the new coordinates of the joined lines
+     *
+     * @return Coordinates (sx, sy, ex, ey of every line)
+     */
+    public float[] getJoinedCoords() {
+        return joinedCoords;
+    }
+
+    /**
+     * Getter method for the number of dropped duplicates
+     *
+     * @return Number of shapes
+     */
+    public int getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * Getter method for the number of dropped empty circles
+     *
+     * @return Number of shapes
+     */
+    public int getEmpty() {
+        return empty;
+    }
+
+    /**
+     * Getter method for the number of lines that were joined into other lines
+     *
+     * @return Number of lines
+     */
+    public int getJoins() {
+        return joins;
+    }
+}
@@ -0,0 +1,298 @@
+package DrawIt;
+import javafx.animation.AnimationTimer;
+import javafx.geometry.Point2D;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.transform.Affine;
+
+/**
+ * Preview of the shape that is being dragged, drawn on the transparent canvas. Mouse events only store the latest
+ * state of the preview; it is drawn at most once per pulse by an animation timer, so fast mice do not cause redraws
+ * that are never shown. One reusable shape object per kind is used, so a drag allocates nothing, and only the area
+ * of the previous preview is cleared
+ * <p>
+ * A selection is shown as its outline with the scale handle in the bottom right corner. While it is dragged, the
+ * outline follows the mouse, and the shapes themselves are drawn too if there are not too many of them
+ * <p>
+ * A pencil stroke is not cleared between pulses: only the segment from the point drawn on the previous pulse to the
+ * newest point is drawn, so the cost of a pulse does not grow with the length of the stroke
+ *
+ * @author Maksym Hanushchak
+ */
+public class DragPreview {
+    /**
+     * Graphics context of the transparent canvas
+     */
+    private final GraphicsContext gc;
+    /**
+     * Renderer of the transparent canvas
+     */
+    private final FxRenderer renderer;
+    /**
+     * Reusable preview shapes indexed by kind
+     */
+    private final Shape[] shapes = ShapeStore.newViews();
+    /**
+     * Shape that is shown on the next pulse, null if nothing is to be shown
+     */
+    private Shape pending;
+    /**
+     * Pencil stroke that is being drawn, null if the preview shows a shape
+     */
+    private Pencil stroke;
+    /**
+     * Selection that is shown, null if the preview shows a shape or a stroke
+     */
+    private Selection selection;
+    /**
+     * Store of the drawing that the selection is from
+     */
+    private ShapeStore selectionStore;
+    /**
+     * Scale of the selection, its origin and the move after scaling
+     */
+    private double selectionScale, originX, originY, moveX, moveY;
+    /**
+     * Size of the scale handle (canvas pixels)
+     */
+    static final double HANDLE_SIZE = 8;
+    /**
+     * Point of the pencil stroke that was drawn last
+     */
+    private double strokeX, strokeY;
+    /**
+     * True if the preview changed since the last pulse
+     */
+    private boolean dirty;
+    /**
+     * True if something is drawn on the canvas
+     */
+    private boolean drawn;
+    /**
+     * Area of the preview that is on the canvas
+     */
+    private double minX, minY, maxX, maxY;
+    /**
+     * False if flush is called by hand instead of by the timer
+     */
+    private final boolean timed;
+    /**
+     * Timer that draws the preview on every pulse while it is running
+     */
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            flush();
+        }
+    };
+
+    /**
+     * DragPreview constructor
+     *
+     * @param gc Graphics context of the transparent canvas
+     */
+    DragPreview(GraphicsContext gc) {
+        this(gc, true);
+    }
+
+    /**
+     * DragPreview constructor
+     *
+     * @param gc    Graphics context of the transparent canvas
+     * @param timed False if flush is called by hand (the timer needs a running toolkit, a headless replay has none)
+     */
+    DragPreview(GraphicsContext gc, boolean timed) {
+        this.gc = gc;
+        this.renderer = new FxRenderer(gc);
+        this.timed = timed;
+    }
+
+    /**
+     * Sets the shape that is shown by the preview. The preview is drawn on the next pulse
+     *
+     * @param kind  Kind of the shape (ShapeStore.LINE, CIRCLE, RECTANGLE)
+     * @param sx    Shape's x coordinate
+     * @param sy    Shape's y coordinate
+     * @param ex    Shape's end x coordinate
+     * @param ey    Shape's end y coordinate
+     * @param color Shape's line color
+     * @param width Shape's line width
+     */
+    public void show(byte kind, double sx, double sy, double ex, double ey, Color color, double width) {
+        stroke = null;
+        selection = null;
+        pending = shapes[kind];
+        pending.set(sx, sy, ex, ey, color, width);
+        changed();
+    }
+
+    /**
+     * Shows the outline of the eraser
+     *
+     * @param x        X coordinate of the eraser's center
+     * @param y        Y coordinate of the eraser's center
+     * @param diameter Eraser's size
+     */
+    public void showEraser(double x, double y, double diameter) {
+        show(ShapeStore.CIRCLE, x - diameter / 2, y - diameter / 2, x + diameter / 2, y + diameter / 2, Color.DARKGRAY, 1);
+    }
+
+    /**
+     * Starts the preview of a pencil stroke that has its first point
+     *
+     * @param stroke Pencil stroke
+     */
+    public void showPencil(Pencil stroke) {
+        this.stroke = stroke;
+        selection = null;
+        pending = null;
+        strokeX = stroke.getX(0);
+        strokeY = stroke.getY(0);
+        growPencil();
+    }
+
+    /**
+     * Shows a selection scaled around an origin and moved (see Selection.transform). The preview is drawn on the
+     * next pulse
+     *
+     * @param selection Selection
+     * @param store     Store of the drawing that the selection is from
+     * @param scale     Scale
+     * @param originX   X coordinate of the point that scaling keeps in place
+     * @param originY   Y coordinate of the point that scaling keeps in place
+     * @param dx        Horizontal move after scaling
+     * @param dy        Vertical move after scaling
+     */
+    public void showSelection(Selection selection, ShapeStore store, double scale, double originX, double originY, double dx, double dy) {
+        stroke = null;
+        pending = null;
+        this.selection = selection;
+        selectionStore = store;
+        selectionScale = scale;
+        this.originX = originX;
+        this.originY = originY;
+        moveX = dx;
+        moveY = dy;
+        changed();
+    }
+
+    /**
+     * Shows the points that were added to the pencil stroke. The new part is drawn on the next pulse
+     */
+    public void growPencil() {
+        changed();
+    }
+
+    /**
+     * Marks the preview as changed, it is drawn on the next pulse
+     */
+    private void changed() {
+        if (!dirty) {
+            dirty = true;
+            if (timed) {
+                timer.start();
+            }
+        }
+    }
+
+    /**
+     * Draws the latest state of the preview if it changed since the last pulse, stops the timer otherwise
+     */
+    void flush() {
+        if (!dirty) {
+            timer.stop(); // Nothing happens between drags, so the timer does not run then
+            return;
+        }
+        dirty = false;
+        if (stroke != null) {
+            flushPencil();
+            return;
+        }
+        erase();
+        if (selection != null) {
+            flushSelection();
+        } else if (pending != null) {
+            pending.draw(renderer);
+            minX = pending.getMinX();
+            minY = pending.getMinY();
+            maxX = pending.getMaxX();
+            maxY = pending.getMaxY();
+            drawn = true;
+        }
+    }
+
+    /**
+     * Draws the segment from the point that was drawn last to the newest point of the pencil stroke, and grows the
+     * area of the preview by it
+     */
+    private void flushPencil() {
+        int last = stroke.size() - 1;
+        double x = stroke.getX(last), y = stroke.getY(last);
+        renderer.setStroke(stroke.getLineColor());
+        renderer.setLineWidth(stroke.getLineWidth());
+        renderer.strokeLine(strokeX, strokeY, x, y);
+        double margin = Shape.margin(stroke.getLineWidth()); // Every segment has square caps
+        if (!drawn) {
+            minX = maxX = strokeX;
+            minY = maxY = strokeY;
+            drawn = true;
+        }
+        minX = Math.min(minX, Math.min(strokeX, x) - margin);
+        minY = Math.min(minY, Math.min(strokeY, y) - margin);
+        maxX = Math.max(maxX, Math.max(strokeX, x) + margin);
+        maxY = Math.max(maxY, Math.max(strokeY, y) + margin);
+        strokeX = x;
+        strokeY = y;
+    }
+
+    /**
+     * Draws the selection (see showSelection): the shapes if the selection is small enough, then the outline and
+     * the scale handle, which keep their size in canvas pixels at every zoom
+     */
+    private void flushSelection() {
+        selection.drawPreview(renderer, shapes, selectionStore, selectionScale, originX, originY, moveX, moveY);
+        double pixel = 1 / gc.getTransform().getMxx(), handle = HANDLE_SIZE / 2 * pixel;
+        double margin = handle + pixel + selection.getMaxMargin() * Math.max(0, 1 - selectionScale); // Widths are not scaled
+        double offsetX = originX - originX * selectionScale + moveX, offsetY = originY - originY * selectionScale + moveY;
+        double x1 = selection.getMinX() * selectionScale + offsetX, y1 = selection.getMinY() * selectionScale + offsetY;
+        double x2 = selection.getMaxX() * selectionScale + offsetX, y2 = selection.getMaxY() * selectionScale + offsetY;
+        renderer.setStroke(Color.DODGERBLUE);
+        renderer.setLineWidth(pixel);
+        renderer.strokeRect(x1, y1, x2 - x1, y2 - y1);
+        renderer.strokeRect(x2 - handle, y2 - handle, handle * 2, handle * 2);
+        minX = x1 - margin;
+        minY = y1 - margin;
+        maxX = x2 + margin;
+        maxY = y2 + margin;
+        drawn = true;
+    }
+
+    /**
+     * Removes the preview from the canvas right away (the drag has ended)
+     */
+    public void clear() {
+        pending = null;
+        stroke = null;
+        selection = null;
+        dirty = false;
+        timer.stop();
+        erase();
+    }
+
+    /**
+     * Clears the area of the preview that is on the canvas. The preview is drawn in world coordinates (the canvas
+     * has the transform of the viewport), the area is cleared in whole canvas pixels with one more for antialiasing
+     */
+    private void erase() {
+        if (drawn) {
+            Affine transform = gc.getTransform();
+            Point2D min = transform.transform(minX, minY), max = transform.transform(maxX, maxY);
+            double x = Math.floor(min.getX()) - 1, y = Math.floor(min.getY()) - 1;
+            gc.save();
+            gc.setTransform(1, 0, 0, 1, 0, 0);
+            gc.clearRect(x, y, Math.ceil(max.getX()) + 1 - x, Math.ceil(max.getY()) + 1 - y);
+            gc.restore();
+            drawn = false;
+        }
+    }
+}
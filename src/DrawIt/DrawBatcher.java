@@ -0,0 +1,353 @@
+package DrawIt;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.StrokeLineJoin;
+
+/**
+ * Draws records of a store on a canvas in batches. Records that share the color and the stroke width are stroked
+ * one after another after a single state change. A record may join a batch that was started earlier only if it does
+ * not overlap anything drawn after that batch, so the result looks exactly like drawing the records one by one in
+ * paint order.
+ * <p>
+ * When records rarely share a batch (every record has a different style than its neighbours) the search does not
+ * pay for itself, so the records are stroked directly for a while and batching is tried again later.
+ * <p>
+ * Every record is still stroked with its own strokeLine/strokeOval/strokeRect call: the canvas renders those with
+ * dedicated code, a combined path would go through the general path rasterizer instead. Only pencil records are
+ * paths of their own
+ * <p>
+ * When the records are drawn zoomed out, records smaller than Viewport.MIN_EXTENT on the canvas are skipped and
+ * small circles are stroked as polygons, which are cheaper than ovals and look the same at that size
+ *
+ * @author Maksym Hanushchak
+ */
+public class DrawBatcher {
+    /**
+     * Number of batches that records can still join, older batches are stroked (power of two)
+     */
+    private static final int MAX_OPEN_BATCHES = 8;
+    /**
+     * Number of records after which the batcher checks whether batching pays off
+     */
+    private static final int WINDOW = 1024;
+    /**
+     * Batching pays off if at least this many records of a window joined an existing batch
+     */
+    private static final int MIN_JOINED = WINDOW / 4;
+    /**
+     * Number of records that are stroked directly when batching did not pay off
+     */
+    private static final int DIRECT_RUN = 16 * WINDOW;
+    /**
+     * Circles smaller than this on the canvas are stroked as polygons when zoomed out (pixels)
+     */
+    private static final double MAX_POLYGON_EXTENT = 24;
+    /**
+     * Number of sides of the polygons that stand for circles
+     */
+    private static final int POLYGON_SIDES = 12;
+    /**
+     * Cosines and sines of the polygon's corners
+     */
+    private static final double[] COS = new double[POLYGON_SIDES], SIN = new double[POLYGON_SIDES];
+
+    static {
+        for (int i = 0; i < POLYGON_SIDES; i++) {
+            COS[i] = Math.cos(2 * Math.PI * i / POLYGON_SIDES);
+            SIN[i] = Math.sin(2 * Math.PI * i / POLYGON_SIDES);
+        }
+    }
+
+    /**
+     * Graphics context of the canvas
+     */
+    private final GraphicsContext gc;
+    /**
+     * Records of the open batches (ring of MAX_OPEN_BATCHES lists)
+     */
+    private final IntList[] slots = new IntList[MAX_OPEN_BATCHES];
+    /**
+     * Style of the open batches: palette index of the color (high half) and bits of the stroke width (low half)
+     */
+    private final long[] styles = new long[MAX_OPEN_BATCHES];
+    /**
+     * Bounding box of everything in the open batches
+     */
+    private final double[] minX = new double[MAX_OPEN_BATCHES], minY = new double[MAX_OPEN_BATCHES],
+            maxX = new double[MAX_OPEN_BATCHES], maxY = new double[MAX_OPEN_BATCHES];
+    /**
+     * Position of the oldest open batch in the ring and number of open batches
+     */
+    private int first, open;
+    /**
+     * Store that the records come from
+     */
+    private ShapeStore store;
+    /**
+     * Stroke color of the canvas that was set last (null - unknown)
+     */
+    private Color currentColor;
+    /**
+     * Stroke width of the canvas that was set last (NaN - unknown)
+     */
+    private double currentWidth = Double.NaN;
+    /**
+     * Records added and records that joined a batch in the current window
+     */
+    private int added, joined;
+    /**
+     * Number of records that are still stroked directly
+     */
+    private int directLeft;
+    /**
+     * Number of stroke state changes since the counter was reset
+     */
+    private long stateChanges;
+    /**
+     * Number of records stroked so far
+     */
+    private long shapesDrawn;
+    /**
+     * Zoom of the canvas (canvas pixels per world unit)
+     */
+    private double scale = 1;
+    /**
+     * Reusable corners of a polygon
+     */
+    private final double[] polygonX = new double[POLYGON_SIDES], polygonY = new double[POLYGON_SIDES];
+
+    /**
+     * DrawBatcher constructor
+     *
+     * @param gc Graphics context of the canvas
+     */
+    DrawBatcher(GraphicsContext gc) {
+        this.gc = gc;
+        for (int i = 0; i < MAX_OPEN_BATCHES; i++) {
+            slots[i] = new IntList();
+        }
+    }
+
+    /**
+     * Starts drawing records of a store. The stroke state of the canvas is not known after other code drew on it,
+     * so it is always set again for the first batch
+     *
+     * @param store Store that the records come from
+     */
+    public void begin(ShapeStore store) {
+        this.store = store;
+        currentColor = null;
+        currentWidth = Double.NaN;
+        added = 0;
+        joined = 0;
+        directLeft = 0;
+    }
+
+    /**
+     * Setter method for the zoom of the canvas. Below 1 the level of detail is lowered (see the class description)
+     *
+     * @param scale Canvas pixels per world unit
+     */
+    public void setScale(double scale) {
+        this.scale = scale;
+    }
+
+    /**
+     * Adds a record. Records have to be added in paint order
+     *
+     * @param slot Slot of the record
+     */
+    public void add(int slot) {
+        if (scale < 1 && store.getExtent(slot) * scale < Viewport.MIN_EXTENT) { // Would not cover a pixel
+            return;
+        }
+        long style = (long) store.getColor(slot) << 32 | Float.floatToRawIntBits(store.getWidth(slot));
+        if (directLeft > 0) {
+            directLeft--;
+            setStyle(style);
+            stroke(slot);
+            return;
+        }
+        double x1 = store.getMinX(slot), y1 = store.getMinY(slot), x2 = store.getMaxX(slot), y2 = store.getMaxY(slot);
+
+        // Looks for the newest batch with the same style, the record must not overlap any batch that is newer
+        int target = -1;
+        for (int i = open - 1; i >= 0; i--) {
+            int b = (first + i) & (MAX_OPEN_BATCHES - 1);
+            if (styles[b] == style) {
+                target = b;
+                break;
+            }
+            if (minX[b] <= x2 && maxX[b] >= x1 && minY[b] <= y2 && maxY[b] >= y1) {
+                break;
+            }
+        }
+
+        if (target < 0) { // Starts a new batch
+            if (open == MAX_OPEN_BATCHES) {
+                strokeOldest();
+            }
+            target = (first + open++) & (MAX_OPEN_BATCHES - 1);
+            slots[target].clear();
+            styles[target] = style;
+            minX[target] = x1;
+            minY[target] = y1;
+            maxX[target] = x2;
+            maxY[target] = y2;
+        } else {
+            joined++;
+            minX[target] = Math.min(minX[target], x1);
+            minY[target] = Math.min(minY[target], y1);
+            maxX[target] = Math.max(maxX[target], x2);
+            maxY[target] = Math.max(maxY[target], y2);
+        }
+        slots[target].add(slot);
+
+        if (++added == WINDOW) {
+            if (joined < MIN_JOINED) { // Batching does not pay off here, the open batches are stroked first
+                while (open > 0) {
+                    strokeOldest();
+                }
+                directLeft = DIRECT_RUN;
+            }
+            added = 0;
+            joined = 0;
+        }
+    }
+
+    /**
+     * Strokes all the open batches
+     */
+    public void end() {
+        while (open > 0) {
+            strokeOldest();
+        }
+        store = null;
+    }
+
+    /**
+     * Draws all the live records of a store
+     *
+     * @param store Store
+     */
+    public void drawAll(ShapeStore store) {
+        begin(store);
+        for (int slot = store.nextLive(0); slot >= 0; slot = store.nextLive(slot + 1)) {
+            add(slot);
+        }
+        end();
+    }
+
+    /**
+     * Getter method for the number of stroke state changes (color or width)
+     *
+     * @return Number of state changes since the last reset
+     */
+    public long getStateChanges() {
+        return stateChanges;
+    }
+
+    /**
+     * Getter method for the number of records stroked (skipped records are not counted)
+     *
+     * @return Number of records stroked since the batcher was made
+     */
+    public long getShapesDrawn() {
+        return shapesDrawn;
+    }
+
+    /**
+     * Resets the counter of state changes
+     */
+    public void resetStateChanges() {
+        stateChanges = 0;
+    }
+
+    /**
+     * Strokes the records of the oldest open batch
+     */
+    private void strokeOldest() {
+        int b = first;
+        first = (first + 1) & (MAX_OPEN_BATCHES - 1);
+        open--;
+
+        setStyle(styles[b]);
+        IntList batch = slots[b];
+        for (int i = 0; i < batch.size(); i++) {
+            stroke(batch.get(i));
+        }
+        batch.clear();
+    }
+
+    /**
+     * Sets the stroke state of the canvas if it is different
+     *
+     * @param style Palette index of the color (high half) and bits of the stroke width (low half)
+     */
+    private void setStyle(long style) {
+        Color color = store.getPalette().get((int) (style >>> 32));
+        float width = Float.intBitsToFloat((int) style);
+        if (!color.equals(currentColor)) {
+            gc.setStroke(color);
+            currentColor = color;
+            stateChanges++;
+        }
+        if (width != currentWidth) {
+            gc.setLineWidth(width);
+            currentWidth = width;
+            stateChanges++;
+        }
+    }
+
+    /**
+     * Strokes a record on its own with the current stroke state
+     *
+     * @param slot Slot of the record
+     */
+    private void stroke(int slot) {
+        shapesDrawn++;
+        double sx = store.getCoord(slot, 0), sy = store.getCoord(slot, 1);
+        double ex = store.getCoord(slot, 2), ey = store.getCoord(slot, 3);
+        switch (store.getKind(slot)) {
+            case ShapeStore.CIRCLE:
+                if (scale < 1 && store.getExtent(slot) * scale < MAX_POLYGON_EXTENT) {
+                    strokePolygon((sx + ex) / 2, (sy + ey) / 2, Math.abs(ex - sx) / 2, Math.abs(ey - sy) / 2);
+                    break;
+                }
+                gc.strokeOval(Math.min(sx, ex), Math.min(sy, ey), Math.abs(ex - sx), Math.abs(ey - sy));
+                break;
+            case ShapeStore.RECTANGLE:
+                gc.strokeRect(Math.min(sx, ex), Math.min(sy, ey), Math.abs(ex - sx), Math.abs(ey - sy));
+                break;
+            case ShapeStore.PENCIL: // Round joins as in FxRenderer.strokePolyline
+                gc.setLineJoin(StrokeLineJoin.ROUND);
+                gc.beginPath();
+                gc.moveTo(store.getPathCoord(slot, 0), store.getPathCoord(slot, 1));
+                for (int i = 2, end = store.getPathSize(slot) * 2; i < end; i += 2) {
+                    gc.lineTo(store.getPathCoord(slot, i), store.getPathCoord(slot, i + 1));
+                }
+                gc.stroke();
+                gc.setLineJoin(StrokeLineJoin.MITER);
+                break;
+            default:
+                gc.strokeLine(sx, sy, ex, ey);
+                break;
+        }
+    }
+
+    /**
+     * Strokes a regular polygon inscribed in an ellipse with the current stroke state
+     *
+     * @param cx X coordinate of the center
+     * @param cy Y coordinate of the center
+     * @param a  Horizontal semi-axis
+     * @param b  Vertical semi-axis
+     */
+    private void strokePolygon(double cx, double cy, double a, double b) {
+        for (int i = 0; i < POLYGON_SIDES; i++) {
+            polygonX[i] = cx + a * COS[i];
+            polygonY[i] = cy + b * SIN[i];
+        }
+        gc.strokePolygon(polygonX, polygonY, POLYGON_SIDES);
+    }
+}
@@ -1,20 +1,30 @@
 package DrawIt;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.event.ActionEvent;
+import javafx.event.Event;
+import javafx.event.EventHandler;
 import javafx.scene.Cursor;
 import javafx.scene.Scene;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.control.*;
 import javafx.scene.image.Image;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
 import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
 import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
 import javafx.scene.text.FontWeight;
+import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 
-import java.util.ArrayList;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 /**
  * DrawIt v.1.0
@@ -46,17 +56,37 @@ public class DrawIt extends Application {
      **/
     private final Color defaultColor = Color.BLACK;
     /**
-     * Mouse press/release coordinates variables' declaration
+     * Number of committed shapes between two raster checkpoints of the canvas
      **/
-    private double sx, sy, ex, ey;
+    private final int CHECKPOINT_INTERVAL = 1000;
     /**
-     * Line width variable declaration
+     * Memory budget for raster checkpoints (bytes)
      **/
-    private double lineWidth;
+    private final long CHECKPOINT_MEMORY = 64L * 1024 * 1024;
+    /**
+     * Size of the autosave journal that starts a new snapshot (bytes)
+     **/
+    private final long JOURNAL_COMPACT_BYTES = 16L * 1024 * 1024;
+    /**
+     * System property with the path of the file that the metrics are appended to
+     **/
+    private final String METRICS_FILE_PROPERTY = "drawit.metrics";
+    /**
+     * System property with the path of the file that the inputs of the canvas are recorded to
+     **/
+    private final String TRACE_FILE_PROPERTY = "drawit.trace";
     /**
      * Declaration of canvases (main and transparent)
      **/
     private GraphicsContext gc, gcTransparent;
+    /**
+     * Progress of an SVG import or a vector export, hidden while none is running
+     **/
+    private ProgressBar fileProgress;
+    /**
+     * Declaration of the logic of the mouse on the canvas (tools, panning and zooming)
+     **/
+    private CanvasTools tools;
     /**
      * Line width text field declaration
      **/
@@ -74,17 +104,41 @@ public class DrawIt extends Application {
      **/
     private Button redoButton;
     /**
-     * Declaration of variable that represents selected tool (1 - 'line' by default)
+     * Declaration of the drawing (main array of shapes and its spatial index)
+     **/
+    private Drawing drawing;
+    /**
+     * Declaration of the stack of edits that can be undone (older edits are kept on disk)
      **/
-    private int selectedTool = 1;
+    private EditStack edits;
     /**
-     * Declaration of the main array of shapes
+     * Declaration of the stack that holds edits that has been undone
      **/
-    private ArrayList<Shape> shapes;
+    private EditStack undoneEdits;
     /**
-     * Declaration of the array that holds shapes that has been undone
+     * Declaration of the engine that repaints the main canvas
      **/
-    private ArrayList<Shape> undoShapes;
+    private RepaintEngine repaintEngine;
+    /**
+     * Declaration of the autosave journal (null if it could not be started)
+     **/
+    private Journal journal;
+    /**
+     * Declaration of the root pane (disabled while a drawing is loading)
+     **/
+    private Pane root;
+    /**
+     * Declaration of the hot-path metrics (handler latencies, frame times and repaint counters)
+     **/
+    private Metrics metrics;
+    /**
+     * Declaration of the overlay that shows the metrics on the canvas (toggled with F3)
+     **/
+    private Label metricsOverlay;
+    /**
+     * Declaration of the recorder of the input trace (null if the inputs are not recorded)
+     **/
+    private InputTrace.Recorder trace;
 
     /**
      * This method clears main canvas when called
@@ -94,23 +148,16 @@ public class DrawIt extends Application {
         gc.fillRect(0, 0, SCREEN_WIDTH - CONTROL_WIDTH, SCREEN_HEIGHT);
     }
 
-    /**
-     * This method clears transparent canvas when called
-     */
-    private void clearTransparentCanvas() {
-        gcTransparent.clearRect(0, 0, SCREEN_WIDTH - CONTROL_WIDTH, SCREEN_HEIGHT);
-    }
-
     /**
      * Checks conditions and Disables/Enables undo and redo buttons when called
      */
     private void undoRedoCheck() {
-        if (shapes.isEmpty()) {
+        if (edits.isEmpty()) {
             undoButton.setDisable(true);
         } else {
             undoButton.setDisable(false);
         }
-        if (undoShapes.isEmpty()) {
+        if (undoneEdits.isEmpty()) {
             redoButton.setDisable(true);
         } else {
             redoButton.setDisable(false);
@@ -119,73 +166,299 @@ public class DrawIt extends Application {
 
 
     /**
-     * Undo method. Allows to remove last shape from the canvas
+     * Adds a finished edit to the history. A new edit makes the undone edits impossible to redo
+     *
+     * @param edit Finished edit
+     */
+    private void recordEdit(Edit edit) {
+        edits.push(edit);
+        undoneEdits.clear();
+        undoRedoCheck();
+    }
+
+    /**
+     * Adds generated shapes (plots, floor plans, test patterns) on top of the drawing with a single repaint. The
+     * whole batch is one edit, so it is undone in one step. Call it on the FX thread, the batch can be filled on any
+     * thread
+     *
+     * @param batch Shapes
+     */
+    public void addShapes(ShapeBatch batch) {
+        if (!batch.isEmpty()) {
+            recordEdit(BatchEdit.add(drawing, repaintEngine, batch));
+        }
+    }
+
+    /**
+     * Undo method. Allows to revert the last edit (remove last shape, bring back erased shapes or old colors)
      *
      * @param actionEvent Unused
      */
     private void undoButtonHandler(ActionEvent actionEvent) {
-        undoShapes.add(shapes.get(shapes.size() - 1)); // Adds the shape that is about to be removed to the array of undone objects (to be able to redo them later)
-        shapes.remove(shapes.size() - 1); // Removes the shape from the main array
-        clearMainCanvas();
-        for (Shape s : shapes) {
-            s.draw(gc);
+        tools.clearSelection(); // The selected shapes may change
+        Edit edit = edits.pop(); // Removes the edit from the history
+        if (edit == null) { // The older history could not be read back, nothing to undo
+            undoRedoCheck();
+            return;
+        }
+        undoneEdits.push(edit); // Adds the edit to the stack of undone objects (to be able to redo it later)
+        edit.undo(drawing, repaintEngine); // Repaints only the area that the edit changed
+        if (edit.getAddedFrom() != Integer.MAX_VALUE) { // Its shapes can only come back by redo now
+            drawing.setReclaimable(edit.getAddedFrom());
         }
         undoRedoCheck();
     }
 
     /**
-     * Resets the application to default settings
+     * Resets the application to default settings. Clearing the canvas is an edit, so it can be undone
      *
      * @param actionEvent Unused
      */
     private void resetAll(ActionEvent actionEvent) {
-        clearMainCanvas();
-        undoShapes.clear();
-        shapes.clear();
-        undoRedoCheck();
+        tools.clearSelection();
+        repaintEngine.getViewport().reset(); // Goes back to the default view
+        repaintEngine.getViewport().apply(gcTransparent);
+        if (!drawing.isEmpty()) {
+            recordEdit(ClearEdit.clear(drawing, repaintEngine)); // Removes the shapes and clears the canvas
+        } else {
+            repaintEngine.repaintView();
+        }
         lineWidthField.setText("2");
     }
 
     /**
-     * Redo method. Allows to restore undone objects and draw them on the canvas
+     * Redo method. Allows to apply undone edits again and update the canvas
      *
      * @param actionEvent Unused
      */
     private void redoButtonHandler(ActionEvent actionEvent) {
-        shapes.add(undoShapes.get(undoShapes.size() - 1)); // Adds the shape from the array of undone objects to the main array
-        undoShapes.remove(undoShapes.size() - 1); // Deletes the shape from the array of undone objects
-        clearMainCanvas();
-        for (Shape s : shapes) {
-            s.draw(gc);
+        tools.clearSelection();
+        Edit edit = undoneEdits.pop(); // Deletes the edit from the stack of undone objects
+        if (edit == null) { // The older undone edits could not be read back, nothing to redo
+            undoRedoCheck();
+            return;
+        }
+        edits.push(edit); // Adds the edit back to the history
+        edit.redo(drawing, repaintEngine);
+        if (edit.getAddedTo() != Integer.MAX_VALUE) { // The shapes of the edits that are still undone are above its own
+            drawing.setReclaimable(edit.getAddedTo());
         }
         undoRedoCheck();
     }
 
 
     /**
-     * Allows to reset color of all the shapes on the canvas to selected color
+     * Allows to reset color of all the shapes on the canvas to selected color. Only the palette is changed, so the
+     * recolor costs the same for any number of shapes and can be undone
      *
      * @param actionEvent Unused
      */
     private void resetColorButtonHandler(ActionEvent actionEvent) {
-        // Update the array
-        for (Shape s : shapes) {
-            s.setLineColor(colorPicker.getValue());
+        if (drawing.isEmpty()) { // Nothing to recolor
+            return;
         }
-        // Update the canvas
-        clearMainCanvas();
-        for (Shape s : shapes) {
-            s.draw(gc);
+        recordEdit(RecolorEdit.recolor(drawing, repaintEngine, colorPicker.getValue())); // Updates the palette and the canvas
+    }
+
+    /**
+     * Removes the redundant geometry of the drawing (duplicates, empty circles, runs of lines that make one line) as
+     * one edit and shows how much was removed
+     *
+     * @param actionEvent Unused
+     */
+    private void compactButtonHandler(ActionEvent actionEvent) {
+        tools.clearSelection();
+        CompactEdit edit = CompactEdit.compact(drawing, repaintEngine, Runtime.getRuntime().availableProcessors());
+        if (edit.isEmpty()) { // Nothing to undo
+            new Alert(Alert.AlertType.INFORMATION, "The drawing has no redundant shapes").show();
+            return;
+        }
+        recordEdit(edit);
+        new Alert(Alert.AlertType.INFORMATION, String.format("Removed %,d shapes in %.2f s: %,d duplicates, %,d empty circles, "
+                        + "%,d lines joined into others. A full repaint draws %.2fx fewer shapes",
+                edit.getRemoved(), edit.getSeconds(), edit.getDuplicates(), edit.getEmpty(), edit.getJoins(), edit.getSpeedup())).show();
+    }
+
+    /**
+     * Creates a file chooser for drawing files
+     *
+     * @param title Title of the dialog
+     * @return File chooser
+     */
+    private FileChooser drawingFileChooser(String title) {
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle(title);
+        chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("DrawIt drawings", "*." + DrawingFile.EXTENSION));
+        return chooser;
+    }
+
+    /**
+     * Saves the drawing to a file chosen by the user. The file is written from a snapshot on a background thread
+     *
+     * @param actionEvent Unused
+     */
+    private void saveButtonHandler(ActionEvent actionEvent) {
+        File file = drawingFileChooser("Save Drawing").showSaveDialog(root.getScene().getWindow());
+        if (file == null) { // Cancelled
+            return;
+        }
+        if (!file.getName().contains(".")) {
+            file = new File(file.getPath() + "." + DrawingFile.EXTENSION);
+        }
+        Path path = file.toPath();
+        ShapeStore snapshot = drawing.snapshot(); // Written in the background, the user can keep drawing
+        Thread writer = new Thread(() -> {
+            try {
+                DrawingFile.write(snapshot, SCREEN_WIDTH - CONTROL_WIDTH, SCREEN_HEIGHT, path);
+            } catch (IOException e) {
+                Platform.runLater(() -> new Alert(Alert.AlertType.ERROR, "Cannot save the drawing: " + e.getMessage()).showAndWait());
+            }
+        }, "DrawIt save");
+        writer.start();
+    }
+
+    /**
+     * Replaces the drawing with one from a file chosen by the user. Big files are loaded over several frames
+     * (see DrawingLoader), the window does not take input until loading ends
+     *
+     * @param actionEvent Unused
+     */
+    private void openButtonHandler(ActionEvent actionEvent) {
+        File file = drawingFileChooser("Open Drawing").showOpenDialog(root.getScene().getWindow());
+        if (file == null) { // Cancelled
+            return;
+        }
+        DrawingFile.MappedFile mapped;
+        try {
+            mapped = DrawingFile.open(file.toPath());
+        } catch (IOException e) {
+            new Alert(Alert.AlertType.ERROR, "Cannot open the drawing: " + e.getMessage()).showAndWait();
+            return;
+        }
+
+        // Starts from an empty drawing, the history of the old one is dropped
+        tools.clearSelection();
+        undoneEdits.clear();
+        edits.clear();
+        drawing.clear();
+        repaintEngine.repaintAll();
+        undoRedoCheck();
+
+        root.setDisable(true);
+        new DrawingLoader(mapped, drawing, repaintEngine, error -> {
+            root.setDisable(false);
+            if (journal != null) { // Loaded records are not in the journal, so they go to a new snapshot
+                journal.compact(drawing.getStore());
+            }
+            if (error != null) { // Keeps what was loaded before the error
+                new Alert(Alert.AlertType.ERROR, "Cannot read the whole drawing: " + error.getMessage()).show();
+            }
+        }).start();
+    }
+
+    /**
+     * Adds the lines, circles, ellipses and rectangles of an SVG file chosen by the user to the drawing. The file is
+     * parsed in the background (see SvgImporter), the window shows the progress and does not take input until the
+     * import ends. The imported shapes are undone in one step
+     *
+     * @param actionEvent Unused
+     */
+    private void importButtonHandler(ActionEvent actionEvent) {
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Import SVG");
+        chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("SVG images", "*.svg"));
+        File file = chooser.showOpenDialog(root.getScene().getWindow());
+        if (file == null) { // Cancelled
+            return;
+        }
+        SvgImporter importer;
+        if (drawing.reclaim()) { // The shapes of the undone edits are dropped before the import takes their slots
+            undoneEdits.clear();
+            undoRedoCheck();
+        }
+        int from = drawing.getStore().size(); // The imported shapes follow the current ones
+        int colors = drawing.getStore().getPalette().size();
+        try {
+            importer = new SvgImporter(file.toPath(), drawing, repaintEngine, fileProgress::setProgress, error -> {
+                root.setDisable(false);
+                fileProgress.setVisible(false);
+                if (drawing.getStore().size() > from) {
+                    recordEdit(new BatchEdit(from, drawing.getStore().size()));
+                }
+                drawing.recordAdded(from, colors); // Imported records are not in the journal yet
+                if (error != null) { // Keeps what was imported before the error
+                    new Alert(Alert.AlertType.ERROR, "Cannot import the whole file: " + error.getMessage()).show();
+                }
+            });
+        } catch (IOException e) {
+            new Alert(Alert.AlertType.ERROR, "Cannot open the file: " + e.getMessage()).showAndWait();
+            return;
         }
+        root.setDisable(true);
+        fileProgress.setProgress(0);
+        fileProgress.setVisible(true);
+        importer.start();
     }
 
     /**
-     * Called when mouse button is pressed
+     * Exports the drawing as an SVG image or a PDF document chosen by the user. The file is written from a snapshot
+     * on a background thread (see VectorExporter), the user can keep drawing; the throughput is shown at the end
+     *
+     * @param actionEvent Unused
+     */
+    private void exportButtonHandler(ActionEvent actionEvent) {
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Export Drawing");
+        chooser.getExtensionFilters().addAll(new FileChooser.ExtensionFilter("SVG images", "*.svg"),
+                new FileChooser.ExtensionFilter("PDF documents", "*.pdf"));
+        File file = chooser.showSaveDialog(root.getScene().getWindow());
+        if (file == null) { // Cancelled
+            return;
+        }
+        if (!file.getName().contains(".")) { // The extension of the chosen filter
+            file = new File(file.getPath() + chooser.getSelectedExtensionFilter().getExtensions().get(0).substring(1));
+        }
+        Path path = file.toPath();
+        ShapeStore snapshot = drawing.snapshot(); // Written in the background, the user can keep drawing
+        fileProgress.setProgress(0);
+        fileProgress.setVisible(true);
+        Thread exporter = new Thread(() -> {
+            try {
+                VectorExporter.Result result = VectorExporter.export(snapshot, VectorExporter.formatOf(path), path,
+                        Runtime.getRuntime().availableProcessors(), progress -> Platform.runLater(() -> fileProgress.setProgress(progress)));
+                Platform.runLater(() -> {
+                    fileProgress.setVisible(false);
+                    new Alert(Alert.AlertType.INFORMATION, String.format("Exported %,d shapes in %.2f s (%,.0f shapes/s)",
+                            result.getShapes(), result.getSeconds(), result.getShapesPerSecond())).show();
+                });
+            } catch (IOException e) {
+                Platform.runLater(() -> {
+                    fileProgress.setVisible(false);
+                    new Alert(Alert.AlertType.ERROR, "Cannot export the drawing: " + e.getMessage()).showAndWait();
+                });
+            }
+        }, "DrawIt export");
+        exporter.start();
+    }
+
+    /**
+     * Called when mouse button is pressed. The stroke width field is checked when a tool starts, the rest is done
+     * by the canvas tools
      *
      * @param mouseEvent Gets coordinates of the spot where the button was pressed
      */
     private void pressHandler(MouseEvent mouseEvent) {
+        if (tools.startsTool(mouseEvent.getButton())) {
+            checkLineWidth();
+        }
+        tools.press(mouseEvent.getButton(), mouseEvent.getX(), mouseEvent.getY());
+    }
 
+    /**
+     * Reads the stroke width field and gives the width to the canvas tools
+     */
+    private void checkLineWidth() {
+        double lineWidth;
         // Error handling
         try { // Try to convert the value from the textfield to double
             lineWidth = Double.parseDouble(lineWidthField.getText());
@@ -196,9 +469,7 @@ public class DrawIt extends Application {
         if ((lineWidth < 1) || (lineWidth > 200)) { // If out of range
             new Alert(Alert.AlertType.ERROR, "Number in Stroke Width field is out or range (1 - 200)").showAndWait(); // Show 'out of range alert'
         }
-
-        sx = mouseEvent.getX();
-        sy = mouseEvent.getY();
+        tools.setLineWidth(lineWidth);
     }
 
     /**
@@ -207,68 +478,36 @@ public class DrawIt extends Application {
      * @param mouseEvent Gets coordinates of current location of the cursor
      */
     private void dragHandler(MouseEvent mouseEvent) {
-
-        clearTransparentCanvas();
-        ex = mouseEvent.getX();
-        ey = mouseEvent.getY();
-
-        switch (selectedTool) { // Draws on transparent canvas
-            case 1:
-                Shape l = new Line(sx, sy, ex, ey, colorPicker.getValue(), lineWidth);
-                l.draw(gcTransparent);
-                break;
-            case 2:
-                Shape c = new Circle(sx, sy, ex, ey, colorPicker.getValue(), lineWidth);
-                c.draw(gcTransparent);
-                break;
-            case 3:
-                Shape r = new Rectangle(sx, sy, ex, ey, colorPicker.getValue(), lineWidth);
-                r.draw(gcTransparent);
-                break;
-        }
+        tools.drag(mouseEvent.getX(), mouseEvent.getY());
     }
 
-
     /**
      * Called when mouse button is released
      *
      * @param mouseEvent Gets coordinates of the spot where the button was released
      */
     private void releaseHandler(MouseEvent mouseEvent) { // draws on background
-        clearTransparentCanvas();
-        ex = mouseEvent.getX();
-        ey = mouseEvent.getY();
-
-        if ((ex > SCREEN_WIDTH - CONTROL_WIDTH) || (ey > SCREEN_HEIGHT) || (ex < 0) || (ey < 0)) { // Checks if the shape that is being drawn is out of the canvas area
-            new Alert(Alert.AlertType.WARNING, "Cannot draw outside of the workspace").showAndWait();
-        } else { // If range condition is followed, creates a shape and adds it to the main array
-            switch (selectedTool) {
-                case 1:
-                    Shape s = new Line(sx, sy, ex, ey, colorPicker.getValue(), lineWidth);
-                    shapes.add(s);
-                    break;
-                case 2:
-                    Shape c = new Circle(sx, sy, ex, ey, colorPicker.getValue(), lineWidth);
-                    shapes.add(c);
-                    break;
-                case 3:
-                    Shape r = new Rectangle(sx, sy, ex, ey, colorPicker.getValue(), lineWidth);
-                    shapes.add(r);
-                    break;
-            }
-        }
-
-        // Draws all the objects from the main array on the screen
-        gc.setFill(defaultCanvasColor);
-        for (Shape s : shapes) {
-            s.draw(gc);
-        }
+        tools.release(mouseEvent.getButton(), mouseEvent.getX(), mouseEvent.getY());
+    }
 
-        undoRedoCheck();
+    /**
+     * Called when the mouse wheel is turned, zooms the view around the cursor
+     *
+     * @param scrollEvent Gets the position of the cursor and the amount of scrolling
+     */
+    private void scrollHandler(ScrollEvent scrollEvent) {
+        tools.scroll(scrollEvent.getDeltaY(), scrollEvent.getX(), scrollEvent.getY());
     }
 
 
-    //private void pencilButtonHandler(ActionEvent actionEvent) {}
+    /**
+     * Selects drawing tool "Pencil" (freehand strokes)
+     *
+     * @param actionEvent Unused
+     */
+    private void pencilButtonHandler(ActionEvent actionEvent) {
+        tools.setTool(CanvasTools.PENCIL);
+    }
 
     /**
      * Selects drawing tool "line"
@@ -276,7 +515,7 @@ public class DrawIt extends Application {
      * @param actionEvent Unused
      */
     private void lineButtonHandler(ActionEvent actionEvent) {
-        selectedTool = 1;
+        tools.setTool(CanvasTools.LINE);
     }
 
     /**
@@ -285,7 +524,7 @@ public class DrawIt extends Application {
      * @param actionEvent Unused
      */
     private void circleButtonHandler(ActionEvent actionEvent) {
-        selectedTool = 2;
+        tools.setTool(CanvasTools.CIRCLE);
     }
 
     /**
@@ -294,10 +533,38 @@ public class DrawIt extends Application {
      * @param actionEvent Unused
      */
     private void rectangleButtonHandler(ActionEvent actionEvent) {
-        selectedTool = 3;
+        tools.setTool(CanvasTools.RECTANGLE);
+    }
+
+    /**
+     * Selects tool "Eraser". The eraser removes whole shapes whose strokes it touches, its size is set by the
+     * stroke width field
+     *
+     * @param actionEvent Unused
+     */
+    private void eraserButtonHandler(ActionEvent actionEvent) {
+        tools.setTool(CanvasTools.ERASER);
+    }
+
+    /**
+     * Selects tool "Select". Dragging on the canvas selects the shapes under the marquee, dragging the selection
+     * moves it and dragging its corner handle scales it
+     *
+     * @param actionEvent Unused
+     */
+    private void selectButtonHandler(ActionEvent actionEvent) {
+        tools.setTool(CanvasTools.SELECT);
     }
 
-    //private void eraserButtonHandler(ActionEvent actionEvent) {}
+    /**
+     * Gives the selected shapes the selected color and the stroke width, as one edit
+     *
+     * @param actionEvent Unused
+     */
+    private void restrokeButtonHandler(ActionEvent actionEvent) {
+        checkLineWidth(); // The color picker keeps the color of the tools up to date
+        tools.restroke();
+    }
 
 
     /**
@@ -308,7 +575,7 @@ public class DrawIt extends Application {
      */
     @Override
     public void start(Stage stage) throws Exception {
-        Pane root = new Pane();
+        root = new Pane();
         Scene scene = new Scene(root, SCREEN_WIDTH, SCREEN_HEIGHT, Color.DARKGRAY); // Creates and sets main scene parameters
         stage.setTitle("DrawIt!"); // Window title
         stage.setScene(scene);
@@ -316,9 +583,10 @@ public class DrawIt extends Application {
         stage.sizeToScene(); // Sets stage size to scene size
         stage.getIcons().add(new Image("DrawIt/icon.png")); // Sets application icon
 
-        // Created main and undo arrays
-        shapes = new ArrayList<>();
-        undoShapes = new ArrayList<>();
+        // Created the drawing and the undo/redo arrays
+        drawing = new Drawing();
+        edits = new EditStack(Tuning.HISTORY_WINDOW);
+        undoneEdits = new EditStack(Tuning.HISTORY_WINDOW);
 
         // Created GUI components and set their parameters
         Canvas mainCanvas = new Canvas(SCREEN_WIDTH - CONTROL_WIDTH, SCREEN_HEIGHT); // Main canvas
@@ -338,7 +606,6 @@ public class DrawIt extends Application {
         pencilButton.relocate((SCREEN_WIDTH - CONTROL_WIDTH) + 20, 130);
         pencilButton.setPrefWidth(CONTROL_WIDTH - 40);
         pencilButton.setFont(Font.font("Arial", FontWeight.BOLD, 12));
-        pencilButton.setDisable(true);
 
         Button lineButton = new Button("¦ Line");
         lineButton.relocate((SCREEN_WIDTH - CONTROL_WIDTH) + 20, 165);
@@ -355,10 +622,17 @@ public class DrawIt extends Application {
         rectangleButton.setPrefWidth(CONTROL_WIDTH - 40);
         rectangleButton.setFont(Font.font("Arial", FontWeight.BOLD, 12));
 
+        Button selectButton = new Button("⬚ Select");
+        selectButton.relocate((SCREEN_WIDTH - CONTROL_WIDTH) + 20, 265);
+        selectButton.setPrefWidth(CONTROL_WIDTH / 2 - 25);
+
+        Button restrokeButton = new Button("Restroke");
+        restrokeButton.relocate((SCREEN_WIDTH - CONTROL_WIDTH) + (CONTROL_WIDTH - (CONTROL_WIDTH / 2 - 25) - 20), 265);
+        restrokeButton.setPrefWidth(CONTROL_WIDTH / 2 - 25);
+
         Button eraserButton = new Button("⌫ Eraser");
         eraserButton.relocate((SCREEN_WIDTH - CONTROL_WIDTH) + 20, 300);
         eraserButton.setPrefWidth(CONTROL_WIDTH - 40);
-        eraserButton.setDisable(true);
 
         undoButton = new Button("< Undo");
         undoButton.relocate((SCREEN_WIDTH - CONTROL_WIDTH) + 20, 335);
@@ -380,7 +654,33 @@ public class DrawIt extends Application {
 
         Button resetCanvasButton = new Button("Reset All");
         resetCanvasButton.relocate((SCREEN_WIDTH - CONTROL_WIDTH) + 20, 470);
-        resetCanvasButton.setPrefWidth(CONTROL_WIDTH - 40);
+        resetCanvasButton.setPrefWidth(CONTROL_WIDTH / 2 - 25);
+
+        Button compactButton = new Button("Compact");
+        compactButton.relocate((SCREEN_WIDTH - CONTROL_WIDTH) + (CONTROL_WIDTH - (CONTROL_WIDTH / 2 - 25) - 20), 470);
+        compactButton.setPrefWidth(CONTROL_WIDTH / 2 - 25);
+
+
+        Button saveButton = new Button("Save");
+        saveButton.relocate((SCREEN_WIDTH - CONTROL_WIDTH) + 20, 590);
+        saveButton.setPrefWidth(CONTROL_WIDTH / 2 - 25);
+
+        Button openButton = new Button("Open");
+        openButton.relocate((SCREEN_WIDTH - CONTROL_WIDTH) + (CONTROL_WIDTH - (CONTROL_WIDTH / 2 - 25) - 20), 590);
+        openButton.setPrefWidth(CONTROL_WIDTH / 2 - 25);
+
+        Button importButton = new Button("Import");
+        importButton.relocate((SCREEN_WIDTH - CONTROL_WIDTH) + 20, 622);
+        importButton.setPrefWidth(CONTROL_WIDTH / 2 - 25);
+
+        Button exportButton = new Button("Export");
+        exportButton.relocate((SCREEN_WIDTH - CONTROL_WIDTH) + (CONTROL_WIDTH - (CONTROL_WIDTH / 2 - 25) - 20), 622);
+        exportButton.setPrefWidth(CONTROL_WIDTH / 2 - 25);
+
+        fileProgress = new ProgressBar(0); // Covers the import and export buttons while one of them runs
+        fileProgress.relocate((SCREEN_WIDTH - CONTROL_WIDTH) + 20, 626);
+        fileProgress.setPrefWidth(CONTROL_WIDTH - 40);
+        fileProgress.setVisible(false);
 
 
         Label lineWidthLabel = new Label("Stroke Width:");
@@ -397,8 +697,8 @@ public class DrawIt extends Application {
         lineWidthField.setPrefWidth(CONTROL_WIDTH / 2 - 25);
         lineWidthField.setPrefHeight(30);
 
-        Label infoLabel = new Label("* Pencil and Eraser tools\n   will be implemented in the\n   next version");
-        infoLabel.relocate((SCREEN_WIDTH - CONTROL_WIDTH) + 20, SCREEN_HEIGHT - 100);
+        Label infoLabel = new Label("* Eraser size is set\n   by the stroke width\n* Right-drag to pan,\n   scroll to zoom\n* F3 shows the metrics");
+        infoLabel.relocate((SCREEN_WIDTH - CONTROL_WIDTH) + 20, SCREEN_HEIGHT - 140);
         infoLabel.setFont(Font.font("Arial", 12));
         infoLabel.setTextFill(Color.DARKGRAY);
 
@@ -409,38 +709,149 @@ public class DrawIt extends Application {
         copyrightLabel.setTextFill(Color.DARKGRAY);
 
 
+        metricsOverlay = new Label(); // Metrics on top of the canvas, hidden until F3 is pressed
+        metricsOverlay.relocate(10, 10);
+        metricsOverlay.setFont(Font.font("Monospaced", 12));
+        metricsOverlay.setTextFill(Color.WHITE);
+        metricsOverlay.setStyle("-fx-background-color: rgba(0, 0, 0, 0.6); -fx-padding: 6;");
+        metricsOverlay.setMouseTransparent(true); // Does not get in the way of the tools
+        metricsOverlay.setVisible(false);
+
         // Add components to the root
-        root.getChildren().addAll(mainCanvas, transparentCanvas, titleLabel, instrumentsLabel, pencilButton, lineButton, circleButton, rectangleButton, colorPicker, resetColorButton, undoButton, redoButton, eraserButton, resetCanvasButton, lineWidthLabel, lineWidthField, widthRangeLabel, copyrightLabel, infoLabel);
+        root.getChildren().addAll(mainCanvas, transparentCanvas, metricsOverlay, titleLabel, instrumentsLabel, pencilButton, lineButton, circleButton, rectangleButton, selectButton, restrokeButton, colorPicker, resetColorButton, undoButton, redoButton, eraserButton, resetCanvasButton, compactButton, lineWidthLabel, lineWidthField, widthRangeLabel, saveButton, openButton, importButton, exportButton, fileProgress, copyrightLabel, infoLabel);
 
         // Create the two graphics contexts
         gc = mainCanvas.getGraphicsContext2D();
         gcTransparent = transparentCanvas.getGraphicsContext2D();
+        repaintEngine = new RepaintEngine(gc, drawing, SCREEN_WIDTH - CONTROL_WIDTH, SCREEN_HEIGHT, defaultCanvasColor,
+                new CheckpointCache(CHECKPOINT_INTERVAL, CHECKPOINT_MEMORY));
+        TiledRasterizer rasterizer = new TiledRasterizer(Tuning.TILE_SIZE, Runtime.getRuntime().availableProcessors());
+        repaintEngine.useRasterizer(rasterizer, Tuning.PARALLEL_REPAINT_THRESHOLD);
+        TileCache tileCache = new TileCache(Tuning.TILE_DENSE_SHAPES, Tuning.TILE_MEMORY, defaultCanvasColor); // Zoomed out views are drawn from tiles
+        tileCache.useRasterizer(rasterizer);
+        repaintEngine.useTiles(tileCache);
+        repaintEngine.useTimeSlices(); // Big repaints are drawn over several pulses, the window stays responsive
+        metrics = new Metrics(drawing);
+        repaintEngine.useMetrics(metrics);
+        tools = new CanvasTools(drawing, repaintEngine, gcTransparent, new DragPreview(gcTransparent), this::recordEdit);
+        tools.setColor(colorPicker.getValue());
+        String traceFile = System.getProperty(TRACE_FILE_PROPERTY);
+        if (traceFile != null) { // Inputs of the canvas are recorded for a replay (see TraceReplay)
+            try {
+                trace = new InputTrace.Recorder(Paths.get(traceFile), SCREEN_WIDTH - CONTROL_WIDTH, SCREEN_HEIGHT);
+                tools.record(trace);
+            } catch (IOException e) {
+                new Alert(Alert.AlertType.WARNING, "Cannot record the input trace to " + traceFile + ": " + e.getMessage()).show();
+            }
+        }
+        String metricsFile = System.getProperty(METRICS_FILE_PROPERTY);
+        if (metricsFile != null) { // Metrics are appended to the file every few seconds
+            metrics.dumpTo(Paths.get(metricsFile));
+        }
 
         // Clear main canvas
         clearMainCanvas();
 
+        // Restore the drawing of the last session from the autosave journal
+        startJournal(Paths.get(System.getProperty("user.home"), ".drawit"));
+
         // Add Event Handlers
-        transparentCanvas.addEventHandler(MouseEvent.MOUSE_PRESSED, this::pressHandler);
-        transparentCanvas.addEventHandler(MouseEvent.MOUSE_RELEASED, this::releaseHandler);
-        transparentCanvas.addEventHandler(MouseEvent.MOUSE_DRAGGED, this::dragHandler);
-        //pencilButton.setOnAction(this::pencilButtonHandler);
+        transparentCanvas.addEventHandler(MouseEvent.MOUSE_PRESSED, timed(Metrics.PRESS, this::pressHandler));
+        transparentCanvas.addEventHandler(MouseEvent.MOUSE_RELEASED, timed(Metrics.RELEASE, this::releaseHandler));
+        transparentCanvas.addEventHandler(MouseEvent.MOUSE_DRAGGED, timed(Metrics.DRAG, this::dragHandler));
+        transparentCanvas.addEventHandler(ScrollEvent.SCROLL, this::scrollHandler);
+        pencilButton.setOnAction(this::pencilButtonHandler);
         lineButton.setOnAction(this::lineButtonHandler);
         circleButton.setOnAction(this::circleButtonHandler);
         rectangleButton.setOnAction(this::rectangleButtonHandler);
-        //eraserButton.setOnAction(this::eraserButtonHandler);
-        undoButton.setOnAction(this::undoButtonHandler);
-        redoButton.setOnAction(this::redoButtonHandler);
-        resetColorButton.setOnAction(this::resetColorButtonHandler);
+        eraserButton.setOnAction(this::eraserButtonHandler);
+        selectButton.setOnAction(this::selectButtonHandler);
+        restrokeButton.setOnAction(this::restrokeButtonHandler);
+        undoButton.setOnAction(timed(Metrics.UNDO, this::undoButtonHandler));
+        redoButton.setOnAction(timed(Metrics.REDO, this::redoButtonHandler));
+        resetColorButton.setOnAction(timed(Metrics.RECOLOR, this::resetColorButtonHandler));
         resetCanvasButton.setOnAction(this::resetAll);
+        compactButton.setOnAction(this::compactButtonHandler);
+        saveButton.setOnAction(this::saveButtonHandler);
+        openButton.setOnAction(this::openButtonHandler);
+        importButton.setOnAction(this::importButtonHandler);
+        exportButton.setOnAction(this::exportButtonHandler);
+        colorPicker.valueProperty().addListener((observable, oldColor, newColor) -> tools.setColor(newColor));
+        scene.addEventFilter(KeyEvent.KEY_PRESSED, this::metricsKeyHandler);
 
         // Show the stage
         stage.show();
     }
 
     /**
-     * Main method that launches the application
+     * Wraps a handler so its latency is recorded in the metrics
+     *
+     * @param operation Operation of the handler (see Metrics)
+     * @param handler   Handler
+     * @param <T>       Type of the event
+     * @return Timed handler
+     */
+    private <T extends Event> EventHandler<T> timed(int operation, EventHandler<T> handler) {
+        return event -> {
+            long start = System.nanoTime();
+            handler.handle(event);
+            metrics.record(operation, System.nanoTime() - start);
+        };
+    }
+
+    /**
+     * Shows or hides the metrics overlay
+     *
+     * @param keyEvent Pressed key, F3 toggles the overlay
+     */
+    private void metricsKeyHandler(KeyEvent keyEvent) {
+        if (keyEvent.getCode() != KeyCode.F3) {
+            return;
+        }
+        metricsOverlay.setVisible(!metricsOverlay.isVisible());
+        metrics.setOverlay(metricsOverlay.isVisible() ? metricsOverlay : null); // Updated only while it is shown
+    }
+
+    /**
+     * Restores the drawing from the autosave journal and starts recording the changes. The application works without
+     * autosave if the journal cannot be used
+     *
+     * @param dir Directory of the journal files
+     */
+    private void startJournal(Path dir) {
+        try {
+            int generation = Journal.recover(dir, drawing);
+            repaintEngine.repaintAll();
+            journal = new Journal(dir, generation, SCREEN_WIDTH - CONTROL_WIDTH, SCREEN_HEIGHT, JOURNAL_COMPACT_BYTES);
+            drawing.setJournal(journal);
+        } catch (IOException e) {
+            new Alert(Alert.AlertType.WARNING, "Autosave is off, cannot use " + dir + ": " + e.getMessage()).show();
+        }
+    }
+
+    /**
+     * Called when the application exits, deletes the history files and writes the rest of the autosave journal
+     * and of the input trace to disk
+     *
+     * @throws Exception If waiting for the journal is interrupted
+     */
+    @Override
+    public void stop() throws Exception {
+        edits.close();
+        undoneEdits.close();
+        if (journal != null) {
+            journal.close();
+        }
+        if (trace != null) {
+            trace.close();
+        }
+    }
+
+    /**
+     * Main method that launches the application (the jar starts from Launcher, which also has the modes without a
+     * window)
      *
-     * @param args Unused
+     * @param args Command line arguments
      */
     public static void main(String[] args) {
         launch(args);
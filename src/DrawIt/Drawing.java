@@ -0,0 +1,595 @@
+package DrawIt;
+import javafx.scene.paint.Color;
+
+/**
+ * Model of the drawing. Holds the shapes in a ShapeStore (slot number is the paint order) and keeps the spatial
+ * index in sync with every change
+ * <p>
+ * The drawing is changed on the FX thread only. Every change publishes a new snapshot of the store, so any thread
+ * can get a consistent version of the shapes at any time (see snapshot) without locking or copying
+ *
+ * @author Maksym Hanushchak
+ */
+public class Drawing {
+    /**
+     * Cell size of the spatial index (pixels)
+     */
+    static final double CELL_SIZE = 64;
+    /**
+     * Shapes of the drawing
+     */
+    private final ShapeStore store = new ShapeStore();
+    /**
+     * Spatial index over the live shapes
+     */
+    private final ShapeGrid grid = new ShapeGrid(store, CELL_SIZE);
+    /**
+     * Snapshot of the store published after the latest change
+     */
+    private volatile ShapeStore published = store.snapshot();
+    /**
+     * Reusable list for the results of hit-testing
+     */
+    private final IntList candidates = new IntList();
+    /**
+     * Autosave journal that records every change (null if changes are not recorded)
+     */
+    private Journal journal;
+    /**
+     * Slots from this one up are removed records that only the undone edits can bring back (see setReclaimable)
+     */
+    private int reclaimFrom = Integer.MAX_VALUE;
+
+    /**
+     * Setter method for the autosave journal
+     *
+     * @param journal Journal that records every following change, or null
+     */
+    public void setJournal(Journal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Setter method for the first slot that only the undone edits can bring back: the edits that can still be
+     * undone refer to none of the slots from this one up, and they are all removed. A new shape makes the undone
+     * edits impossible to redo, so these slots are dropped before it is added and the new shape gets the first of
+     * them (shapes that were undone do not stay in the store)
+     *
+     * @param from First slot, Integer.MAX_VALUE if there is none
+     */
+    public void setReclaimable(int from) {
+        reclaimFrom = from;
+    }
+
+    /**
+     * Drops the slots that only the undone edits can bring back (see setReclaimable). Adding shapes does this, a
+     * change that has to know its first slot in advance calls it itself
+     *
+     * @return True if slots were dropped, the undone edits must be dropped then too
+     */
+    public boolean reclaim() {
+        boolean dropped = reclaimFrom < store.size();
+        if (dropped) {
+            truncate(reclaimFrom);
+            if (journal != null) {
+                journal.logTruncate(reclaimFrom);
+            }
+        }
+        reclaimFrom = Integer.MAX_VALUE;
+        return dropped;
+    }
+
+    /**
+     * Drops removed records at the end of the store (see ShapeStore.truncate), they are not in the spatial index
+     *
+     * @param size Number of slots that are kept
+     */
+    void truncate(int size) {
+        store.truncate(size);
+        publish();
+    }
+
+    /**
+     * Adds a copy of the shape on top of the drawing
+     *
+     * @param s Shape
+     * @return Slot of the added shape
+     */
+    public int add(Shape s) {
+        reclaim();
+        int colors = store.getPalette().size();
+        int slot = store.add(s);
+        grid.insert(slot);
+        if (journal != null) {
+            logColors(colors); // The color was new
+            journal.logAdd(store, slot);
+            compactIfDue();
+        }
+        publish();
+        return slot;
+    }
+
+    /**
+     * Adds a record on top of the drawing (used when a journal is replayed, so it is not recorded)
+     *
+     * @param kind  Kind of the shape
+     * @param sx    Shape's x coordinate
+     * @param sy    Shape's y coordinate
+     * @param ex    Shape's end x coordinate
+     * @param ey    Shape's end y coordinate
+     * @param width Stroke width
+     * @param color Palette index of the color
+     * @return Slot of the added shape
+     */
+    int addRecord(byte kind, float sx, float sy, float ex, float ey, float width, int color) {
+        int slot = store.add(kind, sx, sy, ex, ey, width, color);
+        grid.insert(slot);
+        return slot;
+    }
+
+    /**
+     * Adds the records that were appended to the store directly (bulk loading) to the spatial index. Bulk loads
+     * are not recorded by the journal, a compaction or recordAdded has to follow them
+     *
+     * @param from Slot of the first appended record
+     */
+    public void indexFrom(int from) {
+        indexRange(from, store.size());
+    }
+
+    /**
+     * Adds the records of a range of slots that were filled in the store directly (see ShapeStore.fill) to the
+     * spatial index. Like indexFrom, this is not recorded by the journal
+     *
+     * @param from Slot of the first record
+     * @param to   Slot after the last record
+     */
+    public void indexRange(int from, int to) {
+        for (int slot = store.nextLive(from); slot >= 0 && slot < to; slot = store.nextLive(slot + 1)) {
+            grid.insert(slot);
+        }
+        publish();
+    }
+
+    /**
+     * Adds a batch of shapes on top of the drawing in one pass, with one published snapshot. The journal records
+     * every shape of the batch, so the record grows with the batch and not with the drawing
+     *
+     * @param batch Shapes
+     * @return Slot of the first added shape, the others follow it
+     */
+    public int addBatch(ShapeBatch batch) {
+        int colors = store.getPalette().size();
+        int from = appendBatch(batch);
+        recordAdded(from, colors);
+        return from;
+    }
+
+    /**
+     * Records the shapes that were added after a slot without being recorded (see appendBatch), and the colors
+     * that were appended to the palette with them
+     *
+     * @param from   Slot of the first added shape, the others follow it
+     * @param colors Size of the palette before the shapes were added
+     */
+    public void recordAdded(int from, int colors) {
+        if (journal != null) {
+            logColors(colors);
+            journal.logAddRange(store, from, store.size());
+            compactIfDue();
+        }
+    }
+
+    /**
+     * Finds the palette index of a color and records the color if it is appended to the palette (the shapes that
+     * get it are recorded later)
+     *
+     * @param color Color
+     * @return Palette index
+     */
+    public int intern(Color color) {
+        int colors = store.getPalette().size();
+        int index = store.getPalette().intern(color);
+        if (journal != null) {
+            logColors(colors);
+        }
+        return index;
+    }
+
+    /**
+     * Records the colors that were appended to the palette
+     *
+     * @param from Size of the palette before they were appended
+     */
+    private void logColors(int from) {
+        Palette palette = store.getPalette();
+        for (int i = from; i < palette.size(); i++) {
+            journal.logColor(palette.get(i));
+        }
+    }
+
+    /**
+     * Adds a batch of shapes on top of the drawing without recording it (imports record it when they end)
+     *
+     * @param batch Shapes
+     * @return Slot of the first added shape
+     */
+    int appendBatch(ShapeBatch batch) {
+        reclaim();
+        int from = batch.appendTo(store);
+        indexFrom(from);
+        return from;
+    }
+
+    /**
+     * Removes the live shapes of a range of slots (see BatchEdit), with one published snapshot
+     *
+     * @param from Slot of the first shape
+     * @param to   Slot after the last shape
+     */
+    public void removeRange(int from, int to) {
+        for (int slot = to - 1; slot >= from; slot--) { // Newest first, they are at the ends of the grid's cells
+            if (store.isLive(slot)) {
+                grid.remove(slot);
+                store.setLive(slot, false);
+            }
+        }
+        if (journal != null) {
+            journal.logLiveRange(from, to, false);
+            compactIfDue();
+        }
+        publish();
+    }
+
+    /**
+     * Puts back all the shapes of a range of slots (see BatchEdit), with one published snapshot
+     *
+     * @param from Slot of the first shape
+     * @param to   Slot after the last shape
+     */
+    public void restoreRange(int from, int to) {
+        for (int slot = from; slot < to; slot++) {
+            if (!store.isLive(slot)) {
+                store.setLive(slot, true);
+                grid.insert(slot);
+            }
+        }
+        if (journal != null) {
+            journal.logLiveRange(from, to, true);
+            compactIfDue();
+        }
+        publish();
+    }
+
+    /**
+     * Changes the geometry and the style of shapes in place (see TransformEdit), with one published snapshot. The
+     * shapes keep their slots, so their place in paint order does not change. Shapes that end up in other cells
+     * of the spatial index are taken out of it before the change and put back after it, the others stay
+     *
+     * @param slots      Slots of the shapes in paint order
+     * @param xs         New x coordinates (sx and ex of every shape)
+     * @param ys         New y coordinates (sy and ey of every shape)
+     * @param widths     New stroke widths
+     * @param colors     New palette indices
+     * @param pathStarts New starts of the points of pencil records (see ShapeStore.setPathStart), -1 for the other
+     *                   shapes; null if there are no pencil records
+     */
+    public void reshape(IntList slots, float[] xs, float[] ys, float[] widths, int[] colors, int[] pathStarts) {
+        reshapeRecords(slots, xs, ys, widths, colors, pathStarts);
+        if (journal != null) {
+            journal.logReshape(store, slots, pathStarts);
+            compactIfDue();
+        }
+        publish();
+    }
+
+    /**
+     * Removes or puts back shapes and changes the geometry of others in one step (see CompactEdit), with one
+     * published snapshot. The two lists must not share slots
+     *
+     * @param dropped Slots of the shapes that are removed or put back
+     * @param isLive  True if the dropped shapes are put back, false if they are removed
+     * @param slots   Slots of the changed shapes in paint order
+     * @param xs      New x coordinates (sx and ex of every changed shape)
+     * @param ys      New y coordinates (sy and ey of every changed shape)
+     * @param widths  New stroke widths
+     * @param colors  New palette indices
+     */
+    public void rewrite(IntList dropped, boolean isLive, IntList slots, float[] xs, float[] ys, float[] widths, int[] colors) {
+        reshapeRecords(slots, xs, ys, widths, colors, null);
+        setLiveRecords(dropped, isLive);
+        if (journal != null) {
+            journal.logRewrite(store, dropped, isLive, slots);
+            compactIfDue();
+        }
+        publish();
+    }
+
+    /**
+     * Changes the geometry and the style of shapes in place and moves them in the spatial index where needed,
+     * without recording or publishing the change (see reshape)
+     *
+     * @param slots      Slots of the shapes in paint order
+     * @param xs         New x coordinates
+     * @param ys         New y coordinates
+     * @param widths     New stroke widths
+     * @param colors     New palette indices
+     * @param pathStarts New starts of the points of pencil records, or null
+     */
+    private void reshapeRecords(IntList slots, float[] xs, float[] ys, float[] widths, int[] colors, int[] pathStarts) {
+        boolean[] moved = new boolean[slots.size()];
+        IntList removed = new IntList();
+        for (int i = 0; i < slots.size(); i++) {
+            int slot = slots.get(i);
+            double margin = Shape.margin(widths[i]); // The bounding box as ShapeStore.getMinX finds it
+            if (store.isLive(slot) && grid.changesCells(slot, Math.min(xs[i * 2], xs[i * 2 + 1]) - margin,
+                    Math.min(ys[i * 2], ys[i * 2 + 1]) - margin, Math.max(xs[i * 2], xs[i * 2 + 1]) + margin,
+                    Math.max(ys[i * 2], ys[i * 2 + 1]) + margin)) {
+                removed.add(slot);
+                moved[i] = true;
+            }
+        }
+        grid.removeAll(removed);
+        for (int i = 0; i < slots.size(); i++) {
+            int slot = slots.get(i);
+            store.setGeometry(slot, xs[i * 2], ys[i * 2], xs[i * 2 + 1], ys[i * 2 + 1], widths[i]);
+            if (store.getColor(slot) != colors[i]) {
+                store.setColor(slot, colors[i]);
+            }
+            if (pathStarts != null && pathStarts[i] >= 0) {
+                store.setPathStart(slot, pathStarts[i]);
+            }
+            if (moved[i]) {
+                grid.insert(slot);
+            }
+        }
+    }
+
+    /**
+     * Removes or puts back shapes and updates the spatial index in one pass over it, without recording or
+     * publishing the change
+     *
+     * @param slots  Slots of the shapes
+     * @param isLive True if the shapes are put back, false if they are removed
+     * @return Slots of the shapes that changed (the others already were in that state)
+     */
+    private IntList setLiveRecords(IntList slots, boolean isLive) {
+        IntList changed = new IntList(slots.size());
+        for (int i = 0; i < slots.size(); i++) {
+            int slot = slots.get(i);
+            if (store.isLive(slot) != isLive) { // A slot that is listed twice changes once
+                store.setLive(slot, isLive);
+                changed.add(slot);
+            }
+        }
+        if (!isLive) {
+            grid.removeAll(changed);
+        } else {
+            for (int i = 0; i < changed.size(); i++) {
+                grid.insert(changed.get(i));
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Removes several shapes (see ClearEdit, EraseEdit), with one pass over the spatial index, one published
+     * snapshot and one journal record
+     *
+     * @param slots Slots of the shapes
+     */
+    public void removeAll(IntList slots) {
+        setLiveAll(slots, false);
+    }
+
+    /**
+     * Puts several removed shapes back (see removeAll)
+     *
+     * @param slots Slots of the shapes
+     */
+    public void restoreAll(IntList slots) {
+        setLiveAll(slots, true);
+    }
+
+    /**
+     * Removes or puts back several shapes, records the change and publishes it
+     *
+     * @param slots  Slots of the shapes
+     * @param isLive True if the shapes are put back, false if they are removed
+     */
+    private void setLiveAll(IntList slots, boolean isLive) {
+        IntList changed = setLiveRecords(slots, isLive);
+        if (changed.isEmpty()) {
+            return;
+        }
+        if (journal != null) {
+            journal.logLiveAll(changed, isLive);
+            compactIfDue();
+        }
+        publish();
+    }
+
+    /**
+     * Removes a shape from the drawing. The shape keeps its slot, so it can be restored later
+     *
+     * @param slot Slot of the shape
+     */
+    public void remove(int slot) {
+        if (store.isLive(slot)) {
+            grid.remove(slot);
+            store.setLive(slot, false);
+            if (journal != null) {
+                journal.logRemove(slot);
+                compactIfDue();
+            }
+            publish();
+        }
+    }
+
+    /**
+     * Puts a removed shape back to its place in paint order
+     *
+     * @param slot Slot of the shape
+     */
+    public void restore(int slot) {
+        if (!store.isLive(slot)) {
+            store.setLive(slot, true);
+            grid.insert(slot);
+            if (journal != null) {
+                journal.logRestore(slot);
+                compactIfDue();
+            }
+            publish();
+        }
+    }
+
+    /**
+     * Replaces the first palette entries with one color (see Palette.fill)
+     *
+     * @param count Number of entries
+     * @param color New color
+     */
+    public void fillPalette(int count, Color color) {
+        store.getPalette().fill(count, color);
+        if (journal != null) {
+            journal.logFill(count, color);
+            compactIfDue();
+        }
+        publish();
+    }
+
+    /**
+     * Puts back saved palette entries (see Palette.setColors)
+     *
+     * @param saved Saved entries
+     */
+    public void setPalette(Color[] saved) {
+        store.getPalette().setColors(saved);
+        if (journal != null) {
+            journal.logSetColors(saved);
+            compactIfDue();
+        }
+        publish();
+    }
+
+    /**
+     * Makes the current state of the store visible to other threads
+     */
+    private void publish() {
+        published = store.snapshot();
+    }
+
+    /**
+     * Getter method for the version of the shapes after the latest change. It takes constant time and can be
+     * called from any thread; the snapshot does not change, so it can be rendered or written while the user keeps
+     * drawing. The spatial index is not part of it
+     *
+     * @return Read-only snapshot of the store
+     */
+    public ShapeStore snapshot() {
+        return published;
+    }
+
+    /**
+     * Starts a compaction of the journal when it has grown enough
+     */
+    private void compactIfDue() {
+        if (journal.isCompactionDue()) {
+            journal.compact(store);
+        }
+    }
+
+    /**
+     * Finds the shapes whose bounding boxes overlap the region
+     *
+     * @param minX Left edge of the region
+     * @param minY Top edge of the region
+     * @param maxX Right edge of the region
+     * @param maxY Bottom edge of the region
+     * @param out  List that receives the slots in paint order
+     */
+    public void query(double minX, double minY, double maxX, double maxY, IntList out) {
+        grid.query(minX, minY, maxX, maxY, out);
+    }
+
+    /**
+     * Estimates how many shapes query would find in the region, without finding them (see ShapeGrid.count)
+     *
+     * @param minX Left edge of the region
+     * @param minY Top edge of the region
+     * @param maxX Right edge of the region
+     * @param maxY Bottom edge of the region
+     * @return Upper bound of the number of shapes
+     */
+    public long count(double minX, double minY, double maxX, double maxY) {
+        return grid.count(minX, minY, maxX, maxY);
+    }
+
+    /**
+     * Getter method for the number of cells of the spatial index that hold shapes
+     *
+     * @return Number of cells
+     */
+    public int cellCount() {
+        return grid.cellCount();
+    }
+
+    /**
+     * Finds the shapes whose strokes are touched by a circle, for example the eraser
+     *
+     * @param x      X coordinate of the circle's center
+     * @param y      Y coordinate of the circle's center
+     * @param radius Circle's radius
+     * @param out    List that receives the slots in paint order
+     */
+    public void hitTest(double x, double y, double radius, IntList out) {
+        candidates.clear();
+        grid.query(x - radius, y - radius, x + radius, y + radius, candidates);
+        for (int i = 0; i < candidates.size(); i++) {
+            int slot = candidates.get(i);
+            if (store.hits(slot, x, y, radius)) {
+                out.add(slot);
+            }
+        }
+    }
+
+    /**
+     * Getter method for the store that holds the shapes
+     *
+     * @return Shape store
+     */
+    public ShapeStore getStore() {
+        return store;
+    }
+
+    /**
+     * Getter method for the number of shapes
+     *
+     * @return Number of live shapes
+     */
+    public int size() {
+        return store.liveCount();
+    }
+
+    /**
+     * Checks whether the drawing has no shapes
+     *
+     * @return True if there are no shapes
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Removes all the shapes
+     */
+    public void clear() {
+        reclaimFrom = Integer.MAX_VALUE;
+        store.clear();
+        grid.clear();
+        if (journal != null) {
+            journal.logClear();
+        }
+        publish();
+    }
+}
@@ -0,0 +1,701 @@
+package DrawIt;
+import javafx.scene.paint.Color;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads and writes drawing files. A file starts with a header (magic number, version, canvas size), then the
+ * palette (ARGB colors), the chunk index and then one fixed-width record per shape: kind (1 byte), four coordinates
+ * and the stroke width (floats) and the palette index of the color (int). Only live shapes are written
+ * <p>
+ * The records are grouped into chunks of CHUNK_SIZE records. The chunk index holds the bounding box of every chunk,
+ * records of a chunk can be found from its number alone because all the records have the same size. Files of
+ * version 1 have no chunk index
+ * <p>
+ * Pencil records hold the bounding box of the stroke, their points come after all the records: for every pencil
+ * record in order, the number of points (int) and the points (x and y floats). The chunk index also holds the
+ * position of the first points of every chunk in this path section. Files before version 3 have no pencil records
+ *
+ * @author Maksym Hanushchak
+ */
+public class DrawingFile {
+    /**
+     * Magic number at the start of every drawing file ("DRWI")
+     */
+    public static final int MAGIC = 0x44525749;
+    /**
+     * Extension of drawing files
+     */
+    public static final String EXTENSION = "drawit";
+    /**
+     * Format version that is written
+     */
+    public static final short VERSION = 3;
+    /**
+     * Size of one shape record (bytes)
+     */
+    public static final int RECORD_SIZE = 1 + 4 * 4 + 4 + 4;
+    /**
+     * Number of records in a chunk
+     */
+    public static final int CHUNK_SIZE = 1 << 16;
+    /**
+     * Size of one chunk index entry: bounding box of the chunk and position of its points (bytes)
+     */
+    public static final int CHUNK_ENTRY_SIZE = 4 * 4 + 8;
+    /**
+     * Size of one chunk index entry of version 2 files (bounding box only)
+     */
+    private static final int V2_CHUNK_ENTRY_SIZE = 4 * 4;
+    /**
+     * Size of the part of the path section that is mapped at once (bytes)
+     */
+    private static final int PATH_WINDOW = 1 << 24;
+    /**
+     * Largest number of points of one pencil record
+     */
+    private static final int MAX_PATH_SIZE = 1 << 24;
+
+    /**
+     * Drawing read from a file: its shapes and canvas size
+     */
+    public static class Document {
+        /**
+         * Shapes of the drawing
+         */
+        public final ShapeStore store;
+        /**
+         * Canvas size (pixels)
+         */
+        public final double width, height;
+
+        /**
+         * Document constructor
+         *
+         * @param store  Shapes of the drawing
+         * @param width  Canvas width
+         * @param height Canvas height
+         */
+        Document(ShapeStore store, double width, double height) {
+            this.store = store;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    /**
+     * Writes the live shapes of a store to a file
+     *
+     * @param store  Shapes
+     * @param width  Canvas width
+     * @param height Canvas height
+     * @param file   File to write
+     * @throws IOException If the file cannot be written
+     */
+    public static void write(ShapeStore store, double width, double height, Path file) throws IOException {
+        write(store, width, height, file, false);
+    }
+
+    /**
+     * Writes the shapes of a store to a file
+     *
+     * @param store   Shapes
+     * @param width   Canvas width
+     * @param height  Canvas height
+     * @param file    File to write
+     * @param removed True to write the removed records too, so the records keep their slots (see Journal)
+     * @throws IOException If the file cannot be written
+     */
+    static void write(ShapeStore store, double width, double height, Path file, boolean removed) throws IOException {
+        int count = removed ? store.size() : store.liveCount();
+        int chunks = (count + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        float[] bounds = new float[chunks * 4]; // The index comes before the records, so it is computed first
+        long[] pathOffsets = new long[chunks];
+        long pathBytes = 0;
+        int i = 0;
+        for (int slot = next(store, 0, removed); slot >= 0; slot = next(store, slot + 1, removed), i++) {
+            int b = i / CHUNK_SIZE * 4;
+            if (i % CHUNK_SIZE == 0) {
+                bounds[b] = bounds[b + 1] = Float.POSITIVE_INFINITY;
+                bounds[b + 2] = bounds[b + 3] = Float.NEGATIVE_INFINITY;
+                pathOffsets[i / CHUNK_SIZE] = pathBytes;
+            }
+            if (store.getKind(slot) == ShapeStore.PENCIL) {
+                pathBytes += 4 + 8L * store.getPathSize(slot);
+            }
+            bounds[b] = Math.min(bounds[b], (float) store.getMinX(slot));
+            bounds[b + 1] = Math.min(bounds[b + 1], (float) store.getMinY(slot));
+            bounds[b + 2] = Math.max(bounds[b + 2], (float) store.getMaxX(slot));
+            bounds[b + 3] = Math.max(bounds[b + 3], (float) store.getMaxY(slot));
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeFloat((float) width);
+            out.writeFloat((float) height);
+            Palette palette = store.getPalette();
+            out.writeInt(palette.size());
+            for (int c = 0; c < palette.size(); c++) {
+                out.writeInt(RasterRenderer.toArgb(palette.get(c)));
+            }
+            out.writeInt(count);
+            out.writeInt(chunks);
+            for (int c = 0; c < chunks; c++) {
+                for (int b = 0; b < 4; b++) {
+                    out.writeFloat(bounds[c * 4 + b]);
+                }
+                out.writeLong(pathOffsets[c]);
+            }
+            for (int slot = next(store, 0, removed); slot >= 0; slot = next(store, slot + 1, removed)) {
+                out.writeByte(store.getKind(slot));
+                for (int c = 0; c < 4; c++) {
+                    out.writeFloat(store.getCoord(slot, c));
+                }
+                out.writeFloat(store.getWidth(slot));
+                out.writeInt(store.getColor(slot));
+            }
+            for (int slot = next(store, 0, removed); slot >= 0; slot = next(store, slot + 1, removed)) {
+                if (store.getKind(slot) == ShapeStore.PENCIL) {
+                    int size = store.getPathSize(slot);
+                    out.writeInt(size);
+                    for (int c = 0; c < size * 2; c++) {
+                        out.writeFloat(store.getPathCoord(slot, c));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the next record to write
+     *
+     * @param store   Shapes
+     * @param from    First slot to check
+     * @param removed True if removed records are written too
+     * @return Slot of the next record or -1 if there is none
+     */
+    private static int next(ShapeStore store, int from, boolean removed) {
+        if (removed) {
+            return from < store.size() ? from : -1;
+        }
+        return store.nextLive(from);
+    }
+
+    /**
+     * Reads a drawing file record by record through a buffered stream
+     *
+     * @param file File to read
+     * @return Drawing read from the file
+     * @throws IOException If the file cannot be read or is not a drawing file
+     */
+    public static Document read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a drawing file");
+            }
+            short version = in.readShort();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported drawing file version " + version);
+            }
+            double width = in.readFloat(), height = in.readFloat();
+            int[] colors = new int[in.readInt()];
+            for (int i = 0; i < colors.length; i++) {
+                colors[i] = in.readInt();
+            }
+            int count = in.readInt();
+            if (version > 1) { // The chunk index is not needed when the whole file is read
+                int chunks = in.readInt();
+                in.skipBytes(chunks * (version > 2 ? CHUNK_ENTRY_SIZE : V2_CHUNK_ENTRY_SIZE));
+            }
+            ShapeStore store = new ShapeStore(count);
+            Palette palette = store.getPalette();
+            for (int argb : colors) {
+                palette.add(fromArgb(argb));
+            }
+            IntList pencils = new IntList();
+            for (int i = 0; i < count; i++) {
+                byte kind = in.readByte();
+                float sx = in.readFloat(), sy = in.readFloat(), ex = in.readFloat(), ey = in.readFloat();
+                float w = in.readFloat();
+                int color = in.readInt();
+                if (!isValid(kind, color, palette.size(), version)) {
+                    throw new IOException("Corrupted shape record " + i + " in " + file);
+                }
+                int slot = store.add(kind, sx, sy, ex, ey, w, color);
+                if (kind == ShapeStore.PENCIL) { // Its points come after the records
+                    pencils.add(slot);
+                }
+            }
+            float[] points = new float[0];
+            for (int i = 0; i < pencils.size(); i++) {
+                int size = in.readInt();
+                if (size <= 0 || size > MAX_PATH_SIZE) {
+                    throw new IOException("Corrupted pencil points in " + file);
+                }
+                if (points.length < size * 2) {
+                    points = new float[size * 2];
+                }
+                for (int c = 0; c < size * 2; c++) {
+                    points[c] = in.readFloat();
+                }
+                store.setPath(pencils.get(i), points, 0, size);
+            }
+            return new Document(store, width, height);
+        }
+    }
+
+    /**
+     * Checks the kind and the color of a record
+     *
+     * @param kind        Kind of the shape
+     * @param color       Palette index of the color
+     * @param paletteSize Number of colors in the palette
+     * @param version     Version of the file
+     * @return True if the record is valid
+     */
+    private static boolean isValid(byte kind, int color, int paletteSize, short version) {
+        return kind >= 0 && kind < ShapeStore.KINDS && (kind != ShapeStore.PENCIL || version > 2)
+                && color >= 0 && color < paletteSize;
+    }
+
+    /**
+     * Reads a whole drawing file through a memory mapping (see open)
+     *
+     * @param file File to read
+     * @return Drawing read from the file
+     * @throws IOException If the file cannot be read or is not a drawing file
+     */
+    public static Document map(Path file) throws IOException {
+        try (MappedFile mapped = open(file)) {
+            ShapeStore store = new ShapeStore(mapped.getCount());
+            mapped.readPalette(store.getPalette());
+            mapped.read(0, mapped.getCount(), store);
+            return new Document(store, mapped.getWidth(), mapped.getHeight());
+        }
+    }
+
+    /**
+     * Opens a drawing file for reading through memory mappings. Only the header, the palette and the chunk index
+     * are read, records are read later on demand, so opening is fast for any size of the file
+     *
+     * @param file File to open
+     * @return Opened file, it has to be closed
+     * @throws IOException If the file cannot be read or is not a drawing file
+     */
+    public static MappedFile open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new MappedFile(file, channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Drawing file opened for reading through memory mappings. Records are mapped one chunk at a time, so files
+     * bigger than a single mapping can be read
+     */
+    public static class MappedFile implements Closeable {
+        /**
+         * Opened file
+         */
+        private final Path file;
+        /**
+         * Channel of the file
+         */
+        private final FileChannel channel;
+        /**
+         * Canvas size (pixels)
+         */
+        private final float width, height;
+        /**
+         * Palette of the drawing (ARGB)
+         */
+        private final int[] colors;
+        /**
+         * Number of records
+         */
+        private final int count;
+        /**
+         * Bounding boxes of the chunks (null for files without chunk index)
+         */
+        private final float[] bounds;
+        /**
+         * Format version of the file
+         */
+        private final short version;
+        /**
+         * Position of the first points of every chunk in the path section (null for files before version 3)
+         */
+        private final long[] pathOffsets;
+        /**
+         * Size of the file (bytes)
+         */
+        private final long fileSize;
+        /**
+         * Position of the first record in the file
+         */
+        private final long recordsOffset;
+        /**
+         * Position of the path section in the file
+         */
+        private final long pathsOffset;
+        /**
+         * Number of the record whose points are at pathPosition (-1 if not known)
+         */
+        private int pathRecord = -1;
+        /**
+         * Position of the points of record pathRecord in the file
+         */
+        private long pathPosition;
+        /**
+         * Mapping of a part of the path section
+         */
+        private MappedByteBuffer pathWindow;
+        /**
+         * Position of the mapped part of the path section in the file
+         */
+        private long pathWindowStart;
+        /**
+         * Reusable buffer for the points of one record
+         */
+        private float[] points = new float[0];
+        /**
+         * Mapping of the chunk that was read last
+         */
+        private MappedByteBuffer mapping;
+        /**
+         * Number of the chunk that is mapped (-1 if none)
+         */
+        private int mappedChunk = -1;
+
+        /**
+         * MappedFile constructor
+         *
+         * @param file    Opened file
+         * @param channel Channel of the file
+         * @throws IOException If the file is not a drawing file
+         */
+        private MappedFile(Path file, FileChannel channel) throws IOException {
+            this.file = file;
+            this.channel = channel;
+            long size = channel.size();
+            fileSize = size;
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, 18));
+            if (header.remaining() < 18 || header.getInt() != MAGIC) {
+                throw new IOException(file + " is not a drawing file");
+            }
+            version = header.getShort();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported drawing file version " + version);
+            }
+            width = header.getFloat();
+            height = header.getFloat();
+            int paletteSize = header.getInt();
+            long position = 18;
+            if (paletteSize < 0 || position + paletteSize * 4L + 8 > size) {
+                throw new IOException("Corrupted palette in " + file);
+            }
+
+            ByteBuffer palette = channel.map(FileChannel.MapMode.READ_ONLY, position, paletteSize * 4L + 8);
+            colors = new int[paletteSize];
+            for (int i = 0; i < paletteSize; i++) {
+                colors[i] = palette.getInt();
+            }
+            count = palette.getInt();
+            int chunks = version > 1 ? palette.getInt() : 0;
+            position += paletteSize * 4L + (version > 1 ? 8 : 4);
+            if (count < 0 || (version > 1 && chunks != (count + CHUNK_SIZE - 1) / CHUNK_SIZE)) {
+                throw new IOException("Corrupted header in " + file);
+            }
+
+            int entrySize = version > 2 ? CHUNK_ENTRY_SIZE : V2_CHUNK_ENTRY_SIZE;
+            if (version > 1) {
+                if (position + (long) chunks * entrySize > size) {
+                    throw new IOException(file + " is truncated");
+                }
+                ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, position, (long) chunks * entrySize);
+                bounds = new float[chunks * 4];
+                pathOffsets = version > 2 ? new long[chunks] : null;
+                for (int c = 0; c < chunks; c++) {
+                    for (int b = 0; b < 4; b++) {
+                        bounds[c * 4 + b] = index.getFloat();
+                    }
+                    if (pathOffsets != null) {
+                        pathOffsets[c] = index.getLong();
+                    }
+                }
+                position += (long) chunks * entrySize;
+            } else {
+                bounds = null;
+                pathOffsets = null;
+            }
+            recordsOffset = position;
+            pathsOffset = recordsOffset + (long) count * RECORD_SIZE;
+            if (pathsOffset > size) {
+                throw new IOException(file + " is truncated");
+            }
+        }
+
+        /**
+         * Getter method for the canvas width
+         *
+         * @return Canvas width
+         */
+        public double getWidth() {
+            return width;
+        }
+
+        /**
+         * Getter method for the canvas height
+         *
+         * @return Canvas height
+         */
+        public double getHeight() {
+            return height;
+        }
+
+        /**
+         * Getter method for the number of records
+         *
+         * @return Number of records
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * Getter method for the number of chunks
+         *
+         * @return Number of chunks
+         */
+        public int getChunks() {
+            return (count + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        }
+
+        /**
+         * Checks whether a chunk may have shapes in the region. Files without chunk index may have shapes anywhere
+         *
+         * @param chunk Number of the chunk
+         * @param minX  Left edge of the region
+         * @param minY  Top edge of the region
+         * @param maxX  Right edge of the region
+         * @param maxY  Bottom edge of the region
+         * @return True if the bounding box of the chunk overlaps the region
+         */
+        public boolean intersects(int chunk, double minX, double minY, double maxX, double maxY) {
+            if (bounds == null) {
+                return true;
+            }
+            int b = chunk * 4;
+            return bounds[b] <= maxX && bounds[b + 2] >= minX && bounds[b + 1] <= maxY && bounds[b + 3] >= minY;
+        }
+
+        /**
+         * Checks whether the chunks can be read in any order: the chunk index has the position of the points of
+         * every chunk since version 3, older files have to be read in order
+         *
+         * @return True if the file has the positions
+         */
+        public boolean isSeekable() {
+            return pathOffsets != null;
+        }
+
+        /**
+         * Appends the colors of the file to an empty palette, so the palette indices of the records are right
+         *
+         * @param palette Palette
+         */
+        public void readPalette(Palette palette) {
+            for (int argb : colors) {
+                palette.add(fromArgb(argb));
+            }
+        }
+
+        /**
+         * Appends records to a store whose palette was filled by readPalette
+         *
+         * @param first Number of the first record
+         * @param n     Number of records
+         * @param store Store that receives the records
+         * @return Slot of the first appended record
+         * @throws IOException If a record is corrupted
+         */
+        public int read(int first, int n, ShapeStore store) throws IOException {
+            int firstSlot = store.size();
+            read(first, n, store, -1);
+            return firstSlot;
+        }
+
+        /**
+         * Fills reserved records of a store (see ShapeStore.reserve) whose palette was filled by readPalette. Chunks
+         * can be read in any order if the file isSeekable
+         *
+         * @param first Number of the first record
+         * @param n     Number of records
+         * @param store Store that receives the records
+         * @param slot  Slot of the reserved record that receives the first record
+         * @throws IOException If a record is corrupted
+         */
+        public void readInto(int first, int n, ShapeStore store, int slot) throws IOException {
+            read(first, n, store, slot);
+        }
+
+        /**
+         * Appends records to a store or fills its reserved records
+         *
+         * @param first Number of the first record
+         * @param n     Number of records
+         * @param store Store that receives the records
+         * @param into  Slot of the reserved record that receives the first record, -1 to append
+         * @throws IOException If a record is corrupted
+         */
+        private void read(int first, int n, ShapeStore store, int into) throws IOException {
+            if (first < 0 || n < 0 || first + n > count) {
+                throw new IndexOutOfBoundsException("Records " + first + "-" + (first + n) + " of " + count);
+            }
+            for (int i = first, end = first + n; i < end; ) {
+                int chunk = i / CHUNK_SIZE;
+                ByteBuffer records = map(chunk);
+                int to = Math.min(end, (chunk + 1) * CHUNK_SIZE);
+                if (pathOffsets != null && pathRecord != i) {
+                    seekPath(chunk, i, records);
+                }
+                records.position((i - chunk * CHUNK_SIZE) * RECORD_SIZE);
+                for (; i < to; i++) {
+                    byte kind = records.get();
+                    float sx = records.getFloat(), sy = records.getFloat(), ex = records.getFloat(), ey = records.getFloat();
+                    float w = records.getFloat();
+                    int color = records.getInt();
+                    if (!isValid(kind, color, colors.length, version)) {
+                        throw new IOException("Corrupted shape record " + i + " in " + file);
+                    }
+                    int slot;
+                    if (into < 0) {
+                        slot = store.add(kind, sx, sy, ex, ey, w, color);
+                    } else {
+                        slot = into + i - first;
+                        store.fill(slot, kind, sx, sy, ex, ey, w, color);
+                    }
+                    if (kind == ShapeStore.PENCIL) {
+                        int size = pathSize();
+                        mapPath(pathPosition + 4, size * 8).asFloatBuffer().get(points, 0, size * 2);
+                        store.setPath(slot, points, 0, size);
+                        pathPosition += 4 + 8L * size;
+                    }
+                    pathRecord = i + 1;
+                }
+            }
+        }
+
+        /**
+         * Finds the points of a record: starts at the first points of its chunk and skips the points of the pencil
+         * records before it. Records are usually read in order, then this is not needed
+         *
+         * @param chunk   Number of the chunk of the record
+         * @param record  Number of the record
+         * @param records Mapped records of the chunk
+         * @throws IOException If the path section is corrupted
+         */
+        private void seekPath(int chunk, int record, ByteBuffer records) throws IOException {
+            pathPosition = pathsOffset + pathOffsets[chunk];
+            for (int r = chunk * CHUNK_SIZE; r < record; r++) {
+                if (records.get((r - chunk * CHUNK_SIZE) * RECORD_SIZE) == ShapeStore.PENCIL) {
+                    pathPosition += 4 + 8L * pathSize();
+                }
+            }
+            pathRecord = record;
+        }
+
+        /**
+         * Reads the number of points at pathPosition and makes sure the buffer of points can hold them
+         *
+         * @return Number of points
+         * @throws IOException If the number is corrupted
+         */
+        private int pathSize() throws IOException {
+            int size = mapPath(pathPosition, 4).getInt();
+            if (size <= 0 || size > MAX_PATH_SIZE || pathPosition + 4 + 8L * size > fileSize) {
+                throw new IOException("Corrupted pencil points in " + file);
+            }
+            if (points.length < size * 2) {
+                points = new float[size * 2];
+            }
+            return size;
+        }
+
+        /**
+         * Maps a part of the path section. The mapping covers PATH_WINDOW bytes, so the points of many records are
+         * read from one mapping
+         *
+         * @param position Position in the file
+         * @param length   Number of bytes that are needed
+         * @return Mapping positioned at the bytes
+         * @throws IOException If the file cannot be mapped or is too short
+         */
+        private ByteBuffer mapPath(long position, int length) throws IOException {
+            if (position + length > fileSize) {
+                throw new IOException(file + " is truncated");
+            }
+            if (pathWindow == null || position < pathWindowStart || position + length > pathWindowStart + pathWindow.capacity()) {
+                pathWindowStart = position;
+                pathWindow = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(fileSize - position, Math.max(PATH_WINDOW, length)));
+            }
+            pathWindow.position((int) (position - pathWindowStart));
+            return pathWindow;
+        }
+
+        /**
+         * Maps the records of a chunk, the mapping of the last chunk is reused
+         *
+         * @param chunk Number of the chunk
+         * @return Mapped records
+         * @throws IOException If the file cannot be mapped
+         */
+        private ByteBuffer map(int chunk) throws IOException {
+            if (chunk != mappedChunk) {
+                int n = Math.min(CHUNK_SIZE, count - chunk * CHUNK_SIZE);
+                mapping = channel.map(FileChannel.MapMode.READ_ONLY, recordsOffset + (long) chunk * CHUNK_SIZE * RECORD_SIZE, (long) n * RECORD_SIZE);
+                mappedChunk = chunk;
+            }
+            return mapping;
+        }
+
+        /**
+         * Closes the file (mapped records stay readable until they are garbage collected)
+         *
+         * @throws IOException If the file cannot be closed
+         */
+        @Override
+        public void close() throws IOException {
+            mapping = null;
+            mappedChunk = -1;
+            pathWindow = null;
+            pathRecord = -1;
+            channel.close();
+        }
+    }
+
+    /**
+     * Converts an ARGB value to a color
+     *
+     * @param argb ARGB value
+     * @return Color
+     */
+    public static Color fromArgb(int argb) {
+        return Color.rgb((argb >> 16) & 0xff, (argb >> 8) & 0xff, argb & 0xff, ((argb >>> 24) & 0xff) / 255.0);
+    }
+}
@@ -0,0 +1,165 @@
+package DrawIt;
+import javafx.animation.AnimationTimer;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Loads an opened drawing file into the drawing a few thousand records at a time. Every pulse gets a small time
+ * budget, the loaded records are drawn right away, so the first frame is shown at once and the window stays
+ * responsive while big files are loading
+ * <p>
+ * The chunks whose bounding boxes (from the chunk index of the file) overlap the view are loaded first, so the first
+ * frames show what is in view. The slots of all the records are reserved up front and every record is loaded into
+ * the slot of its paint order. The chunks that are loaded later are out of view, so drawing them on top of the
+ * canvas cannot cover a shape that is above them in paint order
+ *
+ * @author Maksym Hanushchak
+ */
+public class DrawingLoader {
+    /**
+     * Time that a pulse may spend loading (nanoseconds)
+     */
+    private static final long FRAME_BUDGET = 8_000_000L;
+    /**
+     * Number of records read at a time
+     */
+    private static final int STEP = 4096;
+    /**
+     * File that is loaded
+     */
+    private final DrawingFile.MappedFile file;
+    /**
+     * Drawing that receives the shapes
+     */
+    private final Drawing drawing;
+    /**
+     * Repaint engine of the main canvas
+     */
+    private final RepaintEngine engine;
+    /**
+     * Called on the FX thread when loading ends, with the error that stopped it or null
+     */
+    private final Consumer<IOException> onFinished;
+    /**
+     * Chunks of the file in the order they are loaded
+     */
+    private final IntList order = new IntList();
+    /**
+     * Index of the chunk that is loading in 'order'
+     */
+    private int chunk;
+    /**
+     * Number of the next record to read
+     */
+    private int next;
+    /**
+     * Slot reserved for the first record
+     */
+    private int base;
+    /**
+     * Number of records that are loaded
+     */
+    private int loaded;
+    /**
+     * True when loading has ended
+     */
+    private boolean finished;
+    /**
+     * Timer that loads records on every pulse
+     */
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            step();
+        }
+    };
+
+    /**
+     * DrawingLoader constructor
+     *
+     * @param file       Opened drawing file, it is closed when loading ends
+     * @param drawing    Empty drawing that receives the shapes
+     * @param engine     Repaint engine of the main canvas
+     * @param onFinished Called when loading ends, with the error that stopped it or null
+     */
+    DrawingLoader(DrawingFile.MappedFile file, Drawing drawing, RepaintEngine engine, Consumer<IOException> onFinished) {
+        this.file = file;
+        this.drawing = drawing;
+        this.engine = engine;
+        this.onFinished = onFinished;
+    }
+
+    /**
+     * Starts loading
+     */
+    public void start() {
+        ShapeStore store = drawing.getStore();
+        file.readPalette(store.getPalette());
+        base = store.reserve(file.getCount());
+        Viewport view = engine.getViewport();
+        double minX = view.toWorldX(0), minY = view.toWorldY(0);
+        double maxX = view.toWorldX(view.getWidth()), maxY = view.toWorldY(view.getHeight());
+        for (int c = 0; c < file.getChunks(); c++) {
+            if (!file.isSeekable() || file.intersects(c, minX, minY, maxX, maxY)) {
+                order.add(c);
+            }
+        }
+        for (int c = 0; c < file.getChunks(); c++) {
+            if (file.isSeekable() && !file.intersects(c, minX, minY, maxX, maxY)) {
+                order.add(c);
+            }
+        }
+        if (!order.isEmpty()) {
+            next = order.get(0) * DrawingFile.CHUNK_SIZE;
+        }
+        step(); // The first records are drawn before the next pulse
+        if (!finished) {
+            timer.start();
+        }
+    }
+
+    /**
+     * Loads records until the time budget of the pulse is spent
+     */
+    private void step() {
+        long start = System.nanoTime();
+        ShapeStore store = drawing.getStore();
+        try {
+            while (loaded < file.getCount() && System.nanoTime() - start < FRAME_BUDGET) {
+                int end = Math.min(file.getCount(), (order.get(chunk) + 1) * DrawingFile.CHUNK_SIZE);
+                int n = Math.min(STEP, end - next);
+                file.readInto(next, n, store, base + next);
+                drawing.indexRange(base + next, base + next + n);
+                engine.commit(base + next, base + next + n);
+                next += n;
+                loaded += n;
+                if (next == end && ++chunk < order.size()) {
+                    next = order.get(chunk) * DrawingFile.CHUNK_SIZE;
+                }
+            }
+        } catch (IOException e) {
+            finish(e);
+            return;
+        }
+        if (loaded == file.getCount()) {
+            finish(null);
+        }
+    }
+
+    /**
+     * Stops loading and closes the file
+     *
+     * @param error Error that stopped loading or null
+     */
+    private void finish(IOException error) {
+        finished = true;
+        timer.stop();
+        try {
+            file.close();
+        } catch (IOException e) {
+            error = error != null ? error : e;
+        }
+        onFinished.accept(error);
+    }
+}
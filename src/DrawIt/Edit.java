@@ -0,0 +1,122 @@
+package DrawIt;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Edit abstract class. Superclass of the entries of the undo/redo history, every edit knows how to revert and
+ * repeat its change of the drawing and which part of the canvas has to be repainted after that. Edits can be
+ * written to a file and read back, so old history does not have to stay in memory (see EditStack)
+ *
+ * @author Maksym Hanushchak
+ */
+public abstract class Edit {
+    /**
+     * Types of the edits in files
+     */
+    static final byte ADD = 1, ERASE = 2, RECOLOR = 3, CLEAR = 4, BATCH = 5, TRANSFORM = 6, COMPACT = 7;
+
+    /**
+     * abstract method that reverts the change
+     *
+     * @param drawing Drawing that the edit was applied to
+     * @param engine  Repaint engine of the main canvas
+     */
+    public abstract void undo(Drawing drawing, RepaintEngine engine);
+
+    /**
+     * abstract method that applies the change again after it was undone
+     *
+     * @param drawing Drawing that the edit was applied to
+     * @param engine  Repaint engine of the main canvas
+     */
+    public abstract void redo(Drawing drawing, RepaintEngine engine);
+
+    /**
+     * Getter method for the first slot that the edit added to the store. Undoing the edit removes the shapes of
+     * the slots from this one up, and only the undone edits can bring them back (see Drawing.setReclaimable)
+     *
+     * @return Slot or Integer.MAX_VALUE if the edit adds no shapes
+     */
+    public int getAddedFrom() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Getter method for the slot after the last one that the edit added to the store. After a redo of the edit,
+     * only the undone edits can bring back the shapes of the slots from this one up
+     *
+     * @return Slot or Integer.MAX_VALUE if the edit adds no shapes
+     */
+    public int getAddedTo() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * abstract method that writes the type and the data of the edit
+     *
+     * @param out Output
+     * @throws IOException If the edit cannot be written
+     */
+    public abstract void write(DataOutputStream out) throws IOException;
+
+    /**
+     * Reads an edit that was written by its write method
+     *
+     * @param in Input
+     * @return Edit
+     * @throws IOException If the edit cannot be read
+     */
+    public static Edit read(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case ADD:
+                return new AddEdit(in.readInt());
+            case ERASE:
+                return new EraseEdit(readSlots(in));
+            case RECOLOR:
+                return RecolorEdit.readData(in);
+            case CLEAR:
+                return new ClearEdit(readSlots(in));
+            case BATCH:
+                return new BatchEdit(in.readInt(), in.readInt());
+            case TRANSFORM:
+                return TransformEdit.readData(in);
+            case COMPACT:
+                return CompactEdit.readData(in);
+            default:
+                throw new IOException("Unknown edit " + type);
+        }
+    }
+
+    /**
+     * Writes a list of slots
+     *
+     * @param out   Output
+     * @param slots Slots
+     * @throws IOException If the slots cannot be written
+     */
+    static void writeSlots(DataOutputStream out, IntList slots) throws IOException {
+        out.writeInt(slots.size());
+        for (int i = 0; i < slots.size(); i++) {
+            out.writeInt(slots.get(i));
+        }
+    }
+
+    /**
+     * Reads a list of slots that was written by writeSlots
+     *
+     * @param in Input
+     * @return Slots
+     * @throws IOException If the slots cannot be read
+     */
+    static IntList readSlots(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        IntList slots = new IntList(size);
+        for (int i = 0; i < size; i++) {
+            slots.add(in.readInt());
+        }
+        return slots;
+    }
+}
@@ -0,0 +1,269 @@
+package DrawIt;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+
+/**
+ * Stack of edits (the undo or the redo history) that keeps only its newest edits in memory. When more than
+ * 'window' edits are in memory, the older half of them is written to the end of a segment file; when the edits in
+ * memory run out, the newest half window of the file is read back and cut from the file. Pushing and popping inside
+ * the window never touches the disk, and the memory used does not depend on the length of the history
+ * <p>
+ * Every edit in the file is followed by its size, so the file is read from the end without an index in memory. The
+ * file is a temporary one, it is deleted when the stack is closed or the application exits
+ *
+ * @author Maksym Hanushchak
+ */
+public class EditStack {
+    /**
+     * Size of the blocks the file is read in (bytes)
+     */
+    private static final int READ_BLOCK = 1 << 16;
+    /**
+     * Most edits kept in memory
+     */
+    private final int window;
+    /**
+     * Newest edits (the last one is the top of the stack)
+     */
+    private final ArrayDeque<Edit> edits = new ArrayDeque<>();
+    /**
+     * Buffer that the spilled edits are encoded into
+     */
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    /**
+     * Encoder of the spilled edits
+     */
+    private final DataOutputStream out = new DataOutputStream(buffer);
+    /**
+     * Segment file of the older edits, opened when the first edits are spilled
+     */
+    private FileChannel segment;
+    /**
+     * Size of the edits in the segment file (bytes)
+     */
+    private long segmentSize;
+    /**
+     * Number of edits in the segment file
+     */
+    private int spilled;
+    /**
+     * False after the segment file failed, the edits are then kept in memory
+     */
+    private boolean spilling = true;
+
+    /**
+     * EditStack constructor
+     *
+     * @param window Most edits kept in memory (at least 2)
+     */
+    EditStack(int window) {
+        this.window = Math.max(2, window);
+    }
+
+    /**
+     * Puts an edit on top of the stack
+     *
+     * @param edit Edit
+     */
+    public void push(Edit edit) {
+        edits.addLast(edit);
+        if (edits.size() > window && spilling) {
+            spill(edits.size() - window / 2);
+        }
+    }
+
+    /**
+     * Takes the edit from the top of the stack
+     *
+     * @return Edit, or null if the stack is empty (also when the edits of the segment file could not be read back,
+     * see load)
+     */
+    public Edit pop() {
+        if (edits.isEmpty() && spilled > 0) {
+            load(Math.min(spilled, window / 2));
+        }
+        return edits.pollLast();
+    }
+
+    /**
+     * Checks whether the stack is empty
+     *
+     * @return True if there are no edits
+     */
+    public boolean isEmpty() {
+        return edits.isEmpty() && spilled == 0;
+    }
+
+    /**
+     * Getter method for the number of edits
+     *
+     * @return Number of edits in memory and in the segment file
+     */
+    public int size() {
+        return edits.size() + spilled;
+    }
+
+    /**
+     * Getter method for the number of edits in the segment file
+     *
+     * @return Number of spilled edits
+     */
+    public int spilledSize() {
+        return spilled;
+    }
+
+    /**
+     * Removes all the edits
+     */
+    public void clear() {
+        edits.clear();
+        spilled = 0;
+        segmentSize = 0;
+        if (segment != null) {
+            try {
+                segment.truncate(0);
+            } catch (IOException e) { // The space is reused by the next spill anyway
+            }
+        }
+    }
+
+    /**
+     * Removes all the edits and deletes the segment file
+     */
+    public void close() {
+        clear();
+        if (segment != null) {
+            try {
+                segment.close();
+            } catch (IOException e) { // The file is deleted on exit anyway
+            }
+            segment = null;
+        }
+    }
+
+    /**
+     * Writes the oldest edits in memory to the end of the segment file. If the file cannot be written, the edits
+     * stay in memory and nothing is spilled any more
+     *
+     * @param count Number of edits
+     */
+    private void spill(int count) {
+        buffer.reset();
+        try {
+            if (segment == null) {
+                Path file = Files.createTempFile("drawit-history", ".edits");
+                file.toFile().deleteOnExit();
+                segment = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+            }
+            int written = 0;
+            for (Edit edit : edits) { // The oldest edits come first
+                if (written++ == count) {
+                    break;
+                }
+                int start = buffer.size();
+                edit.write(out);
+                out.writeInt(buffer.size() - start);
+            }
+            ByteBuffer bytes = ByteBuffer.wrap(buffer.toByteArray());
+            while (bytes.hasRemaining()) {
+                segmentSize += segment.write(bytes, segmentSize);
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot write the history to disk, keeping it in memory: " + e);
+            spilling = false;
+            truncate();
+            return;
+        } finally {
+            buffer.reset();
+        }
+        for (int i = 0; i < count; i++) {
+            edits.removeFirst();
+        }
+        spilled += count;
+    }
+
+    /**
+     * Reads the newest edits of the segment file into memory and cuts them from the file. If the file cannot be
+     * read, the edits in it are lost (the history gets shorter)
+     *
+     * @param count Number of edits
+     */
+    private void load(int count) {
+        ByteBuffer block = ByteBuffer.allocate(READ_BLOCK);
+        long end = segmentSize; // End of the edits that are not read yet
+        try {
+            while (count > 0) {
+                // Reads the block that ends at 'end', then takes edits from its end while they are in the block
+                int length = (int) Math.min(block.capacity(), end);
+                readFully(block, end - length, length);
+                byte[] array = block.array();
+                int position = length;
+                while (count > 0 && position >= 4) {
+                    int size = ByteBuffer.wrap(array, position - 4, 4).getInt();
+                    if (size + 4 > position) { // The edit starts before the block
+                        break;
+                    }
+                    position -= size + 4;
+                    edits.addFirst(Edit.read(new DataInputStream(new ByteArrayInputStream(array, position, size))));
+                    spilled--;
+                    count--;
+                }
+                if (position == length) { // The edit is bigger than the block
+                    if (length < 4 || length == end) {
+                        throw new IOException("History file is corrupted");
+                    }
+                    int size = ByteBuffer.wrap(array, position - 4, 4).getInt();
+                    block = ByteBuffer.allocate(size + 4);
+                }
+                end -= length - position;
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot read the history from disk, older edits are lost: " + e);
+            spilled = 0;
+            end = 0;
+        }
+        segmentSize = end;
+        truncate();
+    }
+
+    /**
+     * Reads bytes of the segment file into the start of a buffer
+     *
+     * @param block    Buffer
+     * @param position Position in the file
+     * @param length   Number of bytes
+     * @throws IOException If the bytes cannot be read
+     */
+    private void readFully(ByteBuffer block, long position, int length) throws IOException {
+        block.clear();
+        block.limit(length);
+        while (block.hasRemaining()) {
+            if (segment.read(block, position + block.position()) < 0) {
+                throw new IOException("History file is shorter than expected");
+            }
+        }
+    }
+
+    /**
+     * Cuts the segment file to the size of the spilled edits
+     */
+    private void truncate() {
+        if (segment == null) {
+            return;
+        }
+        try {
+            segment.truncate(segmentSize);
+        } catch (IOException e) { // The rest of the file is overwritten by the next spill
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package DrawIt;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * History entry for one stroke of the eraser. Collects the shapes that the eraser touches while the mouse is
+ * dragged. Subclass of Edit class
+ *
+ * @author Maksym Hanushchak
+ */
+public class EraseEdit extends Edit {
+    /**
+     * Slots of the erased shapes
+     */
+    private final IntList erased;
+    /**
+     * Reusable list for the results of hit-testing
+     */
+    private final IntList hits = new IntList();
+
+    /**
+     * EraseEdit constructor for a stroke that is about to start
+     */
+    EraseEdit() {
+        this(new IntList());
+    }
+
+    /**
+     * EraseEdit constructor for a finished stroke
+     *
+     * @param erased Slots of the erased shapes
+     */
+    EraseEdit(IntList erased) {
+        this.erased = erased;
+    }
+
+    /**
+     * Erases every shape whose stroke is touched by the eraser on the way from one mouse position to the next one.
+     * The way is sampled in steps shorter than the eraser's radius, so fast mouse movements do not skip shapes
+     *
+     * @param drawing Drawing
+     * @param engine  Repaint engine of the main canvas
+     * @param x1      Previous x coordinate of the eraser
+     * @param y1      Previous y coordinate of the eraser
+     * @param x2      Current x coordinate of the eraser
+     * @param y2      Current y coordinate of the eraser
+     * @param radius  Eraser's radius
+     */
+    public void erase(Drawing drawing, RepaintEngine engine, double x1, double y1, double x2, double y2, double radius) {
+        int steps = Math.max(1, (int) Math.ceil(Math.hypot(x2 - x1, y2 - y1) / Math.max(radius, 0.5)));
+        for (int i = 1; i <= steps; i++) {
+            double t = (double) i / steps;
+            hits.clear();
+            drawing.hitTest(x1 + (x2 - x1) * t, y1 + (y2 - y1) * t, radius, hits);
+            drawing.removeAll(hits);
+            for (int j = 0; j < hits.size(); j++) {
+                erased.add(hits.get(j));
+                engine.repaint(hits.get(j));
+            }
+        }
+    }
+
+    /**
+     * Finishes the stroke of the eraser
+     *
+     * @return True if anything was erased (the edit is worth keeping in the history)
+     */
+    public boolean finish() {
+        erased.trimToSize();
+        hits.clear();
+        hits.trimToSize();
+        return !erased.isEmpty();
+    }
+
+    /**
+     * Puts the erased shapes back and repaints their areas
+     *
+     * @param drawing Drawing that the edit was applied to
+     * @param engine  Repaint engine of the main canvas
+     */
+    @Override
+    public void undo(Drawing drawing, RepaintEngine engine) {
+        drawing.restoreAll(erased);
+        engine.repaint(erased);
+    }
+
+    /**
+     * Erases the same shapes again
+     *
+     * @param drawing Drawing that the edit was applied to
+     * @param engine  Repaint engine of the main canvas
+     */
+    @Override
+    public void redo(Drawing drawing, RepaintEngine engine) {
+        drawing.removeAll(erased);
+        engine.repaint(erased);
+    }
+
+    /**
+     * Writes the slots of the erased shapes
+     *
+     * @param out Output
+     * @throws IOException If the edit cannot be written
+     */
+    @Override
+    public void write(DataOutputStream out) throws IOException {
+        out.writeByte(ERASE);
+        writeSlots(out, erased);
+    }
+}
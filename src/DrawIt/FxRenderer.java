@@ -0,0 +1,85 @@
+package DrawIt;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.StrokeLineJoin;
+
+/**
+ * Renderer that draws on a JavaFX canvas through its graphics context
+ *
+ * @author Maksym Hanushchak
+ */
+public class FxRenderer implements Renderer {
+    /**
+     * Graphics context of the canvas
+     */
+    private final GraphicsContext gc;
+
+    /**
+     * FxRenderer constructor
+     *
+     * @param gc Graphics context of the canvas
+     */
+    FxRenderer(GraphicsContext gc) {
+        this.gc = gc;
+    }
+
+    /**
+     * Getter method for the graphics context
+     *
+     * @return Graphics context of the canvas
+     */
+    public GraphicsContext getGraphicsContext() {
+        return gc;
+    }
+
+    @Override
+    public void setStroke(Color color) {
+        gc.setStroke(color);
+    }
+
+    @Override
+    public void setLineWidth(double width) {
+        gc.setLineWidth(width);
+    }
+
+    @Override
+    public void strokeLine(double x1, double y1, double x2, double y2) {
+        gc.strokeLine(x1, y1, x2, y2);
+    }
+
+    @Override
+    public void strokeOval(double x, double y, double w, double h) {
+        gc.strokeOval(x, y, w, h);
+    }
+
+    @Override
+    public void strokeRect(double x, double y, double w, double h) {
+        gc.strokeRect(x, y, w, h);
+    }
+
+    @Override
+    public void strokePolyline(float[] points, int offset, int size) {
+        strokePolyline(gc, points, offset, size);
+    }
+
+    /**
+     * Strokes a polyline as one path, so the segments are joined like the ones of a single shape. The joins are
+     * round: a miter join of a sharp turn would reach up to the miter limit times the half width past the points, so
+     * out of the bounding box of the record (see Shape.margin)
+     *
+     * @param gc     Graphics context of the canvas
+     * @param points Points (x, y, x, y, ...)
+     * @param offset Index of the first point's x
+     * @param size   Number of points
+     */
+    static void strokePolyline(GraphicsContext gc, float[] points, int offset, int size) {
+        gc.setLineJoin(StrokeLineJoin.ROUND);
+        gc.beginPath();
+        gc.moveTo(points[offset], points[offset + 1]);
+        for (int i = offset + 2, end = offset + size * 2; i < end; i += 2) {
+            gc.lineTo(points[i], points[i + 1]);
+        }
+        gc.stroke();
+        gc.setLineJoin(StrokeLineJoin.MITER); // Rectangles keep the default joins
+    }
+}
@@ -0,0 +1,389 @@
+package DrawIt;
+import javafx.scene.input.MouseButton;
+import javafx.scene.paint.Color;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Recorded sequence of the inputs of the canvas: mouse presses, drags, releases and scrolls, and changes of the
+ * tool, the color and the line width. A trace is written by a Recorder while the application runs and read back
+ * whole into memory, so it can be replayed through CanvasTools without a window (see TraceReplay)
+ * <p>
+ * The file starts with a header (magic number, version, canvas size), followed by one record per input: its type,
+ * the time since the previous input (microseconds) and its values. A trace cut short by a crash is read up to its
+ * last complete record
+ *
+ * @author Maksym Hanushchak
+ */
+public class InputTrace {
+    /**
+     * Magic number at the start of every trace file ("DRTR")
+     */
+    public static final int MAGIC = 0x44525452;
+    /**
+     * Trace format version
+     */
+    public static final short VERSION = 1;
+    /**
+     * File extension of the traces
+     */
+    public static final String EXTENSION = "drawtrace";
+    /**
+     * Record types
+     */
+    public static final byte PRESS = 1, DRAG = 2, RELEASE = 3, SCROLL = 4, TOOL = 5, COLOR = 6, WIDTH = 7;
+    /**
+     * Canvas size of the recording
+     */
+    private final double width, height;
+    /**
+     * Number of inputs
+     */
+    private int size;
+    /**
+     * Types of the inputs
+     */
+    private byte[] types = new byte[1024];
+    /**
+     * Time since the previous input (microseconds)
+     */
+    private int[] delays = new int[1024];
+    /**
+     * Cursor positions (canvas)
+     */
+    private float[] xs = new float[1024], ys = new float[1024];
+    /**
+     * Other value of the input: mouse button, tool, ARGB color, or the bits of the line width or the scroll amount
+     */
+    private int[] args = new int[1024];
+
+    /**
+     * Writes the inputs into a trace file as they come. The records go through a buffer that is written out at the
+     * end of every gesture, so the FX thread does not wait for the disk in the middle of one. If the file fails,
+     * recording stops and the application goes on
+     */
+    public static class Recorder implements Closeable {
+        /**
+         * Encoder of the records
+         */
+        private final DataOutputStream out;
+        /**
+         * Time of the previous input (System.nanoTime), 0 before the first one
+         */
+        private long last;
+        /**
+         * False after the file failed
+         */
+        private boolean recording = true;
+
+        /**
+         * Recorder constructor, creates (or replaces) the trace file and writes its header
+         *
+         * @param file   Trace file
+         * @param width  Canvas width
+         * @param height Canvas height
+         * @throws IOException If the file cannot be created
+         */
+        public Recorder(Path file, double width, double height) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeFloat((float) width);
+            out.writeFloat((float) height);
+        }
+
+        /**
+         * Records a press of a mouse button
+         *
+         * @param button Mouse button
+         * @param x      X coordinate of the cursor (canvas)
+         * @param y      Y coordinate of the cursor
+         */
+        public void press(MouseButton button, double x, double y) {
+            write(PRESS, x, y, button.ordinal());
+        }
+
+        /**
+         * Records a drag of the mouse
+         *
+         * @param x X coordinate of the cursor (canvas)
+         * @param y Y coordinate of the cursor
+         */
+        public void drag(double x, double y) {
+            write(DRAG, x, y, 0);
+        }
+
+        /**
+         * Records a release of a mouse button, the end of a gesture
+         *
+         * @param button Mouse button
+         * @param x      X coordinate of the cursor (canvas)
+         * @param y      Y coordinate of the cursor
+         */
+        public void release(MouseButton button, double x, double y) {
+            write(RELEASE, x, y, button.ordinal());
+            flush();
+        }
+
+        /**
+         * Records a turn of the mouse wheel
+         *
+         * @param deltaY Amount of vertical scrolling (pixels)
+         * @param x      X coordinate of the cursor (canvas)
+         * @param y      Y coordinate of the cursor
+         */
+        public void scroll(double deltaY, double x, double y) {
+            write(SCROLL, x, y, Float.floatToIntBits((float) deltaY));
+        }
+
+        /**
+         * Records a change of the tool
+         *
+         * @param tool Tool (see CanvasTools)
+         */
+        public void tool(int tool) {
+            write(TOOL, 0, 0, tool);
+        }
+
+        /**
+         * Records a change of the color
+         *
+         * @param color Color of new shapes
+         */
+        public void color(Color color) {
+            write(COLOR, 0, 0, RasterRenderer.toArgb(color));
+        }
+
+        /**
+         * Records a change of the line width
+         *
+         * @param lineWidth Line width of new shapes
+         */
+        public void lineWidth(double lineWidth) {
+            write(WIDTH, 0, 0, Float.floatToIntBits((float) lineWidth));
+        }
+
+        /**
+         * Encodes a record
+         *
+         * @param type Record type
+         * @param x    X coordinate of the cursor
+         * @param y    Y coordinate of the cursor
+         * @param arg  Other value of the input
+         */
+        private void write(byte type, double x, double y, int arg) {
+            if (!recording) {
+                return;
+            }
+            long now = System.nanoTime();
+            long delay = last == 0 ? 0 : Math.min(Integer.MAX_VALUE, (now - last) / 1000);
+            last = now;
+            try {
+                out.writeByte(type);
+                out.writeInt((int) delay);
+                if (type <= SCROLL) {
+                    out.writeFloat((float) x);
+                    out.writeFloat((float) y);
+                }
+                out.writeInt(arg);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        /**
+         * Writes the buffered records to the file
+         */
+        public void flush() {
+            if (!recording) {
+                return;
+            }
+            try {
+                out.flush();
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        /**
+         * Stops recording after the file failed
+         *
+         * @param e Error
+         */
+        private void fail(IOException e) {
+            recording = false;
+            System.err.println("Input trace stopped: " + e);
+        }
+
+        /**
+         * Writes the rest of the records and closes the file
+         *
+         * @throws IOException If the file cannot be written
+         */
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /**
+     * InputTrace constructor
+     *
+     * @param width  Canvas width of the recording
+     * @param height Canvas height of the recording
+     */
+    private InputTrace(double width, double height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Reads a whole trace file into memory
+     *
+     * @param file Trace file
+     * @return Trace
+     * @throws IOException If the file cannot be read or is not a trace
+     */
+    public static InputTrace read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not an input trace");
+            }
+            short version = in.readShort();
+            if (version < 1 || version > VERSION) {
+                throw new IOException(file + " has unsupported trace version " + version);
+            }
+            InputTrace trace = new InputTrace(in.readFloat(), in.readFloat());
+            try {
+                while (true) {
+                    byte type = in.readByte();
+                    int delay = in.readInt();
+                    float x = 0, y = 0;
+                    if (type <= SCROLL) {
+                        x = in.readFloat();
+                        y = in.readFloat();
+                    }
+                    trace.add(type, delay, x, y, in.readInt());
+                }
+            } catch (EOFException e) { // End of the trace, a partly written record is dropped
+            }
+            return trace;
+        }
+    }
+
+    /**
+     * Adds an input
+     *
+     * @param type  Record type
+     * @param delay Time since the previous input (microseconds)
+     * @param x     X coordinate of the cursor
+     * @param y     Y coordinate of the cursor
+     * @param arg   Other value of the input
+     */
+    private void add(byte type, int delay, float x, float y, int arg) {
+        if (size == types.length) {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            delays = Arrays.copyOf(delays, capacity);
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            args = Arrays.copyOf(args, capacity);
+        }
+        types[size] = type;
+        delays[size] = delay;
+        xs[size] = x;
+        ys[size] = y;
+        args[size] = arg;
+        size++;
+    }
+
+    /**
+     * Getter method for the canvas width of the recording
+     *
+     * @return Canvas width
+     */
+    public double getWidth() {
+        return width;
+    }
+
+    /**
+     * Getter method for the canvas height of the recording
+     *
+     * @return Canvas height
+     */
+    public double getHeight() {
+        return height;
+    }
+
+    /**
+     * Getter method for the number of inputs
+     *
+     * @return Number of inputs
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Getter method for the type of an input
+     *
+     * @param index Index of the input
+     * @return Record type
+     */
+    public byte getType(int index) {
+        return types[index];
+    }
+
+    /**
+     * Getter method for the time between an input and the previous one
+     *
+     * @param index Index of the input
+     * @return Time (microseconds)
+     */
+    public int getDelay(int index) {
+        return delays[index];
+    }
+
+    /**
+     * Passes an input to the canvas tools, the way the handlers of the window do
+     *
+     * @param index Index of the input
+     * @param tools Canvas tools
+     */
+    public void apply(int index, CanvasTools tools) {
+        float x = xs[index], y = ys[index];
+        int arg = args[index];
+        switch (types[index]) {
+            case PRESS:
+                tools.press(MouseButton.values()[arg], x, y);
+                break;
+            case DRAG:
+                tools.drag(x, y);
+                break;
+            case RELEASE:
+                tools.release(MouseButton.values()[arg], x, y);
+                break;
+            case SCROLL:
+                tools.scroll(Float.intBitsToFloat(arg), x, y);
+                break;
+            case TOOL:
+                tools.setTool(arg);
+                break;
+            case COLOR:
+                tools.setColor(DrawingFile.fromArgb(arg));
+                break;
+            case WIDTH:
+                tools.setLineWidth(Float.intBitsToFloat(arg));
+                break;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package DrawIt;
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive ints. Used for lists of shape slots, so no Integer objects are created
+ *
+ * @author Maksym Hanushchak
+ */
+public class IntList {
+    /**
+     * Values of the list
+     */
+    private int[] values;
+    /**
+     * Number of values in the list
+     */
+    private int size;
+
+    /**
+     * IntList constructor
+     */
+    public IntList() {
+        this(8);
+    }
+
+    /**
+     * IntList constructor
+     *
+     * @param capacity Initial capacity
+     */
+    public IntList(int capacity) {
+        values = new int[Math.max(1, capacity)];
+    }
+
+    /**
+     * Adds a value to the end of the list
+     *
+     * @param value Value
+     */
+    public void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, values.length * 2);
+        }
+        values[size++] = value;
+    }
+
+    /**
+     * Getter method for a value
+     *
+     * @param index Index of the value
+     * @return Value
+     */
+    public int get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        return values[index];
+    }
+
+    /**
+     * Setter method for a value
+     *
+     * @param index Index of the value
+     * @param value New value
+     */
+    public void set(int index, int value) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        values[index] = value;
+    }
+
+    /**
+     * Removes a value by moving the last value to its place (the order of the values is not kept)
+     *
+     * @param index Index of the value
+     */
+    public void swapRemove(int index) {
+        values[index] = values[--size];
+    }
+
+    /**
+     * Removes the first occurrence of the value by moving the last value to its place
+     *
+     * @param value Value
+     * @return True if the value was in the list
+     */
+    public boolean swapRemoveValue(int value) {
+        for (int i = size - 1; i >= 0; i--) {
+            if (values[i] == value) {
+                swapRemove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes the values whose bits are set in a bit set, the other values keep their order
+     *
+     * @param marks Bit set (bit v of marks[v / 64] for value v), must cover every value of the list
+     */
+    public void removeMarked(long[] marks) {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            int v = values[i];
+            if ((marks[v >>> 6] & 1L << v) == 0) {
+                values[kept++] = v;
+            }
+        }
+        size = kept;
+    }
+
+    /**
+     * Sorts the values from the given index to the end of the list and removes repeated values there
+     *
+     * @param from Index of the first value to sort
+     */
+    public void sortUnique(int from) {
+        Arrays.sort(values, from, size);
+        int unique = from;
+        for (int i = from; i < size; i++) {
+            if (unique == from || values[unique - 1] != values[i]) {
+                values[unique++] = values[i];
+            }
+        }
+        size = unique;
+    }
+
+    /**
+     * Getter method for the number of values
+     *
+     * @return Number of values
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether the list is empty
+     *
+     * @return True if there are no values
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes all the values
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Shrinks the backing array to the number of values
+     */
+    public void trimToSize() {
+        values = Arrays.copyOf(values, Math.max(1, size));
+    }
+}
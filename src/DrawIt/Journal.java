@@ -0,0 +1,849 @@
+package DrawIt;
+import javafx.scene.paint.Color;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only autosave journal of the drawing. Every change of the drawing is encoded as a small record on the FX
+ * thread and handed to a background writer, which appends the records to the journal file and syncs it to disk
+ * every SYNC_BYTES bytes or SYNC_MILLIS milliseconds. The FX thread never waits for the disk
+ * <p>
+ * Changes of many shapes at once (batches, ranges, transforms of a selection, compactions) are records too, whose
+ * size grows with the number of changed shapes and not with the size of the drawing
+ * <p>
+ * When the journal grows past its compaction size, a copy of the whole store is written as a snapshot and a new
+ * journal is started on top of it. Snapshot and journal of one generation are named snapshot-N.drawit and
+ * journal-N.log; a new generation becomes current only when its snapshot is completely on disk, so a crash at any
+ * point leaves one consistent generation. Recovery loads the latest snapshot and replays its journal
+ * <p>
+ * Records refer to slots, so snapshots keep the removed records too (they are marked as removed again by the
+ * first records of the new journal)
+ *
+ * @author Maksym Hanushchak
+ */
+public class Journal {
+    /**
+     * Magic number at the start of every journal file ("DRJL")
+     */
+    public static final int MAGIC = 0x44524A4C;
+    /**
+     * Journal format version
+     */
+    public static final short VERSION = 1;
+    /**
+     * Record types
+     */
+    static final byte ADD = 1, COLOR = 2, REMOVE = 3, RESTORE = 4, FILL = 5, SET_COLORS = 6, CLEAR = 7, TRUNCATE = 8, REMOVE_ALL = 9,
+            RESTORE_ALL = 10, REMOVE_RANGE = 11, RESTORE_RANGE = 12, RESHAPE = 13, REWRITE = 14;
+    /**
+     * Unsynced bytes that make the writer sync the journal
+     */
+    private static final int SYNC_BYTES = 1 << 20;
+    /**
+     * Longest time records stay unsynced (milliseconds)
+     */
+    private static final long SYNC_MILLIS = 1000;
+    /**
+     * Directory of the journal files
+     */
+    private final Path dir;
+    /**
+     * Canvas size written into snapshots
+     */
+    private final double width, height;
+    /**
+     * Size of the journal that makes the next change start a compaction (bytes)
+     */
+    private final long compactBytes;
+    /**
+     * Records and snapshots on their way to the writer
+     */
+    private final LinkedBlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+    /**
+     * Buffer that the records of one change are encoded into (FX thread)
+     */
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    /**
+     * Encoder of the records (FX thread)
+     */
+    private final DataOutputStream records = new DataOutputStream(buffer);
+    /**
+     * Bytes of records handed to the writer since the last compaction (FX thread)
+     */
+    private long journalBytes;
+    /**
+     * Current generation (writer thread)
+     */
+    private int generation;
+    /**
+     * Error that stopped the writer, null while it works
+     */
+    private volatile IOException error;
+    /**
+     * Background writer
+     */
+    private final Thread writer;
+
+    /**
+     * Marks the end of the queue
+     */
+    private static final Object CLOSE = new Object();
+
+    /**
+     * Copy of the store that becomes the snapshot of the next generation
+     */
+    private static class Snapshot {
+        /**
+         * Copy of the store
+         */
+        final ShapeStore store;
+
+        /**
+         * Snapshot constructor
+         *
+         * @param store Copy of the store
+         */
+        Snapshot(ShapeStore store) {
+            this.store = store;
+        }
+    }
+
+    /**
+     * Journal constructor. Starts the writer, which appends to the journal of the given generation
+     *
+     * @param dir          Directory of the journal files
+     * @param generation   Generation returned by recover
+     * @param width        Canvas width
+     * @param height       Canvas height
+     * @param compactBytes Size of the journal that starts a compaction
+     * @throws IOException If the journal cannot be opened
+     */
+    Journal(Path dir, int generation, double width, double height, long compactBytes) throws IOException {
+        this.dir = dir;
+        this.width = width;
+        this.height = height;
+        this.generation = generation;
+        this.compactBytes = compactBytes;
+        Files.createDirectories(dir);
+        Path file = journalFile(dir, generation);
+        journalBytes = Files.exists(file) ? Files.size(file) : 0;
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        if (channel.size() == 0) {
+            DataOutputStream header = new DataOutputStream(Channels.newOutputStream(channel));
+            header.writeInt(MAGIC);
+            header.writeShort(VERSION);
+            header.flush();
+        }
+        writer = new Thread(() -> write(channel), "DrawIt journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Getter method for the path of the journal of a generation
+     *
+     * @param dir        Directory of the journal files
+     * @param generation Generation
+     * @return Path of the journal
+     */
+    static Path journalFile(Path dir, int generation) {
+        return dir.resolve("journal-" + generation + ".log");
+    }
+
+    /**
+     * Getter method for the path of the snapshot of a generation
+     *
+     * @param dir        Directory of the journal files
+     * @param generation Generation
+     * @return Path of the snapshot
+     */
+    static Path snapshotFile(Path dir, int generation) {
+        return dir.resolve("snapshot-" + generation + "." + DrawingFile.EXTENSION);
+    }
+
+    /**
+     * Records a shape that was added. Points of a pencil stroke follow the record
+     *
+     * @param store Store of the shape
+     * @param slot  Slot of the shape
+     */
+    public void logAdd(ShapeStore store, int slot) {
+        try {
+            writeAdd(store, slot);
+        } catch (IOException e) { // Writing to memory does not fail
+            throw new IllegalStateException(e);
+        }
+        send();
+    }
+
+    /**
+     * Records the shapes of a range of slots that were added in one step (see Drawing.addBatch), as one add record
+     * per shape handed to the writer together
+     *
+     * @param store Store of the shapes
+     * @param from  Slot of the first shape
+     * @param to    Slot after the last shape
+     */
+    public void logAddRange(ShapeStore store, int from, int to) {
+        try {
+            for (int slot = from; slot < to; slot++) {
+                writeAdd(store, slot);
+                if (!store.isLive(slot)) {
+                    records.writeByte(REMOVE);
+                    records.writeInt(slot);
+                }
+            }
+        } catch (IOException e) { // Writing to memory does not fail
+            throw new IllegalStateException(e);
+        }
+        send();
+    }
+
+    /**
+     * Encodes an add record. Points of a pencil stroke follow the record
+     *
+     * @param store Store of the shape
+     * @param slot  Slot of the shape
+     * @throws IOException Never, the records are written to memory
+     */
+    private void writeAdd(ShapeStore store, int slot) throws IOException {
+        records.writeByte(ADD);
+        records.writeByte(store.getKind(slot));
+        for (int i = 0; i < 4; i++) {
+            records.writeFloat(store.getCoord(slot, i));
+        }
+        records.writeFloat(store.getWidth(slot));
+        records.writeInt(store.getColor(slot));
+        if (store.getKind(slot) == ShapeStore.PENCIL) {
+            int size = store.getPathSize(slot);
+            records.writeInt(size);
+            for (int i = 0; i < size * 2; i++) {
+                records.writeFloat(store.getPathCoord(slot, i));
+            }
+        }
+    }
+
+    /**
+     * Records a color that was appended to the palette
+     *
+     * @param color Color
+     */
+    public void logColor(Color color) {
+        logInts(COLOR, RasterRenderer.toArgb(color));
+    }
+
+    /**
+     * Records a shape that was removed
+     *
+     * @param slot Slot of the shape
+     */
+    public void logRemove(int slot) {
+        logInts(REMOVE, slot);
+    }
+
+    /**
+     * Records a shape that was put back
+     *
+     * @param slot Slot of the shape
+     */
+    public void logRestore(int slot) {
+        logInts(RESTORE, slot);
+    }
+
+    /**
+     * Records several shapes that were removed or put back in one step (see Drawing.removeAll)
+     *
+     * @param slots  Slots of the shapes
+     * @param isLive True if the shapes were put back, false if they were removed
+     */
+    public void logLiveAll(IntList slots, boolean isLive) {
+        try {
+            records.writeByte(isLive ? RESTORE_ALL : REMOVE_ALL);
+            writeSlots(records, slots);
+        } catch (IOException e) { // Writing to memory does not fail
+            throw new IllegalStateException(e);
+        }
+        send();
+    }
+
+    /**
+     * Records that the shapes of a range of slots were removed or put back (see Drawing.removeRange)
+     *
+     * @param from   Slot of the first shape
+     * @param to     Slot after the last shape
+     * @param isLive True if the shapes were put back, false if they were removed
+     */
+    public void logLiveRange(int from, int to, boolean isLive) {
+        logInts(isLive ? RESTORE_RANGE : REMOVE_RANGE, from, to);
+    }
+
+    /**
+     * Records shapes whose geometry and style were changed in place (see Drawing.reshape). The record holds the
+     * new state of every shape, and the points of the pencil strokes that were given new ones
+     *
+     * @param store      Store of the shapes, after the change
+     * @param slots      Slots of the shapes in paint order
+     * @param pathStarts Starts of the points of pencil records that changed, -1 for the other shapes; or null
+     */
+    public void logReshape(ShapeStore store, IntList slots, int[] pathStarts) {
+        try {
+            records.writeByte(RESHAPE);
+            writeShapes(records, store, slots, pathStarts);
+        } catch (IOException e) { // Writing to memory does not fail
+            throw new IllegalStateException(e);
+        }
+        send();
+    }
+
+    /**
+     * Records shapes that were removed or put back together with shapes that were changed in place, as one step
+     * (see Drawing.rewrite)
+     *
+     * @param store   Store of the shapes, after the change
+     * @param dropped Slots of the shapes that were removed or put back
+     * @param isLive  True if the dropped shapes were put back, false if they were removed
+     * @param slots   Slots of the changed shapes in paint order
+     */
+    public void logRewrite(ShapeStore store, IntList dropped, boolean isLive, IntList slots) {
+        try {
+            records.writeByte(REWRITE);
+            records.writeBoolean(isLive);
+            writeSlots(records, dropped);
+            writeShapes(records, store, slots, null);
+        } catch (IOException e) { // Writing to memory does not fail
+            throw new IllegalStateException(e);
+        }
+        send();
+    }
+
+    /**
+     * Records a recolor of the first palette entries (see Palette.fill)
+     *
+     * @param count Number of entries
+     * @param color New color
+     */
+    public void logFill(int count, Color color) {
+        logInts(FILL, count, RasterRenderer.toArgb(color));
+    }
+
+    /**
+     * Records palette entries that were put back (see Palette.setColors)
+     *
+     * @param saved Entries
+     */
+    public void logSetColors(Color[] saved) {
+        int[] values = new int[saved.length + 1];
+        values[0] = saved.length;
+        for (int i = 0; i < saved.length; i++) {
+            values[i + 1] = RasterRenderer.toArgb(saved[i]);
+        }
+        logInts(SET_COLORS, values);
+    }
+
+    /**
+     * Records that the drawing was cleared
+     */
+    public void logClear() {
+        logInts(CLEAR);
+    }
+
+    /**
+     * Records that the removed records at the end of the store were dropped (see Drawing.reclaim)
+     *
+     * @param size Number of slots that are kept
+     */
+    public void logTruncate(int size) {
+        logInts(TRUNCATE, size);
+    }
+
+    /**
+     * Encodes a record made of ints and hands it to the writer
+     *
+     * @param type   Record type
+     * @param values Values of the record
+     */
+    private void logInts(byte type, int... values) {
+        try {
+            records.writeByte(type);
+            for (int value : values) {
+                records.writeInt(value);
+            }
+        } catch (IOException e) { // Writing to memory does not fail
+            throw new IllegalStateException(e);
+        }
+        send();
+    }
+
+    /**
+     * Hands the encoded records to the writer (records are dropped once the writer has failed)
+     */
+    private void send() {
+        if (error == null) {
+            queue.offer(buffer.toByteArray());
+            journalBytes += buffer.size();
+        }
+        buffer.reset();
+    }
+
+    /**
+     * Checks whether the journal has grown enough to be compacted
+     *
+     * @return True if compact should be called
+     */
+    public boolean isCompactionDue() {
+        return journalBytes >= compactBytes;
+    }
+
+    /**
+     * Starts a new generation: the writer stores a snapshot of the store. The snapshot is taken right away (it
+     * shares the store's chunks, so it costs almost nothing), writing it happens in the background
+     *
+     * @param store Store of the drawing
+     */
+    public void compact(ShapeStore store) {
+        if (error == null) {
+            queue.offer(new Snapshot(store.snapshot()));
+            journalBytes = 0;
+        }
+    }
+
+    /**
+     * Getter method for the error that stopped the writer
+     *
+     * @return Error or null if the writer works
+     */
+    public IOException getError() {
+        return error;
+    }
+
+    /**
+     * Writes everything that was logged, syncs it and stops the writer
+     *
+     * @throws InterruptedException If the calling thread is interrupted while waiting
+     */
+    public void close() throws InterruptedException {
+        queue.offer(CLOSE);
+        writer.join();
+    }
+
+    /**
+     * Writer thread: appends the records, syncs them according to the policy and switches generations
+     *
+     * @param channel Channel of the current journal
+     */
+    private void write(FileChannel channel) {
+        try {
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16);
+            long unsynced = 0, lastSync = System.currentTimeMillis();
+            while (true) {
+                Object item = queue.poll(SYNC_MILLIS, TimeUnit.MILLISECONDS);
+                if (item instanceof byte[]) {
+                    byte[] bytes = (byte[]) item;
+                    out.write(bytes);
+                    unsynced += bytes.length;
+                } else if (item instanceof Snapshot) {
+                    out.flush();
+                    channel.force(false);
+                    channel = startGeneration(((Snapshot) item).store, channel);
+                    out = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16);
+                    unsynced = 0;
+                    lastSync = System.currentTimeMillis();
+                } else if (item == CLOSE) {
+                    break;
+                }
+                long now = System.currentTimeMillis();
+                if (unsynced > 0 && (unsynced >= SYNC_BYTES || now - lastSync >= SYNC_MILLIS)) {
+                    out.flush();
+                    channel.force(false);
+                    unsynced = 0;
+                    lastSync = now;
+                }
+            }
+            out.flush();
+            channel.force(false);
+            channel.close();
+        } catch (IOException e) {
+            error = e;
+            queue.clear();
+            System.err.println("Autosave journal stopped: " + e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes the snapshot and the start of the journal of the next generation and makes it the current one. The
+     * journal is written before the snapshot is moved into place, so a complete snapshot always has its journal
+     *
+     * @param store   Copy of the store
+     * @param current Channel of the current journal
+     * @return Channel of the new journal
+     * @throws IOException If the files cannot be written
+     */
+    private FileChannel startGeneration(ShapeStore store, FileChannel current) throws IOException {
+        int next = generation + 1;
+        Path temp = dir.resolve("snapshot-" + next + ".tmp");
+        DrawingFile.write(store, width, height, temp, true);
+        try (FileChannel snapshot = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            snapshot.force(true);
+        }
+
+        FileChannel channel = FileChannel.open(journalFile(dir, next), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        IntList removed = new IntList();
+        for (int slot = 0; slot < store.size(); slot++) { // The snapshot has the removed records as live ones
+            if (!store.isLive(slot)) {
+                removed.add(slot);
+            }
+        }
+        if (!removed.isEmpty()) {
+            out.writeByte(REMOVE_ALL);
+            writeSlots(out, removed);
+        }
+        out.flush();
+        channel.force(false);
+
+        Files.move(temp, snapshotFile(dir, next), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        current.close();
+        Files.deleteIfExists(journalFile(dir, generation));
+        Files.deleteIfExists(snapshotFile(dir, generation));
+        generation = next;
+        return channel;
+    }
+
+    /**
+     * Restores the drawing from the latest snapshot and its journal. A record that was cut off by a crash ends
+     * the replay and is cut from the journal, so new records can be appended after the last complete one
+     *
+     * @param dir     Directory of the journal files
+     * @param drawing Empty drawing that receives the shapes
+     * @return Generation to continue with (see the constructor)
+     * @throws IOException If the files cannot be read
+     */
+    public static int recover(Path dir, Drawing drawing) throws IOException {
+        int generation = 0;
+        if (Files.isDirectory(dir)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "snapshot-*." + DrawingFile.EXTENSION)) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    try {
+                        generation = Math.max(generation, Integer.parseInt(name.substring(9, name.length() - DrawingFile.EXTENSION.length() - 1)));
+                    } catch (NumberFormatException e) { // Not a snapshot of the journal
+                    }
+                }
+            }
+        }
+
+        Path snapshot = snapshotFile(dir, generation);
+        if (Files.exists(snapshot)) {
+            try (DrawingFile.MappedFile mapped = DrawingFile.open(snapshot)) {
+                mapped.readPalette(drawing.getStore().getPalette());
+                mapped.read(0, mapped.getCount(), drawing.getStore());
+            }
+            drawing.indexFrom(0);
+        }
+
+        Path journal = journalFile(dir, generation);
+        if (Files.exists(journal) && Files.size(journal) < 6) { // The crash came before the header was complete
+            Files.delete(journal);
+        } else if (Files.exists(journal)) {
+            long complete;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(journal), 1 << 16))) {
+                if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+                    throw new IOException(journal + " is not a journal");
+                }
+                complete = 6 + replay(in, drawing);
+            }
+            if (complete < Files.size(journal)) {
+                try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.WRITE)) {
+                    channel.truncate(complete);
+                }
+            }
+        }
+        return generation;
+    }
+
+    /**
+     * Applies the records of a journal to a drawing
+     *
+     * @param in      Records
+     * @param drawing Drawing
+     * @return Size of the complete records (bytes)
+     * @throws IOException If a record cannot be read or is corrupted
+     */
+    private static long replay(DataInputStream in, Drawing drawing) throws IOException {
+        ShapeStore store = drawing.getStore();
+        Palette palette = store.getPalette();
+        long complete = 0;
+        for (int type = in.read(); type >= 0; type = in.read()) {
+            int size = 1;
+            try {
+                size += replay(type, in, drawing, store, palette);
+            } catch (EOFException e) { // The journal ends with a record that was not completely written
+                break;
+            }
+            complete += size;
+        }
+        return complete;
+    }
+
+    /**
+     * Applies one record to a drawing
+     *
+     * @param type    Record type
+     * @param in      Rest of the record
+     * @param drawing Drawing
+     * @param store   Store of the drawing
+     * @param palette Palette of the drawing
+     * @return Size of the record without its type (bytes)
+     * @throws IOException If the record cannot be read or is corrupted
+     */
+    private static int replay(int type, DataInputStream in, Drawing drawing, ShapeStore store, Palette palette) throws IOException {
+        switch (type) {
+            case ADD:
+                byte kind = in.readByte();
+                float sx = in.readFloat(), sy = in.readFloat(), ex = in.readFloat(), ey = in.readFloat();
+                float width = in.readFloat();
+                int color = in.readInt();
+                if (kind < 0 || kind >= ShapeStore.KINDS || color < 0 || color >= palette.size()) {
+                    throw new IOException("Corrupted journal record");
+                }
+                if (kind != ShapeStore.PENCIL) {
+                    drawing.addRecord(kind, sx, sy, ex, ey, width, color);
+                    return DrawingFile.RECORD_SIZE;
+                }
+                int size = in.readInt();
+                if (size <= 0 || size > 1 << 24) {
+                    throw new IOException("Corrupted journal record");
+                }
+                float[] points = new float[size * 2];
+                for (int i = 0; i < points.length; i++) {
+                    points[i] = in.readFloat();
+                }
+                store.setPath(drawing.addRecord(kind, sx, sy, ex, ey, width, color), points, 0, size);
+                return DrawingFile.RECORD_SIZE + 4 + 8 * size;
+            case COLOR:
+                palette.add(DrawingFile.fromArgb(in.readInt()));
+                return 4;
+            case REMOVE:
+                drawing.remove(checkSlot(store, in.readInt()));
+                return 4;
+            case RESTORE:
+                drawing.restore(checkSlot(store, in.readInt()));
+                return 4;
+            case REMOVE_ALL:
+            case RESTORE_ALL:
+                IntList slots = readSlots(in, store);
+                if (type == REMOVE_ALL) {
+                    drawing.removeAll(slots);
+                } else {
+                    drawing.restoreAll(slots);
+                }
+                return 4 + 4 * slots.size();
+            case REMOVE_RANGE:
+            case RESTORE_RANGE:
+                int from = in.readInt(), to = in.readInt();
+                if (from < 0 || from > to || to > store.size()) {
+                    throw new IOException("Corrupted journal record");
+                }
+                if (type == REMOVE_RANGE) {
+                    drawing.removeRange(from, to);
+                } else {
+                    drawing.restoreRange(from, to);
+                }
+                return 8;
+            case RESHAPE:
+                return readShapes(in, drawing, null, false);
+            case REWRITE:
+                boolean isLive = in.readBoolean();
+                IntList dropped = readSlots(in, store);
+                return 1 + 4 + 4 * dropped.size() + readShapes(in, drawing, dropped, isLive);
+            case FILL:
+                int count = in.readInt();
+                Color fill = DrawingFile.fromArgb(in.readInt());
+                palette.fill(Math.min(count, palette.size()), fill);
+                return 8;
+            case SET_COLORS:
+                Color[] saved = new Color[in.readInt()];
+                for (int i = 0; i < saved.length; i++) {
+                    saved[i] = DrawingFile.fromArgb(in.readInt());
+                }
+                if (saved.length > palette.size()) {
+                    throw new IOException("Corrupted journal record");
+                }
+                palette.setColors(saved);
+                return 4 + 4 * saved.length;
+            case CLEAR:
+                drawing.clear();
+                return 0;
+            case TRUNCATE:
+                int kept = in.readInt();
+                if (kept < 0 || kept > store.size() || store.nextLive(kept) >= 0) {
+                    throw new IOException("Corrupted journal record");
+                }
+                drawing.truncate(kept);
+                return 4;
+            default:
+                throw new IOException("Unknown journal record " + type);
+        }
+    }
+
+    /**
+     * Writes a list of slots
+     *
+     * @param out   Output
+     * @param slots Slots
+     * @throws IOException If the slots cannot be written
+     */
+    private static void writeSlots(DataOutputStream out, IntList slots) throws IOException {
+        out.writeInt(slots.size());
+        for (int i = 0; i < slots.size(); i++) {
+            out.writeInt(slots.get(i));
+        }
+    }
+
+    /**
+     * Writes the state of shapes: slot, coordinates, width and color of every shape, then the number of its points
+     * and the points if it is a pencil stroke that was given new ones (-1 otherwise)
+     *
+     * @param out        Output
+     * @param store      Store of the shapes
+     * @param slots      Slots of the shapes
+     * @param pathStarts Starts of the points of pencil records that changed, -1 for the other shapes; or null
+     * @throws IOException If the shapes cannot be written
+     */
+    private static void writeShapes(DataOutputStream out, ShapeStore store, IntList slots, int[] pathStarts) throws IOException {
+        out.writeInt(slots.size());
+        for (int i = 0; i < slots.size(); i++) {
+            int slot = slots.get(i);
+            out.writeInt(slot);
+            for (int j = 0; j < 4; j++) {
+                out.writeFloat(store.getCoord(slot, j));
+            }
+            out.writeFloat(store.getWidth(slot));
+            out.writeInt(store.getColor(slot));
+            if (pathStarts != null && pathStarts[i] >= 0) {
+                int size = store.getPathSize(slot);
+                out.writeInt(size);
+                for (int j = 0; j < size * 2; j++) {
+                    out.writeFloat(store.getPathCoord(slot, j));
+                }
+            } else {
+                out.writeInt(-1);
+            }
+        }
+    }
+
+    /**
+     * Reads shapes written by writeShapes and changes them in the drawing (see Drawing.reshape), after they are
+     * removed or put back with the dropped shapes if there are any (see Drawing.rewrite). New points of pencil
+     * strokes are appended to the store's path
+     *
+     * @param in      Input
+     * @param drawing Drawing
+     * @param dropped Slots of the shapes that are removed or put back, null for a reshape
+     * @param isLive  True if the dropped shapes are put back, false if they are removed
+     * @return Size of the shapes (bytes)
+     * @throws IOException If the shapes cannot be read or are corrupted
+     */
+    private static int readShapes(DataInputStream in, Drawing drawing, IntList dropped, boolean isLive) throws IOException {
+        ShapeStore store = drawing.getStore();
+        int n = in.readInt();
+        if (n < 0 || n > store.size()) {
+            throw new IOException("Corrupted journal record");
+        }
+        IntList slots = new IntList(n);
+        float[] xs = new float[n * 2], ys = new float[n * 2], widths = new float[n];
+        int[] colors = new int[n], pathStarts = null;
+        int bytes = 4;
+        for (int i = 0; i < n; i++) {
+            int slot = checkSlot(store, in.readInt());
+            slots.add(slot);
+            xs[i * 2] = in.readFloat();
+            ys[i * 2] = in.readFloat();
+            xs[i * 2 + 1] = in.readFloat();
+            ys[i * 2 + 1] = in.readFloat();
+            widths[i] = in.readFloat();
+            colors[i] = in.readInt();
+            int size = in.readInt();
+            if (colors[i] < 0 || colors[i] >= store.getPalette().size() || size < -1
+                    || size >= 0 && (store.getKind(slot) != ShapeStore.PENCIL || size != store.getPathSize(slot))) {
+                throw new IOException("Corrupted journal record");
+            }
+            bytes += 32;
+            if (size >= 0) {
+                float[] points = new float[size * 2];
+                for (int j = 0; j < points.length; j++) {
+                    points[j] = in.readFloat();
+                }
+                if (pathStarts == null) {
+                    pathStarts = new int[n];
+                    Arrays.fill(pathStarts, -1);
+                }
+                pathStarts[i] = store.appendPoints(points, 0, size);
+                bytes += 8 * size;
+            }
+        }
+        if (dropped == null) {
+            drawing.reshape(slots, xs, ys, widths, colors, pathStarts);
+        } else {
+            drawing.rewrite(dropped, isLive, slots, xs, ys, widths, colors);
+        }
+        return bytes;
+    }
+
+    /**
+     * Reads a list of slots written by writeSlots and checks them
+     *
+     * @param in    Input
+     * @param store Store of the drawing
+     * @return Slots
+     * @throws IOException If the list cannot be read or has a slot that the store does not have
+     */
+    private static IntList readSlots(DataInputStream in, ShapeStore store) throws IOException {
+        int size = in.readInt();
+        if (size < 0 || size > store.size()) {
+            throw new IOException("Corrupted journal record");
+        }
+        IntList slots = new IntList(size);
+        for (int i = 0; i < size; i++) {
+            slots.add(checkSlot(store, in.readInt()));
+        }
+        return slots;
+    }
+
+    /**
+     * Checks a slot read from the journal
+     *
+     * @param store Store of the drawing
+     * @param slot  Slot
+     * @return The slot
+     * @throws IOException If the store has no such slot
+     */
+    private static int checkSlot(ShapeStore store, int slot) throws IOException {
+        if (slot < 0 || slot >= store.size()) {
+            throw new IOException("Corrupted journal record");
+        }
+        return slot;
+    }
+}
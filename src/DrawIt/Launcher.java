@@ -0,0 +1,38 @@
+package DrawIt;
+import javafx.application.Application;
+
+import java.util.Arrays;
+
+/**
+ * Entry point of the application jar. It does not extend Application, so the JavaFX launcher does not start the
+ * toolkit before main runs: the modes without a window work on headless machines and without JavaFX on the module
+ * path. The first argument chooses the mode
+ * <ul>
+ * <li>--batch &lt;input dir&gt; &lt;output dir&gt; [scale] [concurrency]: renders drawing files to PNG images
+ * (see BatchRenderer)</li>
+ * <li>--replay &lt;trace file&gt; [drawing file|-] [max p99 ms]: replays an input trace and reports its latency
+ * (see TraceReplay)</li>
+ * <li>anything else: opens the window (see DrawIt)</li>
+ * </ul>
+ *
+ * @author Maksym Hanushchak
+ */
+public class Launcher {
+    /**
+     * Main method that starts the chosen mode
+     *
+     * @param args Empty, or --batch or --replay followed by the arguments of that mode
+     * @throws Exception If the batch mode or the replay fails
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--batch")) {
+            BatchRenderer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--replay")) {
+            TraceReplay.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        Application.launch(DrawIt.class, args);
+    }
+}
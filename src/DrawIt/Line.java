@@ -1,5 +1,4 @@
 package DrawIt;
-import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.paint.Color;
 
 /**
@@ -23,15 +22,37 @@ public class Line extends Shape {
         super(sx, sy, ex, ey, lineColor, lineWidth); // Passes parameters to the superclass
     }
 
+    /**
+     * Getter method for the kind of the shape
+     *
+     * @return ShapeStore.LINE
+     */
+    @Override
+    public byte getKind() {
+        return ShapeStore.LINE;
+    }
+
+    /**
+     * Measures the distance from a point to the line segment
+     *
+     * @param x Point's x coordinate
+     * @param y Point's y coordinate
+     * @return Distance in pixels
+     */
+    @Override
+    public double distanceTo(double x, double y) {
+        return segmentDistance(x, y, getSx(), getSy(), getEx(), getEy());
+    }
+
     /**
      * Draws the line on the canvas
      *
-     * @param gc Graphics Context
+     * @param r Renderer (JavaFX canvas or image)
      */
     @Override
-    public void draw(GraphicsContext gc) {
-        gc.setStroke(getLineColor());
-        gc.setLineWidth(getLineWidth());
-        gc.strokeLine(getSx(), getSy(), getEx(), getEy());
+    public void draw(Renderer r) {
+        r.setStroke(getLineColor());
+        r.setLineWidth(getLineWidth());
+        r.strokeLine(getSx(), getSy(), getEx(), getEy());
     }
 }
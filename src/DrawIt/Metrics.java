@@ -0,0 +1,380 @@
+package DrawIt;
+import javafx.animation.AnimationTimer;
+import javafx.scene.control.Label;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Collects timings of the hot paths: latency histograms of the input handlers, undo, redo and recolor, the time
+ * between pulses, and the shapes drawn and stroke state changes of the repaints. Everything is recorded on the
+ * FX thread. The numbers can be shown on an overlay and appended to a file every few seconds, together with the
+ * size of the drawing, so slow frames can be matched with big documents. Pulses are only measured while the
+ * numbers are shown or dumped
+ *
+ * @author Maksym Hanushchak
+ */
+public class Metrics {
+    /**
+     * Operations with a latency histogram
+     */
+    public static final int PRESS = 0, DRAG = 1, RELEASE = 2, UNDO = 3, REDO = 4, RECOLOR = 5;
+    /**
+     * Names of the operations in the reports
+     */
+    private static final String[] NAMES = {"press", "drag", "release", "undo", "redo", "recolor"};
+    /**
+     * Time between two updates of the overlay (nanoseconds)
+     */
+    private static final long OVERLAY_PERIOD = 250_000_000L;
+    /**
+     * Time between two dumps to the file (nanoseconds)
+     */
+    private static final long DUMP_PERIOD = 10_000_000_000L;
+    /**
+     * Number of dumps that may wait for the writer, more are dropped
+     */
+    private static final int MAX_PENDING_DUMPS = 16;
+    /**
+     * Format of the time of a dump
+     */
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+    /**
+     * Drawing whose size is reported
+     */
+    private final Drawing drawing;
+    /**
+     * Latency of the operations (nanoseconds)
+     */
+    private final Histogram[] latencies = new Histogram[NAMES.length];
+    /**
+     * Time between two pulses (nanoseconds)
+     */
+    private final Histogram frames = new Histogram();
+    /**
+     * Time of a repaint (nanoseconds)
+     */
+    private final Histogram repaints = new Histogram();
+    /**
+     * Shapes drawn by a repaint
+     */
+    private final Histogram shapes = new Histogram();
+    /**
+     * Stroke state changes in a frame that repainted something
+     */
+    private final Histogram stateChanges = new Histogram();
+    /**
+     * Stroke state changes of the current frame
+     */
+    private long frameChanges;
+    /**
+     * Time of the last pulse, 0 before the first one
+     */
+    private long lastPulse;
+    /**
+     * Times of the last update of the overlay and of the last dump
+     */
+    private long lastOverlay, lastDump;
+    /**
+     * Label that shows the numbers on the canvas, or null
+     */
+    private Label overlay;
+    /**
+     * Reports waiting to be appended to the file, null if there is no file
+     */
+    private BlockingQueue<String> dumps;
+    /**
+     * True while the timer is running
+     */
+    private boolean running;
+    /**
+     * Timer that measures the pulses, updates the overlay and dumps the numbers
+     */
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            pulse(now);
+        }
+    };
+
+    /**
+     * Histogram of non-negative values with buckets that grow exponentially, 8 buckets per power of two, so every
+     * value is kept within 12.5%. Recording costs a few instructions and no allocation
+     */
+    static class Histogram {
+        /**
+         * Bits of a value below its leading bit that pick the bucket
+         */
+        private static final int SUB_BITS = 3;
+        /**
+         * Buckets per power of two
+         */
+        private static final int SUB = 1 << SUB_BITS;
+        /**
+         * Number of values in each bucket
+         */
+        private final long[] buckets = new long[64 << SUB_BITS];
+        /**
+         * Number of values, their sum and the biggest value
+         */
+        private long count, sum, max;
+
+        /**
+         * Adds a value
+         *
+         * @param value Value, negative values count as 0
+         */
+        void record(long value) {
+            value = Math.max(0, value);
+            buckets[index(value)]++;
+            count++;
+            sum += value;
+            max = Math.max(max, value);
+        }
+
+        /**
+         * Finds the bucket of a value
+         *
+         * @param value Value
+         * @return Index of the bucket
+         */
+        static int index(long value) {
+            if (value < SUB) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            return (exponent - SUB_BITS + 1) << SUB_BITS | (int) (value >>> (exponent - SUB_BITS)) & (SUB - 1);
+        }
+
+        /**
+         * Finds the biggest value that falls into a bucket
+         *
+         * @param index Index of the bucket
+         * @return Upper edge of the bucket
+         */
+        static long upperEdge(int index) {
+            if (index < SUB) {
+                return index;
+            }
+            int shift = (index >>> SUB_BITS) - 1;
+            return ((long) (SUB | index & (SUB - 1)) << shift) + (1L << shift) - 1;
+        }
+
+        /**
+         * Getter method for the number of values
+         *
+         * @return Number of values
+         */
+        long getCount() {
+            return count;
+        }
+
+        /**
+         * Getter method for the biggest value
+         *
+         * @return Biggest value, 0 if there are none
+         */
+        long getMax() {
+            return max;
+        }
+
+        /**
+         * Getter method for the mean of the values
+         *
+         * @return Mean, 0 if there are none
+         */
+        double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * Finds the value below which a fraction of the values are
+         *
+         * @param fraction Fraction of the values (0.5 is the median)
+         * @return Upper edge of the bucket of the value, never more than the biggest value
+         */
+        long percentile(double fraction) {
+            long rank = Math.max(1, (long) Math.ceil(fraction * count));
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return Math.min(max, upperEdge(i));
+                }
+            }
+            return max;
+        }
+    }
+
+    /**
+     * Metrics constructor
+     *
+     * @param drawing Drawing whose size is reported
+     */
+    Metrics(Drawing drawing) {
+        this.drawing = drawing;
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new Histogram();
+        }
+    }
+
+    /**
+     * Shows the numbers on a label, or stops showing them
+     *
+     * @param overlay Label that shows the numbers, or null
+     */
+    public void setOverlay(Label overlay) {
+        this.overlay = overlay;
+        lastOverlay = 0; // Shown on the next pulse
+        updateTimer();
+    }
+
+    /**
+     * Appends the numbers to a file every few seconds. The file is written by a background thread
+     *
+     * @param file File that receives the reports
+     */
+    public void dumpTo(Path file) {
+        BlockingQueue<String> queue = new ArrayBlockingQueue<>(MAX_PENDING_DUMPS);
+        Thread writer = new Thread(() -> write(queue, file), "DrawIt metrics");
+        writer.setDaemon(true);
+        writer.start();
+        dumps = queue;
+        updateTimer();
+    }
+
+    /**
+     * Runs the timer while the numbers are shown or dumped. The timer asks for a pulse on every frame, so it is
+     * stopped when nobody looks at them
+     */
+    private void updateTimer() {
+        boolean needed = overlay != null || dumps != null;
+        if (needed && !running) {
+            lastPulse = 0;
+            frameChanges = 0;
+            timer.start();
+        } else if (!needed && running) {
+            timer.stop();
+        }
+        running = needed;
+    }
+
+    /**
+     * Records the latency of an operation
+     *
+     * @param operation Operation (PRESS, DRAG, RELEASE, UNDO, REDO or RECOLOR)
+     * @param nanos     Time it took (nanoseconds)
+     */
+    public void record(int operation, long nanos) {
+        latencies[operation].record(nanos);
+    }
+
+    /**
+     * Records a repaint of the main canvas
+     *
+     * @param nanos   Time it took (nanoseconds)
+     * @param drawn   Number of shapes stroked
+     * @param changes Number of stroke state changes
+     */
+    public void repaint(long nanos, long drawn, long changes) {
+        repaints.record(nanos);
+        shapes.record(drawn);
+        frameChanges += changes;
+    }
+
+    /**
+     * Closes the frame that has just ended, updates the overlay and queues a dump when they are due
+     *
+     * @param now Time of the pulse (nanoseconds)
+     */
+    private void pulse(long now) {
+        if (lastPulse != 0) {
+            frames.record(now - lastPulse);
+        }
+        lastPulse = now;
+        if (frameChanges > 0) { // Idle frames would hide the busy ones
+            stateChanges.record(frameChanges);
+            frameChanges = 0;
+        }
+        if (overlay != null && now - lastOverlay >= OVERLAY_PERIOD) {
+            overlay.setText(report());
+            lastOverlay = now;
+        }
+        if (dumps != null && now - lastDump >= DUMP_PERIOD) {
+            dumps.offer(TIME.format(LocalDateTime.now()) + "\n" + report() + "\n");
+            lastDump = now;
+        }
+    }
+
+    /**
+     * Puts the numbers into text, one line per histogram
+     *
+     * @return Report
+     */
+    public String report() {
+        StringBuilder text = new StringBuilder();
+        text.append("shapes ").append(drawing.size()).append('\n');
+        for (int i = 0; i < latencies.length; i++) {
+            appendTimes(text, NAMES[i], latencies[i]);
+        }
+        appendTimes(text, "frame", frames);
+        appendTimes(text, "repaint", repaints);
+        appendCounts(text, "drawn/repaint", shapes);
+        appendCounts(text, "changes/frame", stateChanges);
+        return text.toString();
+    }
+
+    /**
+     * Appends a line with the count and the percentiles of a histogram of times (milliseconds)
+     *
+     * @param text      Report
+     * @param name      Name of the histogram
+     * @param histogram Histogram of times (nanoseconds)
+     */
+    static void appendTimes(StringBuilder text, String name, Histogram histogram) {
+        text.append(String.format("%-14s n=%-7d p50=%.2f p99=%.2f max=%.2f ms\n", name, histogram.getCount(),
+                histogram.percentile(0.5) / 1e6, histogram.percentile(0.99) / 1e6, histogram.getMax() / 1e6));
+    }
+
+    /**
+     * Appends a line with the count and the percentiles of a histogram of counts
+     *
+     * @param text      Report
+     * @param name      Name of the histogram
+     * @param histogram Histogram of counts
+     */
+    private static void appendCounts(StringBuilder text, String name, Histogram histogram) {
+        text.append(String.format("%-14s n=%-7d p50=%d p99=%d max=%d mean=%.1f\n", name, histogram.getCount(),
+                histogram.percentile(0.5), histogram.percentile(0.99), histogram.getMax(), histogram.getMean()));
+    }
+
+    /**
+     * Appends the queued reports to the file, runs on the writer thread. A report that cannot be written is
+     * dropped, the next one is tried again
+     *
+     * @param queue Queued reports
+     * @param file  File that receives them
+     */
+    private static void write(BlockingQueue<String> queue, Path file) {
+        try {
+            while (true) {
+                String report = queue.take();
+                try {
+                    Files.write(file, report.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE,
+                            StandardOpenOption.APPEND);
+                } catch (IOException e) {
+                    System.err.println("Metrics could not be written: " + e.getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package DrawIt;
+import javafx.scene.paint.Color;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Palette of the drawing. Every distinct color is stored once and shapes refer to it by its index, so the color of
+ * all the shapes that share an entry can be changed by changing the entry
+ * <p>
+ * A snapshot of the palette shares its entries, they are copied before the palette changes one of them
+ *
+ * @author Maksym Hanushchak
+ */
+public class Palette {
+    /**
+     * Colors by index
+     */
+    private Color[] colors;
+    /**
+     * Number of colors
+     */
+    private int size;
+    /**
+     * Indices by color (null in snapshots, they cannot be changed)
+     */
+    private final HashMap<Color, Integer> indices;
+    /**
+     * True if the entries may be shared with a snapshot
+     */
+    private boolean shared;
+
+    /**
+     * Palette constructor
+     */
+    Palette() {
+        colors = new Color[16];
+        indices = new HashMap<>();
+    }
+
+    /**
+     * Snapshot constructor
+     *
+     * @param colors Entries (shared)
+     * @param size   Number of colors
+     */
+    private Palette(Color[] colors, int size) {
+        this.colors = colors;
+        this.size = size;
+        this.indices = null;
+    }
+
+    /**
+     * Creates a read-only version of the palette as it is now, in constant time
+     *
+     * @return Snapshot of the palette
+     */
+    public Palette snapshot() {
+        shared = true;
+        return new Palette(colors, size);
+    }
+
+    /**
+     * Checks that the palette can be changed and copies the entries if a snapshot may read them
+     */
+    private void own() {
+        if (indices == null) {
+            throw new IllegalStateException("A snapshot cannot be changed");
+        }
+        if (shared) {
+            colors = colors.clone();
+            shared = false;
+        }
+    }
+
+    /**
+     * Appends an entry. Snapshots never read past their size, so the entries are only copied when they are full
+     *
+     * @param color Color
+     * @return Index of the new entry
+     */
+    private int append(Color color) {
+        if (indices == null) {
+            throw new IllegalStateException("A snapshot cannot be changed");
+        }
+        if (size == colors.length) {
+            colors = Arrays.copyOf(colors, size * 2);
+            shared = false;
+        }
+        colors[size] = color;
+        return size++;
+    }
+
+    /**
+     * Finds the index of a color, adds the color to the palette if it is not there yet
+     *
+     * @param color Color
+     * @return Index of the color
+     */
+    public int intern(Color color) {
+        Integer index = indices == null ? null : indices.get(color);
+        if (index == null) {
+            index = append(color);
+            indices.put(color, index);
+        }
+        return index;
+    }
+
+    /**
+     * Appends a color even if it is already in the palette (used when a palette is read back, so that the indices
+     * stay the same)
+     *
+     * @param color Color
+     * @return Index of the new entry
+     */
+    public int add(Color color) {
+        int index = append(color);
+        indices.putIfAbsent(color, index);
+        return index;
+    }
+
+    /**
+     * Replaces the first entries of the palette with one color (every shape that uses them gets the color)
+     *
+     * @param count Number of entries to replace
+     * @param color New color
+     */
+    public void fill(int count, Color color) {
+        own();
+        Arrays.fill(colors, 0, count, color);
+        reindex();
+    }
+
+    /**
+     * Puts back the first entries of the palette saved by getColors
+     *
+     * @param saved Saved entries
+     */
+    public void setColors(Color[] saved) {
+        own();
+        System.arraycopy(saved, 0, colors, 0, saved.length);
+        reindex();
+    }
+
+    /**
+     * Getter method for a copy of the entries
+     *
+     * @return Colors by index
+     */
+    public Color[] getColors() {
+        return Arrays.copyOf(colors, size);
+    }
+
+    /**
+     * Rebuilds the indices after entries were changed (a color maps to its first entry)
+     */
+    private void reindex() {
+        indices.clear();
+        for (int i = 0; i < size; i++) {
+            indices.putIfAbsent(colors[i], i);
+        }
+    }
+
+    /**
+     * Getter method for a color
+     *
+     * @param index Index of the color
+     * @return Color
+     */
+    public Color get(int index) {
+        return colors[index];
+    }
+
+    /**
+     * Getter method for the number of colors
+     *
+     * @return Number of colors
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all the colors
+     */
+    public void clear() {
+        own();
+        Arrays.fill(colors, 0, size, null);
+        size = 0;
+        indices.clear();
+    }
+}
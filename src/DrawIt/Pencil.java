@@ -0,0 +1,323 @@
+package DrawIt;
+import javafx.scene.paint.Color;
+
+import java.util.Arrays;
+
+/**
+ * This class allows to draw a freehand stroke (polyline). Subclass of Shape class. The points are kept in a
+ * growable float array (x and y of every point one after another), the shape's coordinates are the bounding box of
+ * the points
+ * <p>
+ * Points are simplified while they are added: a point closer than TOLERANCE to the last kept point is skipped, and
+ * the last kept point is replaced when the new segment passes within TOLERANCE of every mouse position it stands
+ * for. The kept polyline never leaves the mouse path by more than TOLERANCE canvas pixels (the tolerance in world
+ * units depends on the zoom the stroke is drawn at)
+ *
+ * @author Maksym Hanushchak
+ */
+public class Pencil extends Shape {
+    /**
+     * Largest distance between the mouse path and the kept polyline (canvas pixels)
+     */
+    static final double TOLERANCE = 1;
+    /**
+     * Most mouse positions that one segment can stand for, a point is kept after that
+     */
+    private static final int MAX_COVERED = 64;
+    /**
+     * Points (x, y, x, y, ...)
+     */
+    private float[] points;
+    /**
+     * Index of the first point's x in the array
+     */
+    private int offset;
+    /**
+     * Number of points
+     */
+    private int size;
+    /**
+     * Mouse positions between the second to last and the last kept point (x, y, x, y, ...)
+     */
+    private float[] covered;
+    /**
+     * Number of floats in 'covered'
+     */
+    private int coveredSize;
+    /**
+     * Last mouse position, it may have been skipped
+     */
+    private float lastX, lastY;
+    /**
+     * Largest distance between the mouse path and the kept polyline (world units)
+     */
+    private double tolerance = TOLERANCE;
+
+    /**
+     * Pencil constructor for a stroke that is about to be drawn
+     *
+     * @param lineColor Stroke's line color
+     * @param lineWidth Stroke's line width
+     */
+    Pencil(Color lineColor, double lineWidth) {
+        super(0, 0, 0, 0, lineColor, lineWidth);
+        points = new float[64];
+        covered = new float[MAX_COVERED * 2];
+    }
+
+    /**
+     * Pencil constructor for a stroke that is about to be drawn on a zoomed view
+     *
+     * @param lineColor Stroke's line color
+     * @param lineWidth Stroke's line width
+     * @param scale     Canvas pixels per world unit of the view
+     */
+    Pencil(Color lineColor, double lineWidth, double scale) {
+        this(lineColor, lineWidth);
+        tolerance = TOLERANCE / scale;
+    }
+
+    /**
+     * Pencil constructor for a finished stroke
+     *
+     * @param points    Points (x, y, x, y, ...), the array is used as it is
+     * @param size      Number of points
+     * @param lineColor Stroke's line color
+     * @param lineWidth Stroke's line width
+     */
+    Pencil(float[] points, int size, Color lineColor, double lineWidth) {
+        super(0, 0, 0, 0, lineColor, lineWidth);
+        setPoints(points, 0, size);
+        setBounds();
+    }
+
+    /**
+     * Shows points that belong to someone else, for example a record of a ShapeStore. Points must not be added to
+     * the stroke after that
+     *
+     * @param points Array of the points
+     * @param offset Index of the first point's x
+     * @param size   Number of points
+     */
+    void setPoints(float[] points, int offset, int size) {
+        this.points = points;
+        this.offset = offset;
+        this.size = size;
+    }
+
+    /**
+     * Sets the bounding box to the points (see setPoints)
+     */
+    void setBounds() {
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int i = offset, end = offset + size * 2; i < end; i += 2) {
+            minX = Math.min(minX, points[i]);
+            minY = Math.min(minY, points[i + 1]);
+            maxX = Math.max(maxX, points[i]);
+            maxY = Math.max(maxY, points[i + 1]);
+        }
+        if (size > 0) {
+            set(minX, minY, maxX, maxY, getLineColor(), getLineWidth());
+        }
+    }
+
+    /**
+     * Adds the next mouse position to the stroke
+     *
+     * @param x Mouse x coordinate
+     * @param y Mouse y coordinate
+     */
+    public void addPoint(double x, double y) {
+        lastX = (float) x;
+        lastY = (float) y;
+        if (size == 0) {
+            append(lastX, lastY);
+            return;
+        }
+        int last = offset + size * 2 - 2;
+        if (Math.hypot(lastX - points[last], lastY - points[last + 1]) < tolerance) { // Too close to the last point
+            cover(lastX, lastY);
+            return;
+        }
+        if (size >= 2 && coveredSize < covered.length && isCovered(points[last - 2], points[last - 1], points[last], points[last + 1])) {
+            cover(points[last], points[last + 1]); // The last point is replaced by the new one
+            points[last] = lastX;
+            points[last + 1] = lastY;
+            include(lastX, lastY);
+            return;
+        }
+        coveredSize = 0;
+        append(lastX, lastY);
+    }
+
+    /**
+     * Finishes the stroke: keeps the last mouse position, trims the array and fits the bounding box to the points.
+     * A stroke of one point becomes a dot. No points are added after that
+     */
+    public void finish() {
+        int last = offset + size * 2 - 2;
+        if (size > 0 && (size == 1 || points[last] != lastX || points[last + 1] != lastY)) {
+            append(lastX, lastY);
+        }
+        coveredSize = 0;
+        points = Arrays.copyOfRange(points, offset, offset + size * 2);
+        offset = 0;
+        setBounds();
+    }
+
+    /**
+     * Checks whether the segment from the second to last kept point to the new mouse position passes close enough
+     * to the last kept point and to every mouse position it stands for
+     *
+     * @param ax X coordinate of the second to last point
+     * @param ay Y coordinate of the second to last point
+     * @param bx X coordinate of the last point
+     * @param by Y coordinate of the last point
+     * @return True if the last point can be replaced
+     */
+    private boolean isCovered(float ax, float ay, float bx, float by) {
+        if (segmentDistance(bx, by, ax, ay, lastX, lastY) > tolerance) {
+            return false;
+        }
+        for (int i = 0; i < coveredSize; i += 2) {
+            if (segmentDistance(covered[i], covered[i + 1], ax, ay, lastX, lastY) > tolerance) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Remembers a mouse position that the last segment stands for. When the list is full the last point is not
+     * replaced any more, so further positions are not needed
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     */
+    private void cover(float x, float y) {
+        if (coveredSize == covered.length) {
+            return;
+        }
+        covered[coveredSize++] = x;
+        covered[coveredSize++] = y;
+    }
+
+    /**
+     * Appends a point
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     */
+    private void append(float x, float y) {
+        int end = offset + size * 2;
+        if (end + 2 > points.length) {
+            points = Arrays.copyOf(points, Math.max(8, points.length * 2));
+        }
+        points[end] = x;
+        points[end + 1] = y;
+        if (size++ == 0) {
+            set(x, y, x, y, getLineColor(), getLineWidth());
+        } else {
+            include(x, y);
+        }
+    }
+
+    /**
+     * Grows the bounding box to a point
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     */
+    private void include(double x, double y) {
+        set(Math.min(getSx(), x), Math.min(getSy(), y), Math.max(getEx(), x), Math.max(getEy(), y), getLineColor(), getLineWidth());
+    }
+
+    /**
+     * Getter method for the array of the points
+     *
+     * @return Points (x, y, x, y, ...), starting at getOffset
+     */
+    public float[] getPoints() {
+        return points;
+    }
+
+    /**
+     * Getter method for the index of the first point's x
+     *
+     * @return Index in the array of the points
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Getter method for the number of points
+     *
+     * @return Number of points
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Getter method for the x coordinate of a point
+     *
+     * @param index Index of the point
+     * @return X coordinate
+     */
+    public double getX(int index) {
+        return points[offset + index * 2];
+    }
+
+    /**
+     * Getter method for the y coordinate of a point
+     *
+     * @param index Index of the point
+     * @return Y coordinate
+     */
+    public double getY(int index) {
+        return points[offset + index * 2 + 1];
+    }
+
+    /**
+     * Getter method for the kind of the shape
+     *
+     * @return ShapeStore.PENCIL
+     */
+    @Override
+    public byte getKind() {
+        return ShapeStore.PENCIL;
+    }
+
+    /**
+     * Measures the distance from a point to the nearest segment of the stroke
+     *
+     * @param x Point's x coordinate
+     * @param y Point's y coordinate
+     * @return Distance in pixels
+     */
+    @Override
+    public double distanceTo(double x, double y) {
+        if (size == 1) {
+            return Math.hypot(x - points[offset], y - points[offset + 1]);
+        }
+        double distance = Double.POSITIVE_INFINITY;
+        for (int i = offset, end = offset + size * 2 - 2; i < end; i += 2) {
+            distance = Math.min(distance, segmentDistance(x, y, points[i], points[i + 1], points[i + 2], points[i + 3]));
+        }
+        return distance;
+    }
+
+    /**
+     * Draws the stroke on the canvas
+     *
+     * @param r Renderer (JavaFX canvas or image)
+     */
+    @Override
+    public void draw(Renderer r) {
+        r.setStroke(getLineColor());
+        r.setLineWidth(getLineWidth());
+        r.strokePolyline(points, offset, size);
+    }
+}
@@ -0,0 +1,421 @@
+package DrawIt;
+import javafx.scene.paint.Color;
+
+import java.util.Arrays;
+
+/**
+ * Software renderer that rasterizes anti-aliased strokes into an int[] ARGB buffer. It needs no toolkit and no
+ * display, so drawings can be rendered on headless machines. The strokes follow the defaults of the JavaFX
+ * graphics context (square line caps, miter joins, round joins for polylines as FxRenderer draws them), so the
+ * result is comparable with the canvas pixel by pixel
+ * <p>
+ * Coverage of a pixel is computed analytically: exactly for rectangle strokes, from the distance to the center
+ * line for lines and ellipses. Only the pixels near the stroke are visited
+ *
+ * @author Maksym Hanushchak
+ */
+public class RasterRenderer implements Renderer {
+    /**
+     * Image size (pixels)
+     */
+    private final int width, height;
+    /**
+     * Position of the image's top left pixel in drawing coordinates
+     */
+    private final int originX, originY;
+    /**
+     * Pixels in ARGB format, row by row
+     */
+    private final int[] pixels;
+    /**
+     * Current stroke color components (0 - 255)
+     */
+    private int red, green, blue;
+    /**
+     * Current stroke color opacity (0 - 1)
+     */
+    private double opacity = 1;
+    /**
+     * Current stroke width
+     */
+    private double lineWidth = 1;
+    /**
+     * Reusable range of columns of one row of a line
+     */
+    private final double[] range = new double[2];
+
+    /**
+     * RasterRenderer constructor
+     *
+     * @param width  Image width
+     * @param height Image height
+     */
+    public RasterRenderer(int width, int height) {
+        this(width, height, 0, 0, new int[width * height]);
+    }
+
+    /**
+     * RasterRenderer constructor for a part of a drawing (for example one tile of it)
+     *
+     * @param width   Image width
+     * @param height  Image height
+     * @param originX X coordinate of the image's top left pixel in the drawing
+     * @param originY Y coordinate of the image's top left pixel in the drawing
+     * @param pixels  Buffer of at least width * height pixels
+     */
+    public RasterRenderer(int width, int height, int originX, int originY, int[] pixels) {
+        this.width = width;
+        this.height = height;
+        this.originX = originX;
+        this.originY = originY;
+        this.pixels = pixels;
+    }
+
+    /**
+     * Fills the whole image with a color
+     *
+     * @param color Fill color
+     */
+    public void fill(Color color) {
+        Arrays.fill(pixels, 0, width * height, toArgb(color));
+    }
+
+    /**
+     * Converts a color to ARGB format
+     *
+     * @param color Color
+     * @return ARGB value
+     */
+    public static int toArgb(Color color) {
+        return ((int) Math.round(color.getOpacity() * 255) << 24) | ((int) Math.round(color.getRed() * 255) << 16)
+                | ((int) Math.round(color.getGreen() * 255) << 8) | (int) Math.round(color.getBlue() * 255);
+    }
+
+    /**
+     * Getter method for the pixels
+     *
+     * @return Pixels in ARGB format, row by row
+     */
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    /**
+     * Getter method for the image width
+     *
+     * @return Width in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Getter method for the image height
+     *
+     * @return Height in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public void setStroke(Color color) {
+        red = (int) Math.round(color.getRed() * 255);
+        green = (int) Math.round(color.getGreen() * 255);
+        blue = (int) Math.round(color.getBlue() * 255);
+        opacity = color.getOpacity();
+    }
+
+    @Override
+    public void setLineWidth(double width) {
+        lineWidth = width;
+    }
+
+    /**
+     * Blends the current stroke color into a pixel (source over)
+     *
+     * @param x        Pixel's column in the image
+     * @param y        Pixel's row in the image
+     * @param coverage Part of the pixel covered by the stroke (0 - 1)
+     */
+    private void blend(int x, int y, double coverage) {
+        double a = opacity * Math.min(1, coverage);
+        if (a <= 0.5 / 255) {
+            return;
+        }
+        int index = y * width + x;
+        if (a >= 254.5 / 255) {
+            pixels[index] = 0xff000000 | (red << 16) | (green << 8) | blue;
+            return;
+        }
+        int dst = pixels[index];
+        if ((dst >>> 24) == 0xff) { // Opaque background (the usual case) is blended with integer math
+            int a8 = (int) (a * 255 + 0.5), k8 = 255 - a8;
+            int r = div255(red * a8 + ((dst >> 16) & 0xff) * k8);
+            int g = div255(green * a8 + ((dst >> 8) & 0xff) * k8);
+            int b = div255(blue * a8 + (dst & 0xff) * k8);
+            pixels[index] = 0xff000000 | (r << 16) | (g << 8) | b;
+            return;
+        }
+        double da = (dst >>> 24) / 255.0;
+        double outA = a + da * (1 - a);
+        double k = da * (1 - a);
+        int r = (int) Math.round((red * a + ((dst >> 16) & 0xff) * k) / outA);
+        int g = (int) Math.round((green * a + ((dst >> 8) & 0xff) * k) / outA);
+        int b = (int) Math.round((blue * a + (dst & 0xff) * k) / outA);
+        pixels[index] = ((int) Math.round(outA * 255) << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * Divides by 255 with rounding, without the slow integer division
+     *
+     * @param v Value (0 - 65025)
+     * @return v / 255 rounded to the nearest integer
+     */
+    private static int div255(int v) {
+        v += 128;
+        return (v + (v >> 8)) >> 8;
+    }
+
+    /**
+     * Length of the part of the pixel [i, i + 1] covered by the interval [from, to]
+     *
+     * @param i    Pixel's coordinate
+     * @param from Start of the interval
+     * @param to   End of the interval
+     * @return Covered length (0 - 1)
+     */
+    private static double overlap(int i, double from, double to) {
+        return Math.max(0, Math.min(i + 1, to) - Math.max(i, from));
+    }
+
+    /**
+     * Coverage of a pixel by a band of the stroke, given the distance from the pixel's center to the band's center
+     * line. Strokes thinner than a pixel cover it only partially
+     *
+     * @param distance Distance to the center line
+     * @param half     Half of the band's width
+     * @return Coverage (0 - 1)
+     */
+    private static double bandCoverage(double distance, double half) {
+        return Math.max(0, Math.min(Math.min(1, 2 * half), half + 0.5 - Math.abs(distance)));
+    }
+
+    @Override
+    public void strokeRect(double x, double y, double w, double h) {
+        double half = lineWidth / 2;
+        // Outer and inner edges of the stroke in image coordinates
+        double ox0 = x - half - originX, oy0 = y - half - originY, ox1 = x + w + half - originX, oy1 = y + h + half - originY;
+        double ix0 = ox0 + lineWidth, iy0 = oy0 + lineWidth, ix1 = ox1 - lineWidth, iy1 = oy1 - lineWidth;
+        boolean hasHole = ix0 < ix1 && iy0 < iy1;
+
+        int rowFrom = Math.max(0, (int) Math.floor(oy0)), rowTo = Math.min(height - 1, (int) Math.ceil(oy1) - 1);
+        int colFrom = Math.max(0, (int) Math.floor(ox0)), colTo = Math.min(width - 1, (int) Math.ceil(ox1) - 1);
+        for (int row = rowFrom; row <= rowTo; row++) {
+            double outerY = overlap(row, oy0, oy1);
+            double innerY = hasHole ? overlap(row, iy0, iy1) : 0;
+            if (innerY >= 1) { // Row crosses the hole, only the left and right bands are visited
+                int leftTo = Math.min(colTo, (int) Math.ceil(ix0) - 1);
+                int rightFrom = Math.max(colFrom, (int) Math.floor(ix1));
+                for (int col = colFrom; col <= leftTo; col++) {
+                    blend(col, row, overlap(col, ox0, ox1) * outerY - overlap(col, ix0, ix1));
+                }
+                for (int col = Math.max(rightFrom, leftTo + 1); col <= colTo; col++) {
+                    blend(col, row, overlap(col, ox0, ox1) * outerY - overlap(col, ix0, ix1));
+                }
+            } else {
+                for (int col = colFrom; col <= colTo; col++) {
+                    blend(col, row, overlap(col, ox0, ox1) * outerY - overlap(col, ix0, ix1) * innerY);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void strokeLine(double x1, double y1, double x2, double y2) {
+        double half = lineWidth / 2;
+        strokeSegment(x1, y1, x2, y2, half, half); // Square caps extend the line by half of the width on both ends
+    }
+
+    /**
+     * Strokes a line that is extended past its ends by given lengths
+     *
+     * @param x1       X coordinate of the start
+     * @param y1       Y coordinate of the start
+     * @param x2       X coordinate of the end
+     * @param y2       Y coordinate of the end
+     * @param startCap Extension past the start
+     * @param endCap   Extension past the end
+     */
+    private void strokeSegment(double x1, double y1, double x2, double y2, double startCap, double endCap) {
+        double half = lineWidth / 2;
+        x1 -= originX;
+        y1 -= originY;
+        x2 -= originX;
+        y2 -= originY;
+        double length = Math.hypot(x2 - x1, y2 - y1);
+        double dx = 1, dy = 0; // Direction of the line, a point is drawn as a square
+        if (length > 0) {
+            dx = (x2 - x1) / length;
+            dy = (y2 - y1) / length;
+        }
+        double halfLength = (length + startCap + endCap) / 2;
+        double mx = (x1 + x2 + dx * (endCap - startCap)) / 2, my = (y1 + y2 + dy * (endCap - startCap)) / 2;
+        double reach = Math.abs(dx) * halfLength + Math.abs(dy) * half + 1;
+        double reachY = Math.abs(dy) * halfLength + Math.abs(dx) * half + 1;
+
+        int rowFrom = Math.max(0, (int) Math.floor(my - reachY)), rowTo = Math.min(height - 1, (int) Math.ceil(my + reachY));
+        for (int row = rowFrom; row <= rowTo; row++) {
+            double py = row + 0.5 - my;
+            // Along the line: u = px * dx + py * dy, across the line: v = py * dx - px * dy (px relative to the middle)
+            range[0] = mx - reach;
+            range[1] = mx + reach;
+            clip(range, dx, py * dy, halfLength + 0.5, mx);
+            clip(range, -dy, py * dx, half + 0.5, mx);
+            int colFrom = Math.max(0, (int) Math.floor(range[0])), colTo = Math.min(width - 1, (int) Math.ceil(range[1]));
+            for (int col = colFrom; col <= colTo; col++) {
+                double px = col + 0.5 - mx;
+                double u = px * dx + py * dy, v = py * dx - px * dy;
+                blend(col, row, bandCoverage(v, half) * Math.max(0, Math.min(1, halfLength + 0.5 - Math.abs(u))));
+            }
+        }
+    }
+
+    /**
+     * Strokes every segment of the polyline as a line with square caps at the ends of the polyline only, and a
+     * disc at every inner point: round joins, as the canvas draws polylines (see FxRenderer.strokePolyline). Where
+     * segments and discs overlap a translucent stroke is a little darker than on the canvas
+     *
+     * @param points Points (x, y, x, y, ...)
+     * @param offset Index of the first point's x
+     * @param size   Number of points
+     */
+    @Override
+    public void strokePolyline(float[] points, int offset, int size) {
+        if (size == 1) {
+            strokeLine(points[offset], points[offset + 1], points[offset], points[offset + 1]);
+        }
+        double half = lineWidth / 2;
+        for (int i = offset, end = offset + size * 2 - 2; i < end; i += 2) {
+            if (i > offset) {
+                fillDisc(points[i], points[i + 1], half);
+            }
+            strokeSegment(points[i], points[i + 1], points[i + 2], points[i + 3], i == offset ? half : 0, i + 2 == end ? half : 0);
+        }
+    }
+
+    /**
+     * Blends a disc (a round join of a polyline)
+     *
+     * @param cx     X coordinate of the center
+     * @param cy     Y coordinate of the center
+     * @param radius Radius
+     */
+    private void fillDisc(double cx, double cy, double radius) {
+        cx -= originX;
+        cy -= originY;
+        int rowFrom = Math.max(0, (int) Math.floor(cy - radius - 1)), rowTo = Math.min(height - 1, (int) Math.ceil(cy + radius + 1));
+        int colFrom = Math.max(0, (int) Math.floor(cx - radius - 1)), colTo = Math.min(width - 1, (int) Math.ceil(cx + radius + 1));
+        for (int row = rowFrom; row <= rowTo; row++) {
+            double py = row + 0.5 - cy;
+            for (int col = colFrom; col <= colTo; col++) {
+                blend(col, row, bandCoverage(Math.hypot(col + 0.5 - cx, py), radius));
+            }
+        }
+    }
+
+    /**
+     * Narrows the range of pixel x coordinates to the ones where |a * (x - center) + b| <= limit
+     *
+     * @param range  Range of x coordinates (lower and upper bound), updated in place
+     * @param a      Coefficient of x
+     * @param b      Constant part
+     * @param limit  Limit
+     * @param center X coordinate that the linear function is relative to
+     */
+    private static void clip(double[] range, double a, double b, double limit, double center) {
+        if (Math.abs(a) < 1e-12) {
+            if (Math.abs(b) > limit) { // The whole row is outside
+                range[1] = range[0] - 1;
+            }
+            return;
+        }
+        double p = (-limit - b) / a + center, q = (limit - b) / a + center;
+        range[0] = Math.max(range[0], Math.min(p, q) - 0.5);
+        range[1] = Math.min(range[1], Math.max(p, q) - 0.5);
+    }
+
+    @Override
+    public void strokeOval(double x, double y, double w, double h) {
+        double half = lineWidth / 2;
+        double a = w / 2, b = h / 2;
+        double cx = x + a - originX, cy = y + b - originY;
+        if (a <= 0 || b <= 0) { // Flat ellipse is a segment of the stroke's width
+            strokeFlatOval(cx - a, cy - b, cx + a, cy + b, half);
+            return;
+        }
+        // Rows are scanned between the outer and the inner boundary of the ring only
+        double outerA = a + half + 1, outerB = b + half + 1;
+        double innerA = a - half - 1, innerB = b - half - 1;
+        int rowFrom = Math.max(0, (int) Math.floor(cy - outerB)), rowTo = Math.min(height - 1, (int) Math.ceil(cy + outerB));
+        for (int row = rowFrom; row <= rowTo; row++) {
+            double py = row + 0.5 - cy;
+            if (Math.abs(py) > outerB) {
+                continue;
+            }
+            double outerX = outerA * Math.sqrt(1 - py * py / (outerB * outerB));
+            double innerX = (innerA > 0 && innerB > 0 && Math.abs(py) < innerB) ? innerA * Math.sqrt(1 - py * py / (innerB * innerB)) : 0;
+            if (innerX > 0) {
+                strokeOvalSpan(row, py, cx - outerX, cx - innerX, cx, a, b, half);
+                strokeOvalSpan(row, py, cx + innerX, cx + outerX, cx, a, b, half);
+            } else { // No hole on this row
+                strokeOvalSpan(row, py, cx - outerX, cx + outerX, cx, a, b, half);
+            }
+        }
+    }
+
+    /**
+     * Blends the pixels of one row of the ellipse's ring. The distance to the outline is estimated from the
+     * implicit equation of the ellipse and its gradient
+     *
+     * @param row  Row
+     * @param py   Y coordinate of the row's center relative to the ellipse's center
+     * @param from Left end of the span
+     * @param to   Right end of the span
+     * @param cx   X coordinate of the ellipse's center
+     * @param a    Horizontal semi-axis
+     * @param b    Vertical semi-axis
+     * @param half Half of the stroke width
+     */
+    private void strokeOvalSpan(int row, double py, double from, double to, double cx, double a, double b, double half) {
+        int colFrom = Math.max(0, (int) Math.floor(from)), colTo = Math.min(width - 1, (int) Math.ceil(to) - 1);
+        double ia2 = 1 / (a * a), ib2 = 1 / (b * b);
+        double rowK = py * py * ib2, rowGradient = rowK * ib2; // Parts that are the same for the whole row
+        for (int col = colFrom; col <= colTo; col++) {
+            double px = col + 0.5 - cx;
+            double k = Math.sqrt(px * px * ia2 + rowK);
+            double gradient = Math.sqrt(px * px * ia2 * ia2 + rowGradient);
+            double distance = gradient > 0 ? (k * k - k) / gradient : Math.min(a, b); // (k - 1) / |grad k|
+            blend(col, row, bandCoverage(distance, half));
+        }
+    }
+
+    /**
+     * Strokes a flat (zero width or height) ellipse, which looks like a segment without caps
+     *
+     * @param x1   Start x coordinate (image coordinates)
+     * @param y1   Start y coordinate
+     * @param x2   End x coordinate
+     * @param y2   End y coordinate
+     * @param half Half of the stroke width
+     */
+    private void strokeFlatOval(double x1, double y1, double x2, double y2, double half) {
+        int colFrom = Math.max(0, (int) Math.floor(Math.min(x1, x2) - half - 1)), colTo = Math.min(width - 1, (int) Math.ceil(Math.max(x1, x2) + half));
+        int rowFrom = Math.max(0, (int) Math.floor(Math.min(y1, y2) - half - 1)), rowTo = Math.min(height - 1, (int) Math.ceil(Math.max(y1, y2) + half));
+        for (int row = rowFrom; row <= rowTo; row++) {
+            for (int col = colFrom; col <= colTo; col++) {
+                blend(col, row, bandCoverage(Shape.segmentDistance(col + 0.5, row + 0.5, x1, y1, x2, y2), half));
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package DrawIt;
+import javafx.scene.paint.Color;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * History entry for "Reset Color". Shapes refer to palette entries, so the whole drawing is recolored by replacing
+ * the entries of the palette, and the old entries are all that is needed to undo it. Subclass of Edit class
+ *
+ * @author Maksym Hanushchak
+ */
+public class RecolorEdit extends Edit {
+    /**
+     * Palette entries before the recolor
+     */
+    private final Color[] before;
+    /**
+     * New color of the shapes
+     */
+    private final Color color;
+
+    /**
+     * RecolorEdit constructor
+     *
+     * @param before Palette entries before the recolor
+     * @param color  New color of the shapes
+     */
+    private RecolorEdit(Color[] before, Color color) {
+        this.before = before;
+        this.color = color;
+    }
+
+    /**
+     * Recolors all the shapes of the drawing and repaints the canvas
+     *
+     * @param drawing Drawing
+     * @param engine  Repaint engine of the main canvas
+     * @param color   New color of the shapes
+     * @return Edit that can undo the recolor
+     */
+    public static RecolorEdit recolor(Drawing drawing, RepaintEngine engine, Color color) {
+        Palette palette = drawing.getStore().getPalette();
+        RecolorEdit edit = new RecolorEdit(palette.getColors(), color);
+        edit.redo(drawing, engine);
+        return edit;
+    }
+
+    /**
+     * Puts the old palette entries back. Entries added after the recolor belong to shapes drawn after it, those
+     * edits are undone before this one, so they are left as they are
+     *
+     * @param drawing Drawing that the edit was applied to
+     * @param engine  Repaint engine of the main canvas
+     */
+    @Override
+    public void undo(Drawing drawing, RepaintEngine engine) {
+        drawing.setPalette(before);
+        engine.repaintAll();
+    }
+
+    /**
+     * Replaces the palette entries that existed at the time of the recolor with the new color
+     *
+     * @param drawing Drawing that the edit was applied to
+     * @param engine  Repaint engine of the main canvas
+     */
+    @Override
+    public void redo(Drawing drawing, RepaintEngine engine) {
+        drawing.fillPalette(before.length, color);
+        engine.repaintAll();
+    }
+
+    /**
+     * Writes the old palette entries and the new color
+     *
+     * @param out Output
+     * @throws IOException If the edit cannot be written
+     */
+    @Override
+    public void write(DataOutputStream out) throws IOException {
+        out.writeByte(RECOLOR);
+        out.writeInt(RasterRenderer.toArgb(color));
+        out.writeInt(before.length);
+        for (Color c : before) {
+            out.writeInt(RasterRenderer.toArgb(c));
+        }
+    }
+
+    /**
+     * Reads the data written by write (the type is already read)
+     *
+     * @param in Input
+     * @return Edit
+     * @throws IOException If the edit cannot be read
+     */
+    static RecolorEdit readData(DataInputStream in) throws IOException {
+        Color color = DrawingFile.fromArgb(in.readInt());
+        Color[] before = new Color[in.readInt()];
+        for (int i = 0; i < before.length; i++) {
+            before[i] = DrawingFile.fromArgb(in.readInt());
+        }
+        return new RecolorEdit(before, color);
+    }
+}
@@ -1,5 +1,4 @@
 package DrawIt;
-import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.paint.Color;
 
 /**
@@ -23,13 +22,39 @@ public class Rectangle extends Shape {
         super(sx, sy, ex, ey, lineColor, lineWidth); // Passes parameters to the superclass
     }
 
+    /**
+     * Getter method for the kind of the shape
+     *
+     * @return ShapeStore.RECTANGLE
+     */
+    @Override
+    public byte getKind() {
+        return ShapeStore.RECTANGLE;
+    }
+
+    /**
+     * Measures the distance from a point to the nearest edge of the rectangle
+     *
+     * @param x Point's x coordinate
+     * @param y Point's y coordinate
+     * @return Distance in pixels
+     */
+    @Override
+    public double distanceTo(double x, double y) {
+        double top = segmentDistance(x, y, getSx(), getSy(), getEx(), getSy());
+        double bottom = segmentDistance(x, y, getSx(), getEy(), getEx(), getEy());
+        double left = segmentDistance(x, y, getSx(), getSy(), getSx(), getEy());
+        double right = segmentDistance(x, y, getEx(), getSy(), getEx(), getEy());
+        return Math.min(Math.min(top, bottom), Math.min(left, right));
+    }
+
     /**
      * Draws the line on the canvas. Inverts the coordinates when the condition is followed - to be able to draw in any direction
      *
-     * @param gc Graphics Context
+     * @param r Renderer (JavaFX canvas or image)
      */
     @Override
-    public void draw(GraphicsContext gc) {
+    public void draw(Renderer r) {
 
         double x, y, w, h; // Local variables for X, Y, Width, Height of the Rectangle
 
@@ -48,8 +73,8 @@ public class Rectangle extends Shape {
             h = getEy() - getSy();
         }
 
-        gc.setStroke(getLineColor());
-        gc.setLineWidth(getLineWidth());
-        gc.strokeRect(x, y, w, h);
+        r.setStroke(getLineColor());
+        r.setLineWidth(getLineWidth());
+        r.strokeRect(x, y, w, h);
     }
 }
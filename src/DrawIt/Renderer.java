@@ -0,0 +1,64 @@
+package DrawIt;
+import javafx.scene.paint.Color;
+
+/**
+ * Renderer interface. Shapes draw themselves through a renderer, so the same shape can be drawn on a JavaFX canvas
+ * or into an image without any toolkit
+ *
+ * @author Maksym Hanushchak
+ */
+public interface Renderer {
+
+    /**
+     * Sets the color of the following strokes
+     *
+     * @param color Stroke color
+     */
+    void setStroke(Color color);
+
+    /**
+     * Sets the width of the following strokes
+     *
+     * @param width Stroke width (pixels)
+     */
+    void setLineWidth(double width);
+
+    /**
+     * Strokes a line
+     *
+     * @param x1 Start x coordinate
+     * @param y1 Start y coordinate
+     * @param x2 End x coordinate
+     * @param y2 End y coordinate
+     */
+    void strokeLine(double x1, double y1, double x2, double y2);
+
+    /**
+     * Strokes an ellipse inscribed in the rectangle
+     *
+     * @param x Left edge of the rectangle
+     * @param y Top edge of the rectangle
+     * @param w Width of the rectangle
+     * @param h Height of the rectangle
+     */
+    void strokeOval(double x, double y, double w, double h);
+
+    /**
+     * Strokes a rectangle
+     *
+     * @param x Left edge
+     * @param y Top edge
+     * @param w Width
+     * @param h Height
+     */
+    void strokeRect(double x, double y, double w, double h);
+
+    /**
+     * Strokes a polyline
+     *
+     * @param points Points (x, y, x, y, ...)
+     * @param offset Index of the first point's x
+     * @param size   Number of points
+     */
+    void strokePolyline(float[] points, int offset, int size);
+}
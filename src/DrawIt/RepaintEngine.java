@@ -0,0 +1,1115 @@
+package DrawIt;
+import javafx.animation.AnimationTimer;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.paint.Color;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class repaints the main canvas incrementally. Instead of clearing the whole canvas and drawing every shape
+ * again, only the region that was changed (dirty region) is cleared and only the shapes that overlap it are drawn,
+ * in batches of the same style (see DrawBatcher). The region is restored from the latest raster checkpoint, so
+ * only the shapes committed after it are drawn again
+ * <p>
+ * Shapes have world coordinates, the canvas shows the part of the world selected by the viewport and only the
+ * shapes inside of it are looked at. When the view is zoomed out, the canvas is put together from cached tiles
+ * (see TileCache) instead, so it costs about the same at any zoom
+ * <p>
+ * With time slices on, full repaints and repaints of big regions are progressive: the canvas is split into patches
+ * (tiles when the view is zoomed out) that are drawn on the following pulses within a time budget, the patches
+ * nearest to the change first. A change that arrives while a patch is drawn starts that patch again, so the
+ * canvas always ends up showing the drawing as it is
+ *
+ * @author Maksym Hanushchak
+ */
+public class RepaintEngine {
+    /**
+     * Affected shapes beyond this number are repainted as one region instead of one by one
+     */
+    private static final int MAX_SEPARATE_REGIONS = 32;
+    /**
+     * Time that a pulse (or a handler) may spend on a progressive repaint (nanoseconds)
+     */
+    static final long FRAME_BUDGET = 8_000_000L;
+    /**
+     * Patch size of a progressive repaint (canvas pixels)
+     */
+    private static final int PATCH = 128;
+    /**
+     * Drawings with at most this many shapes are repainted as a single patch, finding the shapes of every patch
+     * would cost more than it saves
+     */
+    private static final int SINGLE_PATCH_SHAPES = 16384;
+    /**
+     * Number of shapes drawn between two checks of the time budget
+     */
+    private static final int STEP = 256;
+    /**
+     * Regions with more shapes than this are repainted progressively when time slices are on
+     */
+    private static final int MAX_DIRECT_SHAPES = 2048;
+    /**
+     * Regions whose cells of the spatial index list more entries than this are repainted progressively without
+     * finding their shapes first (a small shape is listed in up to four cells)
+     */
+    private static final long MAX_DIRECT_ENTRIES = MAX_DIRECT_SHAPES * 4L;
+    /**
+     * Graphics context of the main canvas
+     */
+    private final GraphicsContext gc;
+    /**
+     * Renderer that draws the shapes on the main canvas
+     */
+    private final FxRenderer renderer;
+    /**
+     * Draws many shapes with few state changes (repaints)
+     */
+    private final DrawBatcher batcher;
+    /**
+     * Drawing that is shown on the canvas
+     */
+    private final Drawing drawing;
+    /**
+     * Canvas size (pixels)
+     */
+    private final double width, height;
+    /**
+     * Canvas background color
+     */
+    private final Color background;
+    /**
+     * Reusable list for the shapes found in a dirty region
+     */
+    private final IntList visible = new IntList();
+    /**
+     * Raster checkpoints of the canvas
+     */
+    private final CheckpointCache checkpoints;
+    /**
+     * Part of the world that is shown on the canvas
+     */
+    private final Viewport viewport;
+    /**
+     * Tiles of zoomed out views (null if they are not used)
+     */
+    private TileCache tiles;
+    /**
+     * Reusable list for the tiles of a region
+     */
+    private final List<TileCache.Tile> tileList = new ArrayList<>();
+    /**
+     * Parallel software renderer for full repaints of big drawings (null if it is not used)
+     */
+    private TiledRasterizer rasterizer;
+    /**
+     * Drawings with at least this many shapes are fully repainted by the parallel renderer
+     */
+    private int rasterizerThreshold;
+    /**
+     * True if big repaints are spread over pulses
+     */
+    private boolean sliced;
+    /**
+     * Hot-path metrics that receive every repaint (null if they are not collected)
+     */
+    private Metrics metrics;
+    /**
+     * Flight Recorder event of the repaint being measured
+     */
+    private RepaintEvent event;
+    /**
+     * Start of the repaint being measured, and the batcher's counters at that moment
+     */
+    private long measureStart, measureShapes, measureChanges;
+    /**
+     * Canvas area of the patches finished by the current slice (pixels)
+     */
+    private double sliceArea;
+    /**
+     * Patches of the canvas for progressive repaints
+     */
+    private final List<Patch> patches = new ArrayList<>();
+    /**
+     * True if the patches are the tiles of a zoom level
+     */
+    private boolean patchesTiled;
+    /**
+     * Zoom level of the tiled patches
+     */
+    private int patchLevel;
+    /**
+     * Patch that is being drawn (null if none is)
+     */
+    private Patch current;
+    /**
+     * Shapes of the current patch in paint order
+     */
+    private final IntList patchSlots = new IntList();
+    /**
+     * Next index of patchSlots to draw
+     */
+    private int patchNext;
+    /**
+     * Shapes of the current patch below this slot are on the checkpoint it was restored from
+     */
+    private int patchFrom;
+    /**
+     * Canvas point that the patches nearest to are drawn first
+     */
+    private double focusX, focusY;
+    /**
+     * True if the patches are in the order they are drawn in
+     */
+    private boolean sorted = true;
+    /**
+     * True while the timer is running
+     */
+    private boolean running;
+    /**
+     * True if the slices are drawn by calls of step instead of the timer
+     */
+    private boolean manualPulses;
+    /**
+     * Timer that draws a slice of the progressive repaint on every pulse
+     */
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            if (step(System.nanoTime() + FRAME_BUDGET)) {
+                stop();
+                running = false;
+            }
+        }
+    };
+
+    /**
+     * Rectangle of the canvas that is repainted as a whole by a progressive repaint
+     */
+    private static class Patch {
+        /**
+         * Edges of the patch (canvas)
+         */
+        final double x1, y1, x2, y2;
+        /**
+         * Column and row of the patch's tile (tiled patches)
+         */
+        final int col, row;
+        /**
+         * True if the patch has to be drawn again
+         */
+        boolean dirty;
+
+        /**
+         * Patch constructor
+         *
+         * @param x1  Left edge
+         * @param y1  Top edge
+         * @param x2  Right edge
+         * @param y2  Bottom edge
+         * @param col Column of the tile
+         * @param row Row of the tile
+         */
+        Patch(double x1, double y1, double x2, double y2, int col, int row) {
+            this.x1 = x1;
+            this.y1 = y1;
+            this.x2 = x2;
+            this.y2 = y2;
+            this.col = col;
+            this.row = row;
+        }
+
+        /**
+         * Checks whether the patch overlaps a region
+         *
+         * @param x1 Left edge of the region (canvas)
+         * @param y1 Top edge of the region
+         * @param x2 Right edge of the region
+         * @param y2 Bottom edge of the region
+         * @return True if they overlap
+         */
+        boolean overlaps(double x1, double y1, double x2, double y2) {
+            return this.x1 < x2 && this.x2 > x1 && this.y1 < y2 && this.y2 > y1;
+        }
+    }
+
+    /**
+     * RepaintEngine constructor
+     *
+     * @param gc          Graphics context of the main canvas
+     * @param drawing     Drawing that is shown on the canvas
+     * @param width       Canvas width
+     * @param height      Canvas height
+     * @param background  Canvas background color
+     * @param checkpoints Raster checkpoints of the canvas
+     */
+    RepaintEngine(GraphicsContext gc, Drawing drawing, double width, double height, Color background, CheckpointCache checkpoints) {
+        this.gc = gc;
+        this.renderer = new FxRenderer(gc);
+        this.batcher = new DrawBatcher(gc);
+        this.drawing = drawing;
+        this.width = width;
+        this.height = height;
+        this.background = background;
+        this.checkpoints = checkpoints;
+        this.viewport = new Viewport(width, height);
+    }
+
+    /**
+     * Lets the engine repaint big drawings with the parallel software renderer
+     *
+     * @param rasterizer Parallel software renderer
+     * @param threshold  Drawings with at least this many shapes are repainted by it
+     */
+    public void useRasterizer(TiledRasterizer rasterizer, int threshold) {
+        this.rasterizer = rasterizer;
+        this.rasterizerThreshold = threshold;
+    }
+
+    /**
+     * Lets the engine draw zoomed out views from cached tiles
+     *
+     * @param tiles Tile cache
+     */
+    public void useTiles(TileCache tiles) {
+        this.tiles = tiles;
+    }
+
+    /**
+     * Spreads full repaints and repaints of big regions over pulses, so no handler and no pulse spends more than
+     * the frame budget on them
+     */
+    public void useTimeSlices() {
+        sliced = true;
+        rebuildPatches();
+    }
+
+    /**
+     * Uses time slices without the timer, the caller draws the slices by calling step on every pulse (the timer
+     * needs a running toolkit, a headless replay has none)
+     */
+    void useManualPulses() {
+        manualPulses = true;
+        useTimeSlices();
+    }
+
+    /**
+     * Reports the time, the shapes drawn and the state changes of every repaint to the metrics
+     *
+     * @param metrics Hot-path metrics
+     */
+    public void useMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Getter method for the part of the world that is shown on the canvas. Call repaintView after changing it
+     *
+     * @return Viewport
+     */
+    public Viewport getViewport() {
+        return viewport;
+    }
+
+    /**
+     * Checks whether the canvas is put together from tiles
+     *
+     * @return True if the view is zoomed out and tiles are used
+     */
+    private boolean isTiled() {
+        return tiles != null && viewport.getScale() < 1;
+    }
+
+    /**
+     * Drops the tiles that a shape overlaps
+     *
+     * @param slot Slot of the shape
+     */
+    private void invalidateTiles(int slot) {
+        if (tiles != null) {
+            ShapeStore store = drawing.getStore();
+            tiles.invalidate(store.getMinX(slot), store.getMinY(slot), store.getMaxX(slot), store.getMaxY(slot));
+        }
+    }
+
+    /**
+     * Draws a newly committed shape. The shape is the last one in paint order, so it can simply be drawn on top
+     * of the canvas without touching anything else
+     *
+     * @param slot Slot of the committed shape
+     */
+    public void commit(int slot) {
+        checkpoints.invalidate(slot); // Checkpoints past the slot were taken while it was removed or not used yet
+        beginMeasure();
+        invalidateTiles(slot);
+        gc.save();
+        viewport.apply(gc);
+        drawing.getStore().draw(slot, renderer);
+        gc.restore();
+        ShapeStore store = drawing.getStore();
+        endMeasure("commit", 0, 1, 2); // The renderer sets the color and the width
+        restartOverlapping(store.getMinX(slot), store.getMinY(slot), store.getMaxX(slot), store.getMaxY(slot));
+        if (!isTiled() && isIdle() && checkpoints.isDue(slot)) {
+            checkpoint();
+        }
+    }
+
+    /**
+     * Draws a range of newly committed shapes on top of the canvas (bulk loading). The range may be below slots
+     * that are already drawn (reserved records that are filled out of order, see DrawingLoader), then the shapes
+     * of the range must not overlap the view's shapes above them
+     *
+     * @param from Slot of the first committed shape
+     * @param to   Slot after the last committed shape
+     */
+    public void commit(int from, int to) {
+        if (from >= to) {
+            return;
+        }
+        checkpoints.invalidate(from); // Only checkpoints past the range, which exist if it was loaded out of order
+        ShapeStore store = drawing.getStore();
+        visible.clear();
+        for (int slot = store.nextLive(from); slot >= 0 && slot < to; slot = store.nextLive(slot + 1)) {
+            visible.add(slot);
+        }
+        if (tiles != null) {
+            invalidateTiles(visible);
+        }
+        drawOnTop(to);
+    }
+
+    /**
+     * Shows a batch of newly added shapes (see Drawing.addBatch) with a single repaint. The shapes are the last
+     * ones in paint order: the few that are in view are drawn on top of the canvas right away, when many are in
+     * view the region that they cover is repainted progressively instead, so the FX thread does not stall
+     *
+     * @param from Slot of the first added shape
+     * @param to   Slot after the last added shape
+     */
+    public void commitBatch(int from, int to) {
+        if (from >= to) {
+            return;
+        }
+        checkpoints.invalidate(from);
+        double[] box = bounds(from, to);
+        if (tiles != null) { // Tiles outside of the view are dropped as well
+            tiles.invalidate(box[0], box[1], box[2], box[3]);
+        }
+        ShapeStore store = drawing.getStore();
+        double minX = viewport.toWorldX(0), minY = viewport.toWorldY(0);
+        double maxX = viewport.toWorldX(width), maxY = viewport.toWorldY(height);
+        visible.clear();
+        for (int slot = store.nextLive(from); slot >= 0 && slot < to; slot = store.nextLive(slot + 1)) {
+            if (store.intersects(slot, minX, minY, maxX, maxY)) {
+                visible.add(slot);
+            }
+        }
+        if (visible.isEmpty()) {
+            return;
+        }
+        if (sliced && (isTiled() || visible.size() > MAX_DIRECT_SHAPES)) {
+            visible.clear();
+            repaintRegion(box[0], box[1], box[2], box[3]);
+            return;
+        }
+        drawOnTop(to);
+    }
+
+    /**
+     * Draws the shapes in the list of visible shapes on top of the canvas, they are the newest ones
+     *
+     * @param to Slot after the last new shape
+     */
+    private void drawOnTop(int to) {
+        ShapeStore store = drawing.getStore();
+        beginMeasure();
+        if (current != null && !visible.isEmpty()) {
+            double[] box = bounds(visible);
+            restartOverlapping(box[0], box[1], box[2], box[3]);
+        }
+        gc.save();
+        viewport.apply(gc);
+        batcher.setScale(viewport.getScale());
+        batcher.begin(store);
+        for (int i = 0; i < visible.size(); i++) {
+            batcher.add(visible.get(i));
+        }
+        batcher.end();
+        gc.restore();
+        endMeasure("bulk", 0, 0, 0);
+        visible.clear();
+        // A checkpoint holds every slot in use, the shapes above a range that is loaded out of order are not all drawn
+        if (to == store.size() && !isTiled() && isIdle() && checkpoints.isDue(to - 1)) {
+            checkpoint();
+        }
+    }
+
+    /**
+     * Takes a checkpoint of the canvas as it is now (all the slots in use are on it)
+     */
+    private void checkpoint() {
+        checkpoints.put(drawing.getStore().size(), gc.getCanvas().snapshot(null, null));
+    }
+
+    /**
+     * Repaints the area covered by a shape that was removed from (or changed in) the drawing
+     *
+     * @param slot Slot of the affected shape
+     */
+    public void repaint(int slot) {
+        checkpoints.invalidate(slot);
+        invalidateTiles(slot);
+        ShapeStore store = drawing.getStore();
+        repaintRegion(store.getMinX(slot), store.getMinY(slot), store.getMaxX(slot), store.getMaxY(slot));
+    }
+
+    /**
+     * Repaints the areas covered by several shapes. A few shapes are repainted one by one, many shapes are
+     * repainted as the single region that contains all of them
+     *
+     * @param affected Slots of the affected shapes
+     */
+    public void repaint(IntList affected) {
+        if (affected.size() <= MAX_SEPARATE_REGIONS) {
+            for (int i = 0; i < affected.size(); i++) {
+                repaint(affected.get(i));
+            }
+            return;
+        }
+        for (int i = 0; i < affected.size(); i++) {
+            checkpoints.invalidate(affected.get(i));
+        }
+        double[] box = bounds(affected);
+        if (tiles != null) {
+            tiles.invalidate(box[0], box[1], box[2], box[3]);
+        }
+        repaintRegion(box[0], box[1], box[2], box[3]);
+    }
+
+    /**
+     * Drops the tiles that several shapes overlap, as the single region that contains all of them
+     *
+     * @param affected Slots of the shapes
+     */
+    private void invalidateTiles(IntList affected) {
+        if (!affected.isEmpty()) {
+            double[] box = bounds(affected);
+            tiles.invalidate(box[0], box[1], box[2], box[3]);
+        }
+    }
+
+    /**
+     * Repaints the area covered by a range of shapes that were removed or restored together (see BatchEdit)
+     *
+     * @param from Slot of the first shape
+     * @param to   Slot after the last shape
+     */
+    public void repaint(int from, int to) {
+        if (from >= to) {
+            return;
+        }
+        checkpoints.invalidate(from);
+        double[] box = bounds(from, to);
+        if (tiles != null) {
+            tiles.invalidate(box[0], box[1], box[2], box[3]);
+        }
+        repaintRegion(box[0], box[1], box[2], box[3]);
+    }
+
+    /**
+     * Repaints shapes that were moved, scaled or re-stroked in place (see TransformEdit): the area that they covered
+     * before and the area that they cover now, as one region if the two overlap
+     *
+     * @param moved Slots of the shapes in paint order
+     * @param minX  Left edge of the area that the shapes covered before
+     * @param minY  Top edge of the area
+     * @param maxX  Right edge of the area
+     * @param maxY  Bottom edge of the area
+     */
+    public void repaintMoved(IntList moved, double minX, double minY, double maxX, double maxY) {
+        if (moved.isEmpty()) {
+            return;
+        }
+        checkpoints.invalidate(moved.get(0)); // Only checkpoints past the first shape hold any of them
+        double[] box = bounds(moved);
+        if (tiles != null) {
+            tiles.invalidate(minX, minY, maxX, maxY);
+            tiles.invalidate(box[0], box[1], box[2], box[3]);
+        }
+        if (box[0] <= maxX && box[2] >= minX && box[1] <= maxY && box[3] >= minY) {
+            repaintRegion(Math.min(minX, box[0]), Math.min(minY, box[1]), Math.max(maxX, box[2]), Math.max(maxY, box[3]));
+        } else {
+            repaintRegion(minX, minY, maxX, maxY);
+            repaintRegion(box[0], box[1], box[2], box[3]);
+        }
+    }
+
+    /**
+     * Finds the bounding box of a range of shapes, removed ones included
+     *
+     * @param from Slot of the first shape
+     * @param to   Slot after the last shape
+     * @return Left, top, right and bottom edge
+     */
+    private double[] bounds(int from, int to) {
+        ShapeStore store = drawing.getStore();
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int slot = from; slot < to; slot++) {
+            minX = Math.min(minX, store.getMinX(slot));
+            minY = Math.min(minY, store.getMinY(slot));
+            maxX = Math.max(maxX, store.getMaxX(slot));
+            maxY = Math.max(maxY, store.getMaxY(slot));
+        }
+        return new double[]{minX, minY, maxX, maxY};
+    }
+
+    /**
+     * Finds the bounding box of several shapes
+     *
+     * @param slots Slots of the shapes
+     * @return Left, top, right and bottom edge
+     */
+    private double[] bounds(IntList slots) {
+        ShapeStore store = drawing.getStore();
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < slots.size(); i++) {
+            int slot = slots.get(i);
+            minX = Math.min(minX, store.getMinX(slot));
+            minY = Math.min(minY, store.getMinY(slot));
+            maxX = Math.max(maxX, store.getMaxX(slot));
+            maxY = Math.max(maxY, store.getMaxY(slot));
+        }
+        return new double[]{minX, minY, maxX, maxY};
+    }
+
+    /**
+     * Clears the region and redraws only the shapes whose bounding boxes overlap it. Drawing is clipped to the
+     * region, so pixels outside of it are left untouched
+     *
+     * @param minX Left edge of the region (world)
+     * @param minY Top edge of the region
+     * @param maxX Right edge of the region
+     * @param maxY Bottom edge of the region
+     */
+    public void repaintRegion(double minX, double minY, double maxX, double maxY) {
+        // Snap the region to whole canvas pixels (one more for antialiasing) and keep it inside the canvas
+        double x1 = Math.max(0, Math.floor(viewport.toScreenX(minX)) - 1);
+        double y1 = Math.max(0, Math.floor(viewport.toScreenY(minY)) - 1);
+        double x2 = Math.min(width, Math.ceil(viewport.toScreenX(maxX)) + 1);
+        double y2 = Math.min(height, Math.ceil(viewport.toScreenY(maxY)) + 1);
+        if (x1 >= x2 || y1 >= y2) { // Nothing visible is affected
+            return;
+        }
+        visible.clear();
+        boolean crowded = sliced && !isTiled() && drawing.count(viewport.toWorldX(x1), viewport.toWorldY(y1),
+                viewport.toWorldX(x2), viewport.toWorldY(y2)) > MAX_DIRECT_ENTRIES; // Counting is cheaper than a query
+        if (!isTiled() && !crowded) {
+            query(x1, y1, x2, y2, visible); // Only the shapes near the region are looked at
+        }
+        if (sliced && (isTiled() || crowded || visible.size() > MAX_DIRECT_SHAPES)) { // Drawn on the next pulses
+            visible.clear();
+            markDirty(x1, y1, x2, y2);
+            startTimer();
+            return;
+        }
+        restart(x1, y1, x2, y2);
+        beginMeasure();
+
+        gc.save();
+        clip(x1, y1, x2, y2);
+        if (isTiled()) {
+            drawTiles(x1, y1, x2, y2);
+        } else {
+            Image checkpoint = checkpoints.latestImage();
+            int from = checkpoints.latestSlot();
+            if (checkpoint != null) { // Copies the region from the checkpoint, the shapes below 'from' are already on it
+                gc.drawImage(checkpoint, x1, y1, x2 - x1, y2 - y1, x1, y1, x2 - x1, y2 - y1);
+            } else {
+                gc.setFill(background);
+                gc.fillRect(x1, y1, x2 - x1, y2 - y1);
+            }
+            viewport.apply(gc);
+            batcher.setScale(viewport.getScale());
+            batcher.begin(drawing.getStore());
+            for (int i = 0; i < visible.size(); i++) {
+                if (visible.get(i) >= from) {
+                    batcher.add(visible.get(i));
+                }
+            }
+            batcher.end();
+            visible.clear();
+        }
+        gc.restore();
+        endMeasure("region", (x2 - x1) * (y2 - y1), 0, 0);
+    }
+
+    /**
+     * Starts measuring a repaint
+     */
+    private void beginMeasure() {
+        event = new RepaintEvent();
+        event.begin();
+        measureStart = System.nanoTime();
+        measureShapes = batcher.getShapesDrawn();
+        measureChanges = batcher.getStateChanges();
+    }
+
+    /**
+     * Ends measuring a repaint, reports it to the metrics and commits its Flight Recorder event
+     *
+     * @param kind    Kind of the repaint
+     * @param area    Area of the canvas that was cleared and repainted (pixels), 0 for commits
+     * @param shapes  Shapes drawn without the batcher
+     * @param changes State changes made without the batcher
+     */
+    private void endMeasure(String kind, double area, long shapes, long changes) {
+        long nanos = System.nanoTime() - measureStart;
+        shapes += batcher.getShapesDrawn() - measureShapes;
+        changes += batcher.getStateChanges() - measureChanges;
+        if (metrics != null) {
+            metrics.repaint(nanos, shapes, changes);
+        }
+        if (event.shouldCommit()) {
+            event.kind = kind;
+            event.shapes = shapes;
+            event.stateChanges = changes;
+            event.area = (long) area;
+            event.documentSize = drawing.size();
+            event.commit();
+        }
+        event = null;
+    }
+
+    /**
+     * Limits drawing to a region of the canvas until the graphics context is restored
+     *
+     * @param x1 Left edge of the region (canvas)
+     * @param y1 Top edge of the region
+     * @param x2 Right edge of the region
+     * @param y2 Bottom edge of the region
+     */
+    private void clip(double x1, double y1, double x2, double y2) {
+        gc.beginPath();
+        gc.rect(x1, y1, x2 - x1, y2 - y1);
+        gc.clip();
+    }
+
+    /**
+     * Finds the shapes that overlap a region of the canvas
+     *
+     * @param x1  Left edge of the region (canvas)
+     * @param y1  Top edge of the region
+     * @param x2  Right edge of the region
+     * @param y2  Bottom edge of the region
+     * @param out List that receives the slots in paint order
+     */
+    private void query(double x1, double y1, double x2, double y2, IntList out) {
+        drawing.query(viewport.toWorldX(x1), viewport.toWorldY(y1), viewport.toWorldX(x2), viewport.toWorldY(y2), out);
+    }
+
+    /**
+     * Draws a region of the canvas from the tiles of the current zoom level, the missing tiles are made first
+     *
+     * @param x1 Left edge of the region (canvas)
+     * @param y1 Top edge of the region
+     * @param x2 Right edge of the region
+     * @param y2 Bottom edge of the region
+     */
+    private void drawTiles(double x1, double y1, double x2, double y2) {
+        int level = TileCache.level(viewport.getScale());
+        double size = TileCache.TILE / TileCache.levelScale(level);
+        int colFrom = (int) Math.floor(viewport.toWorldX(x1) / size), colTo = (int) Math.floor(viewport.toWorldX(x2) / size);
+        int rowFrom = (int) Math.floor(viewport.toWorldY(y1) / size), rowTo = (int) Math.floor(viewport.toWorldY(y2) / size);
+        tileList.clear();
+        for (int row = rowFrom; row <= rowTo; row++) { // All of them are requested first, so they are made together
+            for (int col = colFrom; col <= colTo; col++) {
+                tileList.add(tiles.request(level, col, row));
+            }
+        }
+        for (TileCache.Tile tile : tileList) {
+            tiles.prepare(drawing, tile, Long.MAX_VALUE);
+            drawTile(tile);
+        }
+        tileList.clear();
+    }
+
+    /**
+     * Draws a finished tile. A dense tile is drawn as its image, the shapes of a sparse tile are drawn clipped to it
+     *
+     * @param tile Tile
+     */
+    private void drawTile(TileCache.Tile tile) {
+        // Edges are rounded the same way for neighbours, so there are no seams
+        double left = Math.rint(viewport.toScreenX(tile.minX)), top = Math.rint(viewport.toScreenY(tile.minY));
+        double right = Math.rint(viewport.toScreenX(tile.maxX)), bottom = Math.rint(viewport.toScreenY(tile.maxY));
+        if (tile.image != null) {
+            gc.drawImage(tile.image, left, top, right - left, bottom - top);
+            return;
+        }
+        gc.save();
+        clip(left, top, right, bottom);
+        gc.setFill(background);
+        gc.fillRect(left, top, right - left, bottom - top);
+        if (!tile.slots.isEmpty()) {
+            viewport.apply(gc);
+            batcher.setScale(viewport.getScale());
+            batcher.begin(drawing.getStore());
+            for (int i = 0; i < tile.slots.size(); i++) {
+                batcher.add(tile.slots.get(i));
+            }
+            batcher.end();
+        }
+        gc.restore();
+    }
+
+    /**
+     * Clears the whole canvas and draws every shape again. Used after changes of the whole drawing, so all the
+     * checkpoints and tiles are dropped
+     */
+    public void repaintAll() {
+        if (tiles != null) {
+            tiles.clear();
+        }
+        if (sliced) { // The view did not move, the old pixels are shown until their patches are drawn
+            invalidateView(false);
+            runSlice();
+            return;
+        }
+        repaintView();
+    }
+
+    /**
+     * Draws the whole canvas again after the viewport changed. The drawing itself did not change, so the tiles
+     * are kept. Checkpoints only hold the old view, so they are dropped and a new one is taken at the end
+     */
+    public void repaintView() {
+        if (sliced) {
+            invalidateView(true);
+            runSlice();
+            return;
+        }
+        checkpoints.clear();
+        beginMeasure();
+        if (isTiled()) {
+            drawTiles(0, 0, width, height);
+            endMeasure("view", width * height, 0, 0);
+            return;
+        }
+        ShapeStore store = drawing.getStore();
+        visible.clear();
+        query(0, 0, width, height, visible);
+        double offsetX = viewport.getOffsetX(), offsetY = viewport.getOffsetY();
+        if (rasterizer != null && visible.size() >= rasterizerThreshold && viewport.getScale() == 1
+                && offsetX == Math.rint(offsetX) && offsetY == Math.rint(offsetY)) { // Big drawing is rendered on all cores
+            int w = (int) width, h = (int) height;
+            int[] pixels = new int[w * h];
+            rasterizer.render(store, visible, (int) -offsetX, (int) -offsetY, w, h, background, pixels);
+            gc.getPixelWriter().setPixels(0, 0, w, h, PixelFormat.getIntArgbInstance(), pixels, 0, w);
+        } else {
+            gc.setFill(background);
+            gc.fillRect(0, 0, width, height);
+            gc.save();
+            viewport.apply(gc);
+            batcher.setScale(viewport.getScale());
+            batcher.begin(store);
+            for (int i = 0; i < visible.size(); i++) {
+                batcher.add(visible.get(i));
+            }
+            batcher.end();
+            gc.restore();
+        }
+        endMeasure("view", width * height, 0, 0);
+        visible.clear();
+        if (checkpoints.isDue(store.size() - 1)) { // Small drawings are cheap to repaint without a checkpoint
+            checkpoint();
+        }
+    }
+
+    /**
+     * Starts a progressive repaint of the whole canvas. The checkpoints only hold the old canvas, so they are
+     * dropped
+     *
+     * @param clear True if the canvas is cleared first (the view moved, so the old pixels are wrong)
+     */
+    void invalidateView(boolean clear) {
+        checkpoints.clear();
+        rebuildPatches();
+        for (Patch patch : patches) {
+            patch.dirty = true;
+        }
+        focusX = width / 2; // The middle of the view is drawn first
+        focusY = height / 2;
+        sorted = false;
+        if (clear) {
+            gc.setFill(background);
+            gc.fillRect(0, 0, width, height);
+        }
+    }
+
+    /**
+     * Draws the first slice of a progressive repaint right away, the timer draws the rest on the next pulses
+     */
+    private void runSlice() {
+        if (!step(System.nanoTime() + FRAME_BUDGET)) {
+            startTimer();
+        }
+    }
+
+    /**
+     * Lets the timer draw the progressive repaint on the next pulses
+     */
+    private void startTimer() {
+        if (!running && !manualPulses) {
+            running = true;
+            timer.start();
+        }
+    }
+
+    /**
+     * Splits the canvas into patches: squares of PATCH pixels (one patch for small drawings), or the tiles of the zoom level when the view is
+     * zoomed out. Pending tiles of other levels are dropped, the view has left them
+     */
+    private void rebuildPatches() {
+        patches.clear();
+        current = null;
+        patchesTiled = isTiled();
+        if (!patchesTiled && drawing.size() <= SINGLE_PATCH_SHAPES) {
+            patches.add(new Patch(0, 0, width, height, 0, 0));
+            return;
+        }
+        if (!patchesTiled) {
+            for (int y = 0; y < height; y += PATCH) {
+                for (int x = 0; x < width; x += PATCH) {
+                    patches.add(new Patch(x, y, Math.min(width, x + PATCH), Math.min(height, y + PATCH), 0, 0));
+                }
+            }
+            return;
+        }
+        patchLevel = TileCache.level(viewport.getScale());
+        tiles.retainPending(patchLevel);
+        double size = TileCache.TILE / TileCache.levelScale(patchLevel);
+        int colFrom = (int) Math.floor(viewport.toWorldX(0) / size), colTo = (int) Math.floor(viewport.toWorldX(width) / size);
+        int rowFrom = (int) Math.floor(viewport.toWorldY(0) / size), rowTo = (int) Math.floor(viewport.toWorldY(height) / size);
+        for (int row = rowFrom; row <= rowTo; row++) {
+            for (int col = colFrom; col <= colTo; col++) {
+                double x1 = Math.max(0, Math.rint(viewport.toScreenX(col * size)));
+                double y1 = Math.max(0, Math.rint(viewport.toScreenY(row * size)));
+                double x2 = Math.min(width, Math.rint(viewport.toScreenX((col + 1) * size)));
+                double y2 = Math.min(height, Math.rint(viewport.toScreenY((row + 1) * size)));
+                if (x1 < x2 && y1 < y2) {
+                    patches.add(new Patch(x1, y1, x2, y2, col, row));
+                    tiles.request(patchLevel, col, row); // Tiles of the whole view are made together
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks the patches that overlap a region of the canvas to be drawn again, the patches nearest to it first
+     *
+     * @param x1 Left edge of the region (canvas)
+     * @param y1 Top edge of the region
+     * @param x2 Right edge of the region
+     * @param y2 Bottom edge of the region
+     */
+    private void markDirty(double x1, double y1, double x2, double y2) {
+        for (Patch patch : patches) {
+            if (patch.overlaps(x1, y1, x2, y2)) {
+                patch.dirty = true;
+            }
+        }
+        restart(x1, y1, x2, y2);
+        focusX = (x1 + x2) / 2;
+        focusY = (y1 + y2) / 2;
+        sorted = false;
+    }
+
+    /**
+     * Starts the patch that is being drawn again if it overlaps a region of the canvas that was just changed,
+     * otherwise the rest of its shapes would be drawn over the change
+     *
+     * @param x1 Left edge of the region (canvas)
+     * @param y1 Top edge of the region
+     * @param x2 Right edge of the region
+     * @param y2 Bottom edge of the region
+     */
+    private void restart(double x1, double y1, double x2, double y2) {
+        if (current != null && current.overlaps(x1, y1, x2, y2)) {
+            current.dirty = true;
+            current = null;
+            sorted = false;
+        }
+    }
+
+    /**
+     * Starts the patch that is being drawn again if it overlaps a region of the world that was just changed
+     *
+     * @param minX Left edge of the region (world)
+     * @param minY Top edge of the region
+     * @param maxX Right edge of the region
+     * @param maxY Bottom edge of the region
+     */
+    private void restartOverlapping(double minX, double minY, double maxX, double maxY) {
+        if (current != null) { // One more pixel for antialiasing
+            restart(viewport.toScreenX(minX) - 1, viewport.toScreenY(minY) - 1, viewport.toScreenX(maxX) + 1, viewport.toScreenY(maxY) + 1);
+        }
+    }
+
+    /**
+     * Checks whether a progressive repaint is in progress
+     *
+     * @return True if every patch is drawn
+     */
+    private boolean isIdle() {
+        return current == null && nextDirty() == null;
+    }
+
+    /**
+     * Finds the next patch to draw
+     *
+     * @return Dirty patch nearest to the focus or null if there are none
+     */
+    private Patch nextDirty() {
+        if (!sorted) {
+            patches.sort((a, b) -> Double.compare(distance(a), distance(b)));
+            sorted = true;
+        }
+        for (Patch patch : patches) {
+            if (patch.dirty) {
+                return patch;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Squared distance between the middle of a patch and the focus
+     *
+     * @param patch Patch
+     * @return Squared distance (canvas pixels)
+     */
+    private double distance(Patch patch) {
+        double dx = (patch.x1 + patch.x2) / 2 - focusX, dy = (patch.y1 + patch.y2) / 2 - focusY;
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * Draws patches of the progressive repaint until all of them are drawn or the deadline passes. A checkpoint
+     * is taken when the repaint ends, if one is due
+     *
+     * @param deadline Value of System.nanoTime after which drawing stops
+     * @return True if the repaint has ended
+     */
+    boolean step(long deadline) {
+        if (isIdle()) {
+            return slice(deadline);
+        }
+        beginMeasure();
+        sliceArea = 0;
+        boolean ended = slice(deadline);
+        endMeasure("slice", sliceArea, 0, 0);
+        return ended;
+    }
+
+    /**
+     * Draws patches until all of them are drawn or the deadline passes (see step)
+     *
+     * @param deadline Value of System.nanoTime after which drawing stops
+     * @return True if the repaint has ended
+     */
+    private boolean slice(long deadline) {
+        while (true) {
+            if (current == null) {
+                current = nextDirty();
+                if (current == null) {
+                    if (!patchesTiled && checkpoints.isDue(drawing.getStore().size() - 1)) {
+                        checkpoint();
+                    }
+                    return true;
+                }
+                current.dirty = false;
+                beginPatch(current);
+            }
+            if (drawPatch(current, deadline)) {
+                sliceArea += (current.x2 - current.x1) * (current.y2 - current.y1);
+                current = null;
+            }
+            if (System.nanoTime() >= deadline) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Starts drawing a patch: restores it from the latest checkpoint (or clears it) and finds its shapes
+     *
+     * @param patch Patch
+     */
+    private void beginPatch(Patch patch) {
+        patchSlots.clear();
+        patchNext = 0;
+        if (patchesTiled) {
+            return;
+        }
+        gc.save();
+        clip(patch.x1, patch.y1, patch.x2, patch.y2);
+        Image checkpoint = checkpoints.latestImage();
+        patchFrom = checkpoints.latestSlot();
+        if (checkpoint != null) {
+            gc.drawImage(checkpoint, patch.x1, patch.y1, patch.x2 - patch.x1, patch.y2 - patch.y1,
+                    patch.x1, patch.y1, patch.x2 - patch.x1, patch.y2 - patch.y1);
+        } else {
+            gc.setFill(background);
+            gc.fillRect(patch.x1, patch.y1, patch.x2 - patch.x1, patch.y2 - patch.y1);
+        }
+        gc.restore();
+        query(patch.x1 - 1, patch.y1 - 1, patch.x2 + 1, patch.y2 + 1, patchSlots); // One more pixel for antialiasing
+    }
+
+    /**
+     * Draws the shapes of the current patch a few at a time until all of them are drawn or the deadline passes.
+     * A tiled patch is drawn once its tile is finished
+     *
+     * @param patch    Patch
+     * @param deadline Value of System.nanoTime after which drawing stops
+     * @return True if the patch is drawn
+     */
+    private boolean drawPatch(Patch patch, long deadline) {
+        if (patchesTiled) {
+            TileCache.Tile tile = tiles.request(patchLevel, patch.col, patch.row);
+            if (!tiles.prepare(drawing, tile, deadline)) {
+                return false;
+            }
+            gc.save();
+            clip(patch.x1, patch.y1, patch.x2, patch.y2);
+            drawTile(tile);
+            gc.restore();
+            return true;
+        }
+        ShapeStore store = drawing.getStore();
+        while (patchNext < patchSlots.size()) {
+            int end = Math.min(patchSlots.size(), patchNext + STEP);
+            gc.save();
+            clip(patch.x1, patch.y1, patch.x2, patch.y2);
+            viewport.apply(gc);
+            batcher.setScale(viewport.getScale());
+            batcher.begin(store);
+            for (int i = patchNext; i < end; i++) {
+                if (patchSlots.get(i) >= patchFrom) {
+                    batcher.add(patchSlots.get(i));
+                }
+            }
+            batcher.end();
+            gc.restore();
+            patchNext = end;
+            if (patchNext < patchSlots.size() && System.nanoTime() >= deadline) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
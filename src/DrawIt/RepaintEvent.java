@@ -0,0 +1,47 @@
+package DrawIt;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event of one repaint of the main canvas (a commit, a region, the whole view or a slice of a
+ * progressive repaint). It costs next to nothing while no recording is running
+ *
+ * @author Maksym Hanushchak
+ */
+@Name("DrawIt.Repaint")
+@Label("Repaint")
+@Category({"DrawIt", "Rendering"})
+@Description("Repaint of the main canvas")
+@StackTrace(false)
+public class RepaintEvent extends Event {
+    /**
+     * Kind of the repaint
+     */
+    @Label("Kind")
+    String kind;
+    /**
+     * Number of shapes stroked
+     */
+    @Label("Shapes Drawn")
+    long shapes;
+    /**
+     * Number of stroke state changes of the graphics context
+     */
+    @Label("State Changes")
+    long stateChanges;
+    /**
+     * Area of the canvas that was cleared and repainted, 0 for commits (drawn on top)
+     */
+    @Label("Area")
+    @Description("Area of the canvas that was cleared and repainted, in pixels")
+    long area;
+    /**
+     * Number of shapes in the drawing
+     */
+    @Label("Document Size")
+    int documentSize;
+}
@@ -0,0 +1,69 @@
+package DrawIt;
+import javafx.scene.paint.Color;
+
+/**
+ * Renderer that scales everything it draws and passes it on to another renderer
+ *
+ * @author Maksym Hanushchak
+ */
+public class ScaledRenderer implements Renderer {
+    /**
+     * Renderer that receives the scaled strokes
+     */
+    private final Renderer target;
+    /**
+     * Scale factor
+     */
+    private final double scale;
+    /**
+     * Reusable buffer for scaled points
+     */
+    private float[] scaled = new float[0];
+
+    /**
+     * ScaledRenderer constructor
+     *
+     * @param target Renderer that receives the scaled strokes
+     * @param scale  Scale factor
+     */
+    ScaledRenderer(Renderer target, double scale) {
+        this.target = target;
+        this.scale = scale;
+    }
+
+    @Override
+    public void setStroke(Color color) {
+        target.setStroke(color);
+    }
+
+    @Override
+    public void setLineWidth(double width) {
+        target.setLineWidth(width * scale);
+    }
+
+    @Override
+    public void strokeLine(double x1, double y1, double x2, double y2) {
+        target.strokeLine(x1 * scale, y1 * scale, x2 * scale, y2 * scale);
+    }
+
+    @Override
+    public void strokeOval(double x, double y, double w, double h) {
+        target.strokeOval(x * scale, y * scale, w * scale, h * scale);
+    }
+
+    @Override
+    public void strokeRect(double x, double y, double w, double h) {
+        target.strokeRect(x * scale, y * scale, w * scale, h * scale);
+    }
+
+    @Override
+    public void strokePolyline(float[] points, int offset, int size) {
+        if (scaled.length < size * 2) {
+            scaled = new float[size * 2];
+        }
+        for (int i = 0; i < size * 2; i++) {
+            scaled[i] = (float) (points[offset + i] * scale);
+        }
+        target.strokePolyline(scaled, 0, size);
+    }
+}
@@ -0,0 +1,477 @@
+package DrawIt;
+import javafx.scene.paint.Color;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Shapes picked with the marquee of the select tool, with a copy of their geometry and style. The copy is held in
+ * contiguous primitive arrays: the x coordinates of all the shapes in one array and the y coordinates in another,
+ * so moving or scaling the whole selection is one plain loop per array (see affine) that the JIT compiler turns
+ * into vector instructions. The copy is the state before a transform, which is also what undoes it (see
+ * TransformEdit)
+ *
+ * @author Maksym Hanushchak
+ */
+public class Selection {
+    /**
+     * Largest selection whose shapes are shown while it is dragged, bigger selections show their outline only
+     */
+    static final int PREVIEW_SHAPES = 2048;
+    /**
+     * Smallest scale of a selection, so its shapes do not collapse into points
+     */
+    private static final double MIN_SCALE = 0.01;
+    /**
+     * Slots of the shapes in paint order
+     */
+    private final IntList slots;
+    /**
+     * Kinds of the shapes
+     */
+    private final byte[] kinds;
+    /**
+     * X coordinates (sx and ex of every shape)
+     */
+    private final float[] xs;
+    /**
+     * Y coordinates (sy and ey of every shape)
+     */
+    private final float[] ys;
+    /**
+     * Stroke widths
+     */
+    private final float[] widths;
+    /**
+     * Palette indices of the colors
+     */
+    private final int[] colors;
+    /**
+     * Starts of the points of the pencil records in the store's path, -1 for the other shapes; null if there are
+     * no pencil records
+     */
+    private final int[] pathStarts;
+    /**
+     * Bounding box of the shapes
+     */
+    private final double minX, minY, maxX, maxY;
+    /**
+     * Largest margin that the bounding box has for a stroke (see Shape.margin)
+     */
+    private final double maxMargin;
+    /**
+     * Reusable arrays for the transformed coordinates of the preview
+     */
+    private float[] previewXs, previewYs, previewPoints;
+
+    /**
+     * Selection constructor
+     *
+     * @param slots      Slots of the shapes in paint order
+     * @param kinds      Kinds of the shapes
+     * @param xs         X coordinates (sx and ex of every shape)
+     * @param ys         Y coordinates (sy and ey of every shape)
+     * @param widths     Stroke widths
+     * @param colors     Palette indices of the colors
+     * @param pathStarts Starts of the points of the pencil records, -1 for the other shapes; null if there are none
+     */
+    Selection(IntList slots, byte[] kinds, float[] xs, float[] ys, float[] widths, int[] colors, int[] pathStarts) {
+        this.slots = slots;
+        this.kinds = kinds;
+        this.xs = xs;
+        this.ys = ys;
+        this.widths = widths;
+        this.colors = colors;
+        this.pathStarts = pathStarts;
+        double[] box = bounds(xs, ys, widths);
+        minX = box[0];
+        minY = box[1];
+        maxX = box[2];
+        maxY = box[3];
+        float widest = 0;
+        for (float w : widths) {
+            widest = Math.max(widest, w);
+        }
+        maxMargin = Shape.margin(widest);
+    }
+
+    /**
+     * Selects the shapes whose bounding boxes overlap the region
+     *
+     * @param drawing Drawing
+     * @param minX    Left edge of the region
+     * @param minY    Top edge of the region
+     * @param maxX    Right edge of the region
+     * @param maxY    Bottom edge of the region
+     * @return Selection or null if no shape overlaps the region
+     */
+    public static Selection select(Drawing drawing, double minX, double minY, double maxX, double maxY) {
+        IntList found = new IntList();
+        if (drawing.count(minX, minY, maxX, maxY) < drawing.size()) {
+            drawing.query(minX, minY, maxX, maxY, found); // The spatial index tests the bounding boxes
+        } else { // The marquee covers most of the drawing, the shapes are tested in paint order without sorting them
+            ShapeStore store = drawing.getStore();
+            for (int slot = store.nextLive(0); slot >= 0; slot = store.nextLive(slot + 1)) {
+                if (store.intersects(slot, minX, minY, maxX, maxY)) {
+                    found.add(slot);
+                }
+            }
+        }
+        if (found.isEmpty()) {
+            return null;
+        }
+        found.trimToSize();
+        return of(drawing.getStore(), found);
+    }
+
+    /**
+     * Copies the geometry and the style of shapes
+     *
+     * @param store Store of the drawing
+     * @param slots Slots of the shapes in paint order
+     * @return Selection
+     */
+    public static Selection of(ShapeStore store, IntList slots) {
+        int n = slots.size();
+        byte[] kinds = new byte[n];
+        float[] xs = new float[n * 2], ys = new float[n * 2], widths = new float[n];
+        int[] colors = new int[n];
+        int[] pathStarts = null;
+        for (int i = 0; i < n; i++) {
+            int slot = slots.get(i);
+            kinds[i] = store.getKind(slot);
+            xs[i * 2] = store.getCoord(slot, 0);
+            ys[i * 2] = store.getCoord(slot, 1);
+            xs[i * 2 + 1] = store.getCoord(slot, 2);
+            ys[i * 2 + 1] = store.getCoord(slot, 3);
+            widths[i] = store.getWidth(slot);
+            colors[i] = store.getColor(slot);
+            if (kinds[i] == ShapeStore.PENCIL) {
+                if (pathStarts == null) {
+                    pathStarts = new int[n];
+                    Arrays.fill(pathStarts, -1);
+                }
+                pathStarts[i] = store.getPathStart(slot);
+            }
+        }
+        return new Selection(slots, kinds, xs, ys, widths, colors, pathStarts);
+    }
+
+    /**
+     * Finds the bounding box of shapes, with the same margin as ShapeStore.getMinX
+     *
+     * @param xs     X coordinates (sx and ex of every shape)
+     * @param ys     Y coordinates (sy and ey of every shape)
+     * @param widths Stroke widths
+     * @return Left, top, right and bottom edge
+     */
+    static double[] bounds(float[] xs, float[] ys, float[] widths) {
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < widths.length; i++) {
+            double margin = Shape.margin(widths[i]);
+            minX = Math.min(minX, Math.min(xs[i * 2], xs[i * 2 + 1]) - margin);
+            minY = Math.min(minY, Math.min(ys[i * 2], ys[i * 2 + 1]) - margin);
+            maxX = Math.max(maxX, Math.max(xs[i * 2], xs[i * 2 + 1]) + margin);
+            maxY = Math.max(maxY, Math.max(ys[i * 2], ys[i * 2 + 1]) + margin);
+        }
+        return new double[]{minX, minY, maxX, maxY};
+    }
+
+    /**
+     * Sets dst[i] = src[i] * scale + offset for the first n coordinates. The loop has no branches and walks
+     * contiguous arrays, so the JIT compiler vectorizes it; the interpreter and the first tier run it scalar
+     *
+     * @param src    Coordinates
+     * @param dst    Transformed coordinates (may be src)
+     * @param n      Number of coordinates
+     * @param scale  Scale
+     * @param offset Offset added after scaling
+     */
+    static void affine(float[] src, float[] dst, int n, float scale, float offset) {
+        for (int i = 0; i < n; i++) {
+            dst[i] = src[i] * scale + offset;
+        }
+    }
+
+    /**
+     * Scales the coordinates of the shapes around an origin and moves them. The stroke widths are not scaled
+     *
+     * @param scale   Scale
+     * @param originX X coordinate of the point that scaling keeps in place
+     * @param originY Y coordinate of the point that scaling keeps in place
+     * @param dx      Horizontal move after scaling
+     * @param dy      Vertical move after scaling
+     * @param outXs   Transformed x coordinates (as long as xs)
+     * @param outYs   Transformed y coordinates (as long as ys)
+     */
+    public void transform(double scale, double originX, double originY, double dx, double dy, float[] outXs, float[] outYs) {
+        affine(xs, outXs, xs.length, (float) scale, (float) (originX - originX * scale + dx));
+        affine(ys, outYs, ys.length, (float) scale, (float) (originY - originY * scale + dy));
+    }
+
+    /**
+     * Scales and moves the points of a pencil record the same way as transform
+     *
+     * @param store   Store of the drawing
+     * @param index   Index of the shape in the selection
+     * @param scale   Scale
+     * @param originX X coordinate of the point that scaling keeps in place
+     * @param originY Y coordinate of the point that scaling keeps in place
+     * @param dx      Horizontal move after scaling
+     * @param dy      Vertical move after scaling
+     * @param out     Array for the points, used if it is big enough
+     * @return Transformed points (x, y, x, y, ...)
+     */
+    float[] transformPath(ShapeStore store, int index, double scale, double originX, double originY, double dx, double dy, float[] out) {
+        int slot = slots.get(index), size = store.getPathSize(slot) * 2;
+        if (out == null || out.length < size) {
+            out = new float[size];
+        }
+        float s = (float) scale;
+        float offsetX = (float) (originX - originX * scale + dx), offsetY = (float) (originY - originY * scale + dy);
+        for (int i = 0; i < size; i += 2) { // Path starts are the ones of the selection, the store may have moved on
+            out[i] = store.getPathCoordAt(pathStarts[index] + i) * s + offsetX;
+            out[i + 1] = store.getPathCoordAt(pathStarts[index] + i + 1) * s + offsetY;
+        }
+        return out;
+    }
+
+    /**
+     * Finds the scale that takes the bottom right corner of the selection to a point, keeping the top left one in
+     * place (the scale handle)
+     *
+     * @param x X coordinate of the point
+     * @param y Y coordinate of the point
+     * @return Scale
+     */
+    public double scaleTo(double x, double y) {
+        double scale = Math.max((x - minX) / Math.max(maxX - minX, 1), (y - minY) / Math.max(maxY - minY, 1));
+        return Math.max(MIN_SCALE, scale);
+    }
+
+    /**
+     * Draws the shapes scaled and moved as by transform, in one color (the preview of a drag). Only selections of
+     * up to PREVIEW_SHAPES shapes are drawn
+     *
+     * @param r       Renderer
+     * @param views   Reusable views (see ShapeStore.newViews)
+     * @param store   Store of the drawing (for the points of pencil records)
+     * @param scale   Scale
+     * @param originX X coordinate of the point that scaling keeps in place
+     * @param originY Y coordinate of the point that scaling keeps in place
+     * @param dx      Horizontal move after scaling
+     * @param dy      Vertical move after scaling
+     */
+    void drawPreview(Renderer r, Shape[] views, ShapeStore store, double scale, double originX, double originY, double dx, double dy) {
+        int n = size();
+        if (n > PREVIEW_SHAPES) {
+            return;
+        }
+        if (previewXs == null) {
+            previewXs = new float[n * 2];
+            previewYs = new float[n * 2];
+        }
+        transform(scale, originX, originY, dx, dy, previewXs, previewYs);
+        for (int i = 0; i < n; i++) {
+            Shape view = views[kinds[i]];
+            view.set(previewXs[i * 2], previewYs[i * 2], previewXs[i * 2 + 1], previewYs[i * 2 + 1], Color.DARKGRAY, widths[i]);
+            if (kinds[i] == ShapeStore.PENCIL) {
+                previewPoints = transformPath(store, i, scale, originX, originY, dx, dy, previewPoints);
+                ((Pencil) view).setPoints(previewPoints, 0, store.getPathSize(slots.get(i)));
+            }
+            view.draw(r);
+        }
+    }
+
+    /**
+     * Checks whether a point is inside of the bounding box of the selection
+     *
+     * @param x X coordinate of the point
+     * @param y Y coordinate of the point
+     * @return True if the point is inside
+     */
+    public boolean contains(double x, double y) {
+        return x >= minX && x <= maxX && y >= minY && y <= maxY;
+    }
+
+    /**
+     * Checks whether a point is on the scale handle (the bottom right corner of the bounding box)
+     *
+     * @param x      X coordinate of the point
+     * @param y      Y coordinate of the point
+     * @param radius Half of the handle's size
+     * @return True if the point is on the handle
+     */
+    public boolean isOnHandle(double x, double y, double radius) {
+        return Math.abs(x - maxX) <= radius && Math.abs(y - maxY) <= radius;
+    }
+
+    /**
+     * Writes the slots, the geometry and the style of the shapes
+     *
+     * @param out Output
+     * @throws IOException If the selection cannot be written
+     */
+    void write(DataOutputStream out) throws IOException {
+        Edit.writeSlots(out, slots);
+        for (int i = 0; i < kinds.length; i++) {
+            out.writeByte(kinds[i]);
+            out.writeFloat(xs[i * 2]);
+            out.writeFloat(ys[i * 2]);
+            out.writeFloat(xs[i * 2 + 1]);
+            out.writeFloat(ys[i * 2 + 1]);
+            out.writeFloat(widths[i]);
+            out.writeInt(colors[i]);
+            out.writeInt(pathStarts == null ? -1 : pathStarts[i]);
+        }
+    }
+
+    /**
+     * Reads a selection that was written by write
+     *
+     * @param in Input
+     * @return Selection
+     * @throws IOException If the selection cannot be read
+     */
+    static Selection read(DataInputStream in) throws IOException {
+        IntList slots = Edit.readSlots(in);
+        int n = slots.size();
+        byte[] kinds = new byte[n];
+        float[] xs = new float[n * 2], ys = new float[n * 2], widths = new float[n];
+        int[] colors = new int[n], pathStarts = new int[n];
+        boolean pencils = false;
+        for (int i = 0; i < n; i++) {
+            kinds[i] = in.readByte();
+            xs[i * 2] = in.readFloat();
+            ys[i * 2] = in.readFloat();
+            xs[i * 2 + 1] = in.readFloat();
+            ys[i * 2 + 1] = in.readFloat();
+            widths[i] = in.readFloat();
+            colors[i] = in.readInt();
+            pathStarts[i] = in.readInt();
+            pencils |= pathStarts[i] >= 0;
+        }
+        return new Selection(slots, kinds, xs, ys, widths, colors, pencils ? pathStarts : null);
+    }
+
+    /**
+     * Getter method for the slots of the shapes
+     *
+     * @return Slots in paint order
+     */
+    public IntList getSlots() {
+        return slots;
+    }
+
+    /**
+     * Getter method for the number of shapes
+     *
+     * @return Number of shapes
+     */
+    public int size() {
+        return slots.size();
+    }
+
+    /**
+     * Getter method for the kind of a shape
+     *
+     * @param index Index of the shape in the selection
+     * @return Kind of the shape
+     */
+    byte getKind(int index) {
+        return kinds[index];
+    }
+
+    /**
+     * Getter method for the x coordinates
+     *
+     * @return X coordinates (sx and ex of every shape), not to be changed
+     */
+    float[] getXs() {
+        return xs;
+    }
+
+    /**
+     * Getter method for the y coordinates
+     *
+     * @return Y coordinates (sy and ey of every shape), not to be changed
+     */
+    float[] getYs() {
+        return ys;
+    }
+
+    /**
+     * Getter method for the stroke widths
+     *
+     * @return Stroke widths, not to be changed
+     */
+    float[] getWidths() {
+        return widths;
+    }
+
+    /**
+     * Getter method for the palette indices of the colors
+     *
+     * @return Palette indices, not to be changed
+     */
+    int[] getColors() {
+        return colors;
+    }
+
+    /**
+     * Getter method for the starts of the points of the pencil records
+     *
+     * @return Starts, -1 for the other shapes; null if there are no pencil records
+     */
+    int[] getPathStarts() {
+        return pathStarts;
+    }
+
+    /**
+     * Getter method for the largest margin of the bounding box for a stroke
+     *
+     * @return Margin of the widest stroke
+     */
+    public double getMaxMargin() {
+        return maxMargin;
+    }
+
+    /**
+     * Getter method for the left edge of the bounding box
+     *
+     * @return Left edge
+     */
+    public double getMinX() {
+        return minX;
+    }
+
+    /**
+     * Getter method for the top edge of the bounding box
+     *
+     * @return Top edge
+     */
+    public double getMinY() {
+        return minY;
+    }
+
+    /**
+     * Getter method for the right edge of the bounding box
+     *
+     * @return Right edge
+     */
+    public double getMaxX() {
+        return maxX;
+    }
+
+    /**
+     * Getter method for the bottom edge of the bounding box
+     *
+     * @return Bottom edge
+     */
+    public double getMaxY() {
+        return maxY;
+    }
+}
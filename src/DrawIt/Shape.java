@@ -1,13 +1,18 @@
 package DrawIt;
-import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.paint.Color;
 
 /**
- * Shape abstract class. Superclass that contains common values shared with Line, Rectangle and Circle classes
+ * Shape abstract class. Superclass that contains common values shared with Line, Rectangle, Circle and Pencil classes.
+ * Shapes of a drawing are kept in a ShapeStore, shape objects are used for single shapes (preview, input) and as
+ * reusable views of the store's records
  *
  * @author Maksym Hanushchak
  */
 public abstract class Shape {
+    /**
+     * Half of the diagonal of a square with sides of one
+     */
+    private static final double HALF_DIAGONAL = Math.sqrt(2) / 2;
     /**
      * Shape's coordinates (pixels)
      **/
@@ -31,7 +36,21 @@ public abstract class Shape {
      * @param lineColor Shape's line color
      * @param lineWidth Shape's line width
      */
-    Shape(Double sx, Double sy, Double ex, Double ey, Color lineColor, Double lineWidth) {
+    Shape(double sx, double sy, double ex, double ey, Color lineColor, double lineWidth) {
+        set(sx, sy, ex, ey, lineColor, lineWidth);
+    }
+
+    /**
+     * Sets all the values of the shape at once, so one shape object can be reused for many shapes
+     *
+     * @param sx        Shape's x coordinate
+     * @param sy        Shape's y coordinate
+     * @param ex        Shape's height
+     * @param ey        Shape's width
+     * @param lineColor Shape's line color
+     * @param lineWidth Shape's line width
+     */
+    void set(double sx, double sy, double ex, double ey, Color lineColor, double lineWidth) {
         this.sx = sx;
         this.sy = sy;
         this.ex = ex;
@@ -105,10 +124,121 @@ public abstract class Shape {
         return lineWidth;
     }
 
+    /**
+     * Margin of a bounding box around the points of a stroke. Strokes have square caps, and the cap of a diagonal
+     * line reaches half of the stroke width times the square root of two past its end; one more pixel is added
+     * for antialiasing
+     *
+     * @param lineWidth Stroke width
+     * @return Margin
+     */
+    public static double margin(double lineWidth) {
+        return lineWidth * HALF_DIAGONAL + 1;
+    }
+
+    /**
+     * Getter method for the left edge of the shape's bounding box. The box is inflated by the margin of the stroke
+     * (see margin), so it covers every pixel the shape touches on the canvas
+     *
+     * @return Left edge of the bounding box
+     */
+    public double getMinX() {
+        return Math.min(sx, ex) - margin(lineWidth);
+    }
+
+    /**
+     * Getter method for the top edge of the shape's bounding box (see getMinX)
+     *
+     * @return Top edge of the bounding box
+     */
+    public double getMinY() {
+        return Math.min(sy, ey) - margin(lineWidth);
+    }
+
+    /**
+     * Getter method for the right edge of the shape's bounding box (see getMinX)
+     *
+     * @return Right edge of the bounding box
+     */
+    public double getMaxX() {
+        return Math.max(sx, ex) + margin(lineWidth);
+    }
+
+    /**
+     * Getter method for the bottom edge of the shape's bounding box (see getMinX)
+     *
+     * @return Bottom edge of the bounding box
+     */
+    public double getMaxY() {
+        return Math.max(sy, ey) + margin(lineWidth);
+    }
+
+    /**
+     * Checks whether the shape's bounding box overlaps the given region
+     *
+     * @param minX Left edge of the region
+     * @param minY Top edge of the region
+     * @param maxX Right edge of the region
+     * @param maxY Bottom edge of the region
+     * @return True if the bounding box and the region overlap
+     */
+    public boolean intersects(double minX, double minY, double maxX, double maxY) {
+        return getMinX() <= maxX && getMaxX() >= minX && getMinY() <= maxY && getMaxY() >= minY;
+    }
+
+    /**
+     * Checks whether a circle (for example the eraser) touches the stroke of the shape
+     *
+     * @param x      X coordinate of the circle's center
+     * @param y      Y coordinate of the circle's center
+     * @param radius Circle's radius
+     * @return True if the circle touches the stroke
+     */
+    public boolean hits(double x, double y, double radius) {
+        return distanceTo(x, y) <= radius + lineWidth / 2;
+    }
+
+    /**
+     * Distance from a point to the segment between two points
+     *
+     * @param x  Point's x coordinate
+     * @param y  Point's y coordinate
+     * @param x1 Segment's start x coordinate
+     * @param y1 Segment's start y coordinate
+     * @param x2 Segment's end x coordinate
+     * @param y2 Segment's end y coordinate
+     * @return Distance in pixels
+     */
+    static double segmentDistance(double x, double y, double x1, double y1, double x2, double y2) {
+        double dx = x2 - x1, dy = y2 - y1;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = 0;
+        if (lengthSquared > 0) { // Projects the point on the segment and clamps it to the segment's ends
+            t = Math.max(0, Math.min(1, ((x - x1) * dx + (y - y1) * dy) / lengthSquared));
+        }
+        return Math.hypot(x - (x1 + t * dx), y - (y1 + t * dy));
+    }
+
+    /**
+     * abstract method that tells which kind of shape this is (one of ShapeStore.LINE, CIRCLE, RECTANGLE)
+     *
+     * @return Kind of the shape
+     */
+    public abstract byte getKind();
+
+    /**
+     * abstract method that measures the distance from a point to the stroke's center line
+     *
+     * @param x Point's x coordinate
+     * @param y Point's y coordinate
+     * @return Distance in pixels
+     */
+    public abstract double distanceTo(double x, double y);
+
     /**
      * abstact draw method
      *
-     * @param gc Graphics Context
+     * @param r Renderer (JavaFX canvas or image)
      */
-    public abstract void draw(GraphicsContext gc);
+    public abstract void draw(Renderer r);
 }
@@ -0,0 +1,314 @@
+package DrawIt;
+import javafx.scene.paint.Color;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Shapes collected for adding them to a drawing at once, for drawings generated from data (plots, floor plans,
+ * test patterns) and for imports. The shapes are kept in primitive arrays and their colors in a small table of the
+ * batch, so a batch can be filled on any thread and added on the FX thread in one pass (see BatchEdit.add and
+ * Drawing.addBatch)
+ *
+ * @author Maksym Hanushchak
+ */
+public class ShapeBatch {
+    /**
+     * Kinds of the shapes (ShapeStore.LINE, CIRCLE, RECTANGLE or PENCIL)
+     */
+    private byte[] kinds;
+    /**
+     * End points (corners) of the shapes (sx, sy, ex, ey, ...)
+     */
+    private float[] coords;
+    /**
+     * Stroke widths
+     */
+    private float[] widths;
+    /**
+     * Colors of the shapes, as indices into the color table
+     */
+    private int[] colors;
+    /**
+     * Number of shapes
+     */
+    private int size;
+    /**
+     * Colors used by the shapes
+     */
+    private final ArrayList<Color> colorTable = new ArrayList<>();
+    /**
+     * Indices into the color table by color
+     */
+    private final HashMap<Color, Integer> colorIndices = new HashMap<>();
+    /**
+     * Indices into the color table by ARGB value
+     */
+    private final HashMap<Integer, Integer> argbIndices = new HashMap<>();
+    /**
+     * Color of the previous shape (Color or ARGB Integer), neighbouring shapes mostly share their color
+     */
+    private Object lastColor;
+    /**
+     * Index of the previous shape's color in the color table
+     */
+    private int lastIndex;
+    /**
+     * Pencil strokes of the batch in order, their points are copied when the batch is added
+     */
+    private final ArrayList<Pencil> pencils = new ArrayList<>();
+
+    /**
+     * ShapeBatch constructor
+     */
+    public ShapeBatch() {
+        this(1024);
+    }
+
+    /**
+     * ShapeBatch constructor
+     *
+     * @param capacity Number of shapes the batch has room for before it grows
+     */
+    public ShapeBatch(int capacity) {
+        capacity = Math.max(1, capacity);
+        kinds = new byte[capacity];
+        coords = new float[capacity * 4];
+        widths = new float[capacity];
+        colors = new int[capacity];
+    }
+
+    /**
+     * Adds a copy of a shape. Pencil strokes must be finished, their points are read when the batch is added
+     *
+     * @param s Shape
+     */
+    public void add(Shape s) {
+        if (s instanceof Pencil) {
+            pencils.add((Pencil) s);
+        }
+        append(s.getKind(), s.getSx(), s.getSy(), s.getEx(), s.getEy(), (float) s.getLineWidth(), colorIndex(s.getLineColor()));
+    }
+
+    /**
+     * Adds a line, circle or rectangle
+     *
+     * @param kind  ShapeStore.LINE, CIRCLE or RECTANGLE
+     * @param sx    Start x coordinate (world)
+     * @param sy    Start y coordinate
+     * @param ex    End x coordinate
+     * @param ey    End y coordinate
+     * @param color Stroke color
+     * @param width Stroke width
+     */
+    public void add(byte kind, double sx, double sy, double ex, double ey, Color color, double width) {
+        append(checkKind(kind), sx, sy, ex, ey, (float) width, colorIndex(color));
+    }
+
+    /**
+     * Adds a line, circle or rectangle with an ARGB color
+     *
+     * @param kind  ShapeStore.LINE, CIRCLE or RECTANGLE
+     * @param sx    Start x coordinate (world)
+     * @param sy    Start y coordinate
+     * @param ex    End x coordinate
+     * @param ey    End y coordinate
+     * @param argb  Stroke color (ARGB)
+     * @param width Stroke width
+     */
+    public void add(byte kind, double sx, double sy, double ex, double ey, int argb, double width) {
+        append(checkKind(kind), sx, sy, ex, ey, (float) width, argbIndex(argb));
+    }
+
+    /**
+     * Adds shapes of one kind and style from a buffer of end points
+     *
+     * @param kind   ShapeStore.LINE, CIRCLE or RECTANGLE
+     * @param points End points (sx, sy, ex, ey, ...)
+     * @param offset Index of the first shape's sx
+     * @param count  Number of shapes
+     * @param color  Stroke color
+     * @param width  Stroke width
+     */
+    public void addAll(byte kind, float[] points, int offset, int count, Color color, double width) {
+        checkKind(kind);
+        int index = colorIndex(color);
+        ensure(count);
+        Arrays.fill(kinds, size, size + count, kind);
+        System.arraycopy(points, offset, coords, size * 4, count * 4);
+        Arrays.fill(widths, size, size + count, (float) width);
+        Arrays.fill(colors, size, size + count, index);
+        size += count;
+    }
+
+    /**
+     * Adds shapes from primitive buffers
+     *
+     * @param kinds  Kinds (ShapeStore.LINE, CIRCLE or RECTANGLE)
+     * @param points End points (sx, sy, ex, ey, ...), four per shape
+     * @param widths Stroke widths
+     * @param argb   Stroke colors (ARGB)
+     * @param offset Index of the first shape in the buffers
+     * @param count  Number of shapes
+     */
+    public void addAll(byte[] kinds, float[] points, float[] widths, int[] argb, int offset, int count) {
+        ensure(count);
+        for (int i = offset; i < offset + count; i++) {
+            checkKind(kinds[i]);
+        }
+        System.arraycopy(kinds, offset, this.kinds, size, count);
+        System.arraycopy(points, offset * 4, coords, size * 4, count * 4);
+        System.arraycopy(widths, offset, this.widths, size, count);
+        for (int i = 0; i < count; i++) {
+            colors[size + i] = argbIndex(argb[offset + i]);
+        }
+        size += count;
+    }
+
+    /**
+     * Appends a record
+     *
+     * @param kind  Kind of the shape
+     * @param sx    Start x coordinate
+     * @param sy    Start y coordinate
+     * @param ex    End x coordinate
+     * @param ey    End y coordinate
+     * @param width Stroke width
+     * @param color Index into the color table
+     */
+    private void append(byte kind, double sx, double sy, double ex, double ey, float width, int color) {
+        ensure(1);
+        kinds[size] = kind;
+        coords[size * 4] = (float) sx;
+        coords[size * 4 + 1] = (float) sy;
+        coords[size * 4 + 2] = (float) ex;
+        coords[size * 4 + 3] = (float) ey;
+        widths[size] = width;
+        colors[size] = color;
+        size++;
+    }
+
+    /**
+     * Makes room for more shapes
+     *
+     * @param n Number of shapes that will be added
+     */
+    private void ensure(int n) {
+        if (size + n > kinds.length) {
+            int capacity = Math.max(kinds.length * 2, size + n);
+            kinds = Arrays.copyOf(kinds, capacity);
+            coords = Arrays.copyOf(coords, capacity * 4);
+            widths = Arrays.copyOf(widths, capacity);
+            colors = Arrays.copyOf(colors, capacity);
+        }
+    }
+
+    /**
+     * Checks that a kind can be added without points
+     *
+     * @param kind Kind of the shape
+     * @return The kind
+     */
+    private static byte checkKind(byte kind) {
+        if (kind != ShapeStore.LINE && kind != ShapeStore.CIRCLE && kind != ShapeStore.RECTANGLE) {
+            throw new IllegalArgumentException("Not a line, circle or rectangle: " + kind);
+        }
+        return kind;
+    }
+
+    /**
+     * Finds the index of a color in the color table, adds the color if it is new
+     *
+     * @param color Color
+     * @return Index into the color table
+     */
+    private int colorIndex(Color color) {
+        if (color.equals(lastColor)) {
+            return lastIndex;
+        }
+        Integer index = colorIndices.get(color);
+        if (index == null) {
+            index = colorTable.size();
+            colorTable.add(color);
+            colorIndices.put(color, index);
+        }
+        lastColor = color;
+        lastIndex = index;
+        return index;
+    }
+
+    /**
+     * Finds the index of an ARGB color in the color table, adds the color if it is new
+     *
+     * @param argb Color (ARGB)
+     * @return Index into the color table
+     */
+    private int argbIndex(int argb) {
+        if (lastColor instanceof Integer && (Integer) lastColor == argb) {
+            return lastIndex;
+        }
+        Integer index = argbIndices.get(argb);
+        if (index == null) {
+            index = colorIndex(DrawingFile.fromArgb(argb));
+            argbIndices.put(argb, index);
+        }
+        lastColor = argb;
+        lastIndex = index;
+        return index;
+    }
+
+    /**
+     * Appends the shapes to a store (package-private, see Drawing.addBatch)
+     *
+     * @param store Store
+     * @return Slot of the first added shape
+     */
+    int appendTo(ShapeStore store) {
+        Palette palette = store.getPalette();
+        int[] paletteIndices = new int[colorTable.size()]; // Every color is looked up in the palette once
+        for (int i = 0; i < paletteIndices.length; i++) {
+            paletteIndices[i] = palette.intern(colorTable.get(i));
+        }
+        int from = store.size(), pencil = 0;
+        for (int i = 0; i < size; i++) {
+            int slot = store.add(kinds[i], coords[i * 4], coords[i * 4 + 1], coords[i * 4 + 2], coords[i * 4 + 3], widths[i],
+                    paletteIndices[colors[i]]);
+            if (kinds[i] == ShapeStore.PENCIL) {
+                Pencil p = pencils.get(pencil++);
+                store.setPath(slot, p.getPoints(), p.getOffset(), p.size());
+            }
+        }
+        return from;
+    }
+
+    /**
+     * Getter method for the number of shapes
+     *
+     * @return Number of shapes
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether the batch has no shapes
+     *
+     * @return True if there are no shapes
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes all the shapes, the arrays are kept for the next ones
+     */
+    public void clear() {
+        size = 0;
+        colorTable.clear();
+        colorIndices.clear();
+        argbIndices.clear();
+        pencils.clear();
+        lastColor = null;
+    }
+}
@@ -0,0 +1,307 @@
+package DrawIt;
+
+/**
+ * Spatial index of the drawing. The plane is split into square cells and every shape (slot of the ShapeStore) is
+ * registered in each cell its bounding box overlaps, so region queries only look at shapes that are near the region
+ *
+ * @author Maksym Hanushchak
+ */
+public class ShapeGrid {
+    /**
+     * Shapes that cover more cells than this are kept in a separate list instead of the cells
+     */
+    private static final int MAX_CELLS_PER_SHAPE = 256;
+    /**
+     * Store that holds the indexed shapes
+     */
+    private final ShapeStore store;
+    /**
+     * Cell size (pixels)
+     */
+    private final double cellSize;
+    /**
+     * Non-empty cells, the key packs the cell's column and row into one long
+     */
+    private final CellTable cells = new CellTable();
+    /**
+     * Shapes that are too big to be registered cell by cell
+     */
+    private final IntList oversized = new IntList();
+    /**
+     * Number of shapes in the index
+     */
+    private int size;
+
+    /**
+     * ShapeGrid constructor
+     *
+     * @param store    Store that holds the indexed shapes
+     * @param cellSize Cell size in pixels
+     */
+    ShapeGrid(ShapeStore store, double cellSize) {
+        this.store = store;
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * Packs cell's column and row into a map key
+     *
+     * @param col Cell's column
+     * @param row Cell's row
+     * @return Key of the cell
+     */
+    private static long key(int col, int row) {
+        return ((long) col << 32) | (row & 0xffffffffL);
+    }
+
+    /**
+     * Converts a coordinate to the index of the column (or row) that contains it
+     *
+     * @param v Coordinate
+     * @return Column or row index
+     */
+    private int cell(double v) {
+        return (int) Math.floor(v / cellSize);
+    }
+
+    /**
+     * Checks whether the shape is too big to be registered cell by cell
+     *
+     * @param slot Slot of the shape
+     * @return True if the shape goes to the oversized list
+     */
+    private boolean isOversized(int slot) {
+        long cols = (long) cell(store.getMaxX(slot)) - cell(store.getMinX(slot)) + 1;
+        long rows = (long) cell(store.getMaxY(slot)) - cell(store.getMinY(slot)) + 1;
+        return cols * rows > MAX_CELLS_PER_SHAPE;
+    }
+
+    /**
+     * Adds a shape to the index
+     *
+     * @param slot Slot of the shape
+     */
+    public void insert(int slot) {
+        size++;
+        if (isOversized(slot)) {
+            oversized.add(slot);
+            return;
+        }
+        int maxCol = cell(store.getMaxX(slot)), maxRow = cell(store.getMaxY(slot));
+        for (int col = cell(store.getMinX(slot)); col <= maxCol; col++) {
+            for (int row = cell(store.getMinY(slot)); row <= maxRow; row++) {
+                cells.getOrCreate(key(col, row)).add(slot);
+            }
+        }
+    }
+
+    /**
+     * Removes several shapes from the index. Every shape must be in the index and not changed since it was
+     * inserted. Many shapes are removed in one pass over the cells, which does not search a cell once per shape
+     *
+     * @param slots Slots of the shapes
+     */
+    public void removeAll(IntList slots) {
+        if (slots.size() * 64L < size) { // Few shapes, one by one and newest first (see Drawing.removeRange)
+            for (int i = slots.size() - 1; i >= 0; i--) {
+                remove(slots.get(i));
+            }
+            return;
+        }
+        long[] marks = new long[(store.size() + 63) >>> 6];
+        for (int i = 0; i < slots.size(); i++) {
+            marks[slots.get(i) >>> 6] |= 1L << slots.get(i);
+        }
+        int empty = 0;
+        for (int i = 0; i < cells.capacity(); i++) {
+            IntList bucket = cells.listAt(i);
+            if (bucket != null) {
+                bucket.removeMarked(marks);
+                if (bucket.isEmpty()) {
+                    empty++;
+                }
+            }
+        }
+        long[] keys = new long[empty]; // Keys first, removing a cell moves other cells in the table
+        for (int i = 0, k = 0; k < empty; i++) {
+            if (cells.listAt(i) != null && cells.listAt(i).isEmpty()) {
+                keys[k++] = cells.keyAt(i);
+            }
+        }
+        for (long key : keys) {
+            cells.remove(key);
+        }
+        oversized.removeMarked(marks);
+        size -= slots.size();
+    }
+
+    /**
+     * Checks whether a shape would be registered in other cells with a new bounding box, only then it has to be
+     * removed and inserted again when it changes (see Drawing.reshape)
+     *
+     * @param slot Slot of the shape, as it was inserted
+     * @param minX Left edge of the new bounding box
+     * @param minY Top edge of the new bounding box
+     * @param maxX Right edge of the new bounding box
+     * @param maxY Bottom edge of the new bounding box
+     * @return True if the cells change
+     */
+    public boolean changesCells(int slot, double minX, double minY, double maxX, double maxY) {
+        return cell(store.getMinX(slot)) != cell(minX) || cell(store.getMinY(slot)) != cell(minY)
+                || cell(store.getMaxX(slot)) != cell(maxX) || cell(store.getMaxY(slot)) != cell(maxY);
+    }
+
+    /**
+     * Removes a shape from the index. The shape must not have been changed since it was inserted
+     *
+     * @param slot Slot of the shape
+     */
+    public void remove(int slot) {
+        if (isOversized(slot)) {
+            if (oversized.swapRemoveValue(slot)) {
+                size--;
+            }
+            return;
+        }
+        boolean found = false;
+        int maxCol = cell(store.getMaxX(slot)), maxRow = cell(store.getMaxY(slot));
+        for (int col = cell(store.getMinX(slot)); col <= maxCol; col++) {
+            for (int row = cell(store.getMinY(slot)); row <= maxRow; row++) {
+                long key = key(col, row);
+                IntList bucket = cells.get(key);
+                if (bucket != null && bucket.swapRemoveValue(slot)) { // The order inside of a bucket does not matter
+                    found = true;
+                    if (bucket.isEmpty()) {
+                        cells.remove(key);
+                    }
+                }
+            }
+        }
+        if (found) {
+            size--;
+        }
+    }
+
+    /**
+     * Finds the shapes whose bounding boxes overlap the region
+     *
+     * @param minX Left edge of the region
+     * @param minY Top edge of the region
+     * @param maxX Right edge of the region
+     * @param maxY Bottom edge of the region
+     * @param out  List that receives the slots, sorted by paint order and without duplicates
+     */
+    public void query(double minX, double minY, double maxX, double maxY, IntList out) {
+        int start = out.size();
+        int minCol = cell(minX), minRow = cell(minY), maxCol = cell(maxX), maxRow = cell(maxY);
+        if (((long) maxCol - minCol + 1) * ((long) maxRow - minRow + 1) > cells.size()) {
+            // The region has more cells than the index (zoomed out view), the non-empty cells are visited instead
+            for (int i = 0; i < cells.capacity(); i++) {
+                IntList bucket = cells.listAt(i);
+                long key = cells.keyAt(i);
+                int col = (int) (key >> 32), row = (int) key;
+                if (bucket != null && col >= minCol && col <= maxCol && row >= minRow && row <= maxRow) {
+                    collect(bucket, minX, minY, maxX, maxY, out);
+                }
+            }
+        } else {
+            for (int col = minCol; col <= maxCol; col++) {
+                for (int row = minRow; row <= maxRow; row++) {
+                    IntList bucket = cells.get(key(col, row));
+                    if (bucket != null) {
+                        collect(bucket, minX, minY, maxX, maxY, out);
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < oversized.size(); i++) {
+            int slot = oversized.get(i);
+            if (store.intersects(slot, minX, minY, maxX, maxY)) {
+                out.add(slot);
+            }
+        }
+        // A shape is listed once per cell it covers, slot order is paint order
+        out.sortUnique(start);
+    }
+
+    /**
+     * Adds the shapes of a cell that overlap the region to the list
+     *
+     * @param bucket Shapes of the cell
+     * @param minX   Left edge of the region
+     * @param minY   Top edge of the region
+     * @param maxX   Right edge of the region
+     * @param maxY   Bottom edge of the region
+     * @param out    List that receives the slots
+     */
+    private void collect(IntList bucket, double minX, double minY, double maxX, double maxY, IntList out) {
+        for (int i = 0; i < bucket.size(); i++) {
+            int slot = bucket.get(i);
+            if (store.intersects(slot, minX, minY, maxX, maxY)) {
+                out.add(slot);
+            }
+        }
+    }
+
+    /**
+     * Getter method for the number of shapes in the index
+     *
+     * @return Number of shapes
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Counts the entries of the cells that overlap the region, which is an upper bound of the number of shapes
+     * query would find (a shape is counted once for every cell it is in). Cheaper than query, nothing is sorted
+     *
+     * @param minX Left edge of the region
+     * @param minY Top edge of the region
+     * @param maxX Right edge of the region
+     * @param maxY Bottom edge of the region
+     * @return Number of entries
+     */
+    public long count(double minX, double minY, double maxX, double maxY) {
+        int minCol = cell(minX), minRow = cell(minY), maxCol = cell(maxX), maxRow = cell(maxY);
+        long count = oversized.size();
+        if (((long) maxCol - minCol + 1) * ((long) maxRow - minRow + 1) > cells.size()) {
+            for (int i = 0; i < cells.capacity(); i++) {
+                IntList bucket = cells.listAt(i);
+                long key = cells.keyAt(i);
+                int col = (int) (key >> 32), row = (int) key;
+                if (bucket != null && col >= minCol && col <= maxCol && row >= minRow && row <= maxRow) {
+                    count += bucket.size();
+                }
+            }
+            return count;
+        }
+        for (int col = minCol; col <= maxCol; col++) {
+            for (int row = minRow; row <= maxRow; row++) {
+                IntList bucket = cells.get(key(col, row));
+                if (bucket != null) {
+                    count += bucket.size();
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Getter method for the number of cells that hold shapes
+     *
+     * @return Number of cells
+     */
+    public int cellCount() {
+        return cells.size();
+    }
+
+    /**
+     * Removes all the shapes from the index
+     */
+    public void clear() {
+        cells.clear();
+        oversized.clear();
+        size = 0;
+    }
+}
@@ -0,0 +1,952 @@
+package DrawIt;
+import javafx.scene.paint.Color;
+
+import java.util.Arrays;
+
+/**
+ * Columnar storage of the shapes of a drawing. Every shape is a record (slot) spread over primitive arrays: kind,
+ * four coordinates, stroke width and palette index of the color. Slots are only appended, so the slot number is
+ * also the paint order. Removed shapes keep their slots (they are only marked as not live), so they can be brought
+ * back by undo
+ * <p>
+ * Pencil records keep the bounding box of the stroke as their coordinates, their points are appended to one shared
+ * float array (path). The path columns are only created when the first pencil record is added
+ * <p>
+ * Line, Circle, Rectangle and Pencil objects are used as views: a record is loaded into a reusable shape of its
+ * kind when it has to be drawn or hit-tested
+ * <p>
+ * The columns are split into chunks of CHUNK slots, so a snapshot (a read-only version of the store that other
+ * threads can read while this one keeps changing) only shares the chunks instead of copying them. After a snapshot
+ * a chunk is copied the first time a slot in it is changed (copy on write); appending is always done in place,
+ * since a snapshot never reads past its own size. Records can also be changed in place (moved, scaled or
+ * re-stroked, see TransformEdit), they keep their slot and so their place in paint order
+ *
+ * @author Maksym Hanushchak
+ */
+public class ShapeStore {
+    /**
+     * Kinds of shapes
+     */
+    public static final byte LINE = 0, CIRCLE = 1, RECTANGLE = 2, PENCIL = 3;
+    /**
+     * Number of kinds
+     */
+    public static final int KINDS = 4;
+    /**
+     * Number of slots in a chunk is 2 to the power of CHUNK_BITS
+     */
+    private static final int CHUNK_BITS = 12, CHUNK = 1 << CHUNK_BITS, MASK = CHUNK - 1;
+    /**
+     * Kind of every shape, by chunk
+     */
+    private byte[][] kinds;
+    /**
+     * Coordinates of every shape (sx, sy, ex, ey), by chunk
+     */
+    private float[][] coords;
+    /**
+     * Stroke width of every shape, by chunk
+     */
+    private float[][] widths;
+    /**
+     * Palette index of the color of every shape, by chunk
+     */
+    private int[][] colors;
+    /**
+     * Index of the first point's x in 'paths' and number of points of every pencil record, by chunk (null until
+     * the first pencil record, a chunk is null until its first pencil record)
+     */
+    private int[][] pathStarts, pathSizes;
+    /**
+     * Points of all the pencil records (x, y, x, y, ...), only appended to
+     */
+    private float[] paths;
+    /**
+     * Number of floats in use in 'paths'
+     */
+    private int pathsSize;
+    /**
+     * Number of floats in 'paths' that truncate keeps: points that were appended for records that already had
+     * points (see appendPoints) may be read by any slot
+     */
+    private int pathsKept;
+    /**
+     * Live (not removed) shapes, one bit per slot, by chunk
+     */
+    private long[][] live;
+    /**
+     * Generation of the store that owns each chunk of live, colors, pathStarts/pathSizes, coords, widths and kinds.
+     * A chunk whose generation is not the current one may be shared with a snapshot
+     */
+    private int[] liveOwners, colorOwners, pathOwners, coordOwners, widthOwners, kindOwners;
+    /**
+     * Current generation, every snapshot starts a new one
+     */
+    private int generation;
+    /**
+     * Slots below this one may be read by snapshots
+     */
+    private int frozen;
+    /**
+     * True if the arrays of chunks may be shared with a snapshot
+     */
+    private boolean sharedChunks;
+    /**
+     * True if this store is a snapshot, which cannot be changed
+     */
+    private final boolean readOnly;
+    /**
+     * Number of slots in use
+     */
+    private int size;
+    /**
+     * Number of live shapes
+     */
+    private int liveCount;
+    /**
+     * Colors of the drawing
+     */
+    private final Palette palette;
+    /**
+     * Reusable views used on the FX thread (created on first use)
+     */
+    private Shape[] views;
+
+    /**
+     * ShapeStore constructor
+     */
+    ShapeStore() {
+        this(1024);
+    }
+
+    /**
+     * ShapeStore constructor
+     *
+     * @param capacity Initial number of slots
+     */
+    ShapeStore(int capacity) {
+        readOnly = false;
+        palette = new Palette();
+        reset(capacity);
+    }
+
+    /**
+     * Snapshot constructor, the snapshot shares the chunks and the palette of the store
+     *
+     * @param source Store
+     */
+    private ShapeStore(ShapeStore source) {
+        readOnly = true;
+        kinds = source.kinds;
+        coords = source.coords;
+        widths = source.widths;
+        colors = source.colors;
+        pathStarts = source.pathStarts;
+        pathSizes = source.pathSizes;
+        paths = source.paths;
+        pathsSize = source.pathsSize;
+        live = source.live;
+        size = source.size;
+        frozen = size;
+        liveCount = source.liveCount;
+        palette = source.palette.snapshot();
+    }
+
+    /**
+     * Drops all the chunks and makes room for a number of slots
+     *
+     * @param capacity Number of slots
+     */
+    private void reset(int capacity) {
+        int chunks = Math.max(1, (capacity + MASK) >>> CHUNK_BITS);
+        kinds = new byte[chunks][];
+        coords = new float[chunks][];
+        widths = new float[chunks][];
+        colors = new int[chunks][];
+        live = new long[chunks][];
+        pathStarts = null;
+        pathSizes = null;
+        paths = null;
+        pathsSize = 0;
+        pathsKept = 0;
+        liveOwners = new int[chunks];
+        colorOwners = new int[chunks];
+        pathOwners = new int[chunks];
+        coordOwners = new int[chunks];
+        widthOwners = new int[chunks];
+        kindOwners = new int[chunks];
+        size = 0;
+        liveCount = 0;
+        frozen = 0;
+        sharedChunks = false;
+    }
+
+    /**
+     * Creates a set of reusable views, one per kind of shape. Each thread that reads the store needs its own set
+     *
+     * @return Views indexed by kind
+     */
+    public static Shape[] newViews() {
+        Shape[] views = new Shape[KINDS];
+        views[LINE] = new Line(0, 0, 0, 0, Color.BLACK, 1);
+        views[CIRCLE] = new Circle(0, 0, 0, 0, Color.BLACK, 1);
+        views[RECTANGLE] = new Rectangle(0, 0, 0, 0, Color.BLACK, 1);
+        views[PENCIL] = new Pencil(Color.BLACK, 1);
+        return views;
+    }
+
+    /**
+     * Checks that the store can be changed
+     */
+    private void checkWritable() {
+        if (readOnly) {
+            throw new IllegalStateException("A snapshot cannot be changed");
+        }
+    }
+
+    /**
+     * Makes sure there is a chunk for one more slot. New chunks belong to the current generation
+     */
+    private void grow() {
+        checkWritable();
+        if ((size & MASK) != 0) {
+            return;
+        }
+        int chunk = size >>> CHUNK_BITS;
+        if (chunk == kinds.length) { // New arrays of chunks, they are not shared
+            int chunks = kinds.length * 2;
+            kinds = Arrays.copyOf(kinds, chunks);
+            coords = Arrays.copyOf(coords, chunks);
+            widths = Arrays.copyOf(widths, chunks);
+            colors = Arrays.copyOf(colors, chunks);
+            live = Arrays.copyOf(live, chunks);
+            if (pathStarts != null) {
+                pathStarts = Arrays.copyOf(pathStarts, chunks);
+                pathSizes = Arrays.copyOf(pathSizes, chunks);
+            }
+            liveOwners = Arrays.copyOf(liveOwners, chunks);
+            colorOwners = Arrays.copyOf(colorOwners, chunks);
+            pathOwners = Arrays.copyOf(pathOwners, chunks);
+            coordOwners = Arrays.copyOf(coordOwners, chunks);
+            widthOwners = Arrays.copyOf(widthOwners, chunks);
+            kindOwners = Arrays.copyOf(kindOwners, chunks);
+            sharedChunks = false;
+        }
+        // Snapshots never read the chunks past their size, so they are set in place even if the arrays are shared
+        kinds[chunk] = new byte[CHUNK];
+        coords[chunk] = new float[CHUNK * 4];
+        widths[chunk] = new float[CHUNK];
+        colors[chunk] = new int[CHUNK];
+        live[chunk] = new long[CHUNK / 64];
+        liveOwners[chunk] = generation;
+        colorOwners[chunk] = generation;
+        pathOwners[chunk] = generation;
+        coordOwners[chunk] = generation;
+        widthOwners[chunk] = generation;
+        kindOwners[chunk] = generation;
+    }
+
+    /**
+     * Copies the arrays of chunks if they are shared with a snapshot, before a chunk in them is replaced
+     */
+    private void ownChunks() {
+        if (sharedChunks) {
+            kinds = kinds.clone();
+            coords = coords.clone();
+            widths = widths.clone();
+            colors = colors.clone();
+            live = live.clone();
+            if (pathStarts != null) {
+                pathStarts = pathStarts.clone();
+                pathSizes = pathSizes.clone();
+            }
+            sharedChunks = false;
+        }
+    }
+
+    /**
+     * Getter method for the chunk of live bits of a slot that is about to change, the chunk is copied first if a
+     * snapshot may read it. Bits past a snapshot's size are not read by it, so new slots are set in place
+     *
+     * @param slot Slot
+     * @return Writable chunk
+     */
+    private long[] writableLive(int slot) {
+        int chunk = slot >>> CHUNK_BITS;
+        if (slot < frozen && liveOwners[chunk] != generation) {
+            ownChunks();
+            live[chunk] = live[chunk].clone();
+            liveOwners[chunk] = generation;
+        }
+        return live[chunk];
+    }
+
+    /**
+     * Getter method for the chunk of palette indices of a slot that is about to change (see writableLive)
+     *
+     * @param slot Slot
+     * @return Writable chunk
+     */
+    private int[] writableColors(int slot) {
+        int chunk = slot >>> CHUNK_BITS;
+        if (slot < frozen && colorOwners[chunk] != generation) {
+            ownChunks();
+            colors[chunk] = colors[chunk].clone();
+            colorOwners[chunk] = generation;
+        }
+        return colors[chunk];
+    }
+
+    /**
+     * Getter method for the chunk of coordinates of a slot that is about to change (see writableLive)
+     *
+     * @param slot Slot
+     * @return Writable chunk
+     */
+    private float[] writableCoords(int slot) {
+        int chunk = slot >>> CHUNK_BITS;
+        if (slot < frozen && coordOwners[chunk] != generation) {
+            ownChunks();
+            coords[chunk] = coords[chunk].clone();
+            coordOwners[chunk] = generation;
+        }
+        return coords[chunk];
+    }
+
+    /**
+     * Getter method for the chunk of stroke widths of a slot that is about to change (see writableLive)
+     *
+     * @param slot Slot
+     * @return Writable chunk
+     */
+    private float[] writableWidths(int slot) {
+        int chunk = slot >>> CHUNK_BITS;
+        if (slot < frozen && widthOwners[chunk] != generation) {
+            ownChunks();
+            widths[chunk] = widths[chunk].clone();
+            widthOwners[chunk] = generation;
+        }
+        return widths[chunk];
+    }
+
+    /**
+     * Getter method for the chunk of kinds of a slot that is about to change (see writableLive)
+     *
+     * @param slot Slot
+     * @return Writable chunk
+     */
+    private byte[] writableKinds(int slot) {
+        int chunk = slot >>> CHUNK_BITS;
+        if (slot < frozen && kindOwners[chunk] != generation) {
+            ownChunks();
+            kinds[chunk] = kinds[chunk].clone();
+            kindOwners[chunk] = generation;
+        }
+        return kinds[chunk];
+    }
+
+    /**
+     * Makes the chunks of path starts and sizes of a slot writable (see writableLive), they are created if the
+     * chunk has no pencil records yet
+     *
+     * @param slot Slot
+     */
+    private void writablePaths(int slot) {
+        int chunk = slot >>> CHUNK_BITS;
+        if (pathStarts == null) {
+            pathStarts = new int[kinds.length][];
+            pathSizes = new int[kinds.length][];
+            paths = new float[1024];
+        }
+        if (pathStarts[chunk] == null) {
+            ownChunks();
+            pathStarts[chunk] = new int[CHUNK];
+            pathSizes[chunk] = new int[CHUNK];
+            pathOwners[chunk] = generation;
+        } else if (slot < frozen && pathOwners[chunk] != generation) {
+            ownChunks();
+            pathStarts[chunk] = pathStarts[chunk].clone();
+            pathSizes[chunk] = pathSizes[chunk].clone();
+            pathOwners[chunk] = generation;
+        }
+    }
+
+    /**
+     * Appends a shape record. A pencil record gets no points, they are set by setPath
+     *
+     * @param kind  Kind of the shape
+     * @param sx    Shape's x coordinate
+     * @param sy    Shape's y coordinate
+     * @param ex    Shape's end x coordinate
+     * @param ey    Shape's end y coordinate
+     * @param width Stroke width
+     * @param color Palette index of the color
+     * @return Slot of the new record
+     */
+    public int add(byte kind, double sx, double sy, double ex, double ey, double width, int color) {
+        grow();
+        int slot = size++;
+        int chunk = slot >>> CHUNK_BITS, i = slot & MASK;
+        // Slots are set in place unless they were dropped by truncate while a snapshot still reads them
+        writableKinds(slot)[i] = kind;
+        float[] xy = writableCoords(slot);
+        xy[i * 4] = (float) sx;
+        xy[i * 4 + 1] = (float) sy;
+        xy[i * 4 + 2] = (float) ex;
+        xy[i * 4 + 3] = (float) ey;
+        writableWidths(slot)[i] = (float) width;
+        writableColors(slot)[i] = color;
+        writableLive(slot)[i >>> 6] |= 1L << slot; // Other slots of the word keep their bits, so snapshots can read it
+        liveCount++;
+        if (kind == PENCIL) {
+            writablePaths(slot);
+            pathStarts[chunk][i] = pathsSize;
+            pathSizes[chunk][i] = 0;
+        }
+        return slot;
+    }
+
+    /**
+     * Appends removed records that are filled later (see fill), so records can be loaded in any order and still
+     * get the slots of their paint order
+     *
+     * @param n Number of records
+     * @return Slot of the first reserved record
+     */
+    public int reserve(int n) {
+        int first = size;
+        while (n > 0) {
+            grow();
+            int free = Math.min(n, CHUNK - (size & MASK));
+            size += free;
+            n -= free;
+        }
+        return first;
+    }
+
+    /**
+     * Drops removed records at the end of the store, their slots are given to the next records that are added.
+     * The points of the path from the first point of a dropped pencil record on are dropped too, except the ones
+     * that were appended for other records after it (a moved stroke, see appendPoints)
+     *
+     * @param newSize Number of slots that are kept
+     */
+    public void truncate(int newSize) {
+        checkWritable();
+        if (newSize < 0 || newSize > size || nextLive(newSize) >= 0) {
+            throw new IllegalStateException("Slots " + newSize + "-" + size + " are not all removed");
+        }
+        int pathsEnd = pathsSize;
+        for (int slot = newSize; slot < size; slot++) {
+            if (getKind(slot) == PENCIL) {
+                pathsEnd = Math.min(pathsEnd, getPathStart(slot));
+            }
+        }
+        pathsEnd = Math.max(pathsEnd, pathsKept);
+        if (pathsEnd < pathsSize) {
+            paths = Arrays.copyOf(paths, paths.length); // Snapshots may still read the dropped points
+            pathsSize = pathsEnd;
+        }
+        int chunks = (newSize + MASK) >>> CHUNK_BITS;
+        frozen = Math.min(frozen, chunks << CHUNK_BITS); // The chunks past the last kept one are not shared any more
+        if (chunks < kinds.length && kinds[chunks] != null) {
+            ownChunks();
+            for (int chunk = chunks; chunk < kinds.length && kinds[chunk] != null; chunk++) { // grow makes new ones
+                kinds[chunk] = null;
+                coords[chunk] = null;
+                widths[chunk] = null;
+                colors[chunk] = null;
+                live[chunk] = null;
+                if (pathStarts != null) {
+                    pathStarts[chunk] = null;
+                    pathSizes[chunk] = null;
+                }
+            }
+        }
+        size = newSize;
+    }
+
+    /**
+     * Gives a reserved (removed) record its shape and makes it live. A pencil record gets no points, they are set
+     * by setPath
+     *
+     * @param slot  Slot of the record
+     * @param kind  Kind of the shape
+     * @param sx    Shape's x coordinate
+     * @param sy    Shape's y coordinate
+     * @param ex    Shape's end x coordinate
+     * @param ey    Shape's end y coordinate
+     * @param width Stroke width
+     * @param color Palette index of the color
+     */
+    public void fill(int slot, byte kind, float sx, float sy, float ex, float ey, float width, int color) {
+        if (isLive(slot)) {
+            throw new IllegalStateException("Slot " + slot + " is not reserved");
+        }
+        writableKinds(slot)[slot & MASK] = kind;
+        setGeometry(slot, sx, sy, ex, ey, width);
+        writableColors(slot)[slot & MASK] = color;
+        if (kind == PENCIL) {
+            writablePaths(slot);
+            pathStarts[slot >>> CHUNK_BITS][slot & MASK] = pathsSize;
+            pathSizes[slot >>> CHUNK_BITS][slot & MASK] = 0;
+        }
+        setLive(slot, true);
+    }
+
+    /**
+     * Sets the points of a pencil record. The points are copied to the end of the path, the old ones stay there
+     *
+     * @param slot   Slot of the record
+     * @param points Points (x, y, x, y, ...)
+     * @param offset Index of the first point's x
+     * @param size   Number of points
+     */
+    public void setPath(int slot, float[] points, int offset, int size) {
+        checkWritable();
+        writablePaths(slot);
+        int start = append(points, offset, size);
+        pathStarts[slot >>> CHUNK_BITS][slot & MASK] = start;
+        pathSizes[slot >>> CHUNK_BITS][slot & MASK] = size;
+    }
+
+    /**
+     * Appends points to the path without giving them to a record yet (see setPathStart). The store must have a
+     * pencil record already. Truncate keeps these points, whichever records are dropped
+     *
+     * @param points Points (x, y, x, y, ...)
+     * @param offset Index of the first point's x
+     * @param size   Number of points
+     * @return Index of the first appended point's x in the path
+     */
+    public int appendPoints(float[] points, int offset, int size) {
+        int start = append(points, offset, size);
+        pathsKept = pathsSize;
+        return start;
+    }
+
+    /**
+     * Appends points to the path
+     *
+     * @param points Points (x, y, x, y, ...)
+     * @param offset Index of the first point's x
+     * @param size   Number of points
+     * @return Index of the first appended point's x in the path
+     */
+    private int append(float[] points, int offset, int size) {
+        checkWritable();
+        if (pathsSize + size * 2 > paths.length) {
+            paths = Arrays.copyOf(paths, Math.max(paths.length * 2, pathsSize + size * 2));
+        }
+        System.arraycopy(points, offset, paths, pathsSize, size * 2); // Points are only appended, snapshots keep theirs
+        int start = pathsSize;
+        pathsSize += size * 2;
+        return start;
+    }
+
+    /**
+     * Getter method for the index of a pencil record's first point in the path
+     *
+     * @param slot Slot of the record
+     * @return Index of the first point's x
+     */
+    public int getPathStart(int slot) {
+        return pathStarts[slot >>> CHUNK_BITS][slot & MASK];
+    }
+
+    /**
+     * Setter method for the index of a pencil record's first point in the path. The points there must have been
+     * appended for it (see appendPoints) and have the same number as the record's own
+     *
+     * @param slot  Slot of the record
+     * @param start Index of the first point's x
+     */
+    public void setPathStart(int slot, int start) {
+        checkWritable();
+        writablePaths(slot);
+        pathStarts[slot >>> CHUNK_BITS][slot & MASK] = start;
+    }
+
+    /**
+     * Changes the coordinates and the stroke width of a record in place. The spatial index is not updated here
+     * (see Drawing.reshape)
+     *
+     * @param slot  Slot of the record
+     * @param sx    Shape's x coordinate
+     * @param sy    Shape's y coordinate
+     * @param ex    Shape's end x coordinate
+     * @param ey    Shape's end y coordinate
+     * @param width Stroke width
+     */
+    public void setGeometry(int slot, float sx, float sy, float ex, float ey, float width) {
+        checkWritable();
+        float[] xy = writableCoords(slot);
+        int i = (slot & MASK) * 4;
+        xy[i] = sx;
+        xy[i + 1] = sy;
+        xy[i + 2] = ex;
+        xy[i + 3] = ey;
+        writableWidths(slot)[slot & MASK] = width;
+    }
+
+    /**
+     * Appends a copy of a shape
+     *
+     * @param s Shape
+     * @return Slot of the new record
+     */
+    public int add(Shape s) {
+        int slot = add(s.getKind(), s.getSx(), s.getSy(), s.getEx(), s.getEy(), s.getLineWidth(), palette.intern(s.getLineColor()));
+        if (s instanceof Pencil) {
+            Pencil pencil = (Pencil) s;
+            setPath(slot, pencil.getPoints(), pencil.getOffset(), pencil.size());
+        }
+        return slot;
+    }
+
+    /**
+     * Loads a record into the view of its kind
+     *
+     * @param slot  Slot of the record
+     * @param views Views indexed by kind (see newViews)
+     * @return The view that now shows the record
+     */
+    public Shape load(int slot, Shape[] views) {
+        int chunk = slot >>> CHUNK_BITS, i = slot & MASK;
+        byte kind = kinds[chunk][i];
+        float[] xy = coords[chunk];
+        Shape view = views[kind];
+        view.set(xy[i * 4], xy[i * 4 + 1], xy[i * 4 + 2], xy[i * 4 + 3], palette.get(colors[chunk][i]), widths[chunk][i]);
+        if (kind == PENCIL) {
+            ((Pencil) view).setPoints(paths, pathStarts[chunk][i], pathSizes[chunk][i]);
+        }
+        return view;
+    }
+
+    /**
+     * Creates a standalone copy of a record
+     *
+     * @param slot Slot of the record
+     * @return New shape
+     */
+    public Shape copy(int slot) {
+        double sx = getCoord(slot, 0), sy = getCoord(slot, 1), ex = getCoord(slot, 2), ey = getCoord(slot, 3);
+        Color color = palette.get(getColor(slot));
+        float width = getWidth(slot);
+        switch (getKind(slot)) {
+            case CIRCLE:
+                return new Circle(sx, sy, ex, ey, color, width);
+            case RECTANGLE:
+                return new Rectangle(sx, sy, ex, ey, color, width);
+            case PENCIL:
+                int start = pathStarts[slot >>> CHUNK_BITS][slot & MASK], points = getPathSize(slot);
+                return new Pencil(Arrays.copyOfRange(paths, start, start + points * 2), points, color, width);
+            default:
+                return new Line(sx, sy, ex, ey, color, width);
+        }
+    }
+
+    /**
+     * Draws a record using the store's own views (FX thread only)
+     *
+     * @param slot Slot of the record
+     * @param r    Renderer
+     */
+    public void draw(int slot, Renderer r) {
+        load(slot, views()).draw(r);
+    }
+
+    /**
+     * Getter method for the store's own views, they are created on first use (snapshots usually do not need them)
+     *
+     * @return Views indexed by kind
+     */
+    private Shape[] views() {
+        if (views == null) {
+            views = newViews();
+        }
+        return views;
+    }
+
+    /**
+     * Draws all the live records in paint order
+     *
+     * @param r     Renderer
+     * @param views Views of the calling thread (see newViews)
+     */
+    public void drawAll(Renderer r, Shape[] views) {
+        for (int slot = nextLive(0); slot >= 0; slot = nextLive(slot + 1)) {
+            load(slot, views).draw(r);
+        }
+    }
+
+    /**
+     * Checks whether a circle touches the stroke of a record
+     *
+     * @param slot   Slot of the record
+     * @param x      X coordinate of the circle's center
+     * @param y      Y coordinate of the circle's center
+     * @param radius Circle's radius
+     * @return True if the circle touches the stroke
+     */
+    public boolean hits(int slot, double x, double y, double radius) {
+        return load(slot, views()).hits(x, y, radius);
+    }
+
+    /**
+     * Getter method for the left edge of a record's bounding box (see Shape.getMinX)
+     *
+     * @param slot Slot of the record
+     * @return Left edge
+     */
+    public double getMinX(int slot) {
+        float[] xy = coords[slot >>> CHUNK_BITS];
+        int i = (slot & MASK) * 4;
+        return Math.min(xy[i], xy[i + 2]) - Shape.margin(widths[slot >>> CHUNK_BITS][slot & MASK]);
+    }
+
+    /**
+     * Getter method for the top edge of a record's bounding box (see Shape.getMinX)
+     *
+     * @param slot Slot of the record
+     * @return Top edge
+     */
+    public double getMinY(int slot) {
+        float[] xy = coords[slot >>> CHUNK_BITS];
+        int i = (slot & MASK) * 4;
+        return Math.min(xy[i + 1], xy[i + 3]) - Shape.margin(widths[slot >>> CHUNK_BITS][slot & MASK]);
+    }
+
+    /**
+     * Getter method for the right edge of a record's bounding box (see Shape.getMinX)
+     *
+     * @param slot Slot of the record
+     * @return Right edge
+     */
+    public double getMaxX(int slot) {
+        float[] xy = coords[slot >>> CHUNK_BITS];
+        int i = (slot & MASK) * 4;
+        return Math.max(xy[i], xy[i + 2]) + Shape.margin(widths[slot >>> CHUNK_BITS][slot & MASK]);
+    }
+
+    /**
+     * Getter method for the bottom edge of a record's bounding box (see Shape.getMinX)
+     *
+     * @param slot Slot of the record
+     * @return Bottom edge
+     */
+    public double getMaxY(int slot) {
+        float[] xy = coords[slot >>> CHUNK_BITS];
+        int i = (slot & MASK) * 4;
+        return Math.max(xy[i + 1], xy[i + 3]) + Shape.margin(widths[slot >>> CHUNK_BITS][slot & MASK]);
+    }
+
+    /**
+     * Getter method for the size of a record: the longer side of its bounding box without the margin
+     *
+     * @param slot Slot of the record
+     * @return Size in world units
+     */
+    public double getExtent(int slot) {
+        float[] xy = coords[slot >>> CHUNK_BITS];
+        int i = (slot & MASK) * 4;
+        return Math.max(Math.abs(xy[i + 2] - xy[i]), Math.abs(xy[i + 3] - xy[i + 1])) + widths[slot >>> CHUNK_BITS][slot & MASK];
+    }
+
+    /**
+     * Checks whether a record's bounding box overlaps the region
+     *
+     * @param slot Slot of the record
+     * @param minX Left edge of the region
+     * @param minY Top edge of the region
+     * @param maxX Right edge of the region
+     * @param maxY Bottom edge of the region
+     * @return True if the bounding box and the region overlap
+     */
+    public boolean intersects(int slot, double minX, double minY, double maxX, double maxY) {
+        return getMinX(slot) <= maxX && getMaxX(slot) >= minX && getMinY(slot) <= maxY && getMaxY(slot) >= minY;
+    }
+
+    /**
+     * Getter method for a record's kind
+     *
+     * @param slot Slot of the record
+     * @return Kind of the shape
+     */
+    public byte getKind(int slot) {
+        return kinds[slot >>> CHUNK_BITS][slot & MASK];
+    }
+
+    /**
+     * Getter method for a record's coordinate
+     *
+     * @param slot  Slot of the record
+     * @param index 0 - sx, 1 - sy, 2 - ex, 3 - ey
+     * @return Coordinate
+     */
+    public float getCoord(int slot, int index) {
+        return coords[slot >>> CHUNK_BITS][(slot & MASK) * 4 + index];
+    }
+
+    /**
+     * Getter method for the number of points of a pencil record
+     *
+     * @param slot Slot of the record
+     * @return Number of points
+     */
+    public int getPathSize(int slot) {
+        return pathSizes[slot >>> CHUNK_BITS][slot & MASK];
+    }
+
+    /**
+     * Getter method for a coordinate of a pencil record's point
+     *
+     * @param slot  Slot of the record
+     * @param index Index of the coordinate (x of point i is 2 * i, y is 2 * i + 1)
+     * @return Coordinate
+     */
+    public float getPathCoord(int slot, int index) {
+        return paths[pathStarts[slot >>> CHUNK_BITS][slot & MASK] + index];
+    }
+
+    /**
+     * Getter method for a coordinate in the path by its own index, for points that a record had before it was
+     * changed (see getPathStart)
+     *
+     * @param index Index in the path
+     * @return Coordinate
+     */
+    public float getPathCoordAt(int index) {
+        return paths[index];
+    }
+
+    /**
+     * Getter method for a record's stroke width
+     *
+     * @param slot Slot of the record
+     * @return Stroke width
+     */
+    public float getWidth(int slot) {
+        return widths[slot >>> CHUNK_BITS][slot & MASK];
+    }
+
+    /**
+     * Getter method for a record's palette index
+     *
+     * @param slot Slot of the record
+     * @return Palette index of the color
+     */
+    public int getColor(int slot) {
+        return colors[slot >>> CHUNK_BITS][slot & MASK];
+    }
+
+    /**
+     * Setter method for a record's palette index
+     *
+     * @param slot  Slot of the record
+     * @param color Palette index of the color
+     */
+    public void setColor(int slot, int color) {
+        checkWritable();
+        writableColors(slot)[slot & MASK] = color;
+    }
+
+    /**
+     * Getter method for the palette of the store
+     *
+     * @return Palette
+     */
+    public Palette getPalette() {
+        return palette;
+    }
+
+    /**
+     * Checks whether a record is live (was not removed)
+     *
+     * @param slot Slot of the record
+     * @return True if the record is live
+     */
+    public boolean isLive(int slot) {
+        return slot < size && (live[slot >>> CHUNK_BITS][(slot & MASK) >>> 6] & 1L << slot) != 0;
+    }
+
+    /**
+     * Marks a record as removed or live again
+     *
+     * @param slot   Slot of the record
+     * @param isLive New state
+     */
+    public void setLive(int slot, boolean isLive) {
+        checkWritable();
+        if (isLive(slot) != isLive) {
+            writableLive(slot)[(slot & MASK) >>> 6] ^= 1L << slot;
+            liveCount += isLive ? 1 : -1;
+        }
+    }
+
+    /**
+     * Finds the next live record
+     *
+     * @param from First slot to check
+     * @return Slot of the next live record or -1 if there is none
+     */
+    public int nextLive(int from) {
+        if (from >= size) {
+            return -1;
+        }
+        int word = from >>> 6, lastWord = (size - 1) >>> 6;
+        long bits = live[word >>> (CHUNK_BITS - 6)][word & (MASK >>> 6)] & -1L << from;
+        while (bits == 0) {
+            if (++word > lastWord) {
+                return -1;
+            }
+            bits = live[word >>> (CHUNK_BITS - 6)][word & (MASK >>> 6)];
+        }
+        int slot = (word << 6) + Long.numberOfTrailingZeros(bits);
+        return slot < size ? slot : -1;
+    }
+
+    /**
+     * Getter method for the number of slots in use (live and removed)
+     *
+     * @return Number of slots
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Getter method for the number of live records
+     *
+     * @return Number of live records
+     */
+    public int liveCount() {
+        return liveCount;
+    }
+
+    /**
+     * Creates a snapshot: a read-only version of the store as it is now. The snapshot shares the chunks with the
+     * store, so it takes constant time; the store copies a shared chunk before it changes it. Other threads can
+     * read the snapshot while this store keeps changing
+     *
+     * @return Snapshot of the store
+     */
+    public ShapeStore snapshot() {
+        if (readOnly) {
+            return this;
+        }
+        frozen = Math.max(frozen, size); // Older snapshots may be longer if the store was truncated
+        generation++; // The chunks of the old generations are shared from now on
+        sharedChunks = true;
+        return new ShapeStore(this);
+    }
+
+    /**
+     * Removes all the records and colors
+     */
+    public void clear() {
+        checkWritable();
+        reset(CHUNK);
+        palette.clear();
+    }
+}
@@ -0,0 +1,589 @@
+package DrawIt;
+import javafx.animation.AnimationTimer;
+import javafx.scene.paint.Color;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Imports the lines, circles, ellipses and rectangles of an SVG file into the drawing. The file is read by a
+ * streaming (StAX) parser on a background thread, which never holds more than the element it is at: shapes are
+ * collected into batches (see ShapeBatch) and handed to the FX thread through a small queue, so the parser waits
+ * when the FX thread falls behind and memory stays bounded for files of any size. The FX thread appends a few
+ * batches per pulse to the store and repaints the canvas once at the end
+ * <p>
+ * Stroke color and width are taken from the attributes and the style of the element and of its groups. Elements
+ * without a stroke are outlined with their fill color (DrawIt only strokes shapes), elements with neither are
+ * skipped, and so are lines without a stroke. Transforms are applied to the end points (corners), so rotated circles
+ * and rectangles become the axis-aligned ones through their corners. The content of definitions, symbols, clip
+ * paths, masks, markers and patterns is skipped, references to it (use elements) are not followed
+ *
+ * @author Maksym Hanushchak
+ */
+public class SvgImporter {
+    /**
+     * Number of shapes in a batch
+     */
+    static final int BATCH = 16384;
+    /**
+     * Time that a pulse may spend adding shapes (nanoseconds)
+     */
+    private static final long FRAME_BUDGET = 8_000_000L;
+    /**
+     * Number of parsed batches that may wait for the FX thread
+     */
+    private static final int MAX_PENDING_BATCHES = 4;
+    /**
+     * Marks the end of the parsed batches
+     */
+    private static final ShapeBatch END = new ShapeBatch(1);
+    /**
+     * Color of elements whose paint cannot be read (ARGB)
+     */
+    private static final int BLACK = 0xff000000;
+    /**
+     * Means "no paint" in the style of an element
+     */
+    private static final int NONE = 0;
+    /**
+     * Drawing that receives the shapes
+     */
+    private final Drawing drawing;
+    /**
+     * Repaint engine of the main canvas
+     */
+    private final RepaintEngine engine;
+    /**
+     * Size of the file (bytes)
+     */
+    private final long fileSize;
+    /**
+     * Input of the parser, it counts the bytes read
+     */
+    private final CountingInputStream in;
+    /**
+     * Parsed batches on their way to the FX thread
+     */
+    private final BlockingQueue<ShapeBatch> queue = new ArrayBlockingQueue<>(MAX_PENDING_BATCHES);
+    /**
+     * Called on the FX thread with the part of the file that is read (0 to 1)
+     */
+    private final DoubleConsumer onProgress;
+    /**
+     * Called on the FX thread when the import ends, with the error that stopped it or null
+     */
+    private final Consumer<IOException> onFinished;
+    /**
+     * Error of the parser, read by the FX thread after the end of the batches
+     */
+    private volatile IOException error;
+    /**
+     * Slot of the first imported shape
+     */
+    private int first = -1;
+    /**
+     * Timer that adds the parsed batches on every pulse
+     */
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            step();
+        }
+    };
+
+    /**
+     * Style and transform of an element, inherited by its children
+     */
+    private static class State {
+        /**
+         * Stroke and fill color (ARGB, NONE for no paint)
+         */
+        int stroke = NONE, fill = BLACK;
+        /**
+         * Stroke width
+         */
+        double width = 1;
+        /**
+         * Transform to the drawing's coordinates (a, b, c, d, e, f as in the SVG matrix)
+         */
+        double a = 1, b, c, d = 1, e, f;
+
+        /**
+         * Copies the state of the parent element
+         *
+         * @param parent State of the parent
+         * @return Copy
+         */
+        State inherit(State parent) {
+            stroke = parent.stroke;
+            fill = parent.fill;
+            width = parent.width;
+            a = parent.a;
+            b = parent.b;
+            c = parent.c;
+            d = parent.d;
+            e = parent.e;
+            f = parent.f;
+            return this;
+        }
+
+        /**
+         * Multiplies the transform by another one on the right (the other one is applied first)
+         */
+        void concat(double a2, double b2, double c2, double d2, double e2, double f2) {
+            double na = a * a2 + c * b2, nb = b * a2 + d * b2;
+            double nc = a * c2 + c * d2, nd = b * c2 + d * d2;
+            double ne = a * e2 + c * f2 + e, nf = b * e2 + d * f2 + f;
+            a = na;
+            b = nb;
+            c = nc;
+            d = nd;
+            e = ne;
+            f = nf;
+        }
+    }
+
+    /**
+     * Input stream that counts the bytes read, for the progress
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        /**
+         * Number of bytes read so far
+         */
+        volatile long count;
+
+        /**
+         * CountingInputStream constructor
+         *
+         * @param in Input
+         */
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+
+    /**
+     * SvgImporter constructor, opens the file
+     *
+     * @param file       SVG file
+     * @param drawing    Drawing that receives the shapes
+     * @param engine     Repaint engine of the main canvas
+     * @param onProgress Called on the FX thread with the part of the file that is read (0 to 1)
+     * @param onFinished Called on the FX thread when the import ends, with the error that stopped it or null
+     * @throws IOException If the file cannot be opened
+     */
+    SvgImporter(Path file, Drawing drawing, RepaintEngine engine, DoubleConsumer onProgress, Consumer<IOException> onFinished) throws IOException {
+        this.drawing = drawing;
+        this.engine = engine;
+        this.onProgress = onProgress;
+        this.onFinished = onFinished;
+        this.fileSize = Math.max(1, Files.size(file));
+        this.in = new CountingInputStream(Files.newInputStream(file));
+    }
+
+    /**
+     * Starts the parser thread and the timer that adds its batches
+     */
+    public void start() {
+        Thread parser = new Thread(this::parse, "DrawIt SVG import");
+        parser.setDaemon(true);
+        parser.start();
+        timer.start();
+    }
+
+    /**
+     * Reads the file into batches, runs on the parser thread
+     */
+    private void parse() {
+        try (InputStream input = in) {
+            read(input, batch -> {
+                try {
+                    queue.put(batch);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        } catch (IOException e) {
+            error = e;
+        }
+        try {
+            queue.put(END);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Adds parsed batches until the time budget of the pulse is spent, and finishes the import after the last one
+     */
+    private void step() {
+        long start = System.nanoTime();
+        ShapeBatch batch;
+        while (System.nanoTime() - start < FRAME_BUDGET && (batch = queue.poll()) != null) {
+            if (batch == END) {
+                finish();
+                return;
+            }
+            int from = drawing.appendBatch(batch);
+            if (first < 0) {
+                first = from;
+            }
+        }
+        onProgress.accept(Math.min(1, (double) in.count / fileSize));
+    }
+
+    /**
+     * Stops the timer, repaints the canvas with the imported shapes and reports the end
+     */
+    private void finish() {
+        timer.stop();
+        if (first >= 0) {
+            engine.commitBatch(first, drawing.getStore().size());
+        }
+        onProgress.accept(1);
+        onFinished.accept(error);
+    }
+
+    /**
+     * Parses an SVG document and passes its shapes on in batches. Works on any thread, nothing but the current
+     * batch and the states of the open elements is kept
+     *
+     * @param input   SVG document
+     * @param onBatch Receives every full batch and the last one, a batch is not used again after it is passed on
+     * @return Number of shapes read
+     * @throws IOException If the document cannot be read or is not well-formed XML
+     */
+    static long read(InputStream input, Consumer<ShapeBatch> onBatch) throws IOException {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false); // No DTDs and no external entities
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        long count = 0;
+        ShapeBatch batch = new ShapeBatch(BATCH);
+        ArrayDeque<State> states = new ArrayDeque<>();
+        ArrayDeque<State> spare = new ArrayDeque<>(); // States of closed elements are reused
+        states.push(new State());
+        int hidden = 0; // Depth inside an element that is not rendered, its states are not kept
+        try {
+            XMLStreamReader reader = factory.createXMLStreamReader(new BufferedInputStream(input, 1 << 16));
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (hidden > 0) {
+                        hidden--;
+                    } else {
+                        spare.push(states.pop());
+                    }
+                    continue;
+                }
+                if (event != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                if (hidden > 0 || isHidden(reader.getLocalName())) {
+                    hidden++;
+                    continue;
+                }
+                State state = (spare.isEmpty() ? new State() : spare.pop()).inherit(states.peek());
+                states.push(state);
+                applyStyle(reader, state);
+                boolean line = reader.getLocalName().equals("line"); // Lines have no inside to fill
+                int argb = state.stroke != NONE || line ? state.stroke : state.fill;
+                if (argb == NONE) {
+                    continue;
+                }
+                if (addShape(reader, state, argb, batch)) {
+                    count++;
+                    if (batch.size() == BATCH) {
+                        onBatch.accept(batch);
+                        batch = new ShapeBatch(BATCH);
+                    }
+                }
+            }
+            reader.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Not a valid SVG file: " + e.getMessage(), e);
+        }
+        if (!batch.isEmpty()) {
+            onBatch.accept(batch);
+        }
+        return count;
+    }
+
+    /**
+     * Checks whether an element is a container whose content is not rendered where it stands (definitions, symbols,
+     * clip paths, masks, markers and patterns are only drawn where something refers to them)
+     *
+     * @param name Local name of the element
+     * @return True if the element and its content are skipped
+     */
+    private static boolean isHidden(String name) {
+        switch (name) {
+            case "defs":
+            case "symbol":
+            case "clipPath":
+            case "mask":
+            case "marker":
+            case "pattern":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Reads the paint, the stroke width and the transform of an element
+     *
+     * @param reader Parser at the start of the element
+     * @param state  State of the element (inherited from its parent)
+     */
+    private static void applyStyle(XMLStreamReader reader, State state) {
+        String transform = reader.getAttributeValue(null, "transform");
+        if (transform != null) {
+            double before = Math.abs(state.a * state.d - state.b * state.c);
+            applyTransform(transform, state);
+            double after = Math.abs(state.a * state.d - state.b * state.c);
+            if (before > 0) { // The inherited width scales with the element
+                state.width *= Math.sqrt(after / before);
+            }
+        }
+        applyProperty("stroke", reader.getAttributeValue(null, "stroke"), state);
+        applyProperty("fill", reader.getAttributeValue(null, "fill"), state);
+        applyProperty("stroke-width", reader.getAttributeValue(null, "stroke-width"), state);
+        String style = reader.getAttributeValue(null, "style");
+        if (style != null) { // The style wins over the attributes
+            for (String declaration : style.split(";")) {
+                int colon = declaration.indexOf(':');
+                if (colon > 0) {
+                    applyProperty(declaration.substring(0, colon).trim(), declaration.substring(colon + 1).trim(), state);
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies one style property
+     *
+     * @param name  Property name
+     * @param value Property value, or null if it is not set
+     * @param state State of the element
+     */
+    private static void applyProperty(String name, String value, State state) {
+        if (value == null) {
+            return;
+        }
+        switch (name) {
+            case "stroke":
+                state.stroke = parsePaint(value, state.stroke);
+                break;
+            case "fill":
+                state.fill = parsePaint(value, state.fill);
+                break;
+            case "stroke-width":
+                double width = parseLength(value, Double.NaN);
+                if (width >= 0) {
+                    state.width = width * Math.sqrt(Math.abs(state.a * state.d - state.b * state.c)); // In drawing units
+                }
+                break;
+        }
+    }
+
+    /**
+     * Reads a paint
+     *
+     * @param value     Paint ("none", "inherit", a color name or a hex, rgb() or hsl() color)
+     * @param inherited Paint of the parent element
+     * @return Color (ARGB) or NONE
+     */
+    private static int parsePaint(String value, int inherited) {
+        value = value.trim();
+        if (value.equals("none")) {
+            return NONE;
+        }
+        if (value.equals("inherit")) {
+            return inherited;
+        }
+        if (value.equals("currentColor") || value.startsWith("url(")) { // Gradients and patterns are not supported
+            return BLACK;
+        }
+        try {
+            return RasterRenderer.toArgb(Color.web(value)) | 0xff000000; // Opacity is ignored, NONE stays unique
+        } catch (IllegalArgumentException e) {
+            return BLACK;
+        }
+    }
+
+    /**
+     * Reads the number at the start of a length or a coordinate, units are ignored
+     *
+     * @param value   Length ("12", "1.5px", "-3e2")
+     * @param missing Value if there is no number
+     * @return Number
+     */
+    private static double parseLength(String value, double missing) {
+        if (value == null) {
+            return missing;
+        }
+        value = value.trim();
+        int end = 0, length = value.length();
+        while (end < length && "0123456789+-.eE".indexOf(value.charAt(end)) >= 0) {
+            end++;
+        }
+        while (end > 0 && "eE+-".indexOf(value.charAt(end - 1)) >= 0) { // "1em" is 1
+            end--;
+        }
+        try {
+            return Double.parseDouble(value.substring(0, end));
+        } catch (NumberFormatException e) {
+            return missing;
+        }
+    }
+
+    /**
+     * Applies a transform list (translate, scale, rotate, skewX, skewY and matrix) to the transform of an element
+     *
+     * @param list  Transform attribute
+     * @param state State of the element
+     */
+    private static void applyTransform(String list, State state) {
+        int at = 0;
+        while (true) {
+            int open = list.indexOf('(', at), close = list.indexOf(')', open + 1);
+            if (open < 0 || close < 0) {
+                return;
+            }
+            String name = list.substring(at, open).replace(',', ' ').trim();
+            String[] parts = list.substring(open + 1, close).trim().split("[\\s,]+");
+            double[] v = new double[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                v[i] = parseLength(parts[i], 0);
+            }
+            switch (name) {
+                case "matrix":
+                    if (v.length == 6) {
+                        state.concat(v[0], v[1], v[2], v[3], v[4], v[5]);
+                    }
+                    break;
+                case "translate":
+                    state.concat(1, 0, 0, 1, v[0], v.length > 1 ? v[1] : 0);
+                    break;
+                case "scale":
+                    state.concat(v[0], 0, 0, v.length > 1 ? v[1] : v[0], 0, 0);
+                    break;
+                case "rotate":
+                    double angle = Math.toRadians(v[0]), cos = Math.cos(angle), sin = Math.sin(angle);
+                    double cx = v.length > 2 ? v[1] : 0, cy = v.length > 2 ? v[2] : 0;
+                    state.concat(1, 0, 0, 1, cx, cy);
+                    state.concat(cos, sin, -sin, cos, 0, 0);
+                    state.concat(1, 0, 0, 1, -cx, -cy);
+                    break;
+                case "skewX":
+                    state.concat(1, 0, Math.tan(Math.toRadians(v[0])), 1, 0, 0);
+                    break;
+                case "skewY":
+                    state.concat(1, Math.tan(Math.toRadians(v[0])), 0, 1, 0, 0);
+                    break;
+            }
+            at = close + 1;
+        }
+    }
+
+    /**
+     * Adds the shape of an element to the batch if it is a line, circle, ellipse or rectangle
+     *
+     * @param reader Parser at the start of the element
+     * @param state  State of the element
+     * @param argb   Stroke color
+     * @param batch  Batch that receives the shape
+     * @return True if a shape was added
+     */
+    private static boolean addShape(XMLStreamReader reader, State state, int argb, ShapeBatch batch) {
+        byte kind;
+        double x1, y1, x2, y2;
+        switch (reader.getLocalName()) {
+            case "line":
+                kind = ShapeStore.LINE;
+                x1 = attribute(reader, "x1");
+                y1 = attribute(reader, "y1");
+                x2 = attribute(reader, "x2");
+                y2 = attribute(reader, "y2");
+                break;
+            case "circle": {
+                kind = ShapeStore.CIRCLE;
+                double cx = attribute(reader, "cx"), cy = attribute(reader, "cy"), r = attribute(reader, "r");
+                x1 = cx - r;
+                y1 = cy - r;
+                x2 = cx + r;
+                y2 = cy + r;
+                break;
+            }
+            case "ellipse": {
+                kind = ShapeStore.CIRCLE;
+                double cx = attribute(reader, "cx"), cy = attribute(reader, "cy");
+                double rx = attribute(reader, "rx"), ry = attribute(reader, "ry");
+                x1 = cx - rx;
+                y1 = cy - ry;
+                x2 = cx + rx;
+                y2 = cy + ry;
+                break;
+            }
+            case "rect":
+                kind = ShapeStore.RECTANGLE;
+                x1 = attribute(reader, "x");
+                y1 = attribute(reader, "y");
+                x2 = x1 + attribute(reader, "width");
+                y2 = y1 + attribute(reader, "height");
+                break;
+            default:
+                return false;
+        }
+        if (Double.isNaN(x1 + y1 + x2 + y2)) {
+            return false;
+        }
+        double sx = state.a * x1 + state.c * y1 + state.e, sy = state.b * x1 + state.d * y1 + state.f;
+        double ex = state.a * x2 + state.c * y2 + state.e, ey = state.b * x2 + state.d * y2 + state.f;
+        batch.add(kind, sx, sy, ex, ey, argb, state.width);
+        return true;
+    }
+
+    /**
+     * Reads a numeric attribute
+     *
+     * @param reader Parser at the start of an element
+     * @param name   Attribute name
+     * @return Value, 0 if the attribute is missing, NaN if it is not a number
+     */
+    private static double attribute(XMLStreamReader reader, String name) {
+        String value = reader.getAttributeValue(null, name);
+        return value == null ? 0 : parseLength(value, Double.NaN);
+    }
+}
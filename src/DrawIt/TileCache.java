@@ -0,0 +1,477 @@
+package DrawIt;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Tiles of the drawing for zoomed out views. Zoom levels are powers of two (level -1 is the scale of 1/2, level -2
+ * is 1/4 and so on) and every level splits the world into square tiles of TILE canvas pixels at its scale. A tile
+ * with many shapes (dense) is rendered once into an image, which is then drawn instead of the shapes; a sparse
+ * tile only remembers its shapes, they are cheap enough to be drawn every time
+ * <p>
+ * Tiles are made a piece at a time within a deadline (see prepare), so a zoom level that is not cached yet never
+ * blocks the caller for long; a tile that was requested but is not finished is pending. Finished tiles are kept
+ * until a shape that overlaps them changes. The least recently used tiles are dropped when the memory budget is
+ * exceeded
+ *
+ * @author Maksym Hanushchak
+ */
+public class TileCache {
+    /**
+     * Tile size (canvas pixels at the tile's level)
+     */
+    static final int TILE = 256;
+    /**
+     * Lowest zoom level
+     */
+    static final int MIN_LEVEL = -10;
+    /**
+     * Shapes binned between two checks of the deadline
+     */
+    private static final int BIN_STEP = 16384;
+    /**
+     * Shapes rendered into a tile between two checks of the deadline
+     */
+    private static final int RENDER_STEP = 64;
+    /**
+     * Tiles with more shapes than this are rendered into images
+     */
+    private final int denseShapes;
+    /**
+     * Canvas background color, images are filled with it
+     */
+    private final Color background;
+    /**
+     * Memory budget for all the tiles (bytes)
+     */
+    private final long budget;
+    /**
+     * Finished tiles by key (see key), the iteration order is the order of use
+     */
+    private final LinkedHashMap<Long, Tile> tiles = new LinkedHashMap<>(64, 0.75f, true);
+    /**
+     * Pending tiles by key, in the order they were requested
+     */
+    private final LinkedHashMap<Long, Tile> pending = new LinkedHashMap<>();
+    /**
+     * Memory used by the finished tiles (bytes)
+     */
+    private long used;
+    /**
+     * Parallel software renderer whose threads render the images (null - they are rendered on the calling thread)
+     */
+    private TiledRasterizer rasterizer;
+    /**
+     * Tiles whose shapes are found by the pass over the store in progress (null if there is no pass)
+     */
+    private List<Tile> binTiles;
+    /**
+     * Lists that receive the shapes of binTiles, by column and row
+     */
+    private HashMap<Long, IntList> bins;
+    /**
+     * Columns and rows spanned by binTiles (first column, last column, first row, last row)
+     */
+    private int[] binRange;
+    /**
+     * Slot where the pass over the store continues
+     */
+    private int binNext;
+
+    /**
+     * Tile of one zoom level
+     */
+    static class Tile {
+        /**
+         * Zoom level, column and row of the tile
+         */
+        final int level, col, row;
+        /**
+         * Bounding box of the tile in the world
+         */
+        final double minX, minY, maxX, maxY;
+        /**
+         * Shapes that overlap the tile in paint order (null until they are found, and once a dense tile is finished)
+         */
+        IntList slots;
+        /**
+         * Rendered shapes (null if the tile is sparse or not finished)
+         */
+        WritableImage image;
+        /**
+         * True once the tile can be drawn
+         */
+        boolean ready;
+        /**
+         * Pixels of a dense tile while it is rendered
+         */
+        int[] pixels;
+        /**
+         * Renderer into the pixels
+         */
+        Renderer renderer;
+        /**
+         * Views of the store used by the renderer
+         */
+        Shape[] views;
+        /**
+         * Number of shapes rendered so far
+         */
+        int drawn;
+
+        /**
+         * Tile constructor
+         *
+         * @param level Zoom level
+         * @param col   Column
+         * @param row   Row
+         */
+        Tile(int level, int col, int row) {
+            this.level = level;
+            this.col = col;
+            this.row = row;
+            double size = TILE / levelScale(level);
+            minX = col * size;
+            minY = row * size;
+            maxX = minX + size;
+            maxY = minY + size;
+        }
+
+        /**
+         * Memory used by the tile
+         *
+         * @return Number of bytes
+         */
+        long bytes() {
+            return image != null ? (long) TILE * TILE * 4 : slots.size() * 4L + 64;
+        }
+    }
+
+    /**
+     * TileCache constructor
+     *
+     * @param denseShapes Tiles with more shapes than this are rendered into images
+     * @param budget      Memory budget for all the tiles (bytes)
+     * @param background  Canvas background color
+     */
+    TileCache(int denseShapes, long budget, Color background) {
+        this.denseShapes = denseShapes;
+        this.background = background;
+        this.budget = budget;
+    }
+
+    /**
+     * Lets the cache render the images on the threads of a parallel software renderer
+     *
+     * @param rasterizer Parallel software renderer
+     */
+    public void useRasterizer(TiledRasterizer rasterizer) {
+        this.rasterizer = rasterizer;
+    }
+
+    /**
+     * Finds the zoom level whose tiles are drawn at a scale. Tiles are never enlarged, so they stay sharp
+     *
+     * @param scale Scale of the view (below 1)
+     * @return Zoom level (0 or less)
+     */
+    public static int level(double scale) {
+        return Math.max(MIN_LEVEL, Math.min(0, (int) Math.ceil(Math.log(scale) / Math.log(2) - 1e-9)));
+    }
+
+    /**
+     * Scale of a zoom level
+     *
+     * @param level Zoom level
+     * @return Canvas pixels per world unit
+     */
+    public static double levelScale(int level) {
+        return Math.scalb(1.0, level);
+    }
+
+    /**
+     * Packs the zoom level, column and row of a tile into a map key
+     *
+     * @param level Zoom level
+     * @param col   Column
+     * @param row   Row
+     * @return Key of the tile
+     */
+    private static long key(int level, int col, int row) {
+        return ((long) (level & 0xff) << 56) | ((long) (col & 0xfffffff) << 28) | (row & 0xfffffff);
+    }
+
+    /**
+     * Finds a tile. A tile that is not cached becomes pending, it has to be prepared before it is drawn
+     *
+     * @param level Zoom level
+     * @param col   Column
+     * @param row   Row
+     * @return Finished or pending tile
+     */
+    public Tile request(int level, int col, int row) {
+        long key = key(level, col, row);
+        Tile tile = tiles.get(key);
+        if (tile == null) {
+            tile = pending.get(key);
+        }
+        if (tile == null) {
+            tile = new Tile(level, col, row);
+            pending.put(key, tile);
+        }
+        return tile;
+    }
+
+    /**
+     * Works on a pending tile until it is finished or the deadline passes: finds its shapes, then renders it if it
+     * is dense. Other pending tiles get work done on the way (the shapes of a whole zoom level are found in one
+     * pass, dense tiles are rendered on all the threads of the renderer)
+     *
+     * @param drawing  Drawing
+     * @param tile     Tile
+     * @param deadline Value of System.nanoTime after which the work stops
+     * @return True if the tile is finished
+     */
+    public boolean prepare(Drawing drawing, Tile tile, long deadline) {
+        if (tile.ready) {
+            return true;
+        }
+        if (tile.slots == null) {
+            double cells = TILE / levelScale(tile.level) / Drawing.CELL_SIZE;
+            // The pass is used when the index would visit more cells than it has, or when the tile has more shapes
+            // than one query can collect without checking the deadline
+            if (cells * cells * pending.size() > drawing.cellCount()
+                    || drawing.count(tile.minX, tile.minY, tile.maxX, tile.maxY) > BIN_STEP) {
+                if (!bin(drawing.getStore(), tile, deadline)) {
+                    return false;
+                }
+            } else {
+                tile.slots = new IntList();
+                drawing.query(tile.minX, tile.minY, tile.maxX, tile.maxY, tile.slots);
+                if (tile.slots.size() <= denseShapes) {
+                    finish(tile);
+                }
+            }
+            if (tile.ready || System.nanoTime() >= deadline) {
+                return tile.ready;
+            }
+        }
+        render(drawing.getStore(), tile, deadline);
+        return tile.ready;
+    }
+
+    /**
+     * Continues the pass over all the live shapes that finds the shapes of the pending tiles of one zoom level.
+     * A new pass is started if the tile is not in the current one. The pass is cheaper than the spatial index
+     * when the tiles are much bigger than its cells
+     *
+     * @param store    Shapes
+     * @param tile     Tile whose shapes are needed
+     * @param deadline Value of System.nanoTime after which the work stops
+     * @return True if the pass has ended
+     */
+    private boolean bin(ShapeStore store, Tile tile, long deadline) {
+        if (binTiles == null || !binTiles.contains(tile)) {
+            binTiles = new ArrayList<>();
+            bins = new HashMap<>();
+            binRange = new int[]{Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE};
+            for (Tile t : pending.values()) {
+                if (t.level == tile.level && t.slots == null) {
+                    binTiles.add(t);
+                    bins.put(key(0, t.col, t.row), new IntList());
+                    binRange[0] = Math.min(binRange[0], t.col);
+                    binRange[1] = Math.max(binRange[1], t.col);
+                    binRange[2] = Math.min(binRange[2], t.row);
+                    binRange[3] = Math.max(binRange[3], t.row);
+                }
+            }
+            binNext = 0;
+        }
+        double size = tile.maxX - tile.minX;
+        int binned = 0;
+        for (int slot = store.nextLive(binNext); slot >= 0; slot = store.nextLive(slot + 1)) {
+            if (++binned % BIN_STEP == 0 && System.nanoTime() >= deadline) {
+                binNext = slot;
+                return false;
+            }
+            int maxCol = Math.min(binRange[1], (int) Math.floor(store.getMaxX(slot) / size));
+            int maxRow = Math.min(binRange[3], (int) Math.floor(store.getMaxY(slot) / size));
+            for (int row = Math.max(binRange[2], (int) Math.floor(store.getMinY(slot) / size)); row <= maxRow; row++) {
+                for (int col = Math.max(binRange[0], (int) Math.floor(store.getMinX(slot) / size)); col <= maxCol; col++) {
+                    IntList bin = bins.get(key(0, col, row));
+                    if (bin != null) {
+                        bin.add(slot);
+                    }
+                }
+            }
+        }
+        for (Tile t : binTiles) {
+            if (pending.get(key(t.level, t.col, t.row)) == t) { // Tiles dropped during the pass are left out
+                t.slots = bins.get(key(0, t.col, t.row));
+                if (t.slots.size() <= denseShapes) {
+                    finish(t);
+                }
+            }
+        }
+        binTiles = null;
+        bins = null;
+        return true;
+    }
+
+    /**
+     * Renders a dense tile, and other dense pending tiles on the free threads, until they are finished or the
+     * deadline passes
+     *
+     * @param store    Shapes
+     * @param tile     Tile
+     * @param deadline Value of System.nanoTime after which the work stops
+     */
+    private void render(ShapeStore store, Tile tile, long deadline) {
+        List<Tile> batch = new ArrayList<>();
+        batch.add(tile);
+        int threads = rasterizer != null ? rasterizer.getThreads() : 1;
+        for (Iterator<Tile> it = pending.values().iterator(); it.hasNext() && batch.size() < threads; ) {
+            Tile t = it.next();
+            if (t != tile && t.slots != null) {
+                batch.add(t);
+            }
+        }
+        if (rasterizer != null) {
+            List<Callable<Void>> tasks = new ArrayList<>(batch.size());
+            for (Tile t : batch) {
+                tasks.add(() -> {
+                    render(store, t, background, deadline);
+                    return null;
+                });
+            }
+            rasterizer.run(tasks); // This thread waits, so the store does not change while the tiles are rendered
+        } else {
+            render(store, tile, background, deadline);
+        }
+        for (Tile t : batch) {
+            if (t.drawn == t.slots.size()) {
+                finish(t);
+            }
+        }
+    }
+
+    /**
+     * Renders the shapes of a dense tile until all of them are drawn or the deadline passes. Shapes smaller than
+     * a pixel are skipped
+     *
+     * @param store      Shapes
+     * @param tile       Tile
+     * @param background Background color
+     * @param deadline   Value of System.nanoTime after which the work stops
+     */
+    private static void render(ShapeStore store, Tile tile, Color background, long deadline) {
+        double scale = levelScale(tile.level);
+        if (tile.pixels == null) {
+            tile.pixels = new int[TILE * TILE];
+            RasterRenderer raster = new RasterRenderer(TILE, TILE, tile.col * TILE, tile.row * TILE, tile.pixels);
+            raster.fill(background);
+            tile.renderer = new ScaledRenderer(raster, scale);
+            tile.views = ShapeStore.newViews(); // Views are not shared between threads
+        }
+        IntList slots = tile.slots;
+        while (tile.drawn < slots.size()) {
+            int end = Math.min(slots.size(), tile.drawn + RENDER_STEP);
+            for (int i = tile.drawn; i < end; i++) {
+                int slot = slots.get(i);
+                if (store.getExtent(slot) * scale >= Viewport.MIN_EXTENT) {
+                    store.load(slot, tile.views).draw(tile.renderer);
+                }
+            }
+            tile.drawn = end;
+            if (System.nanoTime() >= deadline) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Moves a tile from the pending tiles to the cache and drops the least recently used tiles while the budget
+     * is exceeded. The image of a dense tile is made on this thread, JavaFX images are not thread safe
+     *
+     * @param tile Tile whose shapes are found (and rendered if it is dense)
+     */
+    private void finish(Tile tile) {
+        if (tile.pixels != null) {
+            tile.image = new WritableImage(TILE, TILE);
+            tile.image.getPixelWriter().setPixels(0, 0, TILE, TILE, PixelFormat.getIntArgbInstance(), tile.pixels, 0, TILE);
+            tile.slots = null;
+            tile.pixels = null;
+            tile.renderer = null;
+            tile.views = null;
+        }
+        tile.ready = true;
+        long key = key(tile.level, tile.col, tile.row);
+        pending.remove(key);
+        tiles.put(key, tile);
+        used += tile.bytes();
+        Iterator<Tile> oldest = tiles.values().iterator();
+        while (used > budget && oldest.hasNext()) {
+            Tile t = oldest.next();
+            if (t != tile) {
+                used -= t.bytes();
+                oldest.remove();
+            }
+        }
+    }
+
+    /**
+     * Drops the tiles that overlap a world region, for example the bounding box of a shape that changed
+     *
+     * @param minX Left edge of the region
+     * @param minY Top edge of the region
+     * @param maxX Right edge of the region
+     * @param maxY Bottom edge of the region
+     */
+    public void invalidate(double minX, double minY, double maxX, double maxY) {
+        Iterator<Tile> it = tiles.values().iterator();
+        while (it.hasNext()) {
+            Tile t = it.next();
+            if (t.minX <= maxX && t.maxX >= minX && t.minY <= maxY && t.maxY >= minY) {
+                used -= t.bytes();
+                it.remove();
+            }
+        }
+        pending.values().removeIf(t -> t.minX <= maxX && t.maxX >= minX && t.minY <= maxY && t.maxY >= minY);
+    }
+
+    /**
+     * Drops the pending tiles of the other zoom levels, the view has left them
+     *
+     * @param level Zoom level whose pending tiles are kept
+     */
+    public void retainPending(int level) {
+        pending.values().removeIf(t -> t.level != level);
+    }
+
+    /**
+     * Getter method for the number of finished tiles
+     *
+     * @return Number of tiles
+     */
+    public int size() {
+        return tiles.size();
+    }
+
+    /**
+     * Drops all the tiles
+     */
+    public void clear() {
+        tiles.clear();
+        pending.clear();
+        used = 0;
+        binTiles = null;
+        bins = null;
+    }
+}
@@ -0,0 +1,181 @@
+package DrawIt;
+import javafx.scene.paint.Color;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Parallel software renderer. The image is split into square tiles, every shape is binned into the tiles its
+ * bounding box overlaps, and the tiles are rasterized concurrently into their own buffers which are then copied
+ * into the final image. Tiles do not share any pixels, so no locking is needed
+ *
+ * @author Maksym Hanushchak
+ */
+public class TiledRasterizer {
+    /**
+     * Tile size (pixels)
+     */
+    private final int tileSize;
+    /**
+     * Pool that rasterizes the tiles
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * TiledRasterizer constructor
+     *
+     * @param tileSize Tile size in pixels
+     * @param threads  Number of threads that rasterize tiles
+     */
+    public TiledRasterizer(int tileSize, int threads) {
+        this.tileSize = tileSize;
+        this.pool = new ForkJoinPool(threads);
+    }
+
+    /**
+     * Renders all the live shapes of the store into an ARGB image
+     *
+     * @param store      Shapes
+     * @param originX    X coordinate of the image's top left pixel in the drawing
+     * @param originY    Y coordinate of the image's top left pixel in the drawing
+     * @param width      Image width
+     * @param height     Image height
+     * @param background Background color
+     * @param out        Buffer of width * height pixels that receives the image
+     */
+    public void render(ShapeStore store, int originX, int originY, int width, int height, Color background, int[] out) {
+        render(store, null, originX, originY, width, height, background, out);
+    }
+
+    /**
+     * Renders some of the live shapes of the store into an ARGB image
+     *
+     * @param store      Shapes
+     * @param slots      Slots of the shapes in paint order (null - all the live shapes)
+     * @param originX    X coordinate of the image's top left pixel in the drawing
+     * @param originY    Y coordinate of the image's top left pixel in the drawing
+     * @param width      Image width
+     * @param height     Image height
+     * @param background Background color
+     * @param out        Buffer of width * height pixels that receives the image
+     */
+    public void render(ShapeStore store, IntList slots, int originX, int originY, int width, int height, Color background, int[] out) {
+        int cols = (width + tileSize - 1) / tileSize, rows = (height + tileSize - 1) / tileSize;
+
+        // Bins the shapes, the bins keep the paint order because the slots are visited in order
+        IntList[] bins = new IntList[cols * rows];
+        for (int i = 0; i < bins.length; i++) {
+            bins[i] = new IntList();
+        }
+        if (slots == null) {
+            for (int slot = store.nextLive(0); slot >= 0; slot = store.nextLive(slot + 1)) {
+                bin(store, slot, originX, originY, cols, rows, bins);
+            }
+        } else {
+            for (int i = 0; i < slots.size(); i++) {
+                bin(store, slots.get(i), originX, originY, cols, rows, bins);
+            }
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<>(bins.length);
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                IntList bin = bins[row * cols + col];
+                int x = col * tileSize, y = row * tileSize;
+                int w = Math.min(tileSize, width - x), h = Math.min(tileSize, height - y);
+                tasks.add(() -> {
+                    renderTile(store, bin, originX + x, originY + y, w, h, background, out, y * width + x, width);
+                    return null;
+                });
+            }
+        }
+        run(tasks);
+    }
+
+    /**
+     * Adds a shape to the bins of the tiles its bounding box overlaps
+     *
+     * @param store   Shapes
+     * @param slot    Slot of the shape
+     * @param originX X coordinate of the image's top left pixel in the drawing
+     * @param originY Y coordinate of the image's top left pixel in the drawing
+     * @param cols    Number of tile columns
+     * @param rows    Number of tile rows
+     * @param bins    Bins of the tiles
+     */
+    private void bin(ShapeStore store, int slot, int originX, int originY, int cols, int rows, IntList[] bins) {
+        int colFrom = Math.max(0, (int) Math.floor((store.getMinX(slot) - originX) / tileSize));
+        int colTo = Math.min(cols - 1, (int) Math.floor((store.getMaxX(slot) - originX) / tileSize));
+        int rowFrom = Math.max(0, (int) Math.floor((store.getMinY(slot) - originY) / tileSize));
+        int rowTo = Math.min(rows - 1, (int) Math.floor((store.getMaxY(slot) - originY) / tileSize));
+        for (int row = rowFrom; row <= rowTo; row++) {
+            for (int col = colFrom; col <= colTo; col++) {
+                bins[row * cols + col].add(slot);
+            }
+        }
+    }
+
+    /**
+     * Runs tasks on the threads of the renderer and waits for all of them
+     *
+     * @param tasks Tasks
+     */
+    public void run(List<Callable<Void>> tasks) {
+        try {
+            for (Future<Void> f : pool.invokeAll(tasks)) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Tile rendering failed", e.getCause());
+        }
+    }
+
+    /**
+     * Rasterizes one tile into its own buffer and copies it into the image
+     *
+     * @param store      Shapes
+     * @param bin        Slots of the shapes that overlap the tile, in paint order
+     * @param x          X coordinate of the tile in the drawing
+     * @param y          Y coordinate of the tile in the drawing
+     * @param w          Tile width
+     * @param h          Tile height
+     * @param background Background color
+     * @param out        Image buffer
+     * @param offset     Index of the tile's top left pixel in the image buffer
+     * @param stride     Width of the image
+     */
+    private static void renderTile(ShapeStore store, IntList bin, int x, int y, int w, int h, Color background, int[] out, int offset, int stride) {
+        RasterRenderer tile = new RasterRenderer(w, h, x, y, new int[w * h]);
+        tile.fill(background);
+        Shape[] views = ShapeStore.newViews(); // Views are not shared between threads
+        for (int i = 0; i < bin.size(); i++) {
+            store.load(bin.get(i), views).draw(tile);
+        }
+        int[] pixels = tile.getPixels();
+        for (int row = 0; row < h; row++) {
+            System.arraycopy(pixels, row * w, out, offset + row * stride, w);
+        }
+    }
+
+    /**
+     * Getter method for the number of threads
+     *
+     * @return Number of threads that rasterize tiles
+     */
+    public int getThreads() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Stops the threads of the pool
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+}
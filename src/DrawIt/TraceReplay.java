@@ -0,0 +1,187 @@
+package DrawIt;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Headless replay of input traces. The inputs go through the same canvas tools and repaint engine as in the
+ * window, on canvases that are never shown, and the time every input takes is measured, so a recorded complaint can
+ * be repeated as a load test. The timers need a running toolkit, so a pulse is simulated after every input: the
+ * drag preview is flushed and a slice of the progressive repaint is drawn, and its time is measured too. No raster
+ * checkpoints are taken, they are snapshots of the canvas
+ *
+ * @author Maksym Hanushchak
+ */
+public class TraceReplay {
+    /**
+     * Background color of the canvas
+     */
+    private static final Color BACKGROUND = Color.WHITE;
+    /**
+     * Names of the record types in the report
+     */
+    private static final String[] NAMES = {"", "press", "drag", "release", "scroll", "tool", "color", "width"};
+    /**
+     * Repaint engine of the main canvas
+     */
+    private final RepaintEngine engine;
+    /**
+     * Drawing that the inputs change
+     */
+    private final Drawing drawing;
+    /**
+     * Parallel software renderer
+     */
+    private final TiledRasterizer rasterizer;
+    /**
+     * Preview on the transparent canvas, flushed by hand
+     */
+    private final DragPreview dragPreview;
+    /**
+     * Canvas tools that get the inputs
+     */
+    private final CanvasTools tools;
+    /**
+     * History of the edits
+     */
+    private final EditStack edits = new EditStack(Tuning.HISTORY_WINDOW);
+
+    /**
+     * TraceReplay constructor
+     *
+     * @param drawing Drawing that the inputs change (empty, or a document loaded before the replay)
+     * @param width   Canvas width
+     * @param height  Canvas height
+     */
+    TraceReplay(Drawing drawing, double width, double height) {
+        this.drawing = drawing;
+        GraphicsContext gc = new Canvas(width, height).getGraphicsContext2D();
+        GraphicsContext gcTransparent = new Canvas(width, height).getGraphicsContext2D();
+        engine = new RepaintEngine(gc, drawing, width, height, BACKGROUND,
+                new CheckpointCache(Integer.MAX_VALUE, 0)); // Checkpoints are snapshots, they need a running toolkit
+        rasterizer = new TiledRasterizer(Tuning.TILE_SIZE, Runtime.getRuntime().availableProcessors());
+        engine.useRasterizer(rasterizer, Tuning.PARALLEL_REPAINT_THRESHOLD);
+        TileCache tileCache = new TileCache(Tuning.TILE_DENSE_SHAPES, Tuning.TILE_MEMORY, BACKGROUND);
+        tileCache.useRasterizer(rasterizer);
+        engine.useTiles(tileCache);
+        engine.useManualPulses();
+        dragPreview = new DragPreview(gcTransparent, false);
+        tools = new CanvasTools(drawing, engine, gcTransparent, dragPreview, edits::push);
+        engine.repaintView();
+        while (!engine.step(Long.MAX_VALUE)) { // The first frame is complete before the replay starts
+        }
+    }
+
+    /**
+     * Passes every input of a trace to the canvas tools as fast as they take them, with a pulse after each one
+     *
+     * @param trace  Trace
+     * @param pulses Receives the time of the pulse after each input (nanoseconds), or null
+     * @return Time each input took (nanoseconds)
+     */
+    public long[] replay(InputTrace trace, long[] pulses) {
+        long[] latencies = new long[trace.size()];
+        for (int i = 0; i < trace.size(); i++) {
+            long start = System.nanoTime();
+            trace.apply(i, tools);
+            long end = System.nanoTime();
+            latencies[i] = end - start;
+            dragPreview.flush();
+            engine.step(System.nanoTime() + RepaintEngine.FRAME_BUDGET);
+            if (pulses != null) {
+                pulses[i] = System.nanoTime() - end;
+            }
+        }
+        return latencies;
+    }
+
+    /**
+     * Getter method for the drawing that the inputs change
+     *
+     * @return Drawing
+     */
+    public Drawing getDrawing() {
+        return drawing;
+    }
+
+    /**
+     * Stops the threads of the parallel renderer and deletes the history files
+     */
+    public void shutdown() {
+        rasterizer.shutdown();
+        edits.close();
+    }
+
+    /**
+     * Replay entry point: replays a trace, optionally on top of a drawing file, and prints the latency of the inputs
+     * by type, the pulses and the total time. Exits with status 1 if the 99th percentile of an input type or of the
+     * pulses is over the limit, so a build can use traces as load tests
+     *
+     * @param args Trace file, optional drawing file ("-" for none) and optional limit of the 99th percentile (ms)
+     * @throws IOException If a file cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: --replay <trace file> [drawing file|-] [max p99 ms]");
+            System.exit(2);
+        }
+        Path file = Paths.get(args[0]);
+        InputTrace trace = InputTrace.read(file);
+        Drawing drawing = new Drawing();
+        if (args.length > 1 && !args[1].equals("-")) {
+            try (DrawingFile.MappedFile mapped = DrawingFile.open(Paths.get(args[1]))) {
+                mapped.readPalette(drawing.getStore().getPalette());
+                mapped.read(0, mapped.getCount(), drawing.getStore());
+            }
+            drawing.indexFrom(0);
+        }
+        double limit = args.length > 2 ? Double.parseDouble(args[2]) : Double.POSITIVE_INFINITY;
+        int before = drawing.size();
+        long recorded = 0;
+        for (int i = 0; i < trace.size(); i++) {
+            recorded += trace.getDelay(i);
+        }
+
+        TraceReplay replay = new TraceReplay(drawing, trace.getWidth(), trace.getHeight());
+        long start = System.nanoTime();
+        long[] pulses = new long[trace.size()];
+        long[] latencies = replay.replay(trace, pulses);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        replay.shutdown();
+
+        Metrics.Histogram all = new Metrics.Histogram(), pulse = new Metrics.Histogram();
+        Metrics.Histogram[] byType = new Metrics.Histogram[NAMES.length];
+        for (int i = 0; i < latencies.length; i++) {
+            byte type = trace.getType(i);
+            if (byType[type] == null) {
+                byType[type] = new Metrics.Histogram();
+            }
+            byType[type].record(latencies[i]);
+            all.record(latencies[i]);
+            pulse.record(pulses[i]);
+        }
+        StringBuilder report = new StringBuilder();
+        boolean slow = false;
+        for (int type = 1; type < NAMES.length; type++) {
+            if (byType[type] != null) {
+                Metrics.appendTimes(report, NAMES[type], byType[type]);
+                slow |= byType[type].percentile(0.99) / 1e6 > limit;
+            }
+        }
+        Metrics.appendTimes(report, "all", all);
+        Metrics.appendTimes(report, "pulse", pulse);
+        slow |= pulse.percentile(0.99) / 1e6 > limit;
+        System.out.printf("%s: %d inputs (%.2f s recorded), %d shapes before, %d after%n",
+                file, trace.size(), recorded / 1e6, before, drawing.size());
+        System.out.print(report);
+        System.out.printf("Replayed in %.2f s%n", seconds);
+        if (slow) {
+            System.out.printf("99th percentile over %.2f ms%n", limit);
+            System.exit(1);
+        }
+    }
+}
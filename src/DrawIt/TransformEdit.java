@@ -0,0 +1,194 @@
+package DrawIt;
+import javafx.scene.paint.Color;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * History entry for a move, a scale or a re-stroke of a selection. The selection holds the shapes as they were
+ * before, which is what undo puts back; redo computes the new geometry from it again, so the entry keeps only one
+ * copy of the shapes however many there are. Subclass of Edit class
+ *
+ * @author Maksym Hanushchak
+ */
+public class TransformEdit extends Edit {
+    /**
+     * Selected shapes as they were before the edit
+     */
+    private final Selection before;
+    /**
+     * Scale and its origin
+     */
+    private final double scale, originX, originY;
+    /**
+     * Move after scaling
+     */
+    private final double dx, dy;
+    /**
+     * New stroke width, NaN keeps the widths
+     */
+    private final double width;
+    /**
+     * New color, null keeps the colors
+     */
+    private final Color color;
+    /**
+     * Bounding box of the shapes after the edit
+     */
+    private double[] after;
+
+    /**
+     * TransformEdit constructor
+     *
+     * @param before  Selected shapes as they were before the edit
+     * @param scale   Scale
+     * @param originX X coordinate of the point that scaling keeps in place
+     * @param originY Y coordinate of the point that scaling keeps in place
+     * @param dx      Horizontal move after scaling
+     * @param dy      Vertical move after scaling
+     * @param width   New stroke width, NaN keeps the widths
+     * @param color   New color, null keeps the colors
+     */
+    private TransformEdit(Selection before, double scale, double originX, double originY, double dx, double dy, double width, Color color) {
+        this.before = before;
+        this.scale = scale;
+        this.originX = originX;
+        this.originY = originY;
+        this.dx = dx;
+        this.dy = dy;
+        this.width = width;
+        this.color = color;
+    }
+
+    /**
+     * Scales the selected shapes around an origin, moves them and repaints the canvas
+     *
+     * @param drawing   Drawing
+     * @param engine    Repaint engine of the main canvas
+     * @param selection Selected shapes
+     * @param scale     Scale
+     * @param originX   X coordinate of the point that scaling keeps in place
+     * @param originY   Y coordinate of the point that scaling keeps in place
+     * @param dx        Horizontal move after scaling
+     * @param dy        Vertical move after scaling
+     * @return Edit that can undo the transform
+     */
+    public static TransformEdit transform(Drawing drawing, RepaintEngine engine, Selection selection, double scale,
+                                          double originX, double originY, double dx, double dy) {
+        TransformEdit edit = new TransformEdit(selection, scale, originX, originY, dx, dy, Double.NaN, null);
+        edit.redo(drawing, engine);
+        return edit;
+    }
+
+    /**
+     * Gives the selected shapes a new color and stroke width and repaints the canvas
+     *
+     * @param drawing   Drawing
+     * @param engine    Repaint engine of the main canvas
+     * @param selection Selected shapes
+     * @param color     New color
+     * @param width     New stroke width
+     * @return Edit that can undo the re-stroke
+     */
+    public static TransformEdit restroke(Drawing drawing, RepaintEngine engine, Selection selection, Color color, double width) {
+        TransformEdit edit = new TransformEdit(selection, 1, 0, 0, 0, 0, width, color);
+        edit.redo(drawing, engine);
+        return edit;
+    }
+
+    /**
+     * Puts the shapes back as they were and repaints both where they are and where they were
+     *
+     * @param drawing Drawing that the edit was applied to
+     * @param engine  Repaint engine of the main canvas
+     */
+    @Override
+    public void undo(Drawing drawing, RepaintEngine engine) {
+        drawing.reshape(before.getSlots(), before.getXs(), before.getYs(), before.getWidths(), before.getColors(), before.getPathStarts());
+        engine.repaintMoved(before.getSlots(), after[0], after[1], after[2], after[3]);
+    }
+
+    /**
+     * Transforms the shapes of the selection and repaints both where they were and where they are
+     *
+     * @param drawing Drawing that the edit was applied to
+     * @param engine  Repaint engine of the main canvas
+     */
+    @Override
+    public void redo(Drawing drawing, RepaintEngine engine) {
+        ShapeStore store = drawing.getStore();
+        int n = before.size();
+        float[] xs = new float[n * 2], ys = new float[n * 2];
+        before.transform(scale, originX, originY, dx, dy, xs, ys);
+        float[] widths = before.getWidths();
+        if (!Double.isNaN(width)) {
+            widths = new float[n];
+            Arrays.fill(widths, (float) width);
+        }
+        int[] colors = before.getColors();
+        if (color != null) {
+            colors = new int[n];
+            Arrays.fill(colors, drawing.intern(color));
+        }
+        int[] pathStarts = before.getPathStarts();
+        if (pathStarts != null && (scale != 1 || dx != 0 || dy != 0)) { // Moved points are appended, the old ones stay for undo
+            pathStarts = pathStarts.clone();
+            float[] points = null;
+            for (int i = 0; i < n; i++) {
+                if (pathStarts[i] >= 0) {
+                    points = before.transformPath(store, i, scale, originX, originY, dx, dy, points);
+                    pathStarts[i] = store.appendPoints(points, 0, store.getPathSize(before.getSlots().get(i)));
+                }
+            }
+        }
+        drawing.reshape(before.getSlots(), xs, ys, widths, colors, pathStarts);
+        after = Selection.bounds(xs, ys, widths);
+        engine.repaintMoved(before.getSlots(), before.getMinX(), before.getMinY(), before.getMaxX(), before.getMaxY());
+    }
+
+    /**
+     * Writes the shapes as they were and the transform
+     *
+     * @param out Output
+     * @throws IOException If the edit cannot be written
+     */
+    @Override
+    public void write(DataOutputStream out) throws IOException {
+        out.writeByte(TRANSFORM);
+        before.write(out);
+        out.writeDouble(scale);
+        out.writeDouble(originX);
+        out.writeDouble(originY);
+        out.writeDouble(dx);
+        out.writeDouble(dy);
+        out.writeDouble(width);
+        out.writeBoolean(color != null);
+        out.writeInt(color == null ? 0 : RasterRenderer.toArgb(color));
+        for (double v : after) {
+            out.writeDouble(v);
+        }
+    }
+
+    /**
+     * Reads the data written by write (the type is already read)
+     *
+     * @param in Input
+     * @return Edit
+     * @throws IOException If the edit cannot be read
+     */
+    static TransformEdit readData(DataInputStream in) throws IOException {
+        Selection before = Selection.read(in);
+        double scale = in.readDouble(), originX = in.readDouble(), originY = in.readDouble();
+        double dx = in.readDouble(), dy = in.readDouble(), width = in.readDouble();
+        boolean hasColor = in.readBoolean();
+        int argb = in.readInt();
+        TransformEdit edit = new TransformEdit(before, scale, originX, originY, dx, dy, width, hasColor ? DrawingFile.fromArgb(argb) : null);
+        edit.after = new double[4];
+        for (int i = 0; i < 4; i++) {
+            edit.after[i] = in.readDouble();
+        }
+        return edit;
+    }
+}
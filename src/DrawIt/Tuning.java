@@ -0,0 +1,36 @@
+package DrawIt;
+
+/**
+ * Tuning constants of the repaint engine and the history, shared by the application and the trace replay so a
+ * replay measures the configuration that users run
+ *
+ * @author Maksym Hanushchak
+ */
+class Tuning {
+    /**
+     * Tile size of the parallel renderer (pixels)
+     */
+    static final int TILE_SIZE = 128;
+    /**
+     * Drawings with at least this many shapes are fully repainted by the parallel renderer
+     */
+    static final int PARALLEL_REPAINT_THRESHOLD = 20000;
+    /**
+     * Tiles of zoomed out views with more shapes than this are drawn from cached images
+     */
+    static final int TILE_DENSE_SHAPES = 2048;
+    /**
+     * Memory budget for the tiles of zoomed out views (bytes)
+     */
+    static final long TILE_MEMORY = 128L * 1024 * 1024;
+    /**
+     * Number of undo (and redo) steps kept in memory, older ones are kept on disk
+     */
+    static final int HISTORY_WINDOW = 1000;
+
+    /**
+     * Tuning constructor, the class only holds constants
+     */
+    private Tuning() {
+    }
+}
@@ -0,0 +1,602 @@
+package DrawIt;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Exports the live shapes of a drawing as an SVG image or a one-page PDF document. The records are split into
+ * chunks that are formatted into byte arrays in parallel, while the calling thread writes the finished chunks to
+ * the file in order through a FileChannel. Only a few chunks are in memory at a time, the document is never built
+ * as a whole. Export works on a snapshot of the store, so it can run in the background while the user keeps
+ * drawing
+ * <p>
+ * The page is the bounding box of the shapes. Consecutive shapes of the same color and width share their style:
+ * SVG groups them, PDF sets the color and the width only when they change. PDF gives translucent colors their
+ * opacity through graphics states: the page has one for every alpha of the palette, and the style selects it
+ *
+ * @author Maksym Hanushchak
+ */
+public class VectorExporter {
+    /**
+     * Export formats
+     */
+    public static final int SVG = 0, PDF = 1;
+    /**
+     * Number of store slots in a chunk
+     */
+    static final int CHUNK = 16384;
+    /**
+     * Control points of a quarter ellipse as Bezier curves, relative to its radius
+     */
+    private static final double KAPPA = 0.5522847498;
+    /**
+     * Snapshot of the store that is exported
+     */
+    private final ShapeStore store;
+    /**
+     * Export format (SVG or PDF)
+     */
+    private final int format;
+    /**
+     * Colors of the palette (ARGB)
+     */
+    private final int[] colors;
+    /**
+     * True if the palette has translucent colors, PDF styles then select a graphics state with their alpha
+     */
+    private final boolean translucent;
+    /**
+     * Bounding box of the shapes, the page
+     */
+    private double minX, minY, maxX, maxY;
+    /**
+     * Positions of the PDF objects in the file, by object number (the first one is unused)
+     */
+    private final long[] offsets = new long[6];
+    /**
+     * Position of the PDF content stream in the file
+     */
+    private long streamStart;
+
+    /**
+     * Result of an export
+     */
+    public static class Result {
+        /**
+         * Number of exported shapes
+         */
+        private final long shapes;
+        /**
+         * Size of the file (bytes)
+         */
+        private final long bytes;
+        /**
+         * Time the export took (nanoseconds)
+         */
+        private final long nanos;
+
+        /**
+         * Result constructor
+         *
+         * @param shapes Number of exported shapes
+         * @param bytes  Size of the file
+         * @param nanos  Time the export took
+         */
+        Result(long shapes, long bytes, long nanos) {
+            this.shapes = shapes;
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+
+        /**
+         * Getter method for the number of exported shapes
+         *
+         * @return Number of shapes
+         */
+        public long getShapes() {
+            return shapes;
+        }
+
+        /**
+         * Getter method for the size of the file
+         *
+         * @return Size (bytes)
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Getter method for the time the export took
+         *
+         * @return Time (seconds)
+         */
+        public double getSeconds() {
+            return nanos / 1e9;
+        }
+
+        /**
+         * Getter method for the throughput of the export
+         *
+         * @return Shapes per second
+         */
+        public double getShapesPerSecond() {
+            return nanos == 0 ? 0 : shapes * 1e9 / nanos;
+        }
+    }
+
+    /**
+     * Formatted part of the file: a growable array of ASCII bytes
+     */
+    static class Chunk {
+        /**
+         * Bytes of the chunk
+         */
+        private byte[] bytes = new byte[1 << 16];
+        /**
+         * Number of bytes
+         */
+        private int size;
+        /**
+         * Number of shapes in the chunk
+         */
+        private int shapes;
+
+        /**
+         * Makes room for more bytes
+         *
+         * @param n Number of bytes that will be added
+         */
+        private void ensure(int n) {
+            if (size + n > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + n));
+            }
+        }
+
+        /**
+         * Adds ASCII text
+         *
+         * @param text Text
+         * @return This chunk
+         */
+        Chunk append(String text) {
+            ensure(text.length());
+            for (int i = 0; i < text.length(); i++) {
+                bytes[size++] = (byte) text.charAt(i);
+            }
+            return this;
+        }
+
+        /**
+         * Adds a character
+         *
+         * @param c ASCII character
+         * @return This chunk
+         */
+        Chunk append(char c) {
+            ensure(1);
+            bytes[size++] = (byte) c;
+            return this;
+        }
+
+        /**
+         * Adds a number with at most the given number of decimals, without trailing zeros
+         *
+         * @param value    Number (NaN and infinities are written as 0)
+         * @param decimals Number of decimals (0 to 3)
+         * @return This chunk
+         */
+        Chunk append(double value, int decimals) {
+            long scale = decimals == 0 ? 1 : decimals == 1 ? 10 : decimals == 2 ? 100 : 1000;
+            long v = Double.isFinite(value) ? Math.round(value * scale) : 0;
+            ensure(24);
+            if (v < 0) {
+                bytes[size++] = '-';
+                v = -v;
+            }
+            long whole = v / scale, fraction = v % scale;
+            appendDigits(whole, 1);
+            if (fraction != 0) {
+                bytes[size++] = '.';
+                while (fraction % 10 == 0) { // Trailing zeros are dropped
+                    fraction /= 10;
+                    decimals--;
+                }
+                appendDigits(fraction, decimals);
+            }
+            return this;
+        }
+
+        /**
+         * Adds a hex color (#rrggbb)
+         *
+         * @param argb Color
+         * @return This chunk
+         */
+        Chunk appendHex(int argb) {
+            ensure(7);
+            bytes[size++] = '#';
+            for (int shift = 20; shift >= 0; shift -= 4) {
+                bytes[size++] = (byte) "0123456789abcdef".charAt((argb >> shift) & 0xf);
+            }
+            return this;
+        }
+
+        /**
+         * Adds the digits of a number, with leading zeros up to a width
+         *
+         * @param value Number (not negative)
+         * @param width Least number of digits
+         */
+        private void appendDigits(long value, int width) {
+            int digits = 1;
+            for (long v = value / 10; v > 0; v /= 10) {
+                digits++;
+            }
+            digits = Math.max(digits, width);
+            for (int i = size + digits - 1; i >= size; i--) {
+                bytes[i] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+            size += digits;
+        }
+
+        /**
+         * Getter method for the number of bytes
+         *
+         * @return Number of bytes
+         */
+        int size() {
+            return size;
+        }
+
+        /**
+         * Writes the chunk to a channel
+         *
+         * @param channel File channel
+         * @throws IOException If the file cannot be written
+         */
+        void writeTo(FileChannel channel) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, size);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * VectorExporter constructor, finds the page
+     *
+     * @param store  Snapshot of the store
+     * @param format SVG or PDF
+     */
+    VectorExporter(ShapeStore store, int format) {
+        this.store = store;
+        this.format = format;
+        Palette palette = store.getPalette();
+        colors = new int[palette.size()];
+        boolean translucent = false;
+        for (int i = 0; i < colors.length; i++) {
+            colors[i] = RasterRenderer.toArgb(palette.get(i));
+            translucent |= colors[i] >>> 24 != 0xff;
+        }
+        this.translucent = translucent;
+        minX = minY = Double.POSITIVE_INFINITY;
+        maxX = maxY = Double.NEGATIVE_INFINITY;
+        for (int slot = store.nextLive(0); slot >= 0; slot = store.nextLive(slot + 1)) {
+            minX = Math.min(minX, store.getMinX(slot));
+            minY = Math.min(minY, store.getMinY(slot));
+            maxX = Math.max(maxX, store.getMaxX(slot));
+            maxY = Math.max(maxY, store.getMaxY(slot));
+        }
+        if (minX > maxX) { // Empty drawing, a one unit page
+            minX = minY = 0;
+            maxX = maxY = 1;
+        }
+        minX = Math.floor(minX);
+        minY = Math.floor(minY);
+        maxX = Math.ceil(maxX);
+        maxY = Math.ceil(maxY);
+    }
+
+    /**
+     * Exports the live shapes of a snapshot to a file. Runs on the calling thread, which should not be the FX
+     * thread for big drawings
+     *
+     * @param snapshot   Snapshot of the store (see Drawing.snapshot)
+     * @param format     SVG or PDF
+     * @param file       File to write (replaced if it exists)
+     * @param threads    Number of threads that format the chunks
+     * @param onProgress Called on the calling thread with the part of the shapes that is written (0 to 1), or null
+     * @return Number of shapes, size of the file and time of the export
+     * @throws IOException If the file cannot be written
+     */
+    public static Result export(ShapeStore snapshot, int format, Path file, int threads, DoubleConsumer onProgress) throws IOException {
+        long start = System.nanoTime();
+        VectorExporter exporter = new VectorExporter(snapshot, format);
+        int chunks = (snapshot.size() + CHUNK - 1) / CHUNK;
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+        ArrayDeque<Future<Chunk>> pending = new ArrayDeque<>();
+        long shapes = 0, bytes;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            exporter.header().writeTo(channel);
+            int next = 0;
+            for (int written = 0; written < chunks; written++) {
+                while (next < chunks && pending.size() < 2 * Math.max(1, threads)) { // Keeps the pool busy, bounds memory
+                    int from = next++ * CHUNK;
+                    pending.add(pool.submit(() -> exporter.format(from, Math.min(from + CHUNK, snapshot.size()))));
+                }
+                Chunk chunk = pending.poll().get(); // Chunks are written in order
+                chunk.writeTo(channel);
+                shapes += chunk.shapes;
+                if (onProgress != null) {
+                    onProgress.accept((double) (written + 1) / chunks);
+                }
+            }
+            exporter.footer(channel.position()).writeTo(channel);
+            bytes = channel.position();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Export interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Cannot format the shapes: " + e.getCause(), e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return new Result(shapes, bytes, System.nanoTime() - start);
+    }
+
+    /**
+     * Formats the start of the file, up to the first shape
+     *
+     * @return Header
+     */
+    Chunk header() {
+        Chunk out = new Chunk();
+        double width = maxX - minX, height = maxY - minY;
+        if (format == SVG) {
+            out.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"")
+                    .append(width, 0).append("\" height=\"").append(height, 0).append("\" viewBox=\"")
+                    .append(minX, 0).append(' ').append(minY, 0).append(' ').append(width, 0).append(' ').append(height, 0)
+                    .append("\" fill=\"none\" stroke-linecap=\"square\">\n"); // Square caps and miter joins as on the canvas
+            return out;
+        }
+        out.append("%PDF-1.4\n%âãÏÓ\n"); // Binary marker
+        offsets[1] = out.size();
+        out.append("1 0 obj\n<< /Type /Catalog /Pages 2 0 R >>\nendobj\n");
+        offsets[2] = out.size();
+        out.append("2 0 obj\n<< /Type /Pages /Kids [3 0 R] /Count 1 >>\nendobj\n");
+        offsets[3] = out.size();
+        out.append("3 0 obj\n<< /Type /Page /Parent 2 0 R /MediaBox [0 0 ").append(width, 0).append(' ').append(height, 0)
+                .append("] /Contents 4 0 R");
+        if (translucent) { // One graphics state per alpha, named after it (opaque colors use A255)
+            out.append(" /Resources << /ExtGState <<");
+            boolean[] alphas = new boolean[256];
+            alphas[0xff] = true;
+            for (int argb : colors) {
+                alphas[argb >>> 24] = true;
+            }
+            for (int alpha = 0; alpha < alphas.length; alpha++) {
+                if (alphas[alpha]) {
+                    out.append(" /A").append(alpha, 0).append(" << /CA ").append(alpha / 255.0, 3).append(" >>");
+                }
+            }
+            out.append(" >> >>");
+        }
+        out.append(" >>\nendobj\n");
+        offsets[4] = out.size();
+        out.append("4 0 obj\n<< /Length 5 0 R >>\nstream\n"); // The length is only known at the end
+        streamStart = out.size();
+        // Drawing coordinates from the top left corner of the page, y down; square caps and miter joins
+        out.append("1 0 0 -1 ").append(-minX, 0).append(' ').append(maxY, 0).append(" cm 2 J 0 j\n");
+        return out;
+    }
+
+    /**
+     * Formats the end of the file, after the last shape. The header has to be formatted first
+     *
+     * @param position Position of the footer in the file
+     * @return Footer
+     */
+    Chunk footer(long position) {
+        Chunk out = new Chunk();
+        if (format == SVG) {
+            return out.append("</svg>\n");
+        }
+        out.append("\nendstream\nendobj\n");
+        offsets[5] = position + out.size();
+        out.append("5 0 obj\n").append(position - streamStart, 0).append("\nendobj\n");
+        long xref = position + out.size();
+        out.append("xref\n0 6\n0000000000 65535 f \n");
+        for (int i = 1; i <= 5; i++) {
+            String offset = Long.toString(offsets[i]);
+            out.append("0000000000".substring(offset.length())).append(offset).append(" 00000 n \n");
+        }
+        out.append("trailer\n<< /Size 6 /Root 1 0 R >>\nstartxref\n").append(xref, 0).append("\n%%EOF\n");
+        return out;
+    }
+
+    /**
+     * Formats the live shapes of a range of slots. Runs on the threads of the pool, it only reads the snapshot
+     *
+     * @param from First slot
+     * @param to   Slot after the last one
+     * @return Formatted shapes
+     */
+    Chunk format(int from, int to) {
+        Chunk out = new Chunk();
+        int color = -1;
+        float width = Float.NaN;
+        boolean open = false; // An SVG group is open
+        for (int slot = store.nextLive(from); slot >= 0 && slot < to; slot = store.nextLive(slot + 1)) {
+            int c = store.getColor(slot);
+            float w = store.getWidth(slot);
+            if (c != color || w != width) {
+                color = c;
+                width = w;
+                open = format == SVG ? startGroup(out, colors[c], w, open) : setStyle(out, colors[c], w, translucent);
+            }
+            if (format == SVG) {
+                svgShape(out, slot);
+            } else {
+                pdfShape(out, slot);
+            }
+            out.shapes++;
+        }
+        if (open) {
+            out.append("</g>\n");
+        }
+        return out;
+    }
+
+    /**
+     * Starts an SVG group with the style of the next shapes
+     *
+     * @param out   Chunk
+     * @param argb  Stroke color
+     * @param width Stroke width
+     * @param open  True if a group is open
+     * @return True
+     */
+    private static boolean startGroup(Chunk out, int argb, float width, boolean open) {
+        if (open) {
+            out.append("</g>\n");
+        }
+        out.append("<g stroke=\"").appendHex(argb).append("\" stroke-width=\"").append(width, 2);
+        int alpha = argb >>> 24;
+        if (alpha != 0xff) {
+            out.append("\" stroke-opacity=\"").append(alpha / 255.0, 3);
+        }
+        out.append("\">\n");
+        return true;
+    }
+
+    /**
+     * Sets the PDF stroke color, opacity and line width of the next shapes
+     *
+     * @param out         Chunk
+     * @param argb        Stroke color
+     * @param width       Stroke width
+     * @param translucent True if the page has a graphics state for every alpha of the palette
+     * @return False (PDF has no groups)
+     */
+    private static boolean setStyle(Chunk out, int argb, float width, boolean translucent) {
+        if (translucent) {
+            out.append("/A").append(argb >>> 24, 0).append(" gs ");
+        }
+        out.append(((argb >> 16) & 0xff) / 255.0, 3).append(' ').append(((argb >> 8) & 0xff) / 255.0, 3).append(' ')
+                .append((argb & 0xff) / 255.0, 3).append(" RG ").append(width, 2).append(" w\n");
+        return false;
+    }
+
+    /**
+     * Formats a shape as an SVG element
+     *
+     * @param out  Chunk
+     * @param slot Slot of the shape
+     */
+    private void svgShape(Chunk out, int slot) {
+        double sx = store.getCoord(slot, 0), sy = store.getCoord(slot, 1);
+        double ex = store.getCoord(slot, 2), ey = store.getCoord(slot, 3);
+        switch (store.getKind(slot)) {
+            case ShapeStore.LINE:
+                out.append("<line x1=\"").append(sx, 2).append("\" y1=\"").append(sy, 2)
+                        .append("\" x2=\"").append(ex, 2).append("\" y2=\"").append(ey, 2).append("\"/>\n");
+                break;
+            case ShapeStore.CIRCLE:
+                out.append("<ellipse cx=\"").append((sx + ex) / 2, 2).append("\" cy=\"").append((sy + ey) / 2, 2)
+                        .append("\" rx=\"").append(Math.abs(ex - sx) / 2, 2).append("\" ry=\"").append(Math.abs(ey - sy) / 2, 2)
+                        .append("\"/>\n");
+                break;
+            case ShapeStore.RECTANGLE:
+                out.append("<rect x=\"").append(Math.min(sx, ex), 2).append("\" y=\"").append(Math.min(sy, ey), 2)
+                        .append("\" width=\"").append(Math.abs(ex - sx), 2).append("\" height=\"").append(Math.abs(ey - sy), 2)
+                        .append("\"/>\n");
+                break;
+            case ShapeStore.PENCIL:
+                out.append("<polyline stroke-linejoin=\"round\" points=\""); // Round joins as on the canvas
+                for (int i = 0; i < store.getPathSize(slot); i++) {
+                    if (i > 0) {
+                        out.append(' ');
+                    }
+                    out.append(store.getPathCoord(slot, 2 * i), 2).append(',').append(store.getPathCoord(slot, 2 * i + 1), 2);
+                }
+                out.append("\"/>\n");
+                break;
+        }
+    }
+
+    /**
+     * Formats a shape as PDF path operators
+     *
+     * @param out  Chunk
+     * @param slot Slot of the shape
+     */
+    private void pdfShape(Chunk out, int slot) {
+        double sx = store.getCoord(slot, 0), sy = store.getCoord(slot, 1);
+        double ex = store.getCoord(slot, 2), ey = store.getCoord(slot, 3);
+        switch (store.getKind(slot)) {
+            case ShapeStore.LINE:
+                out.append(sx, 2).append(' ').append(sy, 2).append(" m ").append(ex, 2).append(' ').append(ey, 2).append(" l S\n");
+                break;
+            case ShapeStore.CIRCLE: { // Four Bezier curves
+                double cx = (sx + ex) / 2, cy = (sy + ey) / 2, rx = Math.abs(ex - sx) / 2, ry = Math.abs(ey - sy) / 2;
+                double kx = rx * KAPPA, ky = ry * KAPPA;
+                out.append(cx + rx, 2).append(' ').append(cy, 2).append(" m ");
+                curve(out, cx + rx, cy + ky, cx + kx, cy + ry, cx, cy + ry);
+                curve(out, cx - kx, cy + ry, cx - rx, cy + ky, cx - rx, cy);
+                curve(out, cx - rx, cy - ky, cx - kx, cy - ry, cx, cy - ry);
+                curve(out, cx + kx, cy - ry, cx + rx, cy - ky, cx + rx, cy);
+                out.append("s\n");
+                break;
+            }
+            case ShapeStore.RECTANGLE:
+                out.append(Math.min(sx, ex), 2).append(' ').append(Math.min(sy, ey), 2).append(' ')
+                        .append(Math.abs(ex - sx), 2).append(' ').append(Math.abs(ey - sy), 2).append(" re S\n");
+                break;
+            case ShapeStore.PENCIL:
+                out.append("1 j "); // Round joins as on the canvas
+                for (int i = 0; i < store.getPathSize(slot); i++) {
+                    out.append(store.getPathCoord(slot, 2 * i), 2).append(' ').append(store.getPathCoord(slot, 2 * i + 1), 2)
+                            .append(i == 0 ? " m " : " l ");
+                }
+                out.append("S 0 j\n");
+                break;
+        }
+    }
+
+    /**
+     * Adds a Bezier curve to a PDF path
+     *
+     * @param out Chunk
+     * @param x1  X coordinate of the first control point
+     * @param y1  Y coordinate of the first control point
+     * @param x2  X coordinate of the second control point
+     * @param y2  Y coordinate of the second control point
+     * @param x3  X coordinate of the end point
+     * @param y3  Y coordinate of the end point
+     */
+    private static void curve(Chunk out, double x1, double y1, double x2, double y2, double x3, double y3) {
+        out.append(x1, 2).append(' ').append(y1, 2).append(' ').append(x2, 2).append(' ').append(y2, 2).append(' ')
+                .append(x3, 2).append(' ').append(y3, 2).append(" c ");
+    }
+
+    /**
+     * Finds the export format of a file from its extension
+     *
+     * @param file File
+     * @return PDF for .pdf files, SVG otherwise
+     */
+    public static int formatOf(Path file) {
+        return file.getFileName().toString().toLowerCase().endsWith(".pdf") ? PDF : SVG;
+    }
+}
@@ -0,0 +1,183 @@
+package DrawIt;
+import javafx.scene.canvas.GraphicsContext;
+
+/**
+ * Part of the unbounded drawing plane (world) that is shown on the canvas. A world point (x, y) is shown at
+ * (x * scale + offsetX, y * scale + offsetY) of the canvas, so shapes keep their world coordinates whatever the
+ * view is
+ *
+ * @author Maksym Hanushchak
+ */
+public class Viewport {
+    /**
+     * Smallest zoom (canvas pixels per world unit)
+     */
+    static final double MIN_SCALE = 1.0 / 1024;
+    /**
+     * Largest zoom (canvas pixels per world unit)
+     */
+    static final double MAX_SCALE = 64;
+    /**
+     * Shapes smaller than this on the canvas are not drawn when the view is zoomed out (pixels)
+     */
+    static final double MIN_EXTENT = 0.5;
+    /**
+     * Canvas size (pixels)
+     */
+    private final double width, height;
+    /**
+     * Canvas position of the world origin
+     */
+    private double offsetX, offsetY;
+    /**
+     * Canvas pixels per world unit
+     */
+    private double scale = 1;
+
+    /**
+     * Viewport constructor, the world origin is at the canvas' top left corner at the scale of 1
+     *
+     * @param width  Canvas width
+     * @param height Canvas height
+     */
+    Viewport(double width, double height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Moves the view by a number of canvas pixels
+     *
+     * @param dx Horizontal shift (the world moves to the right if positive)
+     * @param dy Vertical shift (the world moves down if positive)
+     */
+    public void pan(double dx, double dy) {
+        offsetX += dx;
+        offsetY += dy;
+    }
+
+    /**
+     * Zooms the view keeping one canvas point in place. At the scale of 1 the offset is rounded to whole pixels,
+     * so shapes are drawn exactly where the unzoomed view draws them
+     *
+     * @param factor Zoom factor (greater than 1 zooms in)
+     * @param x      X coordinate of the fixed canvas point
+     * @param y      Y coordinate of the fixed canvas point
+     */
+    public void zoom(double factor, double x, double y) {
+        double next = Math.max(MIN_SCALE, Math.min(MAX_SCALE, scale * factor));
+        if ((scale - 1) * (next - 1) < 0 || Math.abs(next - 1) < 0.01) { // Stops at 1 on the way through it
+            next = 1;
+        }
+        offsetX = x - (x - offsetX) * next / scale;
+        offsetY = y - (y - offsetY) * next / scale;
+        scale = next;
+        if (scale == 1) {
+            offsetX = Math.rint(offsetX);
+            offsetY = Math.rint(offsetY);
+        }
+    }
+
+    /**
+     * Goes back to the default view
+     */
+    public void reset() {
+        offsetX = 0;
+        offsetY = 0;
+        scale = 1;
+    }
+
+    /**
+     * Sets the transform of a graphics context, so it draws in world coordinates
+     *
+     * @param gc Graphics context of a canvas of this view
+     */
+    public void apply(GraphicsContext gc) {
+        gc.setTransform(scale, 0, 0, scale, offsetX, offsetY);
+    }
+
+    /**
+     * Converts a canvas x coordinate to the world
+     *
+     * @param x Canvas x coordinate
+     * @return World x coordinate
+     */
+    public double toWorldX(double x) {
+        return (x - offsetX) / scale;
+    }
+
+    /**
+     * Converts a canvas y coordinate to the world
+     *
+     * @param y Canvas y coordinate
+     * @return World y coordinate
+     */
+    public double toWorldY(double y) {
+        return (y - offsetY) / scale;
+    }
+
+    /**
+     * Converts a world x coordinate to the canvas
+     *
+     * @param x World x coordinate
+     * @return Canvas x coordinate
+     */
+    public double toScreenX(double x) {
+        return x * scale + offsetX;
+    }
+
+    /**
+     * Converts a world y coordinate to the canvas
+     *
+     * @param y World y coordinate
+     * @return Canvas y coordinate
+     */
+    public double toScreenY(double y) {
+        return y * scale + offsetY;
+    }
+
+    /**
+     * Getter method for the zoom
+     *
+     * @return Canvas pixels per world unit
+     */
+    public double getScale() {
+        return scale;
+    }
+
+    /**
+     * Getter method for the canvas x coordinate of the world origin
+     *
+     * @return Horizontal offset
+     */
+    public double getOffsetX() {
+        return offsetX;
+    }
+
+    /**
+     * Getter method for the canvas y coordinate of the world origin
+     *
+     * @return Vertical offset
+     */
+    public double getOffsetY() {
+        return offsetY;
+    }
+
+    /**
+     * Getter method for the canvas width
+     *
+     * @return Width in pixels
+     */
+    public double getWidth() {
+        return width;
+    }
+
+    /**
+     * Getter method for the canvas height
+     *
+     * @return Height in pixels
+     */
+    public double getHeight() {
+        return height;
+    }
+}
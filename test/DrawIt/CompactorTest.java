@@ -0,0 +1,87 @@
+package DrawIt;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compaction of redundant geometry: what the compactor drops, and a compaction that is undone and redone
+ *
+ * @author Maksym Hanushchak
+ */
+class CompactorTest {
+    /**
+     * Creates a repaint engine for a drawing, on a canvas that is never shown
+     *
+     * @param drawing Drawing
+     * @return Repaint engine
+     */
+    private static RepaintEngine newEngine(Drawing drawing) {
+        RepaintEngine engine = new RepaintEngine(new Canvas(200, 200).getGraphicsContext2D(), drawing, 200, 200, Color.WHITE,
+                new CheckpointCache(Integer.MAX_VALUE, 0));
+        engine.useManualPulses();
+        return engine;
+    }
+
+    /**
+     * Circles of zero size draw nothing and are dropped, rectangles of zero size draw a square and are kept
+     */
+    @Test
+    void dropsOnlyEmptyCircles() {
+        Drawing drawing = new Drawing();
+        int circle = drawing.add(new Circle(10, 10, 10, 10, Color.BLACK, 3));
+        drawing.add(new Rectangle(20, 20, 20, 20, Color.BLACK, 3));
+        drawing.add(new Line(0, 0, 50, 70, Color.BLACK, 3));
+        Compactor compactor = new Compactor(drawing.snapshot()).run(1);
+        assertEquals(1, compactor.getEmpty());
+        IntList dropped = compactor.getDropped();
+        assertEquals(1, dropped.size());
+        assertEquals(circle, dropped.get(0));
+    }
+
+    /**
+     * A compaction of a big drawing (scanned on several threads) drops duplicates, empty circles and joined lines;
+     * undo puts back every record as it was and redo compacts it the same way again
+     */
+    @Test
+    void compactUndoRedo() {
+        Random random = new Random(42);
+        Drawing drawing = new Drawing();
+        Color[] colors = {Color.BLACK, Color.RED, Color.BLUE};
+        while (drawing.size() < Compactor.PARALLEL_SLOTS + 1000) {
+            int what = random.nextInt(10);
+            double x = random.nextInt(1000), y = random.nextInt(1000);
+            Color color = colors[random.nextInt(colors.length)];
+            if (what < 4 || drawing.isEmpty()) {
+                drawing.add(new Rectangle(x, y, x + random.nextInt(50), y + random.nextInt(50), color, 2));
+            } else if (what < 6) {
+                drawing.add(drawing.getStore().copy(random.nextInt(drawing.getStore().size())));
+            } else if (what == 6) {
+                drawing.add(new Circle(x, y, x, y, color, 3));
+            } else {
+                for (int i = 0; i < 3; i++) { // One line of three parts
+                    drawing.add(new Line(x + 4 * i, y + 3 * i, x + 4 * (i + 1), y + 3 * (i + 1), color, 2));
+                }
+            }
+        }
+        ShapeStore before = drawing.snapshot();
+        RepaintEngine engine = newEngine(drawing);
+
+        CompactEdit edit = CompactEdit.compact(drawing, engine, 4);
+        assertFalse(edit.isEmpty());
+        assertTrue(edit.getDuplicates() > 0 && edit.getEmpty() > 0 && edit.getJoins() > 0);
+        assertEquals(edit.getDuplicates() + edit.getEmpty() + edit.getJoins(), edit.getRemoved());
+        assertEquals(before.liveCount() - edit.getRemoved(), drawing.size());
+        ShapeStore after = drawing.snapshot();
+
+        edit.undo(drawing, engine);
+        JournalTest.assertSameSlots(before, drawing.getStore());
+        edit.redo(drawing, engine);
+        JournalTest.assertSameSlots(after, drawing.getStore());
+    }
+}
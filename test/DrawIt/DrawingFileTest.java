@@ -0,0 +1,196 @@
+package DrawIt;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Round trips of drawing files: written and read back in order, by chunks in any order, and truncated
+ *
+ * @author Maksym Hanushchak
+ */
+class DrawingFileTest {
+    /**
+     * Number of shapes, a bit more than two chunks of live ones
+     */
+    private static final int SIZE = DrawingFile.CHUNK_SIZE * 2 + 10000;
+
+    /**
+     * Directory of the test files
+     */
+    @TempDir
+    Path directory;
+
+    /**
+     * Creates a store with every kind of shape, some of them removed
+     *
+     * @return Store
+     */
+    private static ShapeStore newStore() {
+        ShapeStore store = new ShapeStore();
+        Random random = new Random(42);
+        int red = store.getPalette().add(Color.RED), blue = store.getPalette().add(Color.color(0, 0, 1, 0.5));
+        float[] points = new float[64];
+        for (int i = 0; i < SIZE; i++) {
+            byte kind = (byte) random.nextInt(ShapeStore.KINDS);
+            float x = random.nextFloat() * 1000, y = random.nextFloat() * 1000;
+            int slot = store.add(kind, x, y, x + 20, y + 10, 1 + random.nextInt(8), random.nextBoolean() ? red : blue);
+            if (kind == ShapeStore.PENCIL) {
+                int n = 1 + random.nextInt(points.length / 2);
+                for (int p = 0; p < n * 2; p++) {
+                    points[p] = (p % 2 == 0 ? x : y) + p;
+                }
+                store.setPath(slot, points, 0, n);
+            }
+            if (i % 17 == 0) {
+                store.setLive(slot, false);
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Checks that a store holds the live shapes of another one in the same order
+     *
+     * @param expected Store that was written
+     * @param actual   Store that was read
+     */
+    private static void assertSameShapes(ShapeStore expected, ShapeStore actual) {
+        assertEquals(expected.liveCount(), actual.liveCount());
+        int slot = actual.nextLive(0);
+        for (int e = expected.nextLive(0); e >= 0; e = expected.nextLive(e + 1), slot = actual.nextLive(slot + 1)) {
+            assertEquals(expected.getKind(e), actual.getKind(slot));
+            for (int i = 0; i < 4; i++) {
+                assertEquals(expected.getCoord(e, i), actual.getCoord(slot, i));
+            }
+            assertEquals(expected.getWidth(e), actual.getWidth(slot));
+            assertEquals(expected.getPalette().get(expected.getColor(e)).toString(), // Colors are compared as ARGB
+                    actual.getPalette().get(actual.getColor(slot)).toString());
+            if (expected.getKind(e) == ShapeStore.PENCIL) {
+                assertEquals(expected.getPathSize(e), actual.getPathSize(slot));
+                for (int i = 0; i < expected.getPathSize(e) * 2; i++) {
+                    assertEquals(expected.getPathCoord(e, i), actual.getPathCoord(slot, i));
+                }
+            }
+        }
+        assertEquals(-1, slot);
+    }
+
+    /**
+     * The live shapes are read back in order by both readers
+     *
+     * @throws IOException If the file cannot be written or read
+     */
+    @Test
+    void roundTrip() throws IOException {
+        ShapeStore store = newStore();
+        Path file = directory.resolve("drawing.drawit");
+        DrawingFile.write(store, 800, 600, file);
+
+        DrawingFile.Document document = DrawingFile.read(file);
+        assertEquals(800, document.width);
+        assertEquals(600, document.height);
+        assertSameShapes(store, document.store);
+
+        ShapeStore mapped = new ShapeStore();
+        try (DrawingFile.MappedFile in = DrawingFile.open(file)) {
+            in.readPalette(mapped.getPalette());
+            for (int first = 0; first < in.getCount(); first += 5000) {
+                in.read(first, Math.min(5000, in.getCount() - first), mapped);
+            }
+        }
+        assertSameShapes(store, mapped);
+    }
+
+    /**
+     * Chunks read backwards into reserved slots end up in paint order, as DrawingLoader reads the chunks in view
+     * first
+     *
+     * @throws IOException If the file cannot be written or read
+     */
+    @Test
+    void chunksInAnyOrder() throws IOException {
+        ShapeStore store = newStore();
+        Path file = directory.resolve("drawing.drawit");
+        DrawingFile.write(store, 800, 600, file);
+
+        ShapeStore loaded = new ShapeStore();
+        try (DrawingFile.MappedFile in = DrawingFile.open(file)) {
+            assertTrue(in.isSeekable());
+            assertEquals(3, in.getChunks());
+            in.readPalette(loaded.getPalette());
+            int base = loaded.reserve(in.getCount());
+            assertEquals(0, loaded.liveCount());
+            for (int chunk = in.getChunks() - 1; chunk >= 0; chunk--) {
+                int first = chunk * DrawingFile.CHUNK_SIZE, end = Math.min(in.getCount(), first + DrawingFile.CHUNK_SIZE);
+                assertTrue(in.intersects(chunk, 0, 0, 1000, 1000));
+                for (int record = end; record > first; record -= 4096) { // Backwards inside of the chunk too
+                    int from = Math.max(first, record - 4096);
+                    in.readInto(from, record - from, loaded, base + from);
+                }
+            }
+        }
+        assertSameShapes(store, loaded);
+    }
+
+    /**
+     * A snapshot taken while reserved records are filled keeps seeing them as removed
+     *
+     * @throws IOException If the file cannot be written or read
+     */
+    @Test
+    void snapshotOfReservedRecords() throws IOException {
+        ShapeStore store = newStore();
+        Path file = directory.resolve("drawing.drawit");
+        DrawingFile.write(store, 800, 600, file);
+
+        ShapeStore loaded = new ShapeStore();
+        try (DrawingFile.MappedFile in = DrawingFile.open(file)) {
+            in.readPalette(loaded.getPalette());
+            loaded.reserve(in.getCount());
+            ShapeStore snapshot = loaded.snapshot();
+            in.readInto(0, in.getCount(), loaded, 0);
+            assertEquals(0, snapshot.liveCount());
+            assertEquals(-1, snapshot.nextLive(0));
+            for (int slot = 0; slot < snapshot.size(); slot++) {
+                assertEquals(ShapeStore.LINE, snapshot.getKind(slot));
+            }
+        }
+        assertSameShapes(store, loaded);
+    }
+
+    /**
+     * A file cut in its records is not opened, a file cut in its points fails when the points are read
+     *
+     * @throws IOException If the file cannot be written
+     */
+    @Test
+    void truncatedFile() throws IOException {
+        Path file = directory.resolve("drawing.drawit");
+        DrawingFile.write(newStore(), 800, 600, file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 100);
+        }
+        assertThrows(IOException.class, () -> DrawingFile.read(file));
+        try (DrawingFile.MappedFile in = DrawingFile.open(file)) {
+            ShapeStore store = new ShapeStore();
+            in.readPalette(store.getPalette());
+            assertThrows(IOException.class, () -> in.read(0, in.getCount(), store));
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(1000);
+        }
+        assertThrows(IOException.class, () -> DrawingFile.open(file).close());
+        assertThrows(IOException.class, () -> DrawingFile.read(file));
+    }
+}
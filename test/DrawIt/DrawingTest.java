@@ -0,0 +1,131 @@
+package DrawIt;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Slots of undone shapes are given to the next shapes, so a session of drawing and undoing does not grow the store
+ *
+ * @author Maksym Hanushchak
+ */
+class DrawingTest {
+    /**
+     * Adds a pencil stroke
+     *
+     * @param drawing Drawing
+     * @param x       X coordinate of the first point
+     * @return Slot of the stroke
+     */
+    private static int addPencil(Drawing drawing, float x) {
+        float[] points = {x, 0, x + 10, 10, x + 20, 0};
+        return drawing.add(new Pencil(points, 3, Color.RED, 2));
+    }
+
+    /**
+     * Drawing and undoing many times keeps the store at the size of the shapes that can still be undone
+     */
+    @Test
+    void reclaimsUndoneShapes() {
+        Drawing drawing = new Drawing();
+        for (int i = 0; i < 10; i++) {
+            drawing.add(new Line(i, i, i + 10, i + 10, Color.BLACK, 1));
+        }
+        for (int round = 0; round < 10000; round++) {
+            int first = drawing.add(new Circle(0, 0, 20, 20, Color.BLUE, 2));
+            int second = addPencil(drawing, round);
+            drawing.remove(second); // Both are undone
+            drawing.remove(first);
+            drawing.setReclaimable(first);
+        }
+        assertEquals(12, drawing.getStore().size());
+        assertEquals(10, drawing.size());
+
+        int slot = drawing.add(new Rectangle(0, 0, 5, 5, Color.GREEN, 1));
+        assertEquals(10, slot);
+        assertEquals(11, drawing.getStore().size());
+        assertEquals(ShapeStore.RECTANGLE, drawing.getStore().getKind(slot));
+        assertFalse(drawing.reclaim());
+    }
+
+    /**
+     * A redo moves the reclaimable slots above the shapes it brings back, only the shapes still undone are dropped
+     */
+    @Test
+    void keepsRedoneShapes() {
+        Drawing drawing = new Drawing();
+        int first = addPencil(drawing, 0), second = addPencil(drawing, 100);
+        int points = drawing.getStore().getPathStart(second);
+        drawing.remove(second);
+        drawing.remove(first);
+        drawing.setReclaimable(first);
+        drawing.restore(first); // Redo of the first one
+        drawing.setReclaimable(first + 1);
+
+        int third = addPencil(drawing, 200);
+        assertEquals(second, third);
+        assertTrue(drawing.getStore().isLive(first));
+        assertEquals(points, drawing.getStore().getPathStart(third)); // The points of the dropped stroke are reused
+        assertEquals(200, drawing.getStore().getPathCoord(third, 0));
+        assertEquals(0, drawing.getStore().getPathCoord(first, 0));
+    }
+
+    /**
+     * A snapshot taken before the slots were given to new shapes keeps reading the old shapes
+     */
+    @Test
+    void snapshotsKeepDroppedShapes() {
+        Drawing drawing = new Drawing();
+        for (int i = 0; i < 5000; i++) { // More than a chunk of the store
+            addPencil(drawing, i);
+        }
+        for (int i = 4999; i >= 100; i--) {
+            drawing.remove(i);
+        }
+        drawing.setReclaimable(100);
+        ShapeStore snapshot = drawing.snapshot();
+        for (int i = 0; i < 200; i++) {
+            drawing.add(new Line(i, i, i, i + 1, Color.BLACK, 1));
+        }
+        assertEquals(300, drawing.getStore().size());
+        assertEquals(5000, snapshot.size());
+        for (int slot = 100; slot < 5000; slot++) {
+            assertEquals(ShapeStore.PENCIL, snapshot.getKind(slot));
+            assertEquals(slot, snapshot.getPathCoord(slot, 0));
+        }
+        for (int slot = 100; slot < 300; slot++) {
+            assertEquals(ShapeStore.LINE, drawing.getStore().getKind(slot));
+        }
+    }
+
+    /**
+     * Points of a stroke that was moved after a shape was undone are not given to the next shape (undo, move, draw)
+     */
+    @Test
+    void keepsPointsOfMovedStrokes() {
+        Drawing drawing = new Drawing();
+        RepaintEngine engine = new RepaintEngine(new Canvas(200, 200).getGraphicsContext2D(), drawing, 200, 200, Color.WHITE,
+                new CheckpointCache(Integer.MAX_VALUE, 0));
+        engine.useManualPulses();
+        int moved = addPencil(drawing, 1000), undone = addPencil(drawing, 2000);
+        drawing.remove(undone);
+        drawing.setReclaimable(undone);
+        TransformEdit.transform(drawing, engine, Selection.select(drawing, 990, -10, 1030, 20), 1, 0, 0, -4000, 0);
+
+        float[] points = new float[20]; // Longer than the undone stroke, so it would run into the moved points
+        for (int i = 0; i < points.length; i += 2) {
+            points[i] = 3000 + i;
+        }
+        int next = drawing.add(new Pencil(points, points.length / 2, Color.RED, 2));
+        ShapeStore store = drawing.getStore();
+        assertEquals(undone, next);
+        assertEquals(-3000, store.getPathCoord(moved, 0));
+        assertEquals(-2980, store.getPathCoord(moved, 4));
+        assertEquals(3000, store.getPathCoord(next, 0));
+        assertEquals(3018, store.getPathCoord(next, 18));
+        assertTrue(store.getMinX(moved) <= -3000 && store.getMaxX(moved) >= -2980);
+    }
+}
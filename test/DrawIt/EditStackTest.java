@@ -0,0 +1,98 @@
+package DrawIt;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Undo history that is longer than the window kept in memory: the older edits are spilled to the segment file and
+ * read back in order
+ *
+ * @author Maksym Hanushchak
+ */
+class EditStackTest {
+    /**
+     * Edits pushed past the window come back newest first when the stack is popped past the window
+     */
+    @Test
+    void undoesPastTheWindow() {
+        EditStack stack = new EditStack(Tuning.HISTORY_WINDOW);
+        int n = Tuning.HISTORY_WINDOW * 5 / 2;
+        for (int i = 0; i < n; i++) {
+            stack.push(i % 2 == 0 ? new AddEdit(i) : new BatchEdit(i, i + 3));
+            assertTrue(stack.size() - stack.spilledSize() <= Tuning.HISTORY_WINDOW);
+        }
+        assertEquals(n, stack.size());
+        assertTrue(stack.spilledSize() >= n - Tuning.HISTORY_WINDOW);
+
+        for (int i = n - 1; i >= 0; i--) {
+            Edit edit = stack.pop();
+            assertEquals(i % 2 == 0 ? AddEdit.class : BatchEdit.class, edit.getClass());
+            assertEquals(i, edit.getAddedFrom());
+            assertEquals(i % 2 == 0 ? i + 1 : i + 3, edit.getAddedTo());
+        }
+        assertTrue(stack.isEmpty());
+        stack.close();
+    }
+
+    /**
+     * Pushing and popping around the window keeps the order, the spilled edits are read back only when the edits
+     * in memory run out
+     */
+    @Test
+    void pushesAfterReading() {
+        EditStack stack = new EditStack(Tuning.HISTORY_WINDOW);
+        for (int i = 0; i < Tuning.HISTORY_WINDOW * 3; i++) {
+            stack.push(new AddEdit(i));
+        }
+        int top = Tuning.HISTORY_WINDOW * 3;
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < Tuning.HISTORY_WINDOW * 3 / 4; i++) {
+                assertEquals(--top, stack.pop().getAddedFrom());
+            }
+            for (int i = 0; i < Tuning.HISTORY_WINDOW / 2; i++) {
+                stack.push(new AddEdit(top++));
+            }
+        }
+        while (!stack.isEmpty()) {
+            assertEquals(--top, stack.pop().getAddedFrom());
+        }
+        assertEquals(0, top);
+        stack.close();
+    }
+
+    /**
+     * Spilled edits that cannot be read back (a corrupted segment file) are lost: pop returns null instead of
+     * throwing, and the stack is empty after it
+     */
+    @Test
+    void losesUnreadableEdits() {
+        EditStack stack = new EditStack(Tuning.HISTORY_WINDOW);
+        for (int i = 0; i < Tuning.HISTORY_WINDOW * 2; i++) {
+            stack.push(new AddEdit(i) {
+                @Override
+                public void write(DataOutputStream out) throws IOException {
+                    out.writeByte(-1); // No edit has this type
+                }
+            });
+        }
+        assertTrue(stack.spilledSize() > 0);
+        while (stack.size() > stack.spilledSize()) {
+            assertNotNull(stack.pop());
+        }
+        assertFalse(stack.isEmpty());
+        assertNull(stack.pop());
+        assertTrue(stack.isEmpty());
+        assertNull(stack.pop());
+
+        stack.push(new AddEdit(7)); // The stack still works
+        assertEquals(7, stack.pop().getAddedFrom());
+        stack.close();
+    }
+}
@@ -0,0 +1,301 @@
+package DrawIt;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Crash recovery of the autosave journal: changes are logged, compacted into snapshots, the journal is cut in the
+ * middle of a record and the drawing is recovered
+ *
+ * @author Maksym Hanushchak
+ */
+class JournalTest {
+    /**
+     * Directory of the journal files
+     */
+    @TempDir
+    Path directory;
+
+    /**
+     * Random changes
+     */
+    private final Random random = new Random(42);
+
+    /**
+     * Creates a random shape
+     *
+     * @return Shape
+     */
+    private Shape newShape() {
+        Color color = Color.hsb(random.nextInt(8) * 45, 1, 1); // Some colors are new, they are logged too
+        double x = random.nextInt(1000), y = random.nextInt(1000), width = 1 + random.nextInt(5);
+        switch (random.nextInt(4)) {
+            case 0:
+                return new Line(x, y, x + 30, y + 20, color, width);
+            case 1:
+                return new Circle(x, y, x + 30, y + 20, color, width);
+            case 2:
+                return new Rectangle(x, y, x + 30, y + 20, color, width);
+            default:
+                float[] points = new float[2 + random.nextInt(20) * 2];
+                for (int i = 0; i < points.length; i++) {
+                    points[i] = (float) (i % 2 == 0 ? x : y) + i;
+                }
+                return new Pencil(points, points.length / 2, color, width);
+        }
+    }
+
+    /**
+     * Adds shapes to a drawing and removes and puts back some of them, one by one and several at a time
+     *
+     * @param drawing Drawing
+     * @param n       Number of shapes
+     */
+    private void change(Drawing drawing, int n) {
+        for (int i = 0; i < n; i++) {
+            drawing.add(newShape());
+            if (random.nextInt(5) == 0) {
+                int slot = random.nextInt(drawing.getStore().size());
+                if (drawing.getStore().isLive(slot)) {
+                    drawing.remove(slot);
+                } else {
+                    drawing.restore(slot);
+                }
+            }
+            if (random.nextInt(50) == 0) { // Some slots are listed twice or are already in that state
+                IntList slots = new IntList();
+                for (int j = 0; j < 20; j++) {
+                    slots.add(random.nextInt(drawing.getStore().size()));
+                }
+                if (random.nextBoolean()) {
+                    drawing.removeAll(slots);
+                } else {
+                    drawing.restoreAll(slots);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks that two stores have the same records in the same slots
+     *
+     * @param expected Store that was logged
+     * @param actual   Recovered store
+     */
+    static void assertSameSlots(ShapeStore expected, ShapeStore actual) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.liveCount(), actual.liveCount());
+        for (int slot = 0; slot < expected.size(); slot++) {
+            assertEquals(expected.isLive(slot), actual.isLive(slot), "Slot " + slot);
+            assertEquals(expected.getKind(slot), actual.getKind(slot), "Slot " + slot);
+            for (int i = 0; i < 4; i++) {
+                assertEquals(expected.getCoord(slot, i), actual.getCoord(slot, i), "Slot " + slot);
+            }
+            assertEquals(expected.getWidth(slot), actual.getWidth(slot), "Slot " + slot);
+            assertEquals(expected.getPalette().get(expected.getColor(slot)).toString(), // Colors are compared as ARGB
+                    actual.getPalette().get(actual.getColor(slot)).toString(), "Slot " + slot);
+            if (expected.getKind(slot) == ShapeStore.PENCIL) {
+                assertEquals(expected.getPathSize(slot), actual.getPathSize(slot), "Slot " + slot);
+                for (int i = 0; i < expected.getPathSize(slot) * 2; i++) {
+                    assertEquals(expected.getPathCoord(slot, i), actual.getPathCoord(slot, i), "Slot " + slot);
+                }
+            }
+        }
+    }
+
+    /**
+     * Recovers the drawing from the journal files
+     *
+     * @return Recovered drawing
+     * @throws IOException If the files cannot be read
+     */
+    private Drawing recover() throws IOException {
+        Drawing recovered = new Drawing();
+        Journal.recover(directory, recovered);
+        return recovered;
+    }
+
+    /**
+     * Changes before and after a compaction are all recovered, from the snapshot of the latest generation and its
+     * journal
+     *
+     * @throws Exception If the files cannot be written or read
+     */
+    @Test
+    void recoversAfterCompaction() throws Exception {
+        Drawing drawing = new Drawing();
+        Journal journal = new Journal(directory, Journal.recover(directory, new Drawing()), 800, 600, Long.MAX_VALUE);
+        drawing.setJournal(journal);
+        change(drawing, 500);
+        journal.compact(drawing.getStore());
+        change(drawing, 500);
+        drawing.fillPalette(3, Color.BLACK);
+        journal.close();
+
+        assertTrue(Files.exists(Journal.snapshotFile(directory, 1)));
+        assertFalse(Files.exists(Journal.snapshotFile(directory, 0)));
+        assertSameSlots(drawing.getStore(), recover().getStore());
+    }
+
+    /**
+     * A record cut off by a crash is dropped and cut from the journal, new records are appended after the last
+     * complete one
+     *
+     * @throws Exception If the files cannot be written or read
+     */
+    @Test
+    void recoversCutRecord() throws Exception {
+        Drawing drawing = new Drawing();
+        Journal journal = new Journal(directory, 0, 800, 600, Long.MAX_VALUE);
+        drawing.setJournal(journal);
+        change(drawing, 300);
+        journal.compact(drawing.getStore());
+        change(drawing, 300);
+        journal.close();
+        Path file = Journal.journalFile(directory, 1);
+        long complete = Files.size(file);
+
+        Drawing expected = recover(); // The next record is not complete, so it is not replayed
+        journal = new Journal(directory, 1, 800, 600, Long.MAX_VALUE);
+        drawing.setJournal(journal);
+        float[] points = {1, 2, 3, 4, 5, 6};
+        drawing.add(new Pencil(points, 3, Color.RED, 2));
+        journal.close();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 5);
+        }
+
+        Drawing recovered = new Drawing();
+        assertEquals(1, Journal.recover(directory, recovered));
+        assertSameSlots(expected.getStore(), recovered.getStore());
+        assertEquals(complete, Files.size(file));
+
+        journal = new Journal(directory, 1, 800, 600, Long.MAX_VALUE);
+        recovered.setJournal(journal);
+        recovered.add(new Pencil(points, 3, Color.RED, 2));
+        journal.close();
+        assertSameSlots(drawing.getStore(), recover().getStore());
+    }
+
+    /**
+     * A journal whose header was cut off by a crash (the first start of the app) is dropped, a new one is started
+     *
+     * @throws Exception If the files cannot be written or read
+     */
+    @Test
+    void recoversCutHeader() throws Exception {
+        new Journal(directory, 0, 800, 600, Long.MAX_VALUE).close();
+        try (FileChannel channel = FileChannel.open(Journal.journalFile(directory, 0), StandardOpenOption.WRITE)) {
+            channel.truncate(3);
+        }
+
+        Drawing recovered = new Drawing();
+        assertEquals(0, Journal.recover(directory, recovered));
+        assertTrue(recovered.isEmpty());
+        assertFalse(Files.exists(Journal.journalFile(directory, 0)));
+
+        Journal journal = new Journal(directory, 0, 800, 600, Long.MAX_VALUE);
+        recovered.setJournal(journal);
+        change(recovered, 100);
+        journal.close();
+        assertSameSlots(recovered.getStore(), recover().getStore());
+    }
+
+    /**
+     * Slots of undone shapes that were given to new shapes are replayed the same way
+     *
+     * @throws Exception If the files cannot be written or read
+     */
+    @Test
+    void recoversReclaimedSlots() throws Exception {
+        Drawing drawing = new Drawing();
+        Journal journal = new Journal(directory, 0, 800, 600, Long.MAX_VALUE);
+        drawing.setJournal(journal);
+        change(drawing, 100);
+        int size = drawing.getStore().size();
+        change(drawing, 20);
+        for (int slot = size; slot < drawing.getStore().size(); slot++) { // Undone
+            drawing.remove(slot);
+        }
+        drawing.setReclaimable(size);
+        change(drawing, 30);
+        journal.close();
+
+        Drawing recovered = recover();
+        assertSameSlots(drawing.getStore(), recovered.getStore());
+        assertEquals(size + 30, recovered.getStore().size());
+    }
+
+    /**
+     * Changes of many shapes at once are replayed from their own records, with the colors that they appended to
+     * the palette and the new points of moved pencil strokes
+     *
+     * @throws Exception If the files cannot be written or read
+     */
+    @Test
+    void recoversBulkChanges() throws Exception {
+        Drawing drawing = new Drawing();
+        Journal journal = new Journal(directory, 0, 800, 600, Long.MAX_VALUE);
+        drawing.setJournal(journal);
+        change(drawing, 50);
+        ShapeBatch batch = new ShapeBatch();
+        for (int i = 0; i < 200; i++) {
+            batch.add(newShape());
+        }
+        batch.add(new Line(1, 2, 3, 4, Color.web("#123456"), 2)); // A new color
+        int from = drawing.addBatch(batch), to = drawing.getStore().size();
+        drawing.removeRange(from, to);
+        drawing.restoreRange(from, to);
+        drawing.removeRange(from + 10, from + 20);
+
+        ShapeStore store = drawing.getStore();
+        IntList slots = new IntList();
+        for (int slot = 0; slot < to; slot += 3) {
+            slots.add(slot);
+        }
+        int n = slots.size();
+        float[] xs = new float[n * 2], ys = new float[n * 2], widths = new float[n];
+        int[] colors = new int[n], pathStarts = new int[n];
+        int moved = drawing.intern(Color.web("#654321"));
+        for (int i = 0; i < n; i++) { // Moved by 5, 7 and recolored as TransformEdit does it
+            int slot = slots.get(i);
+            xs[i * 2] = store.getCoord(slot, 0) + 5;
+            ys[i * 2] = store.getCoord(slot, 1) + 7;
+            xs[i * 2 + 1] = store.getCoord(slot, 2) + 5;
+            ys[i * 2 + 1] = store.getCoord(slot, 3) + 7;
+            widths[i] = store.getWidth(slot);
+            colors[i] = moved;
+            pathStarts[i] = -1;
+            if (store.getKind(slot) == ShapeStore.PENCIL) {
+                float[] points = new float[store.getPathSize(slot) * 2];
+                for (int j = 0; j < points.length; j++) {
+                    points[j] = store.getPathCoord(slot, j) + (j % 2 == 0 ? 5 : 7);
+                }
+                pathStarts[i] = store.appendPoints(points, 0, points.length / 2);
+            }
+        }
+        drawing.reshape(slots, xs, ys, widths, colors, pathStarts);
+
+        IntList dropped = new IntList(), joined = new IntList();
+        dropped.add(1);
+        dropped.add(from + 5);
+        joined.add(slots.get(1));
+        drawing.rewrite(dropped, false, joined, new float[]{0, 100}, new float[]{0, 100}, new float[]{4}, new int[]{0});
+        change(drawing, 20);
+        journal.close();
+
+        assertFalse(Files.exists(Journal.snapshotFile(directory, 1))); // Nothing was compacted
+        assertSameSlots(drawing.getStore(), recover().getStore());
+    }
+}
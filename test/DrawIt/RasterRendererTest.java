@@ -0,0 +1,151 @@
+package DrawIt;
+import javafx.application.Platform;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelReader;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Strokes of the software renderer stay inside the bounding boxes of their records, which the spatial index, the
+ * tiles and the partial repaints rely on, and look like the strokes of the JavaFX canvas
+ *
+ * @author Maksym Hanushchak
+ */
+class RasterRendererTest {
+    /**
+     * Image size
+     */
+    private static final int SIZE = 200;
+    /**
+     * Largest difference of a color channel between the canvas and the software renderer (0 - 255)
+     */
+    private static final int TOLERANCE = 32;
+
+    /**
+     * Starts the JavaFX toolkit that draws the canvas (see matchesCanvas)
+     */
+    @BeforeAll
+    static void startToolkit() {
+        try {
+            Platform.startup(() -> {
+            });
+        } catch (IllegalStateException e) { // Started by another test
+        }
+    }
+
+    /**
+     * Renders one record on a white image and checks that every painted pixel is inside its bounding box
+     *
+     * @param store Store
+     * @param slot  Slot of the record
+     * @return Number of painted pixels
+     */
+    private static int paintedInsideBox(ShapeStore store, int slot) {
+        RasterRenderer raster = new RasterRenderer(SIZE, SIZE);
+        raster.fill(Color.WHITE);
+        store.draw(slot, raster);
+        int[] pixels = raster.getPixels();
+        int painted = 0;
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                if (pixels[y * SIZE + x] != 0xffffffff) {
+                    painted++;
+                    assertTrue(x + 1 >= store.getMinX(slot) && x <= store.getMaxX(slot)
+                            && y + 1 >= store.getMinY(slot) && y <= store.getMaxY(slot), "Pixel " + x + "," + y);
+                }
+            }
+        }
+        return painted;
+    }
+
+    /**
+     * Sharp turns of a thick pencil stroke (round joins) do not reach out of the box of its points
+     */
+    @Test
+    void pencilJoinsStayInBox() {
+        ShapeStore store = new ShapeStore();
+        int black = store.getPalette().add(Color.BLACK);
+        float[] points = {60, 140, 100, 40, 102, 140, 104, 40, 140, 140}; // Turns of a few degrees
+        float minX = 60, minY = 40, maxX = 140, maxY = 140;
+        int slot = store.add(ShapeStore.PENCIL, minX, minY, maxX, maxY, 16, black);
+        store.setPath(slot, points, 0, points.length / 2);
+        assertTrue(paintedInsideBox(store, slot) > 0);
+    }
+
+    /**
+     * A pencil stroke of one point is a square like a line of zero length
+     */
+    @Test
+    void pencilPoint() {
+        ShapeStore store = new ShapeStore();
+        int black = store.getPalette().add(Color.BLACK);
+        int slot = store.add(ShapeStore.PENCIL, 100, 100, 100, 100, 10, black);
+        store.setPath(slot, new float[]{100, 100}, 0, 1);
+        assertEquals(100, paintedInsideBox(store, slot));
+    }
+
+    /**
+     * The software renderer paints the same pixels as the JavaFX canvas (on the headless Monocle toolkit) for
+     * lines, rectangles, ellipses and pencil strokes of several widths, opaque and translucent. Both anti-alias the
+     * edges but estimate the coverage differently (the canvas samples, the software renderer computes it), so every
+     * channel of every pixel may differ by up to TOLERANCE
+     *
+     * @throws Exception If the canvas cannot be drawn
+     */
+    @Test
+    void matchesCanvas() throws Exception {
+        ShapeStore store = new ShapeStore();
+        int black = store.getPalette().add(Color.BLACK);
+        int red = store.getPalette().add(Color.rgb(200, 30, 30, 0.5));
+        int blue = store.getPalette().add(Color.rgb(20, 60, 220));
+        store.add(ShapeStore.LINE, 20, 30, 180, 60, 1, black);
+        store.add(ShapeStore.LINE, 30, 170, 90, 20, 5, red);
+        store.add(ShapeStore.LINE, 100, 10, 100, 190, 2.5, blue);
+        store.add(ShapeStore.RECTANGLE, 40.5, 40.5, 150, 120, 3, black);
+        store.add(ShapeStore.RECTANGLE, 120, 130, 190, 185, 8, red);
+        store.add(ShapeStore.CIRCLE, 60, 70, 170, 160, 2, red);
+        store.add(ShapeStore.CIRCLE, 10, 10, 50, 90, 4, blue);
+        float[] points = {20, 190, 60, 100, 100, 180, 140, 110};
+        int pencil = store.add(ShapeStore.PENCIL, 20, 100, 140, 190, 6, black);
+        store.setPath(pencil, points, 0, points.length / 2);
+
+        RasterRenderer raster = new RasterRenderer(SIZE, SIZE);
+        raster.fill(Color.WHITE);
+        store.drawAll(raster, ShapeStore.newViews());
+        FutureTask<WritableImage> canvas = new FutureTask<>(() -> {
+            GraphicsContext gc = new Canvas(SIZE, SIZE).getGraphicsContext2D();
+            gc.setFill(Color.WHITE);
+            gc.fillRect(0, 0, SIZE, SIZE);
+            store.drawAll(new FxRenderer(gc), ShapeStore.newViews());
+            return gc.getCanvas().snapshot(null, null);
+        });
+        Platform.runLater(canvas);
+        PixelReader expected = canvas.get(10, TimeUnit.SECONDS).getPixelReader();
+
+        int[] pixels = raster.getPixels();
+        int painted = 0;
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                int argb = expected.getArgb(x, y), actual = pixels[y * SIZE + x];
+                if (argb != 0xffffffff) {
+                    painted++;
+                }
+                for (int shift = 0; shift < 24; shift += 8) {
+                    int difference = Math.abs((argb >> shift & 0xff) - (actual >> shift & 0xff));
+                    assertTrue(difference <= TOLERANCE, "Pixel " + x + "," + y + ": canvas " + Integer.toHexString(argb)
+                            + ", software renderer " + Integer.toHexString(actual));
+                }
+            }
+        }
+        assertTrue(painted > SIZE * SIZE / 10); // The canvas drew the shapes
+    }
+}
@@ -0,0 +1,57 @@
+package DrawIt;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Elements that the SVG importer turns into shapes
+ *
+ * @author Maksym Hanushchak
+ */
+class SvgImporterTest {
+    /**
+     * Parses a document into a store
+     *
+     * @param svg SVG document
+     * @return Store with the shapes of the document
+     * @throws IOException If the document cannot be read
+     */
+    private static ShapeStore read(String svg) throws IOException {
+        ShapeStore store = new ShapeStore();
+        long count = SvgImporter.read(new ByteArrayInputStream(svg.getBytes(StandardCharsets.UTF_8)), batch -> batch.appendTo(store));
+        assertEquals(count, store.size());
+        return store;
+    }
+
+    /**
+     * Geometry inside definitions, symbols, clip paths, masks, markers and patterns is skipped, also when they are
+     * nested, and the elements after them are read with the right groups
+     *
+     * @throws IOException If the document cannot be read
+     */
+    @Test
+    void skipsNonRenderedContainers() throws IOException {
+        String svg = "<svg xmlns='http://www.w3.org/2000/svg' stroke='black'>"
+                + "<defs><circle cx='5' cy='5' r='5'/><g><rect width='10' height='10'/></g></defs>"
+                + "<symbol id='s'><line x2='10' y2='10'/></symbol>"
+                + "<clipPath id='c'><rect width='10' height='10'/></clipPath>"
+                + "<mask id='m'><rect width='10' height='10'/></mask>"
+                + "<marker id='k'><circle r='2'/></marker>"
+                + "<pattern id='p'><defs><circle r='2'/></defs><line x2='4' y2='4'/></pattern>"
+                + "<g stroke='none'><g stroke='red'><line x2='10' y2='10'/></g></g>"
+                + "<rect width='20' height='20'/>"
+                + "<g stroke='none' fill='none'><circle r='3'/></g>"
+                + "</svg>";
+        ShapeStore store = read(svg);
+        assertEquals(2, store.size());
+        assertEquals(ShapeStore.LINE, store.getKind(0));
+        assertEquals(Color.RED.toString(), store.getPalette().get(store.getColor(0)).toString());
+        assertEquals(ShapeStore.RECTANGLE, store.getKind(1));
+        assertEquals(Color.BLACK.toString(), store.getPalette().get(store.getColor(1)).toString());
+    }
+}
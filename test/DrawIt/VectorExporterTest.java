@@ -0,0 +1,77 @@
+package DrawIt;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * PDF documents written by the vector exporter
+ *
+ * @author Maksym Hanushchak
+ */
+class VectorExporterTest {
+    /**
+     * Folder of the exported files
+     */
+    @TempDir
+    Path folder;
+
+    /**
+     * Exports a store as PDF and checks that every entry of the cross-reference table points to its object
+     *
+     * @param store Store
+     * @return Document
+     * @throws IOException If the file cannot be written
+     */
+    private String exportPdf(ShapeStore store) throws IOException {
+        Path file = folder.resolve("drawing.pdf");
+        VectorExporter.export(store, VectorExporter.PDF, file, 2, null);
+        String pdf = new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1);
+        int xref = pdf.indexOf("xref\n0 6\n") + "xref\n0 6\n".length();
+        for (int object = 1; object <= 5; object++) {
+            int offset = Integer.parseInt(pdf.substring(xref + object * 20, xref + object * 20 + 10));
+            assertTrue(pdf.startsWith(object + " 0 obj\n", offset), "Object " + object);
+        }
+        return pdf;
+    }
+
+    /**
+     * Translucent colors select a graphics state with their alpha, opaque colors after them select an opaque one
+     *
+     * @throws IOException If the file cannot be written
+     */
+    @Test
+    void translucentStrokes() throws IOException {
+        ShapeStore store = new ShapeStore();
+        int half = store.getPalette().add(new Color(1, 0, 0, 128 / 255.0));
+        int black = store.getPalette().add(Color.BLACK);
+        store.add(ShapeStore.LINE, 0, 0, 100, 100, 2, half);
+        store.add(ShapeStore.RECTANGLE, 10, 10, 50, 50, 3, black);
+        String pdf = exportPdf(store);
+        assertTrue(pdf.contains("/Resources << /ExtGState << /A128 << /CA 0.502 >> /A255 << /CA 1 >> >> >>"));
+        assertTrue(pdf.indexOf("/A128 gs 1 0 0 RG") < pdf.indexOf("/A255 gs 0 0 0 RG"));
+    }
+
+    /**
+     * Opaque drawings have no graphics states
+     *
+     * @throws IOException If the file cannot be written
+     */
+    @Test
+    void opaqueStrokes() throws IOException {
+        ShapeStore store = new ShapeStore();
+        store.add(ShapeStore.LINE, 0, 0, 100, 100, 2, store.getPalette().add(Color.BLACK));
+        String pdf = exportPdf(store);
+        assertFalse(pdf.contains("ExtGState"));
+        assertFalse(pdf.contains(" gs "));
+        assertEquals(1, pdf.split(" RG ").length - 1);
+    }
+}